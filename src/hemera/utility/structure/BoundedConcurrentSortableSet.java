@@ -0,0 +1,311 @@
+package hemera.utility.structure;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+
+import hemera.utility.structure.interfaces.IBinaryCodec;
+import hemera.utility.structure.interfaces.ISortableEntry;
+import hemera.utility.structure.interfaces.ITransaction;
+
+/**
+ * <code>BoundedConcurrentSortableSet</code> defines the
+ * implementation of a <code>ConcurrentSortableSet</code>
+ * that only retains a fixed maximum number of the first
+ * nodes in its ascending order.
+ * <p>
+ * Once the set reaches its capacity, a node that would
+ * be placed after the current last node is rejected,
+ * and any other node is added while the last node is
+ * evicted. Eviction removes the last entry from both
+ * the ordering and the key structures the same way as
+ * <code>pollLast</code>, and notifies the
+ * <code>onEvicted</code> callback after the removal.
+ * <p>
+ * All additions are serialized by an admission lock,
+ * which is held from the capacity check through the
+ * eviction. The readers of the set may thus observe
+ * at most one node over the capacity, for the brief
+ * duration between an insertion and its eviction,
+ * except for <code>transaction</code> and
+ * <code>restoreFrom</code>, which evict once they
+ * complete.
+ * Removals, updates and reads do not acquire the
+ * admission lock.
+ *
+ * @author Yi Wang (Neakor)
+ * @version 1.0.0
+ */
+public class BoundedConcurrentSortableSet<K, T extends Comparable<T>, V> extends ConcurrentSortableSet<K, T, V> {
+	/**
+	 * The <code>int</code> maximum number of nodes.
+	 */
+	private final int capacity;
+	/**
+	 * The <code>ReentrantLock</code> that serializes
+	 * the additions with their evictions.
+	 */
+	private final ReentrantLock admission;
+
+	/**
+	 * Constructor of <code>BoundedConcurrentSortableSet</code>.
+	 * <p>
+	 * This creates a set using the <code>BLOCKING</code>
+	 * sort mode.
+	 * @param capacity The <code>int</code> maximum
+	 * number of nodes.
+	 */
+	public BoundedConcurrentSortableSet(final int capacity) {
+		this(capacity, SortMode.BLOCKING);
+	}
+
+	/**
+	 * Constructor of <code>BoundedConcurrentSortableSet</code>.
+	 * @param capacity The <code>int</code> maximum
+	 * number of nodes.
+	 * @param sortmode The <code>SortMode</code> used to
+	 * perform the <code>sort</code> operation.
+	 */
+	public BoundedConcurrentSortableSet(final int capacity, final SortMode sortmode) {
+		this(capacity, null, sortmode);
+	}
+
+	/**
+	 * Constructor of <code>BoundedConcurrentSortableSet</code>.
+	 * @param capacity The <code>int</code> maximum
+	 * number of nodes.
+	 * @param comparator The <code>Comparator</code> of
+	 * the nodes. <code>null</code> to use the natural
+	 * ordering of the nodes.
+	 * @param sortmode The <code>SortMode</code> used to
+	 * perform the <code>sort</code> operation.
+	 */
+	public BoundedConcurrentSortableSet(final int capacity, final Comparator<? super T> comparator, final SortMode sortmode) {
+		super(comparator, sortmode);
+		if (capacity <= 0) throw new IllegalArgumentException("Capacity must be positive.");
+		this.capacity = capacity;
+		this.admission = new ReentrantLock();
+	}
+
+	/**
+	 * Add the given node if the set is below capacity,
+	 * or if the node precedes the current last node,
+	 * in which case the last node is evicted.
+	 * @return <code>true</code> if the node is added.
+	 * <code>false</code> if the key already exists, if
+	 * the node equals an existing node, or if the set
+	 * is at capacity and the node would be placed after
+	 * the last node, including when the added node is
+	 * the one evicted.
+	 */
+	@Override
+	public boolean add(final K key, final T node, final V attachment) {
+		final List<ISortableEntry<K, T, V>> evicted = new ArrayList<ISortableEntry<K, T, V>>(1);
+		final boolean added;
+		this.admission.lock();
+		try {
+			added = this.admit(key, node, attachment, evicted);
+		} finally {
+			this.admission.unlock();
+		}
+		this.notifyEvicted(evicted);
+		return added;
+	}
+
+	/**
+	 * Add the given entries in their order, with the
+	 * same admission as <code>add</code>. The entries
+	 * that fit within the remaining capacity are added
+	 * as batches, and the rest are added one at a time
+	 * each followed by its eviction, thus the readers
+	 * never observe more than one node over capacity.
+	 * @return The <code>BitSet</code> with the bits of
+	 * the added entries set. The bits of the entries
+	 * that are rejected or evicted during the addition
+	 * are cleared, the same as <code>add</code>.
+	 */
+	@Override
+	public BitSet addAll(final List<? extends ISortableEntry<K, T, V>> entries) {
+		final BitSet result = new BitSet(entries.size());
+		final List<ISortableEntry<K, T, V>> evicted = new ArrayList<ISortableEntry<K, T, V>>();
+		this.admission.lock();
+		try {
+			int index = 0;
+			while (index < entries.size()) {
+				// Additions are serialized by the admission
+				// lock, thus the room cannot shrink here.
+				final int room = this.capacity - this.size();
+				if (room > 0) {
+					final int end = Math.min(entries.size(), index + room);
+					final BitSet added = super.addAll(entries.subList(index, end));
+					for (int i = added.nextSetBit(0); i >= 0; i = added.nextSetBit(i+1)) {
+						result.set(index + i);
+					}
+					index = end;
+				} else {
+					final ISortableEntry<K, T, V> entry = entries.get(index);
+					if (this.admit(entry.getKey(), entry.getNode(), entry.getAttachment(), evicted)) result.set(index);
+					index++;
+				}
+			}
+		} finally {
+			this.admission.unlock();
+		}
+		this.notifyEvicted(evicted);
+		// An added entry may be evicted by a later one.
+		if (!evicted.isEmpty()) {
+			final Map<T, Integer> indices = new IdentityHashMap<T, Integer>();
+			for (int i = result.nextSetBit(0); i >= 0; i = result.nextSetBit(i+1)) {
+				indices.put(entries.get(i).getNode(), Integer.valueOf(i));
+			}
+			for (int i = 0; i < evicted.size(); i++) {
+				final Integer index = indices.get(evicted.get(i).getNode());
+				if (index != null) result.clear(index.intValue());
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Add the given node if the set is below capacity,
+	 * or if the node precedes the current last node,
+	 * then evict the last entries.
+	 * <p>
+	 * This method must be invoked while holding the
+	 * admission lock.
+	 * @param key The <code>K</code> key.
+	 * @param node The <code>T</code> node.
+	 * @param attachment The <code>V</code> attachment.
+	 * @param evicted The <code>List</code> to append
+	 * the evicted <code>ISortableEntry</code> to.
+	 * @return <code>true</code> if the node is added
+	 * and not evicted.
+	 */
+	private boolean admit(final K key, final T node, final V attachment, final List<ISortableEntry<K, T, V>> evicted) {
+		if (this.size() >= this.capacity) {
+			final SortableEntry<K, T, V> last = this.lastEntry();
+			if (last != null) {
+				// The candidate is ordered after all existing
+				// entries on ties of a custom comparator.
+				final SortableEntry<K, T, V> candidate = new SortableEntry<K, T, V>(key, node, attachment, Long.MAX_VALUE);
+				if (this.comparator().compare(candidate, last) > 0) return false;
+			}
+		}
+		if (!super.add(key, node, attachment)) return false;
+		final List<ISortableEntry<K, T, V>> polled = this.evict();
+		evicted.addAll(polled);
+		// The added node itself may have been placed last.
+		for (int i = 0; i < polled.size(); i++) {
+			if (polled.get(i).getNode() == node) return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Apply the given transaction, then evict the last
+	 * entries until the set is within capacity. The
+	 * eviction is not part of the transaction, and it
+	 * is also performed if a node mutator throws after
+	 * the transaction is applied.
+	 */
+	@Override
+	public void transaction(final ITransaction<K, T, V> transaction) {
+		List<ISortableEntry<K, T, V>> evicted = null;
+		this.admission.lock();
+		try {
+			super.transaction(transaction);
+		} finally {
+			try {
+				evicted = this.evict();
+			} finally {
+				this.admission.unlock();
+			}
+			this.notifyEvicted(evicted);
+		}
+	}
+
+	/**
+	 * Restore the entries from the given file, then
+	 * evict the last entries until the set is within
+	 * capacity.
+	 * @return The <code>int</code> number of entries
+	 * restored, including the evicted entries.
+	 */
+	@Override
+	public int restoreFrom(final File file, final IBinaryCodec<K> keycodec, final IBinaryCodec<T> nodecodec,
+			final IBinaryCodec<V> attachmentcodec) throws IOException {
+		final int restored;
+		final List<ISortableEntry<K, T, V>> evicted;
+		this.admission.lock();
+		try {
+			restored = super.restoreFrom(file, keycodec, nodecodec, attachmentcodec);
+			evicted = this.evict();
+		} finally {
+			this.admission.unlock();
+		}
+		this.notifyEvicted(evicted);
+		return restored;
+	}
+
+	/**
+	 * Evict the last entries until the set is within
+	 * capacity.
+	 * <p>
+	 * This method must be invoked while holding the
+	 * admission lock.
+	 * @return The <code>List</code> of the evicted
+	 * <code>ISortableEntry</code>.
+	 */
+	private List<ISortableEntry<K, T, V>> evict() {
+		List<ISortableEntry<K, T, V>> evicted = Collections.emptyList();
+		while (this.size() > this.capacity) {
+			final ISortableEntry<K, T, V> entry = this.pollLast();
+			if (entry == null) break;
+			if (evicted.isEmpty()) evicted = new ArrayList<ISortableEntry<K, T, V>>(1);
+			evicted.add(entry);
+		}
+		return evicted;
+	}
+
+	/**
+	 * Notify the <code>onEvicted</code> callback of the
+	 * given evicted entries.
+	 * @param evicted The <code>List</code> of the evicted
+	 * <code>ISortableEntry</code>.
+	 */
+	private void notifyEvicted(final List<ISortableEntry<K, T, V>> evicted) {
+		for (int i = 0; i < evicted.size(); i++) {
+			final ISortableEntry<K, T, V> entry = evicted.get(i);
+			this.onEvicted(entry.getKey(), entry.getNode(), entry.getAttachment());
+		}
+	}
+
+	/**
+	 * Invoked after an entry is evicted due to the set
+	 * exceeding its capacity. The removal of the entry
+	 * has also been reported by <code>onRemoved</code>.
+	 * <p>
+	 * This method is invoked without holding any locks
+	 * of the set. The default implementation does
+	 * nothing.
+	 * @param key The <code>K</code> key of the entry.
+	 * @param node The <code>T</code> node of the entry.
+	 * @param attachment The <code>V</code> attachment.
+	 */
+	protected void onEvicted(final K key, final T node, final V attachment) {}
+
+	/**
+	 * Retrieve the maximum number of nodes.
+	 * @return The <code>int</code> capacity.
+	 */
+	public int getCapacity() {
+		return this.capacity;
+	}
+}
@@ -0,0 +1,669 @@
+package hemera.utility.structure;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock.ReadLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock.WriteLock;
+
+import hemera.utility.structure.interfaces.IConcurrentSortableSet;
+import hemera.utility.structure.interfaces.INodeMutator;
+import hemera.utility.structure.interfaces.ISortableEntry;
+
+/**
+ * <code>CompactConcurrentSortableSet</code> defines the
+ * data structure implementation of a sortable set that
+ * stores every entry as a single object, with the read-
+ * write lock based concurrency.
+ * <p>
+ * Every <code>CompactEntry</code> carries its key, node
+ * and attachment together with its links in both the
+ * hash index and the ordering structure. The hash index
+ * is a table of chained entries, and the ordering is a
+ * treap whose nodes are the entries themselves, with
+ * parent links. Thus there are no wrapper or index
+ * objects per entry, and an entry is removed from the
+ * ordering by reference, without searching for it by
+ * comparison. Every entry costs about 56 bytes including
+ * its table slot, compared to about 108 bytes for the
+ * hash map and skip list of <code>ConcurrentSortableSet</code>.
+ * <p>
+ * All read-only methods only hold the read-lock thus
+ * are fully concurrent, and all write methods hold the
+ * write-lock. Unlike <code>ConcurrentSortableSet</code>,
+ * modifications are therefore mutually exclusive, which
+ * trades write concurrency for the smaller footprint.
+ * @param K The key object type.
+ * @param T The node <code>Comparable</code> type.
+ * @param V The attachment for the node.
+ *
+ * @author Yi Wang (Neakor)
+ * @version 1.0.0
+ */
+public class CompactConcurrentSortableSet<K, T extends Comparable<T>, V> implements IConcurrentSortableSet<K, T, V> {
+	/**
+	 * The <code>int</code> default initial capacity.
+	 */
+	private static final int DEFAULT_CAPACITY = 16;
+
+	/**
+	 * The hash table of <code>CompactEntry</code> chains.
+	 * The length is always a power of two.
+	 */
+	private CompactEntry<K, T, V>[] table;
+	/**
+	 * The root <code>CompactEntry</code> of the treap.
+	 */
+	private CompactEntry<K, T, V> root;
+	/**
+	 * The <code>int</code> state of the pseudo-random
+	 * priority generator.
+	 */
+	private int seed;
+	/**
+	 * The <code>int</code> number of entries.
+	 */
+	private volatile int count;
+	/**
+	 * The <code>ReadLock</code> used by all the read
+	 * operations.
+	 */
+	private final ReadLock readlock;
+	/**
+	 * The <code>WriteLock</code> used by all the write
+	 * operations.
+	 */
+	private final WriteLock writelock;
+
+	/**
+	 * Constructor of <code>CompactConcurrentSortableSet</code>.
+	 */
+	public CompactConcurrentSortableSet() {
+		this(CompactConcurrentSortableSet.DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * Constructor of <code>CompactConcurrentSortableSet</code>.
+	 * @param capacity The <code>int</code> expected
+	 * number of entries.
+	 */
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	public CompactConcurrentSortableSet(final int capacity) {
+		if (capacity <= 0) throw new IllegalArgumentException("Capacity must be positive.");
+		this.table = new CompactEntry[CompactConcurrentSortableSet.tableLength(capacity)];
+		this.seed = (int)System.nanoTime() | 1;
+		final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+		this.readlock = lock.readLock();
+		this.writelock = lock.writeLock();
+	}
+
+	@Override
+	public boolean add(final K key, final T node, final V attachment) {
+		this.writelock.lock();
+		try {
+			return this.insert(key, node, attachment);
+		} finally {
+			this.writelock.unlock();
+		}
+	}
+
+	@Override
+	public BitSet addAll(final List<? extends ISortableEntry<K, T, V>> entries) {
+		final BitSet result = new BitSet(entries.size());
+		// Hold the write-lock once for the entire batch.
+		this.writelock.lock();
+		try {
+			for (int i = 0; i < entries.size(); i++) {
+				final ISortableEntry<K, T, V> entry = entries.get(i);
+				if (this.insert(entry.getKey(), entry.getNode(), entry.getAttachment())) result.set(i);
+			}
+		} finally {
+			this.writelock.unlock();
+		}
+		return result;
+	}
+
+	/**
+	 * Insert a new entry with the given values.
+	 * <p>
+	 * This method must be invoked while holding the
+	 * write-lock.
+	 * @param key The <code>K</code> key.
+	 * @param node The <code>T</code> node.
+	 * @param attachment The <code>V</code> attachment.
+	 * @return <code>true</code> if the entry is inserted.
+	 * <code>false</code> if the key already exists, or
+	 * if the node equals an existing node.
+	 */
+	private boolean insert(final K key, final T node, final V attachment) {
+		final int hash = CompactConcurrentSortableSet.hash(key);
+		if (this.find(key, hash) != null) return false;
+		final CompactEntry<K, T, V> entry = new CompactEntry<K, T, V>(key, node, attachment, hash, this.nextPriority());
+		if (!this.link(entry)) return false;
+		this.map(entry);
+		this.count++;
+		return true;
+	}
+
+	@Override
+	public boolean remove(final K key) {
+		this.writelock.lock();
+		try {
+			return this.delete(key);
+		} finally {
+			this.writelock.unlock();
+		}
+	}
+
+	@Override
+	public BitSet removeAll(final Collection<K> keys) {
+		final BitSet result = new BitSet(keys.size());
+		// Hold the write-lock once for the entire batch.
+		this.writelock.lock();
+		try {
+			int index = 0;
+			for (final K key : keys) {
+				if (this.delete(key)) result.set(index);
+				index++;
+			}
+		} finally {
+			this.writelock.unlock();
+		}
+		return result;
+	}
+
+	/**
+	 * Delete the entry of the given key.
+	 * <p>
+	 * This method must be invoked while holding the
+	 * write-lock.
+	 * @param key The <code>K</code> key.
+	 * @return <code>true</code> if the entry is deleted.
+	 * <code>false</code> if there is no such key.
+	 */
+	private boolean delete(final K key) {
+		final CompactEntry<K, T, V> entry = this.find(key, CompactConcurrentSortableSet.hash(key));
+		if (entry == null) return false;
+		this.unlink(entry);
+		this.unmap(entry);
+		this.count--;
+		return true;
+	}
+
+	@Override
+	public boolean update(final K key, final INodeMutator<T> mutator) {
+		this.writelock.lock();
+		try {
+			final CompactEntry<K, T, V> entry = this.find(key, CompactConcurrentSortableSet.hash(key));
+			if (entry == null) return false;
+			// The entry is unlinked by reference, thus it
+			// never fails due to a stale ordering.
+			this.unlink(entry);
+			boolean linked = false;
+			try {
+				mutator.mutate(entry.node);
+			} finally {
+				// Re-link even if the mutator throws, so the
+				// entry never remains only in the hash table.
+				linked = this.link(entry);
+				if (!linked) {
+					this.unmap(entry);
+					this.count--;
+				}
+			}
+			return linked;
+		} finally {
+			this.writelock.unlock();
+		}
+	}
+
+	@Override
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	public void sort() {
+		this.writelock.lock();
+		try {
+			if (this.root == null) return;
+			final CompactEntry<K, T, V>[] entries = new CompactEntry[this.count];
+			int length = 0;
+			for (CompactEntry<K, T, V> entry = this.extreme(true); entry != null; entry = CompactConcurrentSortableSet.successor(entry)) {
+				entries[length++] = entry;
+			}
+			boolean sorted = true;
+			for (int i = 1; i < length && sorted; i++) {
+				sorted = (entries[i-1].node.compareTo(entries[i].node) <= 0);
+			}
+			if (!sorted) {
+				ParallelSorter.instance.sort(entries, new Comparator<CompactEntry<K, T, V>>() {
+					@Override
+					public int compare(final CompactEntry<K, T, V> o1, final CompactEntry<K, T, V> o2) {
+						return o1.node.compareTo(o2.node);
+					}
+				});
+			}
+			this.build(entries);
+		} finally {
+			this.writelock.unlock();
+		}
+	}
+
+	/**
+	 * Rebuild the treap from the given sorted entries
+	 * in linear time, keeping the priorities of the
+	 * entries, as the Cartesian tree of the sequence.
+	 * <p>
+	 * This method must be invoked while holding the
+	 * write-lock.
+	 * @param entries The sorted <code>CompactEntry</code>
+	 * array.
+	 */
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	private void build(final CompactEntry<K, T, V>[] entries) {
+		// The right spine of the tree built so far.
+		final CompactEntry<K, T, V>[] spine = new CompactEntry[entries.length];
+		int height = 0;
+		for (int i = 0; i < entries.length; i++) {
+			final CompactEntry<K, T, V> entry = entries[i];
+			entry.left = null;
+			entry.right = null;
+			entry.parent = null;
+			CompactEntry<K, T, V> last = null;
+			while (height > 0 && spine[height-1].priority < entry.priority) {
+				last = spine[--height];
+			}
+			if (last != null) {
+				entry.left = last;
+				last.parent = entry;
+			}
+			if (height > 0) {
+				spine[height-1].right = entry;
+				entry.parent = spine[height-1];
+			}
+			spine[height++] = entry;
+		}
+		this.root = (height == 0) ? null : spine[0];
+	}
+
+	@Override
+	public T firstNode() {
+		final ISortableEntry<K, T, V> entry = this.peek(true);
+		if (entry == null) return null;
+		return entry.getNode();
+	}
+
+	@Override
+	public T lastNode() {
+		final ISortableEntry<K, T, V> entry = this.peek(false);
+		if (entry == null) return null;
+		return entry.getNode();
+	}
+
+	@Override
+	public V firstAttachment() {
+		final ISortableEntry<K, T, V> entry = this.peek(true);
+		if (entry == null) return null;
+		return entry.getAttachment();
+	}
+
+	@Override
+	public V lastAttachment() {
+		final ISortableEntry<K, T, V> entry = this.peek(false);
+		if (entry == null) return null;
+		return entry.getAttachment();
+	}
+
+	/**
+	 * Retrieve the first or the last entry.
+	 * @param first <code>true</code> to retrieve the
+	 * first entry. <code>false</code> for the last.
+	 * @return The <code>ISortableEntry</code>.
+	 * <code>null</code> if the set is empty.
+	 */
+	private ISortableEntry<K, T, V> peek(final boolean first) {
+		this.readlock.lock();
+		try {
+			return this.extreme(first);
+		} finally {
+			this.readlock.unlock();
+		}
+	}
+
+	@Override
+	public ISortableEntry<K, T, V> pollFirst() {
+		this.writelock.lock();
+		try {
+			return this.poll(true);
+		} finally {
+			this.writelock.unlock();
+		}
+	}
+
+	@Override
+	public ISortableEntry<K, T, V> pollLast() {
+		this.writelock.lock();
+		try {
+			return this.poll(false);
+		} finally {
+			this.writelock.unlock();
+		}
+	}
+
+	@Override
+	public List<ISortableEntry<K, T, V>> pollFirst(final int count) {
+		final List<ISortableEntry<K, T, V>> list = new ArrayList<ISortableEntry<K, T, V>>(Math.max(0, Math.min(count, this.count)));
+		// Hold the write-lock once for the entire batch.
+		this.writelock.lock();
+		try {
+			for (int i = 0; i < count; i++) {
+				final ISortableEntry<K, T, V> entry = this.poll(true);
+				if (entry == null) break;
+				list.add(entry);
+			}
+		} finally {
+			this.writelock.unlock();
+		}
+		return list;
+	}
+
+	/**
+	 * Remove the first or the last entry.
+	 * <p>
+	 * This method must be invoked while holding the
+	 * write-lock.
+	 * @param first <code>true</code> to remove the first
+	 * entry. <code>false</code> to remove the last.
+	 * @return The removed <code>ISortableEntry</code>.
+	 * <code>null</code> if the set is empty.
+	 */
+	private ISortableEntry<K, T, V> poll(final boolean first) {
+		final CompactEntry<K, T, V> entry = this.extreme(first);
+		if (entry == null) return null;
+		this.unlink(entry);
+		this.unmap(entry);
+		this.count--;
+		return entry;
+	}
+
+	@Override
+	public int size() {
+		return this.count;
+	}
+
+	@Override
+	public T getNode(final K key) {
+		this.readlock.lock();
+		try {
+			final CompactEntry<K, T, V> entry = this.find(key, CompactConcurrentSortableSet.hash(key));
+			if (entry == null) return null;
+			return entry.node;
+		} finally {
+			this.readlock.unlock();
+		}
+	}
+
+	@Override
+	public V getAttachment(final K key) {
+		this.readlock.lock();
+		try {
+			final CompactEntry<K, T, V> entry = this.find(key, CompactConcurrentSortableSet.hash(key));
+			if (entry == null) return null;
+			return entry.attachment;
+		} finally {
+			this.readlock.unlock();
+		}
+	}
+
+	/**
+	 * Retrieve a snapshot of all the keys.
+	 * @return The <code>Iterable</code> of all the keys
+	 * at the time of invocation, in no particular order.
+	 */
+	@Override
+	public Iterable<K> getAllKeys() {
+		this.readlock.lock();
+		try {
+			final List<K> keys = new ArrayList<K>(this.count);
+			for (int i = 0; i < this.table.length; i++) {
+				for (CompactEntry<K, T, V> entry = this.table[i]; entry != null; entry = entry.next) {
+					keys.add(entry.key);
+				}
+			}
+			return keys;
+		} finally {
+			this.readlock.unlock();
+		}
+	}
+
+	/**
+	 * Link the given detached entry into the treap.
+	 * @param entry The <code>CompactEntry</code> to link.
+	 * @return <code>true</code> if the entry is linked.
+	 * <code>false</code> if its node equals an existing
+	 * node.
+	 */
+	private boolean link(final CompactEntry<K, T, V> entry) {
+		if (this.root == null) {
+			this.root = entry;
+			return true;
+		}
+		CompactEntry<K, T, V> current = this.root;
+		while (true) {
+			final int result = entry.node.compareTo(current.node);
+			if (result == 0) return false;
+			if (result < 0) {
+				if (current.left == null) {
+					current.left = entry;
+					break;
+				}
+				current = current.left;
+			} else {
+				if (current.right == null) {
+					current.right = entry;
+					break;
+				}
+				current = current.right;
+			}
+		}
+		entry.parent = current;
+		while (entry.parent != null && entry.parent.priority < entry.priority) {
+			this.rotateUp(entry);
+		}
+		return true;
+	}
+
+	/**
+	 * Unlink the given entry from the treap, and clear
+	 * its links.
+	 * @param entry The linked <code>CompactEntry</code>.
+	 */
+	private void unlink(final CompactEntry<K, T, V> entry) {
+		// Rotate the entry down until it has at most one
+		// child, keeping the heap order of priorities.
+		while (entry.left != null && entry.right != null) {
+			this.rotateUp((entry.left.priority > entry.right.priority) ? entry.left : entry.right);
+		}
+		final CompactEntry<K, T, V> child = (entry.left != null) ? entry.left : entry.right;
+		this.replace(entry, child);
+		entry.left = null;
+		entry.right = null;
+		entry.parent = null;
+	}
+
+	/**
+	 * Rotate the given entry above its parent.
+	 * @param entry The <code>CompactEntry</code> with a
+	 * parent.
+	 */
+	private void rotateUp(final CompactEntry<K, T, V> entry) {
+		final CompactEntry<K, T, V> parent = entry.parent;
+		if (parent.left == entry) {
+			parent.left = entry.right;
+			if (entry.right != null) entry.right.parent = parent;
+			entry.right = parent;
+		} else {
+			parent.right = entry.left;
+			if (entry.left != null) entry.left.parent = parent;
+			entry.left = parent;
+		}
+		this.replace(parent, entry);
+		parent.parent = entry;
+	}
+
+	/**
+	 * Replace the given entry with the given entry in
+	 * the link of its parent.
+	 * @param entry The <code>CompactEntry</code> to be
+	 * replaced.
+	 * @param replacement The replacing <code>CompactEntry</code>.
+	 * <code>null</code> to remove the link.
+	 */
+	private void replace(final CompactEntry<K, T, V> entry, final CompactEntry<K, T, V> replacement) {
+		final CompactEntry<K, T, V> parent = entry.parent;
+		if (replacement != null) replacement.parent = parent;
+		if (parent == null) this.root = replacement;
+		else if (parent.left == entry) parent.left = replacement;
+		else parent.right = replacement;
+	}
+
+	/**
+	 * Retrieve the first or the last entry.
+	 * @param first <code>true</code> to retrieve the
+	 * first entry. <code>false</code> for the last.
+	 * @return The <code>CompactEntry</code>.
+	 * <code>null</code> if the set is empty.
+	 */
+	private CompactEntry<K, T, V> extreme(final boolean first) {
+		CompactEntry<K, T, V> entry = this.root;
+		if (entry == null) return null;
+		while (true) {
+			final CompactEntry<K, T, V> child = first ? entry.left : entry.right;
+			if (child == null) return entry;
+			entry = child;
+		}
+	}
+
+	/**
+	 * Retrieve the entry following the given entry in
+	 * the ascending order.
+	 * @param entry The linked <code>CompactEntry</code>.
+	 * @return The next <code>CompactEntry</code>.
+	 * <code>null</code> if it is the last.
+	 */
+	private static <K, T extends Comparable<T>, V> CompactEntry<K, T, V> successor(final CompactEntry<K, T, V> entry) {
+		if (entry.right != null) {
+			CompactEntry<K, T, V> next = entry.right;
+			while (next.left != null) {
+				next = next.left;
+			}
+			return next;
+		}
+		CompactEntry<K, T, V> child = entry;
+		CompactEntry<K, T, V> parent = entry.parent;
+		while (parent != null && parent.right == child) {
+			child = parent;
+			parent = parent.parent;
+		}
+		return parent;
+	}
+
+	/**
+	 * Find the entry of the given key.
+	 * @param key The <code>K</code> key.
+	 * @param hash The <code>int</code> spread hash.
+	 * @return The <code>CompactEntry</code>.
+	 * <code>null</code> if there is no such key.
+	 */
+	private CompactEntry<K, T, V> find(final K key, final int hash) {
+		final CompactEntry<K, T, V>[] table = this.table;
+		for (CompactEntry<K, T, V> entry = table[hash & (table.length-1)]; entry != null; entry = entry.next) {
+			if (entry.hash == hash && (entry.key == key || entry.key.equals(key))) return entry;
+		}
+		return null;
+	}
+
+	/**
+	 * Add the given entry to the hash table, and grow
+	 * the table if it is too full.
+	 * @param entry The <code>CompactEntry</code> to map.
+	 */
+	private void map(final CompactEntry<K, T, V> entry) {
+		if (this.count >= (this.table.length >>> 1) + (this.table.length >>> 2)) this.grow();
+		final int index = entry.hash & (this.table.length-1);
+		entry.next = this.table[index];
+		this.table[index] = entry;
+	}
+
+	/**
+	 * Remove the given entry from the hash table.
+	 * @param entry The mapped <code>CompactEntry</code>.
+	 */
+	private void unmap(final CompactEntry<K, T, V> entry) {
+		final int index = entry.hash & (this.table.length-1);
+		CompactEntry<K, T, V> previous = null;
+		for (CompactEntry<K, T, V> current = this.table[index]; current != null; current = current.next) {
+			if (current == entry) {
+				if (previous == null) this.table[index] = entry.next;
+				else previous.next = entry.next;
+				entry.next = null;
+				return;
+			}
+			previous = current;
+		}
+	}
+
+	/**
+	 * Double the length of the hash table.
+	 */
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	private void grow() {
+		final CompactEntry<K, T, V>[] old = this.table;
+		final CompactEntry<K, T, V>[] table = new CompactEntry[old.length << 1];
+		for (int i = 0; i < old.length; i++) {
+			CompactEntry<K, T, V> entry = old[i];
+			while (entry != null) {
+				final CompactEntry<K, T, V> next = entry.next;
+				final int index = entry.hash & (table.length-1);
+				entry.next = table[index];
+				table[index] = entry;
+				entry = next;
+			}
+		}
+		this.table = table;
+	}
+
+	/**
+	 * Generate the next pseudo-random priority.
+	 * @return The <code>int</code> priority.
+	 */
+	private int nextPriority() {
+		// Xorshift generator.
+		int x = this.seed;
+		x ^= (x << 13);
+		x ^= (x >>> 17);
+		x ^= (x << 5);
+		this.seed = x;
+		return x;
+	}
+
+	/**
+	 * Retrieve the hash table length for the given
+	 * expected number of entries.
+	 * @param capacity The <code>int</code> capacity.
+	 * @return The <code>int</code> power of two length.
+	 */
+	private static int tableLength(final int capacity) {
+		return Math.max(2, Integer.highestOneBit(Math.max(1, capacity * 4 / 3) - 1) << 1);
+	}
+
+	/**
+	 * Compute the spread hash of the given key.
+	 * @param key The <code>K</code> key.
+	 * @return The <code>int</code> hash.
+	 */
+	private static int hash(final Object key) {
+		final int h = key.hashCode() * 0x9E3779B9;
+		return h ^ (h >>> 16);
+	}
+}
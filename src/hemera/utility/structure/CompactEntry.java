@@ -0,0 +1,84 @@
+package hemera.utility.structure;
+
+import hemera.utility.structure.interfaces.ISortableEntry;
+
+/**
+ * <code>CompactEntry</code> defines the single object
+ * that represents an entry of a
+ * <code>CompactConcurrentSortableSet</code>, which is
+ * linked into both the hash index and the ordering
+ * treap of the set.
+ *
+ * @author Yi Wang (Neakor)
+ * @version 1.0.0
+ */
+final class CompactEntry<K, T extends Comparable<T>, V> implements ISortableEntry<K, T, V> {
+	/**
+	 * The <code>K</code> key.
+	 */
+	final K key;
+	/**
+	 * The <code>T</code> node.
+	 */
+	final T node;
+	/**
+	 * The <code>V</code> attachment.
+	 */
+	final V attachment;
+	/**
+	 * The <code>int</code> spread hash of the key.
+	 */
+	final int hash;
+	/**
+	 * The <code>int</code> treap priority.
+	 */
+	final int priority;
+	/**
+	 * The next <code>CompactEntry</code> in the same
+	 * hash bucket.
+	 */
+	CompactEntry<K, T, V> next;
+	/**
+	 * The parent <code>CompactEntry</code> in the treap.
+	 */
+	CompactEntry<K, T, V> parent;
+	/**
+	 * The left child <code>CompactEntry</code>.
+	 */
+	CompactEntry<K, T, V> left;
+	/**
+	 * The right child <code>CompactEntry</code>.
+	 */
+	CompactEntry<K, T, V> right;
+
+	/**
+	 * Constructor of <code>CompactEntry</code>.
+	 * @param key The <code>K</code> key.
+	 * @param node The <code>T</code> node.
+	 * @param attachment The <code>V</code> attachment.
+	 * @param hash The <code>int</code> spread hash.
+	 * @param priority The <code>int</code> priority.
+	 */
+	CompactEntry(final K key, final T node, final V attachment, final int hash, final int priority) {
+		this.key = key;
+		this.node = node;
+		this.attachment = attachment;
+		this.hash = hash;
+		this.priority = priority;
+	}
+
+	@Override
+	public K getKey() {
+		return this.key;
+	}
+
+	@Override
+	public T getNode() {
+		return this.node;
+	}
+
+	@Override
+	public V getAttachment() {
+		return this.attachment;
+	}
+}
@@ -0,0 +1,573 @@
+package hemera.utility.structure;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock.ReadLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock.WriteLock;
+
+import hemera.utility.structure.interfaces.IConcurrentSortableSet;
+import hemera.utility.structure.interfaces.INodeMutator;
+import hemera.utility.structure.interfaces.ISortableEntry;
+
+/**
+ * <code>ConcurrentHeapSortableSet</code> defines the
+ * implementation of a sortable set backed by an array
+ * based d-ary heap, for usages that only access the
+ * first node, with the read-write lock based concurrency.
+ * <p>
+ * Every entry records its index in the heap array, and
+ * a hash map from the keys to the entries serves as the
+ * position index. Thus the first node is retrieved in
+ * constant time, while additions, removals and updates
+ * are logarithmic and never compare nodes to locate an
+ * entry. The four children of a heap node are adjacent
+ * in the array, which keeps the heap shallow and the
+ * sifting cache friendly. The <code>sort</code> method
+ * restores the heap ordering in linear time.
+ * <p>
+ * Since the heap only maintains a partial ordering, the
+ * last node is found by scanning the leaves in linear
+ * time, and nodes that compare equal are not detected,
+ * thus additions are only rejected by duplicate keys.
+ * <p>
+ * All read-only methods only hold the read-lock thus
+ * are fully concurrent, and all write methods hold the
+ * write-lock, thus modifications are mutually exclusive.
+ * @param K The key object type.
+ * @param T The node <code>Comparable</code> type.
+ * @param V The attachment for the node.
+ *
+ * @author Yi Wang (Neakor)
+ * @version 1.0.0
+ */
+public class ConcurrentHeapSortableSet<K, T extends Comparable<T>, V> implements IConcurrentSortableSet<K, T, V> {
+	/**
+	 * The <code>int</code> number of children of each
+	 * heap node.
+	 */
+	private static final int ARITY = 4;
+	/**
+	 * The <code>int</code> default initial capacity.
+	 */
+	private static final int DEFAULT_CAPACITY = 16;
+
+	/**
+	 * The <code>Map</code> of <code>K</code> key to its
+	 * <code>HeapEntry</code>.
+	 */
+	private final Map<K, HeapEntry<K, T, V>> positions;
+	/**
+	 * The <code>HeapEntry</code> array of the heap.
+	 */
+	private HeapEntry<K, T, V>[] heap;
+	/**
+	 * The <code>int</code> number of entries in the
+	 * heap array.
+	 */
+	private int length;
+	/**
+	 * The <code>int</code> number of entries visible
+	 * without the lock.
+	 */
+	private volatile int count;
+	/**
+	 * The <code>ReadLock</code> used by all the read
+	 * operations.
+	 */
+	private final ReadLock readlock;
+	/**
+	 * The <code>WriteLock</code> used by all the write
+	 * operations.
+	 */
+	private final WriteLock writelock;
+
+	/**
+	 * Constructor of <code>ConcurrentHeapSortableSet</code>.
+	 */
+	public ConcurrentHeapSortableSet() {
+		this(ConcurrentHeapSortableSet.DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * Constructor of <code>ConcurrentHeapSortableSet</code>.
+	 * @param capacity The <code>int</code> expected
+	 * number of entries.
+	 */
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	public ConcurrentHeapSortableSet(final int capacity) {
+		if (capacity <= 0) throw new IllegalArgumentException("Capacity must be positive.");
+		this.positions = new HashMap<K, HeapEntry<K, T, V>>(capacity * 4 / 3 + 1);
+		this.heap = new HeapEntry[capacity];
+		final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+		this.readlock = lock.readLock();
+		this.writelock = lock.writeLock();
+	}
+
+	@Override
+	public boolean add(final K key, final T node, final V attachment) {
+		this.writelock.lock();
+		try {
+			final HeapEntry<K, T, V> entry = this.append(key, node, attachment);
+			if (entry == null) return false;
+			this.siftUp(entry.index);
+			return true;
+		} finally {
+			this.writelock.unlock();
+		}
+	}
+
+	@Override
+	public BitSet addAll(final List<? extends ISortableEntry<K, T, V>> entries) {
+		final BitSet result = new BitSet(entries.size());
+		// Hold the write-lock once for the entire batch.
+		this.writelock.lock();
+		try {
+			// Re-heapify once if the batch is larger than
+			// the heap, otherwise sift up every entry.
+			final boolean bulk = (entries.size() > this.length);
+			for (int i = 0; i < entries.size(); i++) {
+				final ISortableEntry<K, T, V> source = entries.get(i);
+				final HeapEntry<K, T, V> entry = this.append(source.getKey(), source.getNode(), source.getAttachment());
+				if (entry == null) continue;
+				if (!bulk) this.siftUp(entry.index);
+				result.set(i);
+			}
+			if (bulk) this.heapify();
+		} finally {
+			this.writelock.unlock();
+		}
+		return result;
+	}
+
+	/**
+	 * Append a new entry to the end of the heap array
+	 * without restoring the heap ordering.
+	 * <p>
+	 * This method must be invoked while holding the
+	 * write-lock.
+	 * @param key The <code>K</code> key.
+	 * @param node The <code>T</code> node.
+	 * @param attachment The <code>V</code> attachment.
+	 * @return The appended <code>HeapEntry</code>.
+	 * <code>null</code> if the key already exists.
+	 */
+	private HeapEntry<K, T, V> append(final K key, final T node, final V attachment) {
+		if (this.positions.containsKey(key)) return null;
+		if (this.length == this.heap.length) this.grow();
+		final HeapEntry<K, T, V> entry = new HeapEntry<K, T, V>(key, node, attachment);
+		this.positions.put(key, entry);
+		this.place(entry, this.length);
+		this.length++;
+		this.count = this.length;
+		return entry;
+	}
+
+	@Override
+	public boolean remove(final K key) {
+		this.writelock.lock();
+		try {
+			final HeapEntry<K, T, V> entry = this.positions.get(key);
+			if (entry == null) return false;
+			this.removeAt(entry.index);
+			return true;
+		} finally {
+			this.writelock.unlock();
+		}
+	}
+
+	@Override
+	public BitSet removeAll(final Collection<K> keys) {
+		final BitSet result = new BitSet(keys.size());
+		// Hold the write-lock once for the entire batch.
+		this.writelock.lock();
+		try {
+			int index = 0;
+			for (final K key : keys) {
+				final HeapEntry<K, T, V> entry = this.positions.get(key);
+				if (entry != null) {
+					this.removeAt(entry.index);
+					result.set(index);
+				}
+				index++;
+			}
+		} finally {
+			this.writelock.unlock();
+		}
+		return result;
+	}
+
+	/**
+	 * Update the ordering state of the node associated
+	 * with given key, and sift it into its new position.
+	 * <p>
+	 * Since the entry is located by its recorded index,
+	 * the update never fails due to a stale ordering,
+	 * and nodes are never rejected as equal.
+	 * @param key The <code>K</code> key of the node
+	 * to update.
+	 * @param mutator The <code>INodeMutator</code> to
+	 * modify the node with.
+	 * @return <code>true</code> if the node is updated.
+	 * <code>false</code> if there is no such key.
+	 */
+	@Override
+	public boolean update(final K key, final INodeMutator<T> mutator) {
+		this.writelock.lock();
+		try {
+			final HeapEntry<K, T, V> entry = this.positions.get(key);
+			if (entry == null) return false;
+			try {
+				mutator.mutate(entry.node);
+			} finally {
+				// Restore the heap order even if the mutator
+				// throws after modifying the node.
+				this.reposition(entry.index);
+			}
+			return true;
+		} finally {
+			this.writelock.unlock();
+		}
+	}
+
+	@Override
+	public void sort() {
+		this.writelock.lock();
+		try {
+			this.heapify();
+		} finally {
+			this.writelock.unlock();
+		}
+	}
+
+	@Override
+	public T firstNode() {
+		this.readlock.lock();
+		try {
+			if (this.length == 0) return null;
+			return this.heap[0].node;
+		} finally {
+			this.readlock.unlock();
+		}
+	}
+
+	/**
+	 * Retrieve the last (highest) node in the set.
+	 * <p>
+	 * This method scans the leaves of the heap, thus it
+	 * is linear in the size of the set.
+	 * @return The <code>T</code> highest node.
+	 * <code>null</code> if no entries in the set.
+	 */
+	@Override
+	public T lastNode() {
+		this.readlock.lock();
+		try {
+			final int index = this.lastIndex();
+			if (index < 0) return null;
+			return this.heap[index].node;
+		} finally {
+			this.readlock.unlock();
+		}
+	}
+
+	@Override
+	public V firstAttachment() {
+		this.readlock.lock();
+		try {
+			if (this.length == 0) return null;
+			return this.heap[0].attachment;
+		} finally {
+			this.readlock.unlock();
+		}
+	}
+
+	/**
+	 * Retrieve the attachment of the last (highest)
+	 * node in the set.
+	 * <p>
+	 * This method scans the leaves of the heap, thus it
+	 * is linear in the size of the set.
+	 * @return The <code>V</code> attachment of the
+	 * highest node. <code>null</code> if no entries
+	 * in the set.
+	 */
+	@Override
+	public V lastAttachment() {
+		this.readlock.lock();
+		try {
+			final int index = this.lastIndex();
+			if (index < 0) return null;
+			return this.heap[index].attachment;
+		} finally {
+			this.readlock.unlock();
+		}
+	}
+
+	@Override
+	public ISortableEntry<K, T, V> pollFirst() {
+		this.writelock.lock();
+		try {
+			if (this.length == 0) return null;
+			return this.removeAt(0);
+		} finally {
+			this.writelock.unlock();
+		}
+	}
+
+	/**
+	 * Atomically remove the last (highest) node from
+	 * the set.
+	 * <p>
+	 * This method scans the leaves of the heap, thus it
+	 * is linear in the size of the set.
+	 * @return The removed <code>ISortableEntry</code>.
+	 * <code>null</code> if no entries in the set.
+	 */
+	@Override
+	public ISortableEntry<K, T, V> pollLast() {
+		this.writelock.lock();
+		try {
+			final int index = this.lastIndex();
+			if (index < 0) return null;
+			return this.removeAt(index);
+		} finally {
+			this.writelock.unlock();
+		}
+	}
+
+	@Override
+	public List<ISortableEntry<K, T, V>> pollFirst(final int count) {
+		final List<ISortableEntry<K, T, V>> list = new ArrayList<ISortableEntry<K, T, V>>(Math.max(0, Math.min(count, this.count)));
+		// Hold the write-lock once for the entire batch.
+		this.writelock.lock();
+		try {
+			for (int i = 0; i < count && this.length > 0; i++) {
+				list.add(this.removeAt(0));
+			}
+		} finally {
+			this.writelock.unlock();
+		}
+		return list;
+	}
+
+	@Override
+	public int size() {
+		return this.count;
+	}
+
+	@Override
+	public T getNode(final K key) {
+		this.readlock.lock();
+		try {
+			final HeapEntry<K, T, V> entry = this.positions.get(key);
+			if (entry == null) return null;
+			return entry.node;
+		} finally {
+			this.readlock.unlock();
+		}
+	}
+
+	@Override
+	public V getAttachment(final K key) {
+		this.readlock.lock();
+		try {
+			final HeapEntry<K, T, V> entry = this.positions.get(key);
+			if (entry == null) return null;
+			return entry.attachment;
+		} finally {
+			this.readlock.unlock();
+		}
+	}
+
+	/**
+	 * Retrieve a snapshot of all the keys.
+	 * @return The <code>Iterable</code> of all the keys
+	 * at the time of invocation, in no particular order.
+	 */
+	@Override
+	public Iterable<K> getAllKeys() {
+		this.readlock.lock();
+		try {
+			return new ArrayList<K>(this.positions.keySet());
+		} finally {
+			this.readlock.unlock();
+		}
+	}
+
+	/**
+	 * Remove the entry at the given heap index.
+	 * <p>
+	 * This method must be invoked while holding the
+	 * write-lock.
+	 * @param index The <code>int</code> heap index.
+	 * @return The removed <code>HeapEntry</code>.
+	 */
+	private HeapEntry<K, T, V> removeAt(final int index) {
+		final HeapEntry<K, T, V> entry = this.heap[index];
+		this.positions.remove(entry.key);
+		this.length--;
+		this.count = this.length;
+		final HeapEntry<K, T, V> last = this.heap[this.length];
+		this.heap[this.length] = null;
+		if (index != this.length) {
+			this.place(last, index);
+			this.reposition(index);
+		}
+		entry.index = -1;
+		return entry;
+	}
+
+	/**
+	 * Restore the heap ordering of the entire array in
+	 * linear time, by sifting down all the internal
+	 * nodes from the bottom up.
+	 */
+	private void heapify() {
+		for (int i = (this.length - 2) / ConcurrentHeapSortableSet.ARITY; i >= 0; i--) {
+			this.siftDown(i);
+		}
+	}
+
+	/**
+	 * Move the entry at the given index up or down to
+	 * its position in the heap ordering.
+	 * @param index The <code>int</code> heap index.
+	 */
+	private void reposition(final int index) {
+		if (this.siftUp(index) == index) this.siftDown(index);
+	}
+
+	/**
+	 * Move the entry at the given index up until its
+	 * parent is not higher than it.
+	 * @param index The <code>int</code> heap index.
+	 * @return The <code>int</code> final index.
+	 */
+	private int siftUp(final int index) {
+		final HeapEntry<K, T, V> entry = this.heap[index];
+		int current = index;
+		while (current > 0) {
+			final int parent = (current - 1) / ConcurrentHeapSortableSet.ARITY;
+			if (entry.node.compareTo(this.heap[parent].node) >= 0) break;
+			this.place(this.heap[parent], current);
+			current = parent;
+		}
+		if (current != index) this.place(entry, current);
+		return current;
+	}
+
+	/**
+	 * Move the entry at the given index down until its
+	 * lowest child is not lower than it.
+	 * @param index The <code>int</code> heap index.
+	 */
+	private void siftDown(final int index) {
+		final HeapEntry<K, T, V> entry = this.heap[index];
+		int current = index;
+		while (true) {
+			final int first = current * ConcurrentHeapSortableSet.ARITY + 1;
+			if (first >= this.length) break;
+			final int end = Math.min(first + ConcurrentHeapSortableSet.ARITY, this.length);
+			int lowest = first;
+			for (int i = first + 1; i < end; i++) {
+				if (this.heap[i].node.compareTo(this.heap[lowest].node) < 0) lowest = i;
+			}
+			if (this.heap[lowest].node.compareTo(entry.node) >= 0) break;
+			this.place(this.heap[lowest], current);
+			current = lowest;
+		}
+		if (current != index) this.place(entry, current);
+	}
+
+	/**
+	 * Retrieve the index of the highest entry, which
+	 * must be one of the leaves.
+	 * @return The <code>int</code> heap index. <code>-1</code>
+	 * if the heap is empty.
+	 */
+	private int lastIndex() {
+		if (this.length == 0) return -1;
+		// The first leaf follows the parent of the last.
+		int highest = (this.length == 1) ? 0 : (this.length - 2) / ConcurrentHeapSortableSet.ARITY + 1;
+		for (int i = highest + 1; i < this.length; i++) {
+			if (this.heap[i].node.compareTo(this.heap[highest].node) > 0) highest = i;
+		}
+		return highest;
+	}
+
+	/**
+	 * Store the given entry at the given heap index.
+	 * @param entry The <code>HeapEntry</code> to store.
+	 * @param index The <code>int</code> heap index.
+	 */
+	private void place(final HeapEntry<K, T, V> entry, final int index) {
+		this.heap[index] = entry;
+		entry.index = index;
+	}
+
+	/**
+	 * Double the length of the heap array.
+	 */
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	private void grow() {
+		final HeapEntry<K, T, V>[] heap = new HeapEntry[this.heap.length << 1];
+		System.arraycopy(this.heap, 0, heap, 0, this.length);
+		this.heap = heap;
+	}
+
+	/**
+	 * <code>HeapEntry</code> defines the entry of a
+	 * single node that records its index in the heap.
+	 */
+	private static final class HeapEntry<K, T extends Comparable<T>, V> implements ISortableEntry<K, T, V> {
+		/**
+		 * The <code>K</code> key.
+		 */
+		private final K key;
+		/**
+		 * The <code>T</code> node.
+		 */
+		private final T node;
+		/**
+		 * The <code>V</code> attachment.
+		 */
+		private final V attachment;
+		/**
+		 * The <code>int</code> index in the heap array.
+		 * <code>-1</code> if removed.
+		 */
+		private int index;
+
+		/**
+		 * Constructor of <code>HeapEntry</code>.
+		 * @param key The <code>K</code> key.
+		 * @param node The <code>T</code> node.
+		 * @param attachment The <code>V</code> attachment.
+		 */
+		private HeapEntry(final K key, final T node, final V attachment) {
+			this.key = key;
+			this.node = node;
+			this.attachment = attachment;
+		}
+
+		@Override
+		public K getKey() {
+			return this.key;
+		}
+
+		@Override
+		public T getNode() {
+			return this.node;
+		}
+
+		@Override
+		public V getAttachment() {
+			return this.attachment;
+		}
+	}
+}
@@ -0,0 +1,318 @@
+package hemera.utility.structure;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock.ReadLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock.WriteLock;
+
+import hemera.utility.structure.interfaces.IConcurrentRankedSortableSet;
+import hemera.utility.structure.interfaces.INodeScorer;
+import hemera.utility.structure.interfaces.ISortableSetSnapshot;
+
+/**
+ * <code>ConcurrentRankedSortableSet</code> defines the
+ * implementation of a <code>ConcurrentSortableSet</code>
+ * that additionally maintains an order-statistic tree
+ * of all its nodes to support logarithmic rank queries.
+ * <p>
+ * The order-statistic tree is guarded by its own read-
+ * write lock. Rank queries only hold the tree read-lock
+ * thus are fully concurrent with each other, while the
+ * modifications of the set briefly hold the tree write-
+ * lock to update the tree. All other read operations
+ * are served by the underlying set, thus they are not
+ * affected by the tree lock.
+ * <p>
+ * The set can optionally maintain a <code>QuantileSketch</code>
+ * of the scores of its nodes, which is updated without
+ * locking on every addition and removal. Approximate
+ * queries read the sketch without acquiring any locks,
+ * for callers that can trade accuracy for not blocking
+ * on the tree lock. The sketch reflects the scores of
+ * the nodes as of their last addition or update, thus
+ * nodes should only be modified via <code>update</code>.
+ * <p>
+ * Snapshots pin a version of the order-statistic tree.
+ * While any snapshot is open, the tree keeps the prior
+ * links of the tree nodes it restructures, thus the
+ * memory retained by the snapshots is proportional to
+ * the modifications made while they are open.
+ *
+ * @author Yi Wang (Neakor)
+ * @version 1.0.0
+ */
+public class ConcurrentRankedSortableSet<K, T extends Comparable<T>, V> extends ConcurrentSortableSet<K, T, V> implements IConcurrentRankedSortableSet<K, T, V> {
+	/**
+	 * The <code>RankTree</code> of all the nodes.
+	 */
+	private final RankTree<K, T, V> tree;
+	/**
+	 * The <code>ConcurrentMap</code> of <code>K</code>
+	 * key to the tree <code>Handle</code> of the node.
+	 */
+	private final ConcurrentMap<K, RankTree.Handle<K, T, V>> handles;
+	/**
+	 * The <code>ReadLock</code> used to guard all the
+	 * rank queries on the tree.
+	 */
+	private final ReadLock treereadlock;
+	/**
+	 * The <code>WriteLock</code> used to guard all the
+	 * modifications of the tree.
+	 */
+	private final WriteLock treewritelock;
+	/**
+	 * The <code>INodeScorer</code> of the approximate
+	 * statistics. <code>null</code> if disabled.
+	 */
+	private final INodeScorer<T> scorer;
+	/**
+	 * The <code>QuantileSketch</code> of the scores.
+	 * <code>null</code> if disabled.
+	 */
+	private final QuantileSketch sketch;
+
+	/**
+	 * Constructor of <code>ConcurrentRankedSortableSet</code>.
+	 * <p>
+	 * This creates a set using the <code>BLOCKING</code>
+	 * sort mode.
+	 */
+	public ConcurrentRankedSortableSet() {
+		this(SortMode.BLOCKING);
+	}
+
+	/**
+	 * Constructor of <code>ConcurrentRankedSortableSet</code>.
+	 * @param sortmode The <code>SortMode</code> used to
+	 * perform the <code>sort</code> operation.
+	 */
+	public ConcurrentRankedSortableSet(final SortMode sortmode) {
+		this(sortmode, null, 0.01);
+	}
+
+	/**
+	 * Constructor of <code>ConcurrentRankedSortableSet</code>.
+	 * <p>
+	 * This creates a set that maintains the approximate
+	 * statistics with a relative accuracy of 1%.
+	 * @param sortmode The <code>SortMode</code> used to
+	 * perform the <code>sort</code> operation.
+	 * @param scorer The <code>INodeScorer</code> used
+	 * to score the nodes for the approximate statistics.
+	 */
+	public ConcurrentRankedSortableSet(final SortMode sortmode, final INodeScorer<T> scorer) {
+		this(sortmode, scorer, 0.01);
+	}
+
+	/**
+	 * Constructor of <code>ConcurrentRankedSortableSet</code>.
+	 * @param sortmode The <code>SortMode</code> used to
+	 * perform the <code>sort</code> operation.
+	 * @param scorer The <code>INodeScorer</code> used
+	 * to score the nodes for the approximate statistics.
+	 * <code>null</code> to disable the approximate
+	 * statistics.
+	 * @param accuracy The <code>double</code> relative
+	 * accuracy of the approximate statistics.
+	 */
+	public ConcurrentRankedSortableSet(final SortMode sortmode, final INodeScorer<T> scorer, final double accuracy) {
+		super(sortmode);
+		this.scorer = scorer;
+		this.sketch = (scorer == null) ? null : new QuantileSketch(accuracy);
+		this.tree = new RankTree<K, T, V>(this.comparator());
+		this.handles = new ConcurrentHashMap<K, RankTree.Handle<K, T, V>>();
+		final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+		this.treereadlock = lock.readLock();
+		this.treewritelock = lock.writeLock();
+	}
+
+	@Override
+	protected void onAdded(final K key, final T node, final V attachment) {
+		final RankTree.Handle<K, T, V> handle;
+		this.treewritelock.lock();
+		try {
+			handle = this.tree.insert(this.getEntry(key));
+		} finally {
+			this.treewritelock.unlock();
+		}
+		// The handle is published after the bucket is set,
+		// and the per-key lock orders it before removal.
+		if (this.sketch != null) handle.bucket = this.sketch.add(this.scorer.score(node));
+		this.handles.put(key, handle);
+	}
+
+	@Override
+	protected void onRemoved(final K key, final T node) {
+		final RankTree.Handle<K, T, V> handle = this.handles.remove(key);
+		if (handle == null) return;
+		if (this.sketch != null) this.sketch.remove(handle.bucket);
+		this.treewritelock.lock();
+		try {
+			this.tree.remove(handle);
+		} finally {
+			this.treewritelock.unlock();
+		}
+	}
+
+	@Override
+	protected void onSorted() {
+		this.treewritelock.lock();
+		try {
+			this.tree.sort();
+		} finally {
+			this.treewritelock.unlock();
+		}
+	}
+
+	/**
+	 * Hold the tree write-lock for the entire batch,
+	 * so that the rank queries and the snapshots never
+	 * observe a partially applied transaction.
+	 */
+	@Override
+	void batch(final Runnable task) {
+		this.treewritelock.lock();
+		try {
+			task.run();
+		} finally {
+			this.treewritelock.unlock();
+		}
+	}
+
+	@Override
+	public int rankOf(final K key) {
+		final RankTree.Handle<K, T, V> handle = this.handles.get(key);
+		if (handle == null) return -1;
+		this.treereadlock.lock();
+		try {
+			return this.tree.rank(handle);
+		} finally {
+			this.treereadlock.unlock();
+		}
+	}
+
+	@Override
+	public T nodeAtRank(final int rank) {
+		this.treereadlock.lock();
+		try {
+			final RankTree.Handle<K, T, V> handle = this.tree.select(rank);
+			if (handle == null) return null;
+			return handle.entry.node;
+		} finally {
+			this.treereadlock.unlock();
+		}
+	}
+
+	@Override
+	public List<T> range(final int offset, final int limit) {
+		final List<T> list = new ArrayList<T>(Math.max(0, Math.min(limit, this.size() - offset)));
+		this.treereadlock.lock();
+		try {
+			this.tree.collect(offset, limit, list);
+		} finally {
+			this.treereadlock.unlock();
+		}
+		return list;
+	}
+
+	@Override
+	public T nodeAtQuantile(final double q) {
+		if (!(q >= 0 && q <= 1)) throw new IllegalArgumentException("Quantile must be between 0 and 1: " + q);
+		this.treereadlock.lock();
+		try {
+			final int size = this.tree.size();
+			if (size == 0) return null;
+			// Nearest-rank, where the first node is at 0.
+			final int rank = Math.max(0, (int)Math.ceil(size * q) - 1);
+			return this.tree.select(Math.min(rank, size-1)).entry.node;
+		} finally {
+			this.treereadlock.unlock();
+		}
+	}
+
+	@Override
+	public int countBetween(final T low, final T high) {
+		this.treereadlock.lock();
+		try {
+			return Math.max(0, this.tree.countAtMost(high) - this.tree.countBelow(low));
+		} finally {
+			this.treereadlock.unlock();
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * Taking a snapshot only holds the tree write-lock
+	 * to pin the current version, thus it does not wait
+	 * for a sort in progress, and reflects the previous
+	 * order in that case. Since a transaction updates the
+	 * tree while holding the same lock, a snapshot never
+	 * observes a partially applied transaction. Each tree
+	 * node restructured while the snapshot is open
+	 * retains a small revision until the snapshot and
+	 * all the older snapshots are released, including a
+	 * revision of every node if a <code>sort</code>
+	 * changes the order.
+	 */
+	@Override
+	public ISortableSetSnapshot<K, T, V> snapshot() {
+		this.treewritelock.lock();
+		try {
+			return new RankedSetSnapshot<K, T, V>(this.tree, this.treereadlock, this.treewritelock);
+		} finally {
+			this.treewritelock.unlock();
+		}
+	}
+
+	/**
+	 * Retrieve the approximate score at the given
+	 * quantile of the scores, in ascending order of
+	 * the scores regardless of the node ordering.
+	 * <p>
+	 * This method does not acquire any locks.
+	 * @param q The <code>double</code> quantile within
+	 * the range of <code>[0, 1]</code>.
+	 * @return The <code>double</code> approximate score.
+	 * <code>NaN</code> if the set is empty.
+	 */
+	public double approximateQuantile(final double q) {
+		return this.getSketch().quantile(q);
+	}
+
+	/**
+	 * Count the nodes with scores between the given
+	 * inclusive bounds approximately.
+	 * <p>
+	 * This method does not acquire any locks.
+	 * @param low The <code>double</code> lower bound.
+	 * @param high The <code>double</code> upper bound.
+	 * @return The <code>long</code> approximate count.
+	 */
+	public long approximateCountBetween(final double low, final double high) {
+		return this.getSketch().countBetween(low, high);
+	}
+
+	/**
+	 * Create a copy of the current sketch of scores,
+	 * which can be merged with the sketches of other
+	 * sets of the same accuracy.
+	 * @return The <code>QuantileSketch</code> copy.
+	 */
+	public QuantileSketch snapshotSketch() {
+		return this.getSketch().copy();
+	}
+
+	/**
+	 * Retrieve the sketch of the scores.
+	 * @return The <code>QuantileSketch</code>.
+	 */
+	private QuantileSketch getSketch() {
+		if (this.sketch == null) throw new IllegalStateException("Approximate statistics are not enabled.");
+		return this.sketch;
+	}
+}
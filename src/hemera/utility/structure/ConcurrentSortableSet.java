@@ -1,43 +1,155 @@
 package hemera.utility.structure;
 
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Queue;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentNavigableMap;
 import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock.ReadLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock.WriteLock;
 
-import hemera.utility.structure.interfaces.IConcurrentSortableSet;
+import hemera.utility.structure.interfaces.IBinaryCodec;
+import hemera.utility.structure.interfaces.IConcurrentNavigableSortableSet;
+import hemera.utility.structure.interfaces.IEntryVisitor;
+import hemera.utility.structure.interfaces.INodeMutator;
+import hemera.utility.structure.interfaces.ISortableEntry;
+import hemera.utility.structure.interfaces.ISortableSetView;
+import hemera.utility.structure.interfaces.ITopListener;
+import hemera.utility.structure.interfaces.ITransaction;
+import hemera.utility.structure.interfaces.ITransactionContext;
 
 /**
  * <code>ConcurrentSortableSet</code> defines a data
  * structure implementation of a sortable set that
  * supports the read-write lock based concurrency,
  * while fully conforming to its interface definition.
+ * <p>
+ * The set can be constructed with a <code>SortMode</code>
+ * to define how the <code>sort</code> operation is
+ * performed. The default <code>BLOCKING</code> mode
+ * suspends all read operations while sorting, and
+ * the <code>SWAP</code> mode rebuilds the ordering
+ * off to the side without suspending any reads. The
+ * <code>OPTIMISTIC</code> mode sorts the same way as
+ * the <code>BLOCKING</code> mode, but reads validate
+ * a stamp instead of acquiring the read-lock.
  *
  * @author Yi Wang (Neakor)
  * @version 1.0.0
  */
-public class ConcurrentSortableSet<K, T extends Comparable<T>, V> implements IConcurrentSortableSet<K, T, V> {
+public class ConcurrentSortableSet<K, T extends Comparable<T>, V> implements IConcurrentNavigableSortableSet<K, T, V> {
+	/**
+	 * The <code>int</code> number of key lock stripes.
+	 * This value must be a power of two.
+	 */
+	private static final int STRIPE_COUNT = 64;
+	/**
+	 * The <code>int</code> maximum number of recorded
+	 * modifications left in the journal before the
+	 * write-lock is acquired to publish a rebuilt
+	 * ordering structure.
+	 */
+	private static final int REPLAY_THRESHOLD = 64;
+	/**
+	 * The <code>int</code> maximum number of passes that
+	 * catch up with the journal without locking, before
+	 * the write-lock is acquired regardless.
+	 */
+	private static final int CATCHUP_PASSES = 4;
+	/**
+	 * The <code>int</code> minimum ratio of the number
+	 * of entries to the number of dirty entries, for the
+	 * dirty entries to be repositioned individually
+	 * instead of merged with the clean entries.
+	 */
+	private static final int REPOSITION_RATIO = 16;
+	/**
+	 * The <code>long</code> snapshot file identifier.
+	 */
+	private static final long SNAPSHOT_MAGIC = 0x48454d534e415031L;
+	/**
+	 * The <code>int</code> number of bytes of the buffer
+	 * used to write and read snapshots.
+	 */
+	private static final int SNAPSHOT_BUFFER_SIZE = 1 << 16;
+
+	/**
+	 * The <code>SortMode</code> of this set.
+	 */
+	private final SortMode sortmode;
 	/**
 	 * The <code>ConcurrentMap</code> of <code>K</code>
-	 * key to <code>T</code> node.
+	 * key to <code>SortableEntry</code>.
 	 * <p>
 	 * This map is used to allow removal of nodes based
 	 * on their associated keys.
 	 */
-	private final ConcurrentMap<K, T> keymap;
+	private final ConcurrentMap<K, SortableEntry<K, T, V>> keymap;
+	/**
+	 * The <code>Comparator</code> that orders the
+	 * entries by the ordering of their nodes.
+	 */
+	private final Comparator<SortableEntry<K, T, V>> comparator;
+	/**
+	 * The <code>AtomicLong</code> used to assign the
+	 * sequence numbers of the created entries.
+	 */
+	private final AtomicLong sequencer;
+	/**
+	 * The <code>ConcurrentSkipListMap</code> of all
+	 * the <code>SortableEntry</code>, where every entry
+	 * is mapped to <code>Boolean.TRUE</code>.
+	 * <p>
+	 * This map contains all the added entries sorted
+	 * in the natural ordering of their nodes.
+	 * <p>
+	 * This field is only replaced while holding the
+	 * write-lock, when a sorted map is published.
+	 */
+	private volatile ConcurrentSkipListMap<SortableEntry<K, T, V>, Boolean> nodemap;
 	/**
-	 * The <code>ConcurrentSkipListMap</code> of the
-	 * <code>T</code> nodes and its <code>V</code>
-	 * attachment.
+	 * The <code>Queue</code> of <code>Operation</code>
+	 * recording all the modifications made while the
+	 * ordering structure is being rebuilt.
 	 * <p>
-	 * This set contains all the added nodes sorted
-	 * in their natural ordering.
+	 * This field is <code>null</code> when there is no
+	 * rebuild in progress. Modifications must record
+	 * themselves while holding the read-lock, so the
+	 * final replay under the write-lock cannot miss
+	 * any of them.
 	 */
-	private final ConcurrentSkipListMap<T, V> nodemap;
+	private volatile Queue<Operation<K, T, V>> journal;
 	/**
 	 * The <code>ReadLock</code> used to guard all the
 	 * read operations from <code>nodemap</code>.
@@ -51,6 +163,19 @@ public class ConcurrentSortableSet<K, T extends Comparable<T>, V> implements ICo
 	 * invalid values.
 	 */
 	private final WriteLock writelock;
+	/**
+	 * The <code>ReentrantLock</code> used to provide
+	 * mutual exclusion between <code>sort</code>
+	 * invocations in the <code>SWAP</code> mode.
+	 */
+	private final ReentrantLock sortlock;
+	/**
+	 * The <code>int</code> stamp used to validate the
+	 * optimistic reads. It is incremented when sorting
+	 * starts and completes while holding the write-lock,
+	 * thus it is odd while sorting is in progress.
+	 */
+	private volatile int stamp;
 	/**
 	 * The <code>AtomicInteger</code> used to count
 	 * the number of nodes in this set.
@@ -58,163 +183,1427 @@ public class ConcurrentSortableSet<K, T extends Comparable<T>, V> implements ICo
 	 * Using this field to allow a constant time of
 	 * size counting instead of using <code>size</code>
 	 * method on either of the maps.
-	 * <p>
-	 * This field should be guarded by the same sort
-	 * read-write lock to allow <code>sort</code> to
-	 * obtain a most up-to-date value.
 	 */
 	private final AtomicInteger count;
-	
+	/**
+	 * The array of <code>ReentrantLock</code> stripes
+	 * used to provide mutual exclusion of modifications
+	 * on the same key.
+	 * <p>
+	 * All single key modifications must hold the stripe
+	 * of the key, so a node can be detached and then
+	 * re-attached during an update without any other
+	 * modification observing the intermediate state.
+	 * Modifications of different keys only contend on
+	 * the same stripe when their key hashes collide.
+	 * <p>
+	 * A stripe must only be acquired while holding the
+	 * read-lock, never the other way around, since the
+	 * read-lock may block behind a pending write-lock.
+	 */
+	private final ReentrantLock[] stripes;
+	/**
+	 * The <code>SortableSetMonitor</code> that collects
+	 * the statistics of this set. <code>null</code> if
+	 * monitoring is disabled, in which case the only
+	 * cost is a single volatile read per lock and sort.
+	 */
+	private volatile SortableSetMonitor monitor;
+	/**
+	 * The <code>CopyOnWriteArrayList</code> of all the
+	 * <code>TopWatcher</code> of the top nodes. When
+	 * there are no watchers, the only cost of an
+	 * operation is checking that the list is empty.
+	 */
+	private final CopyOnWriteArrayList<TopWatcher<K, T, V>> watchers;
+	/**
+	 * The <code>ConcurrentMap</code> of the keys of the
+	 * nodes that have been marked dirty since the last
+	 * sort.
+	 */
+	private final ConcurrentMap<K, Boolean> dirty;
+	/**
+	 * The <code>AtomicInteger</code> number of dirty keys.
+	 */
+	private final AtomicInteger dirtycount;
+	/**
+	 * The <code>AtomicLong</code> time in milliseconds
+	 * of the first dirty mark since the last sort. 0 if
+	 * there are no dirty marks.
+	 */
+	private final AtomicLong dirtysince;
+	/**
+	 * The <code>boolean</code> flag indicating if only
+	 * the nodes marked dirty are repositioned by sorting.
+	 */
+	private volatile boolean tracking;
+	/**
+	 * The <code>ScheduledFuture</code> of the periodic
+	 * background sort. <code>null</code> if background
+	 * sorting is not started.
+	 */
+	private volatile ScheduledFuture<?> background;
+	/**
+	 * The <code>int</code> number of dirty keys that
+	 * triggers a background sort. 0 if disabled.
+	 */
+	private volatile int threshold;
+	/**
+	 * The <code>AtomicBoolean</code> flag indicating if
+	 * a background sort is scheduled or running.
+	 */
+	private final AtomicBoolean pending;
+
 	/**
 	 * Constructor of <code>ConcurrentSortableSet</code>.
+	 * <p>
+	 * This creates a set using the <code>BLOCKING</code>
+	 * sort mode.
 	 */
 	public ConcurrentSortableSet() {
-		this.keymap = new ConcurrentHashMap<K, T>();
-		this.nodemap = new ConcurrentSkipListMap<T, V>();
+		this(SortMode.BLOCKING);
+	}
+
+	/**
+	 * Constructor of <code>ConcurrentSortableSet</code>.
+	 * @param sortmode The <code>SortMode</code> used to
+	 * perform the <code>sort</code> operation.
+	 */
+	public ConcurrentSortableSet(final SortMode sortmode) {
+		this(null, sortmode);
+	}
+
+	/**
+	 * Constructor of <code>ConcurrentSortableSet</code>.
+	 * <p>
+	 * This creates a set that orders its nodes using
+	 * the given comparator instead of their natural
+	 * ordering. Nodes that compare as equal are ordered
+	 * by the sequence of their addition, thus the
+	 * comparator should return 0 for equal values, and
+	 * the nodes do not need to follow the comparison
+	 * rules defined by <code>IConcurrentSortableSet</code>.
+	 * Every node can then always be located in
+	 * logarithmic time, and nodes are only rejected
+	 * for duplicate keys.
+	 * @param comparator The <code>Comparator</code> of
+	 * the nodes.
+	 * @param sortmode The <code>SortMode</code> used to
+	 * perform the <code>sort</code> operation.
+	 */
+	public ConcurrentSortableSet(final Comparator<? super T> comparator, final SortMode sortmode) {
+		if (sortmode == null) throw new IllegalArgumentException("Sort mode cannot be null.");
+		this.sortmode = sortmode;
+		this.keymap = new ConcurrentHashMap<K, SortableEntry<K, T, V>>();
+		this.comparator = new EntryComparator<K, T, V>(comparator);
+		this.sequencer = new AtomicLong();
+		this.nodemap = new ConcurrentSkipListMap<SortableEntry<K, T, V>, Boolean>(this.comparator);
 		final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
 		this.readlock = lock.readLock();
 		this.writelock = lock.writeLock();
+		this.sortlock = new ReentrantLock();
 		this.count = new AtomicInteger();
+		this.watchers = new CopyOnWriteArrayList<TopWatcher<K, T, V>>();
+		this.dirty = new ConcurrentHashMap<K, Boolean>();
+		this.dirtycount = new AtomicInteger();
+		this.dirtysince = new AtomicLong();
+		this.pending = new AtomicBoolean();
+		this.stripes = new ReentrantLock[ConcurrentSortableSet.STRIPE_COUNT];
+		for (int i = 0; i < this.stripes.length; i++) {
+			this.stripes[i] = new ReentrantLock();
+		}
 	}
 
 	@Override
 	public boolean add(final K key, final T node, final V attachment) {
-		// Early check using key map.
-		final T prev = this.keymap.putIfAbsent(key, node);
-		if (prev != null) return false;
+		final SortableEntry<K, T, V> entry = this.create(key, node, attachment);
 		// Read-lock to prevent concurrent addition and sorting.
-		this.readlock.lock();
+		this.acquireRead();
 		try {
-			final V prevattachment = this.nodemap.putIfAbsent(node, attachment);
+			if (!this.insert(entry)) return false;
+			this.count.incrementAndGet();
+		} finally {
+			this.readlock.unlock();
+		}
+		this.publish(key, entry);
+		return true;
+	}
+
+	@Override
+	public BitSet addAll(final List<? extends ISortableEntry<K, T, V>> entries) {
+		final int size = entries.size();
+		final BitSet result = new BitSet(size);
+		if (size == 0) return result;
+		// Pre-sort the batch, so consecutive insertions
+		// traverse the same region of the skip list.
+		final Integer[] order = new Integer[size];
+		final List<SortableEntry<K, T, V>> batch = new ArrayList<SortableEntry<K, T, V>>(size);
+		for (int i = 0; i < size; i++) {
+			final ISortableEntry<K, T, V> entry = entries.get(i);
+			batch.add(this.create(entry.getKey(), entry.getNode(), entry.getAttachment()));
+			order[i] = i;
+		}
+		ParallelSorter.instance.sort(order, new Comparator<Integer>() {
+			@Override
+			public int compare(final Integer o1, final Integer o2) {
+				return ConcurrentSortableSet.this.comparator.compare(batch.get(o1), batch.get(o2));
+			}
+		});
+		// Hold the read-lock once for the entire batch.
+		int added = 0;
+		this.acquireRead();
+		try {
+			for (int i = 0; i < size; i++) {
+				final int index = order[i];
+				if (this.insert(batch.get(index))) {
+					result.set(index);
+					added++;
+				}
+			}
+		} finally {
+			this.count.addAndGet(added);
+			this.readlock.unlock();
+		}
+		if (added > 0) this.publish(null, null);
+		return result;
+	}
+
+	/**
+	 * Create a new entry with the next sequence number.
+	 * @param key The <code>K</code> key.
+	 * @param node The <code>T</code> node.
+	 * @param attachment The <code>V</code> attachment.
+	 * @return The created <code>SortableEntry</code>.
+	 */
+	private SortableEntry<K, T, V> create(final K key, final T node, final V attachment) {
+		return new SortableEntry<K, T, V>(key, node, attachment, this.sequencer.incrementAndGet());
+	}
+
+	/**
+	 * Insert the given entry into both the key map and
+	 * the ordering map while holding the lock of its key.
+	 * <p>
+	 * This method must be invoked while holding the
+	 * read-lock, and does not update the count.
+	 * @param entry The <code>SortableEntry</code> to
+	 * insert.
+	 * @return <code>true</code> if the entry is inserted.
+	 * <code>false</code> if the key already exists, or
+	 * if the node equals an existing node.
+	 */
+	private boolean insert(final SortableEntry<K, T, V> entry) {
+		final ReentrantLock stripe = this.stripe(entry.key);
+		stripe.lock();
+		try {
+			// Early check using key map.
+			final SortableEntry<K, T, V> prev = this.keymap.putIfAbsent(entry.key, entry);
+			if (prev != null) return false;
 			// If comparison failed, remove from keymap.
-			if (prevattachment != null) {
-				this.keymap.remove(key);
+			if (this.nodemap.putIfAbsent(entry, Boolean.TRUE) != null) {
+				this.keymap.remove(entry.key);
+				this.onAddFailure();
 				return false;
 			}
-			this.count.incrementAndGet();
+			this.record(entry, true);
+			this.onAdded(entry.key, entry.node, entry.attachment);
 			return true;
 		} finally {
-			this.readlock.unlock();
+			stripe.unlock();
 		}
 	}
-	
+
 	@Override
 	public boolean remove(final K key) {
-		// Early check using key map.
-		final T node = this.keymap.remove(key);
-		if (node == null) return false;
 		// Read-lock to prevent concurrent removal and sorting.
-		this.readlock.lock();
+		this.acquireRead();
 		try {
-			final V attachment = this.nodemap.remove(node);
-			// If comparison failed, add back to keymap.
-			if (attachment == null) {
-				this.keymap.put(key, node);
-				return false;
-			}
+			if (!this.delete(key, null)) return false;
 			this.count.decrementAndGet();
-			return true;
 		} finally {
 			this.readlock.unlock();
 		}
+		this.publish(key, null);
+		return true;
 	}
-	
+
 	@Override
-	@SuppressWarnings("unchecked")
-	public void sort() {
-		// Write lock to provide mutual exclusion, and
-		// prevent concurrent addition and removal.
-		this.writelock.lock();
-		try {
-			// Using count to determine when to stop,
-			// and since count is guarded by the same
-			// read-write lock for add and remove, the
-			// value is guaranteed to be up-to-date.
-			final int size = this.count.get();
-			// Dump all nodes into an array, then add
-			// all back into nodemap for sorting. This
-			// guarantees that all nodes sorted.
-			final Object[] array = new Object[size];
-			for (int i = 0; i < size; i++) {
-				final Entry<T, V> entry = this.nodemap.pollFirstEntry();
-				array[i] = entry;
+	public BitSet removeAll(final Collection<K> keys) {
+		final BitSet result = new BitSet(keys.size());
+		// Hold the read-lock once for the entire batch.
+		int index = 0;
+		int removed = 0;
+		this.acquireRead();
+		try {
+			for (final K key : keys) {
+				if (this.delete(key, null)) {
+					result.set(index);
+					removed++;
+				}
+				index++;
 			}
-			for (int i = 0; i < size; i++) {
-				final Entry<T, V> entry = (Entry<T, V>)array[i];
-				this.nodemap.put(entry.getKey(), entry.getValue());
+		} finally {
+			this.count.addAndGet(-removed);
+			this.readlock.unlock();
+		}
+		if (removed > 0) this.publish(null, null);
+		return result;
+	}
+
+	/**
+	 * Remove the given entry only if it is still the
+	 * entry of its key.
+	 * @param entry The expected <code>SortableEntry</code>.
+	 * @return <code>true</code> if the entry is removed.
+	 * <code>false</code> if the key has been removed or
+	 * is associated with a different entry, or if the
+	 * entry cannot be located by comparison.
+	 */
+	boolean remove(final SortableEntry<K, T, V> entry) {
+		final K key = entry.key;
+		this.acquireRead();
+		try {
+			if (!this.delete(key, entry)) return false;
+			this.count.decrementAndGet();
+		} finally {
+			this.readlock.unlock();
+		}
+		this.publish(key, null);
+		return true;
+	}
+
+	/**
+	 * Delete the entry of the given key from both the
+	 * key map and the ordering map while holding the
+	 * lock of the key.
+	 * <p>
+	 * This method must be invoked while holding the
+	 * read-lock, and does not update the count.
+	 * @param key The <code>K</code> key to delete.
+	 * @param expected The <code>SortableEntry</code>
+	 * the key must be associated with. <code>null</code>
+	 * to delete the entry of the key regardless.
+	 * @return <code>true</code> if the entry is deleted.
+	 * <code>false</code> if there is no such key, if the
+	 * key is associated with a different entry, or if
+	 * the entry cannot be located by comparison.
+	 */
+	private boolean delete(final K key, final SortableEntry<K, T, V> expected) {
+		final ReentrantLock stripe = this.stripe(key);
+		stripe.lock();
+		try {
+			if (expected != null && this.keymap.get(key) != expected) return false;
+			// Early check using key map.
+			final SortableEntry<K, T, V> entry = this.keymap.remove(key);
+			if (entry == null) return false;
+			// If comparison failed, add back to keymap.
+			if (this.nodemap.remove(entry) == null) {
+				this.keymap.put(key, entry);
+				this.onRemoveFailure();
+				return false;
 			}
+			this.record(entry, false);
+			this.onRemoved(key, entry.node);
+			return true;
 		} finally {
-			this.writelock.unlock();
+			stripe.unlock();
 		}
 	}
-	
+
 	@Override
-	public T firstNode() {
-		this.readlock.lock();
+	public boolean update(final K key, final INodeMutator<T> mutator) {
+		try {
+			return this.reposition(key, mutator);
+		} finally {
+			this.publish(key, this.keymap.get(key));
+		}
+	}
+
+	/**
+	 * Detach the entry of the given key, mutate its
+	 * node and re-attach it at its new position.
+	 * @param key The <code>K</code> key to update.
+	 * @param mutator The <code>INodeMutator</code>.
+	 * @return <code>true</code> if the node is updated.
+	 * <code>false</code> if there is no such key, or if
+	 * the node cannot be located or re-inserted.
+	 */
+	private boolean reposition(final K key, final INodeMutator<T> mutator) {
+		// Read-lock to prevent the detached node from
+		// being lost by a concurrent sorting.
+		this.acquireRead();
 		try {
-			return this.nodemap.firstKey();
+			final ReentrantLock stripe = this.stripe(key);
+			stripe.lock();
+			try {
+				final SortableEntry<K, T, V> entry = this.keymap.get(key);
+				if (entry == null) return false;
+				// If comparison failed, the node is not moved.
+				if (this.nodemap.remove(entry) == null) {
+					this.onRemoveFailure();
+					return false;
+				}
+				this.record(entry, false);
+				this.onRemoved(key, entry.node);
+				boolean reattached = false;
+				try {
+					mutator.mutate(entry.node);
+				} finally {
+					// Re-attach even if the mutator throws, so the
+					// key never remains without a position.
+					reattached = this.reattach(key, entry);
+				}
+				return reattached;
+			} finally {
+				stripe.unlock();
+			}
 		} finally {
 			this.readlock.unlock();
 		}
 	}
-	
+
+	/**
+	 * Re-attach the given detached entry at the current
+	 * position of its node. If the node now equals
+	 * another node, the entry is removed from the set.
+	 * <p>
+	 * The read-lock and the lock stripe of the key must
+	 * be held by the caller.
+	 * @param key The <code>K</code> key of the entry.
+	 * @param entry The detached <code>SortableEntry</code>.
+	 * @return <code>true</code> if the entry is attached.
+	 * <code>false</code> if it is removed instead.
+	 */
+	private boolean reattach(final K key, final SortableEntry<K, T, V> entry) {
+		// If the updated node equals another node, it
+		// can no longer be contained.
+		if (this.nodemap.putIfAbsent(entry, Boolean.TRUE) != null) {
+			this.keymap.remove(key);
+			this.count.decrementAndGet();
+			this.onAddFailure();
+			return false;
+		}
+		this.record(entry, true);
+		this.onAdded(key, entry.node, entry.attachment);
+		return true;
+	}
+
+	/**
+	 * Apply the modifications of the given transaction
+	 * atomically with respect to the readers of the set.
+	 * <p>
+	 * The transaction holds the sort lock and the write-
+	 * lock for its entire duration, which are acquired
+	 * once. The operations of the transaction are only
+	 * validated and buffered while it executes, and are
+	 * applied all together once it returns normally. If
+	 * the transaction throws, the buffered operations are
+	 * discarded and the set is left unchanged.
+	 * <p>
+	 * The buffered operations are coalesced by key, so
+	 * that only their net effect is applied, including
+	 * the modification hooks. In the <code>BLOCKING</code>
+	 * mode the reads wait for the transaction, and in the
+	 * <code>OPTIMISTIC</code> mode the overlapping reads
+	 * are invalidated by the stamp and retried under the
+	 * read-lock. Since reads in the <code>SWAP</code> mode
+	 * do not lock, the net effect is applied to a copy of
+	 * the ordering, which is published with a single write
+	 * once it is complete. The copy is built in linear
+	 * time without comparing the unmodified entries. The
+	 * mutated nodes are modified in place, thus readers of
+	 * the previous ordering may observe their new state at
+	 * their previous positions until the copy is published,
+	 * and lookups by key observe the new entries right
+	 * after it is published.
+	 * <p>
+	 * The node mutators are invoked while the operations
+	 * are applied. If a mutator throws, its node is kept
+	 * at its current position, the remaining operations
+	 * are still applied, and the first exception is
+	 * thrown once the modifications are published.
+	 * @param transaction The <code>ITransaction</code>
+	 * to execute.
+	 */
+	public void transaction(final ITransaction<K, T, V> transaction) {
+		final Transaction context = new Transaction();
+		this.exclusive(new Runnable() {
+			@Override
+			public void run() {
+				transaction.execute(context);
+				ConcurrentSortableSet.this.batch(new Runnable() {
+					@Override
+					public void run() {
+						context.apply();
+					}
+				});
+			}
+		});
+		if (context.modified) this.publish(null, null);
+		if (context.failure != null) throw context.failure;
+	}
+
 	@Override
-	public T lastNode() {
-		this.readlock.lock();
+	public ISortableEntry<K, T, V> pollFirst() {
+		final SortableEntry<K, T, V> entry;
+		this.acquireRead();
 		try {
-			return this.nodemap.lastKey();
+			entry = this.poll(true);
 		} finally {
 			this.readlock.unlock();
 		}
+		if (entry != null) this.publish(entry.key, null);
+		return entry;
 	}
-	
+
 	@Override
-	public V firstAttachment() {
-		this.readlock.lock();
+	public ISortableEntry<K, T, V> pollLast() {
+		final SortableEntry<K, T, V> entry;
+		this.acquireRead();
 		try {
-			final Entry<T, V> entry = this.nodemap.firstEntry();
-			if (entry == null) return null;
-			return entry.getValue();
+			entry = this.poll(false);
 		} finally {
 			this.readlock.unlock();
 		}
+		if (entry != null) this.publish(entry.key, null);
+		return entry;
 	}
 
 	@Override
-	public V lastAttachment() {
-		this.readlock.lock();
+	public List<ISortableEntry<K, T, V>> pollFirst(final int count) {
+		final List<ISortableEntry<K, T, V>> list = new ArrayList<ISortableEntry<K, T, V>>(Math.max(0, Math.min(count, this.size())));
+		// Hold the read-lock once for the entire batch.
+		this.acquireRead();
 		try {
-			final Entry<T, V> entry = this.nodemap.lastEntry();
-			if (entry == null) return null;
-			return entry.getValue();
+			for (int i = 0; i < count; i++) {
+				final ISortableEntry<K, T, V> entry = this.poll(true);
+				if (entry == null) break;
+				list.add(entry);
+			}
 		} finally {
 			this.readlock.unlock();
 		}
+		if (!list.isEmpty()) this.publish(null, null);
+		return list;
 	}
 
-	@Override
-	public int size() {
-		return this.count.get();
+	/**
+	 * Atomically remove the first or the last entry.
+	 * <p>
+	 * The entry is removed from the ordering map first,
+	 * which atomically claims it, before it is removed
+	 * from the key map while holding the lock of its
+	 * key. A concurrent removal of the same key then
+	 * fails to remove the entry from the ordering map.
+	 * <p>
+	 * This method must be invoked while holding the
+	 * read-lock.
+	 * @param first <code>true</code> to remove the first
+	 * entry. <code>false</code> to remove the last.
+	 * @return The removed <code>SortableEntry</code>.
+	 * <code>null</code> if the set is empty.
+	 */
+	private SortableEntry<K, T, V> poll(final boolean first) {
+		final Entry<SortableEntry<K, T, V>, Boolean> polled = first ? this.nodemap.pollFirstEntry() : this.nodemap.pollLastEntry();
+		if (polled == null) return null;
+		final SortableEntry<K, T, V> entry = polled.getKey();
+		final ReentrantLock stripe = this.stripe(entry.key);
+		stripe.lock();
+		try {
+			this.keymap.remove(entry.key, entry);
+			this.count.decrementAndGet();
+			this.record(entry, false);
+			this.onRemoved(entry.key, entry.node);
+		} finally {
+			stripe.unlock();
+		}
+		return entry;
 	}
 
 	@Override
-	public T getNode(final K key) {
-		this.readlock.lock();
+	public void sort() {
+		final SortableSetMonitor monitor = this.monitor;
+		final long start = (monitor == null) ? 0 : System.nanoTime();
+		boolean sorted = false;
+		switch (this.sortmode) {
+		case BLOCKING:
+		case OPTIMISTIC:
+			sorted = this.sortBlocking();
+			break;
+		case SWAP:
+			sorted = this.sortSwap();
+			break;
+		}
+		if (!sorted) return;
+		if (monitor != null) monitor.onSort(System.nanoTime()-start, this.count.get());
+		this.publish(null, null);
+		this.onSorted();
+	}
+
+	/**
+	 * Mark the node of the given key as modified, so
+	 * it is repositioned by the next sort.
+	 * <p>
+	 * With dirty tracking enabled, sorting only
+	 * repositions the nodes marked dirty, and is a no-op
+	 * if there are none. In the <code>BLOCKING</code> and
+	 * <code>OPTIMISTIC</code> modes, a few dirty nodes are
+	 * repositioned individually in logarithmic time each,
+	 * as long as every one of them can still be located
+	 * by comparison. Otherwise, and in the <code>SWAP</code>
+	 * mode, the sorted dirty nodes are merged with the
+	 * clean nodes, which takes linear time without sorting
+	 * the clean nodes. Every node that is modified
+	 * outside of <code>update</code> must then be marked
+	 * dirty, since the order of all the other nodes is
+	 * assumed to be unchanged. If a background sort is
+	 * started with a threshold, reaching the threshold
+	 * schedules a background sort immediately.
+	 * @param key The <code>K</code> key of the modified
+	 * node.
+	 */
+	public void markDirty(final K key) {
+		if (this.dirty.putIfAbsent(key, Boolean.TRUE) != null) return;
+		this.dirtysince.compareAndSet(0, System.currentTimeMillis());
+		final int count = this.dirtycount.incrementAndGet();
+		final int threshold = this.threshold;
+		if (threshold > 0 && count >= threshold && this.background != null) this.sortInBackground();
+	}
+
+	/**
+	 * Enable dirty tracking, so sorting only repositions
+	 * the nodes marked dirty instead of sorting the
+	 * entire set, as described by <code>markDirty</code>.
+	 */
+	public void enableDirtyTracking() {
+		this.tracking = true;
+	}
+
+	/**
+	 * Disable dirty tracking, so sorting always sorts
+	 * the entire set.
+	 */
+	public void disableDirtyTracking() {
+		this.tracking = false;
+	}
+
+	/**
+	 * Start sorting the set in the background at the
+	 * given interval, and whenever the number of dirty
+	 * keys reaches the given threshold. The periodic
+	 * sort is skipped if there are no dirty keys, and
+	 * concurrent requests are coalesced into a single
+	 * sort. This enables dirty tracking.
+	 * @param interval The <code>long</code> interval
+	 * between the periodic sorts.
+	 * @param unit The <code>TimeUnit</code> of the
+	 * interval.
+	 * @param threshold The <code>int</code> number of
+	 * dirty keys that triggers a sort. 0 to only sort
+	 * periodically.
+	 */
+	public synchronized void startBackgroundSort(final long interval, final TimeUnit unit, final int threshold) {
+		if (interval <= 0) throw new IllegalArgumentException("Interval must be positive.");
+		if (threshold < 0) throw new IllegalArgumentException("Threshold cannot be negative.");
+		if (this.background != null) throw new IllegalStateException("Background sorting is already started.");
+		this.tracking = true;
+		this.threshold = threshold;
+		this.background = BackgroundSorter.executor.scheduleWithFixedDelay(new Runnable() {
+			@Override
+			public void run() {
+				if (ConcurrentSortableSet.this.dirtycount.get() > 0) ConcurrentSortableSet.this.sortInBackground();
+			}
+		}, interval, interval, unit);
+	}
+
+	/**
+	 * Stop sorting the set in the background. Dirty
+	 * tracking remains enabled.
+	 */
+	public synchronized void stopBackgroundSort() {
+		if (this.background == null) return;
+		this.background.cancel(false);
+		this.background = null;
+		this.threshold = 0;
+	}
+
+	/**
+	 * Retrieve the number of keys marked dirty since
+	 * the last sort.
+	 * @return The <code>int</code> number of dirty keys.
+	 */
+	public int getDirtyCount() {
+		return this.dirtycount.get();
+	}
+
+	/**
+	 * Retrieve how long the ordering has been stale,
+	 * which is the time since the first dirty mark that
+	 * has not been sorted yet.
+	 * @return The <code>long</code> staleness in
+	 * milliseconds. 0 if there are no dirty marks.
+	 */
+	public long getStaleness() {
+		final long since = this.dirtysince.get();
+		if (since == 0) return 0;
+		return Math.max(0, System.currentTimeMillis() - since);
+	}
+
+	/**
+	 * Schedule a background sort unless one is already
+	 * scheduled or running.
+	 */
+	private void sortInBackground() {
+		if (!this.pending.compareAndSet(false, true)) return;
+		BackgroundSorter.executor.execute(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					ConcurrentSortableSet.this.sort();
+				} finally {
+					ConcurrentSortableSet.this.pending.set(false);
+				}
+			}
+		});
+	}
+
+	/**
+	 * Remove all the dirty marks, and retrieve the
+	 * current entries of the dirty keys.
+	 * <p>
+	 * This method must be invoked while holding the lock
+	 * that serializes sorting, so a concurrent sort that
+	 * finds no dirty marks only returns after the marks
+	 * are sorted.
+	 * @return The <code>Set</code> of dirty
+	 * <code>SortableEntry</code> identified by reference.
+	 * <code>null</code> if dirty tracking is disabled.
+	 */
+	private Set<SortableEntry<K, T, V>> drainDirty() {
+		this.dirtysince.set(0);
+		final Set<SortableEntry<K, T, V>> entries = this.tracking ?
+				Collections.newSetFromMap(new IdentityHashMap<SortableEntry<K, T, V>, Boolean>()) : null;
+		final Iterator<K> iterator = this.dirty.keySet().iterator();
+		while (iterator.hasNext()) {
+			final K key = iterator.next();
+			iterator.remove();
+			this.dirtycount.decrementAndGet();
+			if (entries == null) continue;
+			final SortableEntry<K, T, V> entry = this.keymap.get(key);
+			if (entry != null) entries.add(entry);
+		}
+		return entries;
+	}
+
+	/**
+	 * Watch the given number of top nodes, which are the
+	 * first nodes in the ascending order of the set.
+	 * <p>
+	 * The listener is first notified of the current top
+	 * nodes as a batch of <code>ENTER</code> changes.
+	 * Afterwards, every add, remove, update, poll, sort
+	 * and restore operation that changes the membership
+	 * or the order of the top nodes notifies the listener
+	 * of a single batch of changes, after the operation
+	 * completes. Operations that cannot change the top
+	 * nodes do not compute any differences.
+	 * <p>
+	 * Nodes that are modified without an update are not
+	 * reported until the set is sorted.
+	 * @param n The <code>int</code> number of top nodes.
+	 * @param listener The <code>ITopListener</code> to
+	 * notify.
+	 */
+	public void watchTop(final int n, final ITopListener<K, T> listener) {
+		if (n <= 0) throw new IllegalArgumentException("Number of top nodes must be positive.");
+		if (listener == null) throw new IllegalArgumentException("Listener cannot be null.");
+		final TopWatcher<K, T, V> watcher = new TopWatcher<K, T, V>(n, listener);
+		this.watchers.add(watcher);
+		watcher.publish(this, null, null);
+	}
+
+	/**
+	 * Stop watching the top nodes with the given listener.
+	 * @param listener The <code>ITopListener</code> to
+	 * remove.
+	 * @return <code>true</code> if the listener was
+	 * watching. <code>false</code> otherwise.
+	 */
+	public boolean unwatchTop(final ITopListener<K, T> listener) {
+		for (final TopWatcher<K, T, V> watcher : this.watchers) {
+			if (watcher.listener == listener) return this.watchers.remove(watcher);
+		}
+		return false;
+	}
+
+	/**
+	 * Enable the collection of the contention and
+	 * latency statistics of this set.
+	 * <p>
+	 * The statistics include the durations spent waiting
+	 * for the read-lock and the write-lock, the duration
+	 * and size of every sort, and the number of nodes
+	 * that could not be added or removed due to their
+	 * comparison. If monitoring is already enabled, the
+	 * existing monitor is returned.
+	 * @return The <code>SortableSetMonitor</code> that
+	 * collects the statistics.
+	 */
+	public synchronized SortableSetMonitor enableMonitoring() {
+		if (this.monitor == null) this.monitor = new SortableSetMonitor(this);
+		return this.monitor;
+	}
+
+	/**
+	 * Disable the collection of statistics. The monitor
+	 * returned by a previous enabling no longer receives
+	 * any updates.
+	 */
+	public synchronized void disableMonitoring() {
+		this.monitor = null;
+	}
+
+	/**
+	 * Write all the entries of the set into the given
+	 * file in their sorted order.
+	 * <p>
+	 * The snapshot iterates the ordering structure
+	 * without holding any locks, thus it never blocks
+	 * any other operations. Modifications made while
+	 * the snapshot is being written may or may not be
+	 * included, and a key that is removed then added
+	 * again may be included twice, in which case only
+	 * its first occurrence is restored.
+	 * <p>
+	 * Every value is written with its encoded length,
+	 * thus the snapshot only occupies the actual size
+	 * of the encoded values.
+	 * @param file The <code>File</code> to write to.
+	 * @param keycodec The <code>IBinaryCodec</code> of
+	 * the keys.
+	 * @param nodecodec The <code>IBinaryCodec</code> of
+	 * the nodes.
+	 * @param attachmentcodec The <code>IBinaryCodec</code>
+	 * of the attachments.
+	 * @return The <code>int</code> number of entries
+	 * written.
+	 * @throws IOException If writing the file failed.
+	 */
+	public int snapshotTo(final File file, final IBinaryCodec<K> keycodec, final IBinaryCodec<T> nodecodec,
+			final IBinaryCodec<V> attachmentcodec) throws IOException {
+		final int maxsize = Math.max(keycodec.getSize(), Math.max(nodecodec.getSize(), attachmentcodec.getSize()));
+		final ByteBuffer buffer = ByteBuffer.allocateDirect(Math.max(ConcurrentSortableSet.SNAPSHOT_BUFFER_SIZE, maxsize + 16));
+		final FileOutputStream stream = new FileOutputStream(file);
 		try {
-			return this.keymap.get(key);
+			final FileChannel channel = stream.getChannel();
+			buffer.putLong(ConcurrentSortableSet.SNAPSHOT_MAGIC);
+			int written = 0;
+			for (final SortableEntry<K, T, V> entry : this.nodemap.keySet()) {
+				ConcurrentSortableSet.write(channel, buffer, keycodec, entry.key);
+				ConcurrentSortableSet.write(channel, buffer, nodecodec, entry.node);
+				ConcurrentSortableSet.write(channel, buffer, attachmentcodec, entry.attachment);
+				written++;
+			}
+			// Terminate with the number of entries, so a
+			// truncated snapshot can be detected.
+			ConcurrentSortableSet.reserve(channel, buffer, 8);
+			buffer.putInt(-1);
+			buffer.putInt(written);
+			buffer.flip();
+			while (buffer.hasRemaining()) channel.write(buffer);
+			channel.force(false);
+			return written;
 		} finally {
-			this.readlock.unlock();
+			stream.close();
 		}
 	}
 
-	@Override
-	public V getAttachment(final K key) {
-		this.readlock.lock();
+	/**
+	 * Restore all the entries written by a previous
+	 * <code>snapshotTo</code> invocation into this set.
+	 * <p>
+	 * The entries are read in their sorted order, and
+	 * the ordering structure is built from the sorted
+	 * run in linear time. If the ordering state of the
+	 * restored nodes no longer matches their snapshot
+	 * order, the entries are sorted before the build.
+	 * <p>
+	 * This method holds the write-lock while the
+	 * restored entries are published, and the set must
+	 * be empty.
+	 * @param file The <code>File</code> to read from.
+	 * @param keycodec The <code>IBinaryCodec</code> of
+	 * the keys.
+	 * @param nodecodec The <code>IBinaryCodec</code> of
+	 * the nodes.
+	 * @param attachmentcodec The <code>IBinaryCodec</code>
+	 * of the attachments.
+	 * @return The <code>int</code> number of entries
+	 * restored.
+	 * @throws IOException If reading the file failed, or
+	 * if the file is not a complete snapshot.
+	 */
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	public int restoreFrom(final File file, final IBinaryCodec<K> keycodec, final IBinaryCodec<T> nodecodec,
+			final IBinaryCodec<V> attachmentcodec) throws IOException {
+		final int maxsize = Math.max(keycodec.getSize(), Math.max(nodecodec.getSize(), attachmentcodec.getSize()));
+		final ByteBuffer buffer = ByteBuffer.allocateDirect(Math.max(ConcurrentSortableSet.SNAPSHOT_BUFFER_SIZE, maxsize + 16));
+		buffer.flip();
+		final List<SortableEntry<K, T, V>> list = new ArrayList<SortableEntry<K, T, V>>();
+		final FileInputStream stream = new FileInputStream(file);
 		try {
-			final T node = this.keymap.get(key);
-			return this.nodemap.get(node);
+			final FileChannel channel = stream.getChannel();
+			ConcurrentSortableSet.fill(channel, buffer, 8);
+			if (buffer.getLong() != ConcurrentSortableSet.SNAPSHOT_MAGIC) throw new IOException("File is not a snapshot: " + file);
+			while (true) {
+				final K key = ConcurrentSortableSet.read(channel, buffer, keycodec);
+				if (key == null) break;
+				final T node = ConcurrentSortableSet.read(channel, buffer, nodecodec);
+				final V attachment = ConcurrentSortableSet.read(channel, buffer, attachmentcodec);
+				list.add(this.create(key, node, attachment));
+			}
+			ConcurrentSortableSet.fill(channel, buffer, 4);
+			if (buffer.getInt() != list.size()) throw new IOException("Snapshot is incomplete: " + file);
 		} finally {
-			this.readlock.unlock();
+			stream.close();
+		}
+		final SortableEntry<K, T, V>[] entries = list.toArray(new SortableEntry[list.size()]);
+		for (int i = 1; i < entries.length; i++) {
+			if (this.comparator.compare(entries[i-1], entries[i]) > 0) {
+				ParallelSorter.instance.sort(entries, this.comparator);
+				break;
+			}
+		}
+		// Prevent a concurrent swap sort from publishing
+		// an ordering without the restored entries.
+		int length = 0;
+		this.sortlock.lock();
+		try {
+			this.acquireWrite();
+			try {
+				if (this.count.get() != 0) throw new IllegalStateException("Set must be empty to be restored.");
+				for (int i = 0; i < entries.length; i++) {
+					final SortableEntry<K, T, V> entry = entries[i];
+					if (this.keymap.putIfAbsent(entry.key, entry) != null) continue;
+					entries[length] = entry;
+					length++;
+				}
+				this.stamp++;
+				try {
+					this.nodemap = this.build(entries, length);
+				} finally {
+					this.stamp++;
+				}
+				this.count.set(length);
+				for (int i = 0; i < length; i++) {
+					this.onAdded(entries[i].key, entries[i].node, entries[i].attachment);
+				}
+			} finally {
+				this.writelock.unlock();
+			}
+		} finally {
+			this.sortlock.unlock();
+		}
+		if (length > 0) this.publish(null, null);
+		return length;
+	}
+
+	/**
+	 * Write the given value with its encoded length
+	 * into the given buffer, and write the buffer to
+	 * the given channel if it does not have enough
+	 * remaining space.
+	 * @param channel The <code>FileChannel</code> to
+	 * write to.
+	 * @param buffer The <code>ByteBuffer</code> to
+	 * encode into.
+	 * @param codec The <code>IBinaryCodec</code>.
+	 * @param value The <code>E</code> value to write.
+	 * <code>null</code> is written as a length of -1.
+	 * @throws IOException If writing failed.
+	 */
+	private static <E> void write(final FileChannel channel, final ByteBuffer buffer, final IBinaryCodec<E> codec,
+			final E value) throws IOException {
+		ConcurrentSortableSet.reserve(channel, buffer, codec.getSize() + 4);
+		if (value == null) {
+			buffer.putInt(-1);
+			return;
+		}
+		final int start = buffer.position();
+		buffer.position(start + 4);
+		codec.encode(value, buffer);
+		buffer.putInt(start, buffer.position() - start - 4);
+	}
+
+	/**
+	 * Write the contents of the given buffer to the
+	 * given channel if the buffer does not have the
+	 * given remaining space.
+	 * @param channel The <code>FileChannel</code> to
+	 * write to.
+	 * @param buffer The <code>ByteBuffer</code>.
+	 * @param size The <code>int</code> space required.
+	 * @throws IOException If writing failed.
+	 */
+	private static void reserve(final FileChannel channel, final ByteBuffer buffer, final int size) throws IOException {
+		if (buffer.remaining() >= size) return;
+		buffer.flip();
+		while (buffer.hasRemaining()) channel.write(buffer);
+		buffer.clear();
+	}
+
+	/**
+	 * Read a value with its encoded length from the
+	 * given buffer, reading more contents from the
+	 * given channel if necessary.
+	 * @param channel The <code>FileChannel</code> to
+	 * read from.
+	 * @param buffer The <code>ByteBuffer</code> to
+	 * decode from.
+	 * @param codec The <code>IBinaryCodec</code>.
+	 * @return The decoded <code>E</code> value.
+	 * <code>null</code> if a length of -1 is read.
+	 * @throws IOException If reading failed.
+	 */
+	private static <E> E read(final FileChannel channel, final ByteBuffer buffer, final IBinaryCodec<E> codec) throws IOException {
+		ConcurrentSortableSet.fill(channel, buffer, 4);
+		final int length = buffer.getInt();
+		if (length < 0) return null;
+		if (length > codec.getSize()) throw new IOException("Invalid encoded length: " + length);
+		ConcurrentSortableSet.fill(channel, buffer, length);
+		final int limit = buffer.limit();
+		final int end = buffer.position() + length;
+		buffer.limit(end);
+		final E value = codec.decode(buffer);
+		buffer.limit(limit);
+		buffer.position(end);
+		return value;
+	}
+
+	/**
+	 * Read more contents from the given channel into
+	 * the given buffer, until the buffer has the given
+	 * number of remaining bytes.
+	 * @param channel The <code>FileChannel</code> to
+	 * read from.
+	 * @param buffer The <code>ByteBuffer</code>.
+	 * @param size The <code>int</code> bytes required.
+	 * @throws IOException If reading failed, or if the
+	 * end of the file is reached.
+	 */
+	private static void fill(final FileChannel channel, final ByteBuffer buffer, final int size) throws IOException {
+		if (buffer.remaining() >= size) return;
+		buffer.compact();
+		while (buffer.position() < size) {
+			if (channel.read(buffer) < 0) throw new EOFException("Snapshot is incomplete.");
+		}
+		buffer.flip();
+	}
+
+	/**
+	 * Invoked after the given node is added to the set.
+	 * <p>
+	 * This method is invoked while holding the read-lock
+	 * and the lock of the key, thus subclasses can
+	 * maintain additional per-key structures without
+	 * observing concurrent modifications of the key.
+	 * @param key The <code>K</code> key of the node.
+	 * @param node The added <code>T</code> node.
+	 * @param attachment The <code>V</code> attachment.
+	 */
+	protected void onAdded(final K key, final T node, final V attachment) {}
+
+	/**
+	 * Invoked after the given node is removed from the
+	 * set, including when the node is detached by an
+	 * <code>update</code> invocation.
+	 * <p>
+	 * This method is invoked while holding the read-lock
+	 * and the lock of the key.
+	 * @param key The <code>K</code> key of the node.
+	 * @param node The removed <code>T</code> node.
+	 */
+	protected void onRemoved(final K key, final T node) {}
+
+	/**
+	 * Invoked after the set has been sorted and the
+	 * sorted ordering has been published.
+	 * <p>
+	 * This method is invoked without holding any locks,
+	 * thus it may run concurrently with modifications.
+	 */
+	protected void onSorted() {}
+
+	/**
+	 * Sort the set while holding the write-lock for
+	 * the entire duration.
+	 * @return <code>true</code> if the set is sorted.
+	 * <code>false</code> if dirty tracking is enabled
+	 * and there are no dirty nodes.
+	 */
+	private boolean sortBlocking() {
+		// Write lock to provide mutual exclusion, and
+		// prevent concurrent addition and removal.
+		this.acquireWrite();
+		try {
+			final Set<SortableEntry<K, T, V>> dirty = this.drainDirty();
+			if (dirty != null && dirty.isEmpty()) return false;
+			this.stamp++;
+			try {
+				if (dirty == null || (long)dirty.size() * ConcurrentSortableSet.REPOSITION_RATIO > this.nodemap.size()) {
+					this.nodemap = this.rebuild(this.nodemap, dirty);
+				} else {
+					this.repositionDirty(dirty);
+				}
+			} finally {
+				this.stamp++;
+			}
+			return true;
+		} finally {
+			this.writelock.unlock();
+		}
+	}
+
+	/**
+	 * Reposition the given dirty entries individually,
+	 * which takes logarithmic time per entry.
+	 * <p>
+	 * All the dirty entries are detached first, so the
+	 * remaining entries are in order when they are
+	 * attached again. A node that moved past the nodes
+	 * compared while searching for it can no longer be
+	 * located, in which case the dirty entries are merged
+	 * with the clean entries in linear time instead.
+	 * <p>
+	 * This method must be invoked while holding the
+	 * write-lock.
+	 * @param dirty The <code>Set</code> of the dirty
+	 * <code>SortableEntry</code>.
+	 */
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	private void repositionDirty(final Set<SortableEntry<K, T, V>> dirty) {
+		final List<SortableEntry<K, T, V>> detached = new ArrayList<SortableEntry<K, T, V>>(dirty.size());
+		for (final SortableEntry<K, T, V> entry : dirty) {
+			if (this.nodemap.remove(entry) == null) {
+				// Merge including the already detached entries.
+				final SortableEntry<K, T, V>[] remaining = this.nodemap.keySet().toArray(new SortableEntry[0]);
+				final SortableEntry<K, T, V>[] entries = new SortableEntry[remaining.length + detached.size()];
+				System.arraycopy(remaining, 0, entries, 0, remaining.length);
+				for (int i = 0; i < detached.size(); i++) {
+					entries[remaining.length+i] = detached.get(i);
+				}
+				this.order(entries, dirty);
+				this.nodemap = this.build(entries, entries.length);
+				return;
+			}
+			detached.add(entry);
+		}
+		for (int i = 0; i < detached.size(); i++) {
+			final SortableEntry<K, T, V> entry = detached.get(i);
+			// If the node now equals another node, it can no
+			// longer be contained.
+			if (this.nodemap.putIfAbsent(entry, Boolean.TRUE) != null) {
+				this.keymap.remove(entry.key, entry);
+				this.count.decrementAndGet();
+				this.onAddFailure();
+				this.onRemoved(entry.key, entry.node);
+			}
+		}
+	}
+
+	/**
+	 * Sort the set by rebuilding a new ordering map
+	 * off to the side, then catch up with the
+	 * modifications made during the rebuild and publish
+	 * the new map while holding the write-lock.
+	 * <p>
+	 * Since <code>update</code> mutates the nodes in
+	 * place, a node updated during the rebuild may be
+	 * compared with different values, which can also
+	 * misorder the entries that were not modified. Every
+	 * recorded entry is therefore dropped from the sorted
+	 * entries, and the order of the remaining entries is
+	 * verified, which is repeated a bounded number of
+	 * times without locking. The entries recorded after
+	 * the last verification are dropped and verified
+	 * again while holding the write-lock, when no node
+	 * can be updated, before the recorded entries that
+	 * are still contained are inserted.
+	 * @return <code>true</code> if the set is sorted.
+	 * <code>false</code> if dirty tracking is enabled
+	 * and there are no dirty nodes.
+	 */
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	private boolean sortSwap() {
+		this.sortlock.lock();
+		try {
+			final Set<SortableEntry<K, T, V>> dirty = this.drainDirty();
+			if (dirty != null && dirty.isEmpty()) return false;
+			// Start recording before copying, so every
+			// modification the copy may miss is recorded.
+			final Queue<Operation<K, T, V>> queue = new ConcurrentLinkedQueue<Operation<K, T, V>>();
+			this.journal = queue;
+			SortableEntry<K, T, V>[] entries = this.nodemap.keySet().toArray(new SortableEntry[0]);
+			// Only the entries created before the copy
+			// completed may be contained in the copy.
+			final long horizon = this.sequencer.get();
+			final Map<SortableEntry<K, T, V>, Boolean> states = new IdentityHashMap<SortableEntry<K, T, V>, Boolean>();
+			this.order(entries, dirty);
+			// Catch up with the journal without locking,
+			// until only a few modifications are left.
+			boolean ordered = false;
+			for (int pass = 0; pass < ConcurrentSortableSet.CATCHUP_PASSES; pass++) {
+				final int drained = this.drain(queue, states, horizon);
+				entries = this.compact(entries, states);
+				ordered = this.isOrdered(entries);
+				if (!ordered) ParallelSorter.instance.sort(entries, this.comparator);
+				else if (drained <= ConcurrentSortableSet.REPLAY_THRESHOLD) break;
+			}
+			ConcurrentSkipListMap<SortableEntry<K, T, V>, Boolean> rebuilt = ordered ? this.build(entries, entries.length) : null;
+			this.acquireWrite();
+			try {
+				if (this.drain(queue, states, horizon) > 0 || rebuilt == null) {
+					entries = this.compact(entries, states);
+					if (!this.isOrdered(entries)) ParallelSorter.instance.sort(entries, this.comparator);
+					rebuilt = this.build(entries, entries.length);
+				}
+				for (final Entry<SortableEntry<K, T, V>, Boolean> state : states.entrySet()) {
+					if (state.getValue().booleanValue()) rebuilt.putIfAbsent(state.getKey(), Boolean.TRUE);
+				}
+				this.nodemap = rebuilt;
+				this.journal = null;
+			} finally {
+				this.writelock.unlock();
+			}
+			return true;
+		} finally {
+			this.sortlock.unlock();
+		}
+	}
+
+	/**
+	 * Build a new ordering map containing all the
+	 * entries of the given map sorted by the current
+	 * ordering state of their nodes.
+	 * @param map The <code>ConcurrentSkipListMap</code>
+	 * to rebuild.
+	 * @param dirty The <code>Set</code> of the dirty
+	 * <code>SortableEntry</code>. <code>null</code> to
+	 * sort all the entries.
+	 * @return The new <code>ConcurrentSkipListMap</code>.
+	 */
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	private ConcurrentSkipListMap<SortableEntry<K, T, V>, Boolean> rebuild(final ConcurrentSkipListMap<SortableEntry<K, T, V>, Boolean> map,
+			final Set<SortableEntry<K, T, V>> dirty) {
+		final SortableEntry<K, T, V>[] entries = map.keySet().toArray(new SortableEntry[0]);
+		this.order(entries, dirty);
+		return this.build(entries, entries.length);
+	}
+
+	/**
+	 * Sort the given entries copied from the ordering
+	 * map by the current ordering state of their nodes.
+	 * <p>
+	 * The entries are sorted in parallel across all the
+	 * available processors, so that the new map can be
+	 * built bottom-up from the sorted run in linear time,
+	 * instead of inserting the entries one at a time.
+	 * <p>
+	 * If only the given dirty entries have been modified,
+	 * the remaining clean entries are still in order.
+	 * Only the dirty entries are then sorted, and merged
+	 * with the clean run in linear time.
+	 * @param entries The <code>SortableEntry</code> array
+	 * in the order of the ordering map.
+	 * @param dirty The <code>Set</code> of the dirty
+	 * <code>SortableEntry</code>. <code>null</code> to
+	 * sort all the entries.
+	 */
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	private void order(final SortableEntry<K, T, V>[] entries, final Set<SortableEntry<K, T, V>> dirty) {
+		if (dirty == null) {
+			ParallelSorter.instance.sort(entries, this.comparator);
+			return;
+		}
+		// Split into the clean run and the dirty entries
+		// that are still contained.
+		final SortableEntry<K, T, V>[] clean = new SortableEntry[entries.length];
+		final SortableEntry<K, T, V>[] moved = new SortableEntry[Math.min(entries.length, dirty.size())];
+		int cleanlength = 0;
+		int movedlength = 0;
+		for (int i = 0; i < entries.length; i++) {
+			if (dirty.contains(entries[i])) moved[movedlength++] = entries[i];
+			else clean[cleanlength++] = entries[i];
+		}
+		final SortableEntry<K, T, V>[] sorted = new SortableEntry[movedlength];
+		System.arraycopy(moved, 0, sorted, 0, movedlength);
+		ParallelSorter.instance.sort(sorted, this.comparator);
+		int c = 0;
+		int m = 0;
+		for (int i = 0; i < entries.length; i++) {
+			if (m >= movedlength || (c < cleanlength && this.comparator.compare(clean[c], sorted[m]) <= 0)) entries[i] = clean[c++];
+			else entries[i] = sorted[m++];
+		}
+	}
+
+	/**
+	 * Drain the recorded modifications in the given
+	 * journal into the final state of every modified
+	 * entry, identified by reference.
+	 * @param queue The journal <code>Queue</code> to
+	 * drain.
+	 * @param states The <code>Map</code> of the recorded
+	 * <code>SortableEntry</code> to <code>true</code> if
+	 * it is added, <code>false</code> if removed.
+	 * @param horizon The <code>long</code> sequence of
+	 * the last entry that may be contained in the copy.
+	 * @return The <code>int</code> number of newly
+	 * recorded entries that may be contained in the copy.
+	 */
+	private int drain(final Queue<Operation<K, T, V>> queue, final Map<SortableEntry<K, T, V>, Boolean> states, final long horizon) {
+		int count = 0;
+		Operation<K, T, V> operation = queue.poll();
+		while (operation != null) {
+			final Boolean previous = states.put(operation.entry, Boolean.valueOf(operation.added));
+			if (previous == null && operation.entry.sequence <= horizon) count++;
+			operation = queue.poll();
+		}
+		return count;
+	}
+
+	/**
+	 * Remove the recorded entries from the given sorted
+	 * entries, preserving the order of the rest.
+	 * @param entries The <code>SortableEntry</code> array.
+	 * @param states The <code>Map</code> of the recorded
+	 * <code>SortableEntry</code>.
+	 * @return The <code>SortableEntry</code> array of the
+	 * remaining entries. The given array if it does not
+	 * contain any of the recorded entries.
+	 */
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	private SortableEntry<K, T, V>[] compact(final SortableEntry<K, T, V>[] entries, final Map<SortableEntry<K, T, V>, Boolean> states) {
+		if (states.isEmpty()) return entries;
+		int length = 0;
+		for (int i = 0; i < entries.length; i++) {
+			if (states.containsKey(entries[i])) continue;
+			entries[length] = entries[i];
+			length++;
+		}
+		if (length == entries.length) return entries;
+		final SortableEntry<K, T, V>[] result = new SortableEntry[length];
+		System.arraycopy(entries, 0, result, 0, length);
+		return result;
+	}
+
+	/**
+	 * Check if the given entries are in order.
+	 * @param entries The <code>SortableEntry</code> array.
+	 * @return <code>true</code> if every entry is ordered
+	 * before its successor.
+	 */
+	private boolean isOrdered(final SortableEntry<K, T, V>[] entries) {
+		for (int i = 1; i < entries.length; i++) {
+			if (this.comparator.compare(entries[i-1], entries[i]) > 0) return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Build a new ordering map from the given sorted
+	 * entries in linear time.
+	 * @param entries The sorted <code>SortableEntry</code>
+	 * array.
+	 * @param length The <code>int</code> number of valid
+	 * entries at the beginning of the array.
+	 * @return The new <code>ConcurrentSkipListMap</code>.
+	 */
+	private ConcurrentSkipListMap<SortableEntry<K, T, V>, Boolean> build(final SortableEntry<K, T, V>[] entries, final int length) {
+		return new ConcurrentSkipListMap<SortableEntry<K, T, V>, Boolean>(
+				new SortedKeyMap<SortableEntry<K, T, V>, Boolean>(entries, length, Boolean.TRUE, this.comparator));
+	}
+
+	/**
+	 * Record the given modification if there is a
+	 * rebuild of the ordering structure in progress.
+	 * <p>
+	 * This method must be invoked while holding the
+	 * read-lock.
+	 * @param entry The modified <code>SortableEntry</code>.
+	 * @param added <code>true</code> if the entry is
+	 * added. <code>false</code> if removed.
+	 */
+	private void record(final SortableEntry<K, T, V> entry, final boolean added) {
+		final Queue<Operation<K, T, V>> queue = this.journal;
+		if (queue == null) return;
+		queue.add(new Operation<K, T, V>(entry, added));
+	}
+
+	@Override
+	public T firstNode() {
+		final SortableEntry<K, T, V> entry = this.firstEntry();
+		if (entry == null) return null;
+		return entry.node;
+	}
+
+	@Override
+	public T lastNode() {
+		final SortableEntry<K, T, V> entry = this.lastEntry();
+		if (entry == null) return null;
+		return entry.node;
+	}
+
+	@Override
+	public V firstAttachment() {
+		final SortableEntry<K, T, V> entry = this.firstEntry();
+		if (entry == null) return null;
+		return entry.attachment;
+	}
+
+	@Override
+	public V lastAttachment() {
+		final SortableEntry<K, T, V> entry = this.lastEntry();
+		if (entry == null) return null;
+		return entry.attachment;
+	}
+
+	@Override
+	public int size() {
+		return this.count.get();
+	}
+
+	@Override
+	public T getNode(final K key) {
+		final SortableEntry<K, T, V> entry = this.lookup(key);
+		if (entry == null) return null;
+		return entry.node;
+	}
+
+	@Override
+	public V getAttachment(final K key) {
+		final SortableEntry<K, T, V> entry = this.lookup(key);
+		if (entry == null) return null;
+		return entry.attachment;
+	}
+
+	/**
+	 * Retrieve the entry of the given key.
+	 * @param key The <code>K</code> key to check.
+	 * @return The <code>SortableEntry</code>.
+	 * <code>null</code> if there is no such key.
+	 */
+	private SortableEntry<K, T, V> lookup(final K key) {
+		if (this.sortmode == SortMode.OPTIMISTIC) {
+			final int stamp = this.stamp;
+			if ((stamp & 1) == 0) {
+				final SortableEntry<K, T, V> entry = this.keymap.get(key);
+				if (this.stamp == stamp) return entry;
+			}
+		}
+		this.lockRead();
+		try {
+			return this.keymap.get(key);
+		} finally {
+			this.unlockRead();
 		}
 	}
 
@@ -222,4 +1611,659 @@ public class ConcurrentSortableSet<K, T extends Comparable<T>, V> implements ICo
 	public Iterable<K> getAllKeys() {
 		return this.keymap.keySet();
 	}
+
+	@Override
+	public Iterator<ISortableEntry<K, T, V>> iterator() {
+		return new SortableSetView<K, T, V>(this, null, null).iterator();
+	}
+
+	@Override
+	public Iterator<ISortableEntry<K, T, V>> descendingIterator() {
+		return new SortableSetView<K, T, V>(this, null, null).descendingIterator();
+	}
+
+	@Override
+	public void visit(final IEntryVisitor<K, T, V> visitor, final int parallelism) {
+		new SortableSetView<K, T, V>(this, null, null).visit(visitor, parallelism);
+	}
+
+	@Override
+	public boolean isEmpty() {
+		return this.count.get() == 0;
+	}
+
+	@Override
+	public ISortableSetView<K, T, V> headSet(final T to) {
+		if (to == null) throw new IllegalArgumentException("Bound node cannot be null.");
+		return new SortableSetView<K, T, V>(this, null, to);
+	}
+
+	@Override
+	public ISortableSetView<K, T, V> tailSet(final T from) {
+		if (from == null) throw new IllegalArgumentException("Bound node cannot be null.");
+		return new SortableSetView<K, T, V>(this, from, null);
+	}
+
+	@Override
+	public ISortableSetView<K, T, V> subSet(final T from, final T to) {
+		if (from == null || to == null) throw new IllegalArgumentException("Bound node cannot be null.");
+		return new SortableSetView<K, T, V>(this, from, to);
+	}
+
+	/**
+	 * Retrieve the current ordering map of the set.
+	 * @return The <code>ConcurrentNavigableMap</code>
+	 * of all the entries.
+	 */
+	ConcurrentNavigableMap<SortableEntry<K, T, V>, Boolean> ordering() {
+		return this.nodemap;
+	}
+
+	/**
+	 * Retrieve the entry of the given key.
+	 * @param key The <code>K</code> key to check.
+	 * @return The <code>SortableEntry</code>.
+	 * <code>null</code> if there is no such key.
+	 */
+	SortableEntry<K, T, V> getEntry(final K key) {
+		return this.lookup(key);
+	}
+
+	/**
+	 * Retrieve the first entry in the set.
+	 * @return The first <code>SortableEntry</code>.
+	 * <code>null</code> if no entries in the set.
+	 */
+	SortableEntry<K, T, V> firstEntry() {
+		return this.extreme(true);
+	}
+
+	/**
+	 * Retrieve the last entry in the set.
+	 * @return The last <code>SortableEntry</code>.
+	 * <code>null</code> if no entries in the set.
+	 */
+	SortableEntry<K, T, V> lastEntry() {
+		return this.extreme(false);
+	}
+
+	/**
+	 * Retrieve the first or the last entry in the set.
+	 * @param first <code>true</code> to retrieve the
+	 * first entry. <code>false</code> for the last.
+	 * @return The <code>SortableEntry</code>.
+	 * <code>null</code> if no entries in the set.
+	 */
+	private SortableEntry<K, T, V> extreme(final boolean first) {
+		if (this.sortmode == SortMode.OPTIMISTIC) {
+			final int stamp = this.stamp;
+			if ((stamp & 1) == 0) {
+				final SortableEntry<K, T, V> entry = this.peek(first);
+				if (this.stamp == stamp) return entry;
+			}
+		}
+		this.lockRead();
+		try {
+			return this.peek(first);
+		} finally {
+			this.unlockRead();
+		}
+	}
+
+	/**
+	 * Retrieve the first or the last entry in the
+	 * ordering map without any locking.
+	 * @param first <code>true</code> to retrieve the
+	 * first entry. <code>false</code> for the last.
+	 * @return The <code>SortableEntry</code>.
+	 * <code>null</code> if no entries in the set.
+	 */
+	private SortableEntry<K, T, V> peek(final boolean first) {
+		final ConcurrentSkipListMap<SortableEntry<K, T, V>, Boolean> map = this.nodemap;
+		final Entry<SortableEntry<K, T, V>, Boolean> entry = first ? map.firstEntry() : map.lastEntry();
+		if (entry == null) return null;
+		return entry.getKey();
+	}
+
+	/**
+	 * Retrieve a weakly consistent iterator over all
+	 * the entries in ascending order.
+	 * @return The <code>Iterator</code> of entries.
+	 */
+	Iterator<SortableEntry<K, T, V>> ascendingEntries() {
+		return this.nodemap.keySet().iterator();
+	}
+
+	/**
+	 * Retrieve the comparator that defines the order
+	 * of the entries in this set.
+	 * @return The <code>Comparator</code> of entries.
+	 */
+	Comparator<SortableEntry<K, T, V>> comparator() {
+		return this.comparator;
+	}
+
+	/**
+	 * Run the given task while no other operation can
+	 * access the ordering of the set.
+	 * <p>
+	 * The task holds both the sort lock and the write-
+	 * lock, and the optimistic reads overlapping with
+	 * the task are validated the same way as sorting.
+	 * The task may modify the nodes in place as long as
+	 * their relative order is preserved.
+	 * @param task The <code>Runnable</code> to run.
+	 */
+	void exclusive(final Runnable task) {
+		this.sortlock.lock();
+		try {
+			this.acquireWrite();
+			try {
+				this.stamp++;
+				try {
+					task.run();
+				} finally {
+					this.stamp++;
+				}
+			} finally {
+				this.writelock.unlock();
+			}
+		} finally {
+			this.sortlock.unlock();
+		}
+	}
+
+	/**
+	 * Run the given task that applies the modifications
+	 * of a transaction, invoking the modification hooks
+	 * once for every modified key.
+	 * <p>
+	 * This method is invoked while holding both the
+	 * sort lock and the write-lock. Subclasses may
+	 * override it to make the hooks of the entire batch
+	 * atomic to the readers of their own structures.
+	 * @param task The <code>Runnable</code> to run.
+	 */
+	void batch(final Runnable task) {
+		task.run();
+	}
+
+	/**
+	 * Retrieve the given number of first entries in
+	 * the set.
+	 * @param n The <code>int</code> number of entries.
+	 * @return The <code>List</code> of the first
+	 * <code>SortableEntry</code> in ascending order.
+	 */
+	List<SortableEntry<K, T, V>> top(final int n) {
+		final List<SortableEntry<K, T, V>> list = new ArrayList<SortableEntry<K, T, V>>(Math.min(n, this.size()));
+		this.lockRead();
+		try {
+			final Iterator<SortableEntry<K, T, V>> iterator = this.nodemap.keySet().iterator();
+			while (list.size() < n && iterator.hasNext()) {
+				list.add(iterator.next());
+			}
+		} finally {
+			this.unlockRead();
+		}
+		return list;
+	}
+
+	/**
+	 * Publish the changes of the top nodes caused by
+	 * an operation to all the watchers.
+	 * <p>
+	 * This method must be invoked without holding any
+	 * locks of the set.
+	 * @param key The <code>K</code> key of the modified
+	 * entry. <code>null</code> if the operation may have
+	 * modified any entry.
+	 * @param entry The current <code>SortableEntry</code>
+	 * of the key. <code>null</code> if there is none.
+	 */
+	private void publish(final K key, final SortableEntry<K, T, V> entry) {
+		if (this.watchers.isEmpty()) return;
+		for (final TopWatcher<K, T, V> watcher : this.watchers) {
+			watcher.publish(this, key, entry);
+		}
+	}
+
+	/**
+	 * Acquire the read-lock for a read operation if
+	 * the sort mode requires reads to be suspended
+	 * while sorting.
+	 */
+	private void lockRead() {
+		if (this.sortmode != SortMode.SWAP) this.acquireRead();
+	}
+
+	/**
+	 * Acquire the read-lock, recording the wait time if
+	 * monitoring is enabled.
+	 */
+	private void acquireRead() {
+		final SortableSetMonitor monitor = this.monitor;
+		if (monitor == null) {
+			this.readlock.lock();
+		} else {
+			final long start = System.nanoTime();
+			this.readlock.lock();
+			monitor.onReadLock(System.nanoTime()-start);
+		}
+	}
+
+	/**
+	 * Acquire the write-lock, recording the wait time if
+	 * monitoring is enabled.
+	 */
+	private void acquireWrite() {
+		final SortableSetMonitor monitor = this.monitor;
+		if (monitor == null) {
+			this.writelock.lock();
+		} else {
+			final long start = System.nanoTime();
+			this.writelock.lock();
+			monitor.onWriteLock(System.nanoTime()-start);
+		}
+	}
+
+	/**
+	 * Record an add that failed on comparison if
+	 * monitoring is enabled.
+	 */
+	private void onAddFailure() {
+		final SortableSetMonitor monitor = this.monitor;
+		if (monitor != null) monitor.onAddFailure();
+	}
+
+	/**
+	 * Record a remove that failed on comparison if
+	 * monitoring is enabled.
+	 */
+	private void onRemoveFailure() {
+		final SortableSetMonitor monitor = this.monitor;
+		if (monitor != null) monitor.onRemoveFailure();
+	}
+
+	/**
+	 * Release the read-lock acquired by a previous
+	 * <code>lockRead</code> invocation.
+	 */
+	private void unlockRead() {
+		if (this.sortmode != SortMode.SWAP) this.readlock.unlock();
+	}
+
+	/**
+	 * Retrieve the lock stripe of the given key.
+	 * @param key The <code>K</code> key to check.
+	 * @return The <code>ReentrantLock</code> stripe.
+	 */
+	private ReentrantLock stripe(final K key) {
+		// Spread the higher bits since the stripe count
+		// is a small power of two.
+		int hash = key.hashCode();
+		hash ^= (hash >>> 16);
+		return this.stripes[hash & (ConcurrentSortableSet.STRIPE_COUNT-1)];
+	}
+
+	/**
+	 * <code>Transaction</code> defines the context of a
+	 * transaction that validates and buffers the
+	 * modifications, while the exclusive lock of the
+	 * set is held. Since no other modification can
+	 * interleave, the buffered operations are validated
+	 * against the exact state they are applied to.
+	 */
+	private final class Transaction implements ITransactionContext<K, T, V> {
+		/**
+		 * The <code>Map</code> of the <code>Change</code>
+		 * of every modified key, in modification order.
+		 */
+		private final Map<K, Change<K, T, V>> changes;
+		/**
+		 * The <code>List</code> of the buffered
+		 * <code>Mutation</code> in modification order.
+		 */
+		private final List<Mutation<K, T, V>> mutations;
+		/**
+		 * The <code>boolean</code> flag indicating if any
+		 * modification is applied.
+		 */
+		private boolean modified;
+		/**
+		 * The first <code>RuntimeException</code> thrown
+		 * by a mutator. <code>null</code> if none.
+		 */
+		private RuntimeException failure;
+
+		/**
+		 * Constructor of <code>Transaction</code>.
+		 */
+		private Transaction() {
+			this.changes = new LinkedHashMap<K, Change<K, T, V>>();
+			this.mutations = new ArrayList<Mutation<K, T, V>>();
+		}
+
+		@Override
+		public boolean add(final K key, final T node, final V attachment) {
+			if (this.lookup(key) != null) return false;
+			this.change(key).current = ConcurrentSortableSet.this.create(key, node, attachment);
+			return true;
+		}
+
+		@Override
+		public boolean remove(final K key) {
+			if (this.lookup(key) == null) return false;
+			this.change(key).current = null;
+			return true;
+		}
+
+		@Override
+		public boolean update(final K key, final INodeMutator<T> mutator) {
+			final SortableEntry<K, T, V> entry = this.lookup(key);
+			if (entry == null) return false;
+			final Change<K, T, V> change = this.change(key);
+			if (entry == change.original) change.mutated = true;
+			this.mutations.add(new Mutation<K, T, V>(change, entry, mutator));
+			return true;
+		}
+
+		@Override
+		public T getNode(final K key) {
+			final SortableEntry<K, T, V> entry = this.lookup(key);
+			if (entry == null) return null;
+			return entry.node;
+		}
+
+		@Override
+		public V getAttachment(final K key) {
+			final SortableEntry<K, T, V> entry = this.lookup(key);
+			if (entry == null) return null;
+			return entry.attachment;
+		}
+
+		/**
+		 * Retrieve the entry of the given key including
+		 * the buffered modifications.
+		 * @param key The <code>K</code> key to check.
+		 * @return The <code>SortableEntry</code>.
+		 * <code>null</code> if there is no such key.
+		 */
+		private SortableEntry<K, T, V> lookup(final K key) {
+			final Change<K, T, V> change = this.changes.get(key);
+			if (change != null) return change.current;
+			return ConcurrentSortableSet.this.keymap.get(key);
+		}
+
+		/**
+		 * Retrieve the change of the given key, creating
+		 * it if the key has not been modified yet.
+		 * @param key The <code>K</code> key to modify.
+		 * @return The <code>Change</code> of the key.
+		 */
+		private Change<K, T, V> change(final K key) {
+			Change<K, T, V> change = this.changes.get(key);
+			if (change == null) {
+				change = new Change<K, T, V>(key, ConcurrentSortableSet.this.keymap.get(key));
+				this.changes.put(key, change);
+			}
+			return change;
+		}
+
+		/**
+		 * Apply the net effect of the buffered operations.
+		 * <p>
+		 * The original entries that are removed or mutated
+		 * are detached first, then the mutators are invoked
+		 * in order, and the resulting entries are attached
+		 * at the positions of their nodes. In the <code>SWAP</code>
+		 * mode the ordering is modified on a copy, which is
+		 * published with a single write. The key map and the
+		 * hooks are only updated once the ordering is final.
+		 */
+		@SuppressWarnings({"unchecked", "rawtypes"})
+		private void apply() {
+			final ConcurrentSortableSet<K, T, V> set = ConcurrentSortableSet.this;
+			final List<Change<K, T, V>> detached = new ArrayList<Change<K, T, V>>();
+			final List<Change<K, T, V>> attached = new ArrayList<Change<K, T, V>>();
+			for (final Change<K, T, V> change : this.changes.values()) {
+				if (change.original != null && (change.original != change.current || change.mutated)) detached.add(change);
+				else if (change.current != null && change.original == null) attached.add(change);
+			}
+			if (detached.isEmpty() && attached.isEmpty()) return;
+			final ConcurrentSkipListMap<SortableEntry<K, T, V>, Boolean> target;
+			if (set.sortmode == SortMode.SWAP) {
+				// Readers do not lock, so the copy excludes the
+				// detached entries by reference in linear time.
+				final Map<SortableEntry<K, T, V>, Boolean> excluded = new IdentityHashMap<SortableEntry<K, T, V>, Boolean>();
+				for (int i = 0; i < detached.size(); i++) {
+					excluded.put(detached.get(i).original, Boolean.TRUE);
+				}
+				final SortableEntry<K, T, V>[] entries = set.compact(set.nodemap.keySet().toArray(new SortableEntry[0]), excluded);
+				target = set.build(entries, entries.length);
+			} else {
+				target = set.nodemap;
+				for (int i = 0; i < detached.size(); i++) {
+					final Change<K, T, V> change = detached.get(i);
+					// If comparison failed, the key is left as is.
+					if (target.remove(change.original) == null) change.skipped = true;
+				}
+			}
+			for (int i = 0; i < this.mutations.size(); i++) {
+				final Mutation<K, T, V> mutation = this.mutations.get(i);
+				if (mutation.change.skipped && mutation.entry == mutation.change.original) continue;
+				try {
+					mutation.mutator.mutate(mutation.entry.node);
+				} catch (final RuntimeException e) {
+					if (this.failure == null) this.failure = e;
+				}
+			}
+			for (int i = 0; i < detached.size(); i++) {
+				final Change<K, T, V> change = detached.get(i);
+				if (!change.skipped && change.current != null) attached.add(change);
+			}
+			for (int i = 0; i < attached.size(); i++) {
+				final Change<K, T, V> change = attached.get(i);
+				// If the node equals another node, it can no
+				// longer be contained.
+				change.failed = (target.putIfAbsent(change.current, Boolean.TRUE) != null);
+			}
+			set.nodemap = target;
+			// Update the keys and the hooks of the detached
+			// entries before the attached ones.
+			int delta = 0;
+			for (int i = 0; i < detached.size(); i++) {
+				final Change<K, T, V> change = detached.get(i);
+				if (change.skipped) {
+					set.onRemoveFailure();
+					continue;
+				}
+				if (change.original != change.current) set.keymap.remove(change.key);
+				set.onRemoved(change.key, change.original.node);
+				delta--;
+			}
+			for (int i = 0; i < attached.size(); i++) {
+				final Change<K, T, V> change = attached.get(i);
+				if (change.failed) {
+					set.keymap.remove(change.key);
+					set.onAddFailure();
+					continue;
+				}
+				set.keymap.put(change.key, change.current);
+				set.onAdded(change.key, change.current.node, change.current.attachment);
+				delta++;
+			}
+			set.count.addAndGet(delta);
+			this.modified = true;
+		}
+	}
+
+	/**
+	 * <code>Change</code> defines the buffered net change
+	 * of a single key modified by a transaction.
+	 */
+	private static final class Change<K, T extends Comparable<T>, V> {
+		/**
+		 * The modified <code>K</code> key.
+		 */
+		private final K key;
+		/**
+		 * The original <code>SortableEntry</code> of the
+		 * key. <code>null</code> if the key did not exist.
+		 */
+		private final SortableEntry<K, T, V> original;
+		/**
+		 * The resulting <code>SortableEntry</code> of the
+		 * key. <code>null</code> if the key is removed.
+		 */
+		private SortableEntry<K, T, V> current;
+		/**
+		 * The <code>boolean</code> flag indicating if the
+		 * original entry is mutated.
+		 */
+		private boolean mutated;
+		/**
+		 * The <code>boolean</code> flag indicating if the
+		 * original entry cannot be located, in which case
+		 * the key is left unchanged.
+		 */
+		private boolean skipped;
+		/**
+		 * The <code>boolean</code> flag indicating if the
+		 * resulting entry cannot be attached, because its
+		 * node equals another node.
+		 */
+		private boolean failed;
+
+		/**
+		 * Constructor of <code>Change</code>.
+		 * @param key The <code>K</code> key.
+		 * @param original The original <code>SortableEntry</code>.
+		 */
+		private Change(final K key, final SortableEntry<K, T, V> original) {
+			this.key = key;
+			this.original = original;
+			this.current = original;
+		}
+	}
+
+	/**
+	 * <code>Mutation</code> defines a buffered invocation
+	 * of a node mutator of a transaction.
+	 */
+	private static final class Mutation<K, T extends Comparable<T>, V> {
+		/**
+		 * The <code>Change</code> of the key.
+		 */
+		private final Change<K, T, V> change;
+		/**
+		 * The <code>SortableEntry</code> to mutate.
+		 */
+		private final SortableEntry<K, T, V> entry;
+		/**
+		 * The <code>INodeMutator</code> to invoke.
+		 */
+		private final INodeMutator<T> mutator;
+
+		/**
+		 * Constructor of <code>Mutation</code>.
+		 * @param change The <code>Change</code> of the key.
+		 * @param entry The <code>SortableEntry</code>.
+		 * @param mutator The <code>INodeMutator</code>.
+		 */
+		private Mutation(final Change<K, T, V> change, final SortableEntry<K, T, V> entry, final INodeMutator<T> mutator) {
+			this.change = change;
+			this.entry = entry;
+			this.mutator = mutator;
+		}
+	}
+
+	/**
+	 * <code>Operation</code> defines the immutable
+	 * record of a single modification made while the
+	 * ordering structure is being rebuilt.
+	 */
+	private static final class Operation<K, T extends Comparable<T>, V> {
+		/**
+		 * The modified <code>SortableEntry</code>.
+		 */
+		private final SortableEntry<K, T, V> entry;
+		/**
+		 * The <code>boolean</code> flag indicating if the
+		 * entry is added or removed.
+		 */
+		private final boolean added;
+
+		/**
+		 * Constructor of <code>Operation</code>.
+		 * @param entry The modified <code>SortableEntry</code>.
+		 * @param added <code>true</code> if the entry is
+		 * added. <code>false</code> if removed.
+		 */
+		private Operation(final SortableEntry<K, T, V> entry, final boolean added) {
+			this.entry = entry;
+			this.added = added;
+		}
+	}
+
+	/**
+	 * <code>EntryComparator</code> defines the comparator
+	 * of entries using the ordering of their nodes,
+	 * where an entry always equals itself.
+	 * <p>
+	 * If a node comparator is provided, the entries
+	 * with equal nodes are ordered by their sequence
+	 * numbers. Otherwise the natural ordering of the
+	 * nodes is used as is.
+	 */
+	private static final class EntryComparator<K, T extends Comparable<T>, V> implements Comparator<SortableEntry<K, T, V>> {
+		/**
+		 * The node <code>Comparator</code>. <code>null</code>
+		 * if the natural ordering is used.
+		 */
+		private final Comparator<? super T> comparator;
+
+		/**
+		 * Constructor of <code>EntryComparator</code>.
+		 * @param comparator The node <code>Comparator</code>.
+		 * <code>null</code> to use the natural ordering.
+		 */
+		private EntryComparator(final Comparator<? super T> comparator) {
+			this.comparator = comparator;
+		}
+
+		@Override
+		public int compare(final SortableEntry<K, T, V> o1, final SortableEntry<K, T, V> o2) {
+			if (o1 == o2) return 0;
+			if (this.comparator == null) return o1.node.compareTo(o2.node);
+			final int result = this.comparator.compare(o1.node, o2.node);
+			if (result != 0) return result;
+			if (o1.sequence < o2.sequence) return -1;
+			else if (o1.sequence > o2.sequence) return 1;
+			return 0;
+		}
+	}
+
+	/**
+	 * <code>BackgroundSorter</code> defines the lazily
+	 * created holder of the daemon threads used to sort
+	 * sets in the background.
+	 */
+	private static final class BackgroundSorter {
+		/**
+		 * The <code>ScheduledExecutorService</code> of
+		 * daemon threads.
+		 */
+		private static final ScheduledExecutorService executor = Executors.newScheduledThreadPool(
+				Runtime.getRuntime().availableProcessors(), new ThreadFactory() {
+			private final AtomicInteger index = new AtomicInteger();
+
+			@Override
+			public Thread newThread(final Runnable runnable) {
+				final Thread thread = new Thread(runnable, "Hemera-BackgroundSorter-" + this.index.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+	}
 }
@@ -0,0 +1,41 @@
+package hemera.utility.structure;
+
+/**
+ * <code>DecayedScore</code> defines the node of a
+ * <code>DecayingConcurrentSortableSet</code>, which
+ * holds an exponentially decaying score in its time-
+ * normalized form.
+ * <p>
+ * The score is stored as the natural logarithm of the
+ * value it had at the epoch of the owning set. Since
+ * all the scores decay at the same rate, the order of
+ * the normalized values never changes over time, and
+ * nodes with higher scores are ordered first.
+ *
+ * @author Yi Wang (Neakor)
+ * @version 1.0.0
+ */
+public final class DecayedScore implements Comparable<DecayedScore> {
+	/**
+	 * The <code>double</code> natural logarithm of the
+	 * score at the epoch of the owning set.
+	 */
+	double log;
+
+	/**
+	 * Constructor of <code>DecayedScore</code>.
+	 * @param log The <code>double</code> normalized
+	 * logarithm of the score.
+	 */
+	DecayedScore(final double log) {
+		this.log = log;
+	}
+
+	@Override
+	public int compareTo(final DecayedScore o) {
+		if (this == o) return 0;
+		if (this.log > o.log) return -1;
+		else if (this.log < o.log) return 1;
+		else return -1;
+	}
+}
@@ -0,0 +1,257 @@
+package hemera.utility.structure;
+
+import java.util.Iterator;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock.ReadLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock.WriteLock;
+
+import hemera.utility.structure.interfaces.INodeMutator;
+import hemera.utility.structure.interfaces.ISortableEntry;
+
+/**
+ * <code>DecayingConcurrentSortableSet</code> defines the
+ * implementation of a <code>ConcurrentSortableSet</code>
+ * of scores that decay exponentially over time with a
+ * fixed half-life, ordered from the highest current
+ * score to the lowest.
+ * <p>
+ * Every score is stored as the logarithm of the value
+ * it would have at the epoch of the set. A score
+ * <code>s</code> at time <code>t</code> is stored as
+ * <code>ln(s) + rate * (t - epoch)</code>, and its
+ * current value is recovered as
+ * <code>exp(log - rate * (now - epoch))</code>. Since
+ * the decay subtracts the same amount from all the
+ * logarithms, it never changes the order of the nodes,
+ * thus the set never needs to be sorted for decay, and
+ * only increments move individual nodes.
+ * <p>
+ * The stored logarithms grow linearly with the time
+ * elapsed since the epoch. Once the growth exceeds a
+ * threshold, the set is renormalized by moving the
+ * epoch to the current time and subtracting the same
+ * amount from every node in place. This preserves the
+ * order, so it is a single linear pass without any
+ * sorting, performed while all other operations are
+ * suspended.
+ *
+ * @author Yi Wang (Neakor)
+ * @version 1.0.0
+ */
+public class DecayingConcurrentSortableSet<K, V> extends ConcurrentSortableSet<K, DecayedScore, V> {
+	/**
+	 * The <code>double</code> growth of the logarithms
+	 * since the epoch that triggers renormalization.
+	 */
+	private static final double RENORMALIZE_THRESHOLD = 256;
+
+	/**
+	 * The <code>double</code> decay rate per millisecond.
+	 */
+	private final double rate;
+	/**
+	 * The <code>ReadLock</code> held while converting
+	 * between scores and logarithms.
+	 */
+	private final ReadLock epochreadlock;
+	/**
+	 * The <code>WriteLock</code> held while moving the
+	 * epoch.
+	 */
+	private final WriteLock epochwritelock;
+	/**
+	 * The <code>long</code> epoch in milliseconds.
+	 */
+	private volatile long epoch;
+
+	/**
+	 * Constructor of <code>DecayingConcurrentSortableSet</code>.
+	 * <p>
+	 * This creates a set using the <code>BLOCKING</code>
+	 * sort mode.
+	 * @param halflife The <code>long</code> duration
+	 * after which a score decays to half its value.
+	 * @param unit The <code>TimeUnit</code> of the
+	 * half-life.
+	 */
+	public DecayingConcurrentSortableSet(final long halflife, final TimeUnit unit) {
+		this(halflife, unit, SortMode.BLOCKING);
+	}
+
+	/**
+	 * Constructor of <code>DecayingConcurrentSortableSet</code>.
+	 * @param halflife The <code>long</code> duration
+	 * after which a score decays to half its value.
+	 * @param unit The <code>TimeUnit</code> of the
+	 * half-life.
+	 * @param sortmode The <code>SortMode</code> used to
+	 * perform the <code>sort</code> operation.
+	 */
+	public DecayingConcurrentSortableSet(final long halflife, final TimeUnit unit, final SortMode sortmode) {
+		super(sortmode);
+		if (unit.toMillis(halflife) <= 0) throw new IllegalArgumentException("Half-life must be at least a millisecond.");
+		this.rate = Math.log(2) / unit.toMillis(halflife);
+		final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+		this.epochreadlock = lock.readLock();
+		this.epochwritelock = lock.writeLock();
+		this.epoch = Long.MIN_VALUE;
+	}
+
+	/**
+	 * Add the given score with the given key.
+	 * @param key The <code>K</code> key.
+	 * @param score The non-negative <code>double</code>
+	 * score at the current time.
+	 * @param attachment The <code>V</code> attachment.
+	 * @return <code>true</code> if the score is added.
+	 * <code>false</code> if the key already exists.
+	 */
+	public boolean add(final K key, final double score, final V attachment) {
+		if (!(score >= 0)) throw new IllegalArgumentException("Score must be non-negative: " + score);
+		final long now = this.currentTimeMillis();
+		this.renormalizeIfNeeded(now);
+		this.epochreadlock.lock();
+		try {
+			return this.add(key, new DecayedScore(this.normalize(score, now)), attachment);
+		} finally {
+			this.epochreadlock.unlock();
+		}
+	}
+
+	/**
+	 * Add the given amount to the current score of the
+	 * given key.
+	 * @param key The <code>K</code> key.
+	 * @param amount The non-negative <code>double</code>
+	 * amount to add at the current time.
+	 * @return <code>true</code> if the score is updated.
+	 * <code>false</code> if there is no such key.
+	 */
+	public boolean increment(final K key, final double amount) {
+		if (!(amount >= 0)) throw new IllegalArgumentException("Amount must be non-negative: " + amount);
+		final long now = this.currentTimeMillis();
+		this.renormalizeIfNeeded(now);
+		this.epochreadlock.lock();
+		try {
+			final double log = this.normalize(amount, now);
+			return this.update(key, new INodeMutator<DecayedScore>() {
+				@Override
+				public void mutate(final DecayedScore node) {
+					node.log = DecayingConcurrentSortableSet.sum(node.log, log);
+				}
+			});
+		} finally {
+			this.epochreadlock.unlock();
+		}
+	}
+
+	/**
+	 * Retrieve the current score of the given key.
+	 * @param key The <code>K</code> key.
+	 * @return The <code>double</code> current score.
+	 * <code>NaN</code> if there is no such key.
+	 */
+	public double getScore(final K key) {
+		final DecayedScore node = this.getNode(key);
+		if (node == null) return Double.NaN;
+		return this.score(node);
+	}
+
+	/**
+	 * Retrieve the current score of the given node.
+	 * @param node The <code>DecayedScore</code> node.
+	 * @return The <code>double</code> current score.
+	 */
+	public double score(final DecayedScore node) {
+		final long now = this.currentTimeMillis();
+		this.epochreadlock.lock();
+		try {
+			if (this.epoch == Long.MIN_VALUE) return Math.exp(node.log);
+			return Math.exp(node.log - this.rate * (now - this.epoch));
+		} finally {
+			this.epochreadlock.unlock();
+		}
+	}
+
+	/**
+	 * Move the epoch to the current time, and adjust
+	 * all the nodes accordingly without sorting.
+	 */
+	public void renormalize() {
+		final long now = this.currentTimeMillis();
+		this.epochwritelock.lock();
+		try {
+			if (this.epoch == Long.MIN_VALUE || now <= this.epoch) return;
+			final double shift = this.rate * (now - this.epoch);
+			this.exclusive(new Runnable() {
+				@Override
+				public void run() {
+					final Iterator<ISortableEntry<K, DecayedScore, V>> iterator = DecayingConcurrentSortableSet.this.iterator();
+					while (iterator.hasNext()) {
+						iterator.next().getNode().log -= shift;
+					}
+				}
+			});
+			this.epoch = now;
+		} finally {
+			this.epochwritelock.unlock();
+		}
+	}
+
+	/**
+	 * Renormalize the set if the logarithms have grown
+	 * beyond the threshold since the epoch.
+	 * @param now The <code>long</code> current time.
+	 */
+	private void renormalizeIfNeeded(final long now) {
+		final long epoch = this.epoch;
+		if (epoch == Long.MIN_VALUE) {
+			this.epochwritelock.lock();
+			try {
+				if (this.epoch == Long.MIN_VALUE) this.epoch = now;
+			} finally {
+				this.epochwritelock.unlock();
+			}
+		} else if (this.rate * (now - epoch) > DecayingConcurrentSortableSet.RENORMALIZE_THRESHOLD) {
+			this.renormalize();
+		}
+	}
+
+	/**
+	 * Convert the given score at the given time into
+	 * its normalized logarithm.
+	 * <p>
+	 * This method must be invoked while holding the
+	 * epoch read-lock.
+	 * @param score The <code>double</code> score.
+	 * @param now The <code>long</code> time of the score.
+	 * @return The <code>double</code> logarithm.
+	 */
+	private double normalize(final double score, final long now) {
+		return Math.log(score) + this.rate * (now - this.epoch);
+	}
+
+	/**
+	 * Compute the logarithm of the sum of the values of
+	 * the given logarithms without leaving log-space.
+	 * @param a The <code>double</code> logarithm.
+	 * @param b The <code>double</code> logarithm.
+	 * @return The <code>double</code> logarithm of the
+	 * sum.
+	 */
+	private static double sum(final double a, final double b) {
+		final double max = Math.max(a, b);
+		if (max == Double.NEGATIVE_INFINITY) return max;
+		return max + Math.log1p(Math.exp(Math.min(a, b) - max));
+	}
+
+	/**
+	 * Retrieve the current time used to decay scores.
+	 * @return The <code>long</code> current time in
+	 * milliseconds.
+	 */
+	protected long currentTimeMillis() {
+		return System.currentTimeMillis();
+	}
+}
@@ -0,0 +1,329 @@
+package hemera.utility.structure;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * <code>ExpiringConcurrentSortableSet</code> defines the
+ * implementation of a <code>ConcurrentSortableSet</code>
+ * that supports entries with a time-to-live, which are
+ * removed once they have not been touched for the
+ * duration of their time-to-live.
+ * <p>
+ * The expiration deadlines are kept in a hashed timer
+ * wheel, which is an array of slots that each covers
+ * a single tick of time. An entry is placed into the
+ * slot of the tick its deadline falls in, and every
+ * <code>expire</code> invocation only visits the slots
+ * of the ticks that elapsed since the previous one.
+ * Touching an entry only moves its deadline, and the
+ * entry is moved to its new slot when its old slot is
+ * visited. Therefore expiration never scans the set,
+ * and costs constant time per entry for every full
+ * revolution of the wheel its time-to-live spans.
+ * <p>
+ * Expired entries are removed by <code>expire</code>,
+ * which should be invoked periodically, ideally once
+ * per tick. Until then, an expired entry remains
+ * visible. Entries added without a time-to-live never
+ * expire.
+ *
+ * @author Yi Wang (Neakor)
+ * @version 1.0.0
+ */
+public class ExpiringConcurrentSortableSet<K, T extends Comparable<T>, V> extends ConcurrentSortableSet<K, T, V> {
+	/**
+	 * The <code>int</code> default number of slots in
+	 * the timer wheel.
+	 */
+	private static final int DEFAULT_WHEEL_SIZE = 1024;
+
+	/**
+	 * The <code>long</code> duration of a single tick
+	 * in milliseconds.
+	 */
+	private final long tick;
+	/**
+	 * The <code>int</code> mask of the slot index.
+	 */
+	private final int mask;
+	/**
+	 * The array of <code>List</code> of the timers in
+	 * each slot of the wheel.
+	 */
+	private final List<Timer<K, T, V>>[] slots;
+	/**
+	 * The array of <code>ReentrantLock</code> guarding
+	 * each slot of the wheel.
+	 */
+	private final ReentrantLock[] locks;
+	/**
+	 * The <code>ConcurrentMap</code> of <code>K</code>
+	 * key to the current <code>Timer</code> of the key.
+	 */
+	private final ConcurrentMap<K, Timer<K, T, V>> timers;
+	/**
+	 * The <code>ReentrantLock</code> used to provide
+	 * mutual exclusion between <code>expire</code>
+	 * invocations.
+	 */
+	private final ReentrantLock expirylock;
+	/**
+	 * The <code>long</code> last tick that has been
+	 * visited. It is only modified while holding the
+	 * lock of the slot of the tick, thus a timer added
+	 * to a slot after checking that its tick has not
+	 * been visited is always visited.
+	 */
+	private volatile long cursor;
+
+	/**
+	 * Constructor of <code>ExpiringConcurrentSortableSet</code>.
+	 * <p>
+	 * This creates a set using the <code>BLOCKING</code>
+	 * sort mode, with ticks of 100 milliseconds.
+	 */
+	public ExpiringConcurrentSortableSet() {
+		this(100, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Constructor of <code>ExpiringConcurrentSortableSet</code>.
+	 * <p>
+	 * This creates a set using the <code>BLOCKING</code>
+	 * sort mode.
+	 * @param tick The <code>long</code> duration of a
+	 * single tick of the timer wheel, which is also the
+	 * precision of the expiration.
+	 * @param unit The <code>TimeUnit</code> of the tick.
+	 */
+	public ExpiringConcurrentSortableSet(final long tick, final TimeUnit unit) {
+		this(tick, unit, ExpiringConcurrentSortableSet.DEFAULT_WHEEL_SIZE, null, SortMode.BLOCKING);
+	}
+
+	/**
+	 * Constructor of <code>ExpiringConcurrentSortableSet</code>.
+	 * @param tick The <code>long</code> duration of a
+	 * single tick of the timer wheel, which is also the
+	 * precision of the expiration.
+	 * @param unit The <code>TimeUnit</code> of the tick.
+	 * @param wheelsize The <code>int</code> number of
+	 * slots in the timer wheel, which is rounded up to a
+	 * power of two. The wheel should span the typical
+	 * time-to-live of the entries.
+	 * @param comparator The <code>Comparator</code> of
+	 * the nodes. <code>null</code> to use the natural
+	 * ordering of the nodes.
+	 * @param sortmode The <code>SortMode</code> used to
+	 * perform the <code>sort</code> operation.
+	 */
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	public ExpiringConcurrentSortableSet(final long tick, final TimeUnit unit, final int wheelsize,
+			final Comparator<? super T> comparator, final SortMode sortmode) {
+		super(comparator, sortmode);
+		if (unit.toMillis(tick) <= 0) throw new IllegalArgumentException("Tick must be at least a millisecond.");
+		if (wheelsize <= 0 || wheelsize > (1 << 30)) throw new IllegalArgumentException("Invalid wheel size: " + wheelsize);
+		this.tick = unit.toMillis(tick);
+		final int length = (wheelsize == 1) ? 1 : Integer.highestOneBit(wheelsize - 1) << 1;
+		this.mask = length - 1;
+		this.slots = new List[length];
+		this.locks = new ReentrantLock[length];
+		for (int i = 0; i < length; i++) {
+			this.slots[i] = new ArrayList<Timer<K, T, V>>();
+			this.locks[i] = new ReentrantLock();
+		}
+		this.timers = new ConcurrentHashMap<K, Timer<K, T, V>>();
+		this.expirylock = new ReentrantLock();
+		this.cursor = Long.MIN_VALUE;
+	}
+
+	/**
+	 * Add the given node that expires once it has not
+	 * been touched for the given time-to-live.
+	 * @param key The <code>K</code> key.
+	 * @param node The <code>T</code> node.
+	 * @param attachment The <code>V</code> attachment.
+	 * @param ttl The <code>long</code> time-to-live in
+	 * milliseconds.
+	 * @return <code>true</code> if the node is added.
+	 * <code>false</code> if the key already exists, or
+	 * if the node equals an existing node.
+	 */
+	public boolean add(final K key, final T node, final V attachment, final long ttl) {
+		if (ttl < 0) throw new IllegalArgumentException("Time-to-live cannot be negative.");
+		if (!this.add(key, node, attachment)) return false;
+		final SortableEntry<K, T, V> entry = this.getEntry(key);
+		// The entry has been removed concurrently.
+		if (entry == null || entry.node != node) return true;
+		final long now = this.currentTimeMillis();
+		final long deadline = (ttl > Long.MAX_VALUE - now) ? Long.MAX_VALUE : now + ttl;
+		final Timer<K, T, V> timer = new Timer<K, T, V>(entry, ttl, deadline);
+		final Timer<K, T, V> previous = this.timers.put(key, timer);
+		if (previous != null) previous.cancelled = true;
+		this.schedule(timer);
+		return true;
+	}
+
+	/**
+	 * Restart the time-to-live of the entry of the given
+	 * key from the current time.
+	 * @param key The <code>K</code> key to touch.
+	 * @return <code>true</code> if the entry is touched.
+	 * <code>false</code> if there is no such key, or if
+	 * the entry was added without a time-to-live.
+	 */
+	public boolean touch(final K key) {
+		final Timer<K, T, V> timer = this.timers.get(key);
+		if (timer == null || timer.cancelled) return false;
+		if (this.getEntry(key) != timer.entry) return false;
+		final long now = this.currentTimeMillis();
+		timer.deadline = (timer.ttl > Long.MAX_VALUE - now) ? Long.MAX_VALUE : now + timer.ttl;
+		return true;
+	}
+
+	/**
+	 * Cancel the timer of the removed entry, so that
+	 * neither the timer nor the entry is retained until
+	 * the deadline. The timer is kept if the entry is
+	 * only being repositioned by an update.
+	 */
+	@Override
+	protected void onRemoved(final K key, final T node) {
+		final Timer<K, T, V> timer = this.timers.get(key);
+		if (timer == null || timer.entry.node != node) return;
+		if (this.getEntry(key) == timer.entry) return;
+		// The cancelled timer is discarded from the wheel
+		// the next time its slot is visited.
+		timer.cancelled = true;
+		this.timers.remove(key, timer);
+	}
+
+	/**
+	 * Remove all the entries whose time-to-live has
+	 * elapsed, by visiting the slots of the ticks that
+	 * elapsed since the previous invocation.
+	 * <p>
+	 * If another thread is already expiring entries,
+	 * this method returns immediately.
+	 * @return The <code>int</code> number of removed
+	 * entries.
+	 */
+	public int expire() {
+		if (!this.expirylock.tryLock()) return 0;
+		try {
+			final long now = this.currentTimeMillis();
+			final long target = now / this.tick;
+			final long previous = this.cursor;
+			// Every slot is visited at most once per pass.
+			long from = target - this.mask;
+			if (previous != Long.MIN_VALUE && previous + 1 > from) from = previous + 1;
+			int expired = 0;
+			for (long t = from; t <= target; t++) {
+				final int index = (int)(t & this.mask);
+				final List<Timer<K, T, V>> due;
+				this.locks[index].lock();
+				try {
+					this.cursor = t;
+					due = this.slots[index];
+					if (due.isEmpty()) continue;
+					this.slots[index] = new ArrayList<Timer<K, T, V>>();
+				} finally {
+					this.locks[index].unlock();
+				}
+				for (int i = 0; i < due.size(); i++) {
+					final Timer<K, T, V> timer = due.get(i);
+					if (timer.cancelled) continue;
+					if (timer.deadline > now) {
+						// Entries removed by other operations are
+						// only discarded once they are due.
+						this.schedule(timer);
+					} else {
+						this.timers.remove(timer.entry.key, timer);
+						if (this.remove(timer.entry)) expired++;
+					}
+				}
+			}
+			return expired;
+		} finally {
+			this.expirylock.unlock();
+		}
+	}
+
+	/**
+	 * Place the given timer into the slot of the tick
+	 * of its deadline, or the next tick to be visited
+	 * if its deadline tick has already been visited.
+	 * @param timer The <code>Timer</code> to schedule.
+	 */
+	private void schedule(final Timer<K, T, V> timer) {
+		final long deadline = timer.deadline / this.tick + ((timer.deadline % this.tick == 0) ? 0 : 1);
+		while (true) {
+			final long cursor = this.cursor;
+			final long tick = (cursor == Long.MIN_VALUE) ? deadline : Math.max(deadline, cursor + 1);
+			final int index = (int)(tick & this.mask);
+			this.locks[index].lock();
+			try {
+				// Retry if the tick was visited concurrently.
+				if (this.cursor < tick) {
+					this.slots[index].add(timer);
+					return;
+				}
+			} finally {
+				this.locks[index].unlock();
+			}
+		}
+	}
+
+	/**
+	 * Retrieve the current time used to compute the
+	 * deadlines of the entries.
+	 * @return The <code>long</code> current time in
+	 * milliseconds.
+	 */
+	protected long currentTimeMillis() {
+		return System.currentTimeMillis();
+	}
+
+	/**
+	 * <code>Timer</code> defines the expiration state
+	 * of a single entry.
+	 */
+	private static final class Timer<K, T extends Comparable<T>, V> {
+		/**
+		 * The <code>SortableEntry</code> to expire.
+		 */
+		private final SortableEntry<K, T, V> entry;
+		/**
+		 * The <code>long</code> time-to-live in
+		 * milliseconds.
+		 */
+		private final long ttl;
+		/**
+		 * The <code>long</code> deadline in milliseconds.
+		 */
+		private volatile long deadline;
+		/**
+		 * The <code>boolean</code> flag indicating if
+		 * the timer has been replaced by another timer
+		 * of the same key, or if its entry is removed.
+		 */
+		private volatile boolean cancelled;
+
+		/**
+		 * Constructor of <code>Timer</code>.
+		 * @param entry The <code>SortableEntry</code>.
+		 * @param ttl The <code>long</code> time-to-live.
+		 * @param deadline The <code>long</code> deadline.
+		 */
+		private Timer(final SortableEntry<K, T, V> entry, final long ttl, final long deadline) {
+			this.entry = entry;
+			this.ttl = ttl;
+			this.deadline = deadline;
+		}
+	}
+}
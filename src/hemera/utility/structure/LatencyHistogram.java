@@ -0,0 +1,133 @@
+package hemera.utility.structure;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * <code>LatencyHistogram</code> defines the thread-safe
+ * histogram of durations in nanoseconds.
+ * <p>
+ * Every power of two range of durations is split into
+ * 16 linear buckets, thus the percentiles are accurate
+ * within about 6%, with a fixed memory footprint for
+ * the entire range of <code>long</code> values.
+ *
+ * @author Yi Wang (Neakor)
+ * @version 1.0.0
+ */
+class LatencyHistogram {
+	/**
+	 * The <code>int</code> number of bits used for the
+	 * linear buckets within a power of two range.
+	 */
+	private static final int SUB_BITS = 4;
+
+	/**
+	 * The <code>AtomicLongArray</code> of bucket counts.
+	 */
+	private final AtomicLongArray counts;
+	/**
+	 * The <code>AtomicLong</code> total of all values.
+	 */
+	private final AtomicLong total;
+	/**
+	 * The <code>AtomicLong</code> maximum value.
+	 */
+	private final AtomicLong max;
+
+	/**
+	 * Constructor of <code>LatencyHistogram</code>.
+	 */
+	LatencyHistogram() {
+		this.counts = new AtomicLongArray(64 << LatencyHistogram.SUB_BITS);
+		this.total = new AtomicLong();
+		this.max = new AtomicLong();
+	}
+
+	/**
+	 * Record the given duration.
+	 * @param nanos The <code>long</code> duration in
+	 * nanoseconds.
+	 */
+	void record(final long nanos) {
+		final long value = Math.max(0, nanos);
+		this.counts.incrementAndGet(LatencyHistogram.bucket(value));
+		this.total.addAndGet(value);
+		long current = this.max.get();
+		while (value > current && !this.max.compareAndSet(current, value)) {
+			current = this.max.get();
+		}
+	}
+
+	/**
+	 * Clear all the recorded durations.
+	 */
+	void reset() {
+		for (int i = 0; i < this.counts.length(); i++) {
+			this.counts.set(i, 0);
+		}
+		this.total.set(0);
+		this.max.set(0);
+	}
+
+	/**
+	 * Create an immutable summary of the currently
+	 * recorded durations.
+	 * @return The <code>LatencySummary</code>.
+	 */
+	LatencySummary summarize() {
+		final long[] counts = new long[this.counts.length()];
+		long count = 0;
+		for (int i = 0; i < counts.length; i++) {
+			counts[i] = this.counts.get(i);
+			count += counts[i];
+		}
+		return new LatencySummary(count, this.total.get(), LatencyHistogram.percentile(counts, count, 0.5),
+				LatencyHistogram.percentile(counts, count, 0.99), this.max.get());
+	}
+
+	/**
+	 * Retrieve the given percentile of the given counts.
+	 * @param counts The <code>long</code> bucket counts.
+	 * @param count The <code>long</code> total count.
+	 * @param percentile The <code>double</code> percentile
+	 * between 0 and 1.
+	 * @return The <code>long</code> upper bound of the
+	 * bucket that contains the percentile. <code>0</code>
+	 * if there are no values.
+	 */
+	private static long percentile(final long[] counts, final long count, final double percentile) {
+		if (count == 0) return 0;
+		final long target = (long)Math.ceil(count * percentile);
+		long seen = 0;
+		for (int i = 0; i < counts.length; i++) {
+			seen += counts[i];
+			if (seen >= target) return LatencyHistogram.upper(i);
+		}
+		return LatencyHistogram.upper(counts.length-1);
+	}
+
+	/**
+	 * Retrieve the bucket of the given value.
+	 * @param value The non-negative <code>long</code> value.
+	 * @return The <code>int</code> bucket index.
+	 */
+	private static int bucket(final long value) {
+		if (value < (1 << LatencyHistogram.SUB_BITS)) return (int)value;
+		final int exponent = 63 - Long.numberOfLeadingZeros(value) - LatencyHistogram.SUB_BITS;
+		final int sub = (int)(value >>> exponent) & ((1 << LatencyHistogram.SUB_BITS) - 1);
+		return ((exponent + 1) << LatencyHistogram.SUB_BITS) + sub;
+	}
+
+	/**
+	 * Retrieve the largest value of the given bucket.
+	 * @param bucket The <code>int</code> bucket index.
+	 * @return The <code>long</code> upper bound value.
+	 */
+	private static long upper(final int bucket) {
+		if (bucket < (1 << LatencyHistogram.SUB_BITS)) return bucket;
+		final int exponent = (bucket >>> LatencyHistogram.SUB_BITS) - 1;
+		final long sub = bucket & ((1 << LatencyHistogram.SUB_BITS) - 1);
+		return (((1L << LatencyHistogram.SUB_BITS) + sub + 1) << exponent) - 1;
+	}
+}
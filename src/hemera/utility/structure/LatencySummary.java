@@ -0,0 +1,93 @@
+package hemera.utility.structure;
+
+/**
+ * <code>LatencySummary</code> defines the immutable
+ * summary of the durations recorded by a histogram
+ * at a point in time. All durations are in nanoseconds.
+ *
+ * @author Yi Wang (Neakor)
+ * @version 1.0.0
+ */
+public final class LatencySummary {
+	/**
+	 * The <code>long</code> number of durations.
+	 */
+	private final long count;
+	/**
+	 * The <code>long</code> total of all durations.
+	 */
+	private final long total;
+	/**
+	 * The <code>long</code> median duration.
+	 */
+	private final long p50;
+	/**
+	 * The <code>long</code> 99th percentile duration.
+	 */
+	private final long p99;
+	/**
+	 * The <code>long</code> maximum duration.
+	 */
+	private final long max;
+
+	/**
+	 * Constructor of <code>LatencySummary</code>.
+	 * @param count The <code>long</code> count.
+	 * @param total The <code>long</code> total.
+	 * @param p50 The <code>long</code> median.
+	 * @param p99 The <code>long</code> 99th percentile.
+	 * @param max The <code>long</code> maximum.
+	 */
+	LatencySummary(final long count, final long total, final long p50, final long p99, final long max) {
+		this.count = count;
+		this.total = total;
+		this.p50 = p50;
+		this.p99 = p99;
+		this.max = max;
+	}
+
+	/**
+	 * Retrieve the number of recorded durations.
+	 * @return The <code>long</code> count.
+	 */
+	public long getCount() {
+		return this.count;
+	}
+
+	/**
+	 * Retrieve the total of all recorded durations.
+	 * @return The <code>long</code> total nanoseconds.
+	 */
+	public long getTotalNanos() {
+		return this.total;
+	}
+
+	/**
+	 * Retrieve the median duration.
+	 * @return The <code>long</code> nanoseconds.
+	 */
+	public long getP50Nanos() {
+		return this.p50;
+	}
+
+	/**
+	 * Retrieve the 99th percentile duration.
+	 * @return The <code>long</code> nanoseconds.
+	 */
+	public long getP99Nanos() {
+		return this.p99;
+	}
+
+	/**
+	 * Retrieve the maximum duration.
+	 * @return The <code>long</code> nanoseconds.
+	 */
+	public long getMaxNanos() {
+		return this.max;
+	}
+
+	@Override
+	public String toString() {
+		return "count=" + this.count + " p50=" + this.p50 + "ns p99=" + this.p99 + "ns max=" + this.max + "ns";
+	}
+}
@@ -0,0 +1,852 @@
+package hemera.utility.structure;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.NoSuchElementException;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock.ReadLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock.WriteLock;
+
+/**
+ * <code>LongDoubleSortableSet</code> defines the data
+ * structure implementation of a sortable set that is
+ * specialized for primitive <code>long</code> keys and
+ * <code>double</code> scores, with concurrency support.
+ * <p>
+ * The set provides the same operations as the generic
+ * <code>IConcurrentSortableSet</code>, where the node
+ * of every key is its score. The entries are ordered
+ * by their scores, and entries with the same score are
+ * ordered by their keys. Since the scores are held by
+ * the set, they can only be changed via the method
+ * <code>update</code>, which always keeps the set in
+ * its sorted order. Thus no explicit sort is required.
+ * <p>
+ * All the entries are stored in parallel primitive
+ * arrays indexed by slot. The ordering is maintained
+ * by a treap whose child links are slot indices, and
+ * the keys are mapped to their slots by an open-
+ * addressing hash table. Thus the set does not create
+ * any per-entry objects, and the operations do not
+ * allocate any memory unless the capacity has to be
+ * grown. Every entry costs about 40 bytes, compared to
+ * about 200 bytes for a boxed generic set.
+ * <p>
+ * All read-only methods only hold the read-lock thus
+ * are fully concurrent, and all write methods hold the
+ * write-lock.
+ * @param V The attachment for the entry.
+ *
+ * @author Yi Wang (Neakor)
+ * @version 1.0.0
+ */
+public class LongDoubleSortableSet<V> {
+	/**
+	 * The <code>int</code> slot index that represents
+	 * the absence of an entry. The slot at this index
+	 * is never used.
+	 */
+	private static final int NIL = 0;
+	/**
+	 * The <code>int</code> default initial capacity.
+	 */
+	private static final int DEFAULT_CAPACITY = 16;
+
+	/**
+	 * The <code>long</code> keys array indexed by slot.
+	 */
+	private long[] keys;
+	/**
+	 * The <code>double</code> scores array indexed by slot.
+	 */
+	private double[] scores;
+	/**
+	 * The <code>int</code> left child slot array. For
+	 * a free slot, this is the next free slot.
+	 */
+	private int[] lefts;
+	/**
+	 * The <code>int</code> right child slot array.
+	 */
+	private int[] rights;
+	/**
+	 * The <code>int</code> treap priority array.
+	 */
+	private int[] priorities;
+	/**
+	 * The attachment array indexed by slot.
+	 */
+	private Object[] attachments;
+	/**
+	 * The open-addressing hash table of slot indices,
+	 * using linear probing. The length is a power of
+	 * two and at least twice the slot capacity.
+	 */
+	private int[] table;
+	/**
+	 * The <code>int</code> root slot of the treap.
+	 */
+	private int root;
+	/**
+	 * The <code>int</code> next never used slot.
+	 */
+	private int next;
+	/**
+	 * The <code>int</code> head of the free slot list.
+	 */
+	private int free;
+	/**
+	 * The <code>int</code> state of the pseudo-random
+	 * priority generator.
+	 */
+	private int seed;
+	/**
+	 * The <code>int</code> number of entries.
+	 */
+	private volatile int count;
+	/**
+	 * The <code>ReadLock</code> used by all the read
+	 * operations.
+	 */
+	private final ReadLock readlock;
+	/**
+	 * The <code>WriteLock</code> used by all the write
+	 * operations.
+	 */
+	private final WriteLock writelock;
+
+	/**
+	 * Constructor of <code>LongDoubleSortableSet</code>.
+	 */
+	public LongDoubleSortableSet() {
+		this(LongDoubleSortableSet.DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * Constructor of <code>LongDoubleSortableSet</code>.
+	 * @param capacity The <code>int</code> number of
+	 * entries the set can hold before it has to grow.
+	 */
+	public LongDoubleSortableSet(final int capacity) {
+		if (capacity < 1) throw new IllegalArgumentException("Capacity must be positive.");
+		final int slots = capacity + 1;
+		this.keys = new long[slots];
+		this.scores = new double[slots];
+		this.lefts = new int[slots];
+		this.rights = new int[slots];
+		this.priorities = new int[slots];
+		this.attachments = new Object[slots];
+		this.table = new int[LongDoubleSortableSet.tableLength(slots)];
+		this.root = LongDoubleSortableSet.NIL;
+		this.next = 1;
+		this.free = LongDoubleSortableSet.NIL;
+		this.seed = (int)System.nanoTime() | 1;
+		final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+		this.readlock = lock.readLock();
+		this.writelock = lock.writeLock();
+	}
+
+	/**
+	 * Add the given key with the given score to the set
+	 * if the set does not already contain the key.
+	 * @param key The <code>long</code> key.
+	 * @param score The <code>double</code> score. It
+	 * cannot be <code>NaN</code>.
+	 * @param attachment The <code>V</code> attachment.
+	 * @return <code>true</code> if the entry is added.
+	 * <code>false</code> if the key already exists.
+	 */
+	public boolean add(final long key, final double score, final V attachment) {
+		LongDoubleSortableSet.checkScore(score);
+		this.writelock.lock();
+		try {
+			return this.insert(key, score, attachment);
+		} finally {
+			this.writelock.unlock();
+		}
+	}
+
+	/**
+	 * Add all the given entries to the set in bulk,
+	 * with a single lock acquisition.
+	 * @param keys The <code>long</code> keys array.
+	 * @param scores The <code>double</code> scores
+	 * array of the same length.
+	 * @param attachments The <code>V</code> attachments
+	 * array of the same length. <code>null</code> if
+	 * the entries do not have attachments.
+	 * @return The <code>BitSet</code> where the bit at
+	 * the index of an entry is set if it is added.
+	 */
+	public BitSet addAll(final long[] keys, final double[] scores, final V[] attachments) {
+		if (scores.length != keys.length || (attachments != null && attachments.length != keys.length)) {
+			throw new IllegalArgumentException("Arrays must have the same length.");
+		}
+		for (int i = 0; i < scores.length; i++) {
+			LongDoubleSortableSet.checkScore(scores[i]);
+		}
+		final BitSet result = new BitSet(keys.length);
+		this.writelock.lock();
+		try {
+			for (int i = 0; i < keys.length; i++) {
+				final V attachment = (attachments == null) ? null : attachments[i];
+				if (this.insert(keys[i], scores[i], attachment)) result.set(i);
+			}
+		} finally {
+			this.writelock.unlock();
+		}
+		return result;
+	}
+
+	/**
+	 * Insert the given entry.
+	 * <p>
+	 * This method must be invoked while holding the
+	 * write-lock.
+	 * @param key The <code>long</code> key.
+	 * @param score The <code>double</code> score.
+	 * @param attachment The <code>V</code> attachment.
+	 * @return <code>true</code> if the entry is added.
+	 * <code>false</code> if the key already exists.
+	 */
+	private boolean insert(final long key, final double score, final V attachment) {
+		if (this.find(key) != LongDoubleSortableSet.NIL) return false;
+		final int slot = this.allocate();
+		this.keys[slot] = key;
+		this.scores[slot] = score;
+		this.attachments[slot] = attachment;
+		this.put(slot);
+		this.root = this.attach(this.root, slot);
+		this.count++;
+		return true;
+	}
+
+	/**
+	 * Remove the entry of the given key.
+	 * @param key The <code>long</code> key.
+	 * @return <code>true</code> if the entry is removed.
+	 * <code>false</code> if there is no such key.
+	 */
+	public boolean remove(final long key) {
+		this.writelock.lock();
+		try {
+			return this.delete(key);
+		} finally {
+			this.writelock.unlock();
+		}
+	}
+
+	/**
+	 * Remove the entries of all the given keys in bulk,
+	 * with a single lock acquisition.
+	 * @param keys The <code>long</code> keys array.
+	 * @return The <code>BitSet</code> where the bit at
+	 * the index of a key is set if its entry is removed.
+	 */
+	public BitSet removeAll(final long[] keys) {
+		final BitSet result = new BitSet(keys.length);
+		this.writelock.lock();
+		try {
+			for (int i = 0; i < keys.length; i++) {
+				if (this.delete(keys[i])) result.set(i);
+			}
+		} finally {
+			this.writelock.unlock();
+		}
+		return result;
+	}
+
+	/**
+	 * Delete the entry of the given key.
+	 * <p>
+	 * This method must be invoked while holding the
+	 * write-lock.
+	 * @param key The <code>long</code> key.
+	 * @return <code>true</code> if the entry is deleted.
+	 * <code>false</code> if there is no such key.
+	 */
+	private boolean delete(final long key) {
+		final int slot = this.find(key);
+		if (slot == LongDoubleSortableSet.NIL) return false;
+		this.root = this.detach(this.root, slot);
+		this.release(slot);
+		return true;
+	}
+
+	/**
+	 * Update the score of the given key, and move the
+	 * entry into its new position in logarithmic time.
+	 * @param key The <code>long</code> key.
+	 * @param score The new <code>double</code> score.
+	 * It cannot be <code>NaN</code>.
+	 * @return <code>true</code> if the entry is updated.
+	 * <code>false</code> if there is no such key.
+	 */
+	public boolean update(final long key, final double score) {
+		LongDoubleSortableSet.checkScore(score);
+		this.writelock.lock();
+		try {
+			final int slot = this.find(key);
+			if (slot == LongDoubleSortableSet.NIL) return false;
+			this.root = this.detach(this.root, slot);
+			this.scores[slot] = score;
+			this.root = this.attach(this.root, slot);
+			return true;
+		} finally {
+			this.writelock.unlock();
+		}
+	}
+
+	/**
+	 * Atomically remove the entry with the lowest score.
+	 * @return The <code>long</code> key of the removed
+	 * entry.
+	 * @throws NoSuchElementException If the set is empty.
+	 */
+	public long pollFirst() {
+		this.writelock.lock();
+		try {
+			if (this.root == LongDoubleSortableSet.NIL) throw new NoSuchElementException();
+			final int slot = this.unlinkExtreme(true);
+			this.release(slot);
+			return this.keys[slot];
+		} finally {
+			this.writelock.unlock();
+		}
+	}
+
+	/**
+	 * Atomically remove the entry with the highest score.
+	 * @return The <code>long</code> key of the removed
+	 * entry.
+	 * @throws NoSuchElementException If the set is empty.
+	 */
+	public long pollLast() {
+		this.writelock.lock();
+		try {
+			if (this.root == LongDoubleSortableSet.NIL) throw new NoSuchElementException();
+			final int slot = this.unlinkExtreme(false);
+			this.release(slot);
+			return this.keys[slot];
+		} finally {
+			this.writelock.unlock();
+		}
+	}
+
+	/**
+	 * Atomically remove up to the given number of the
+	 * entries with the lowest scores, and store them in
+	 * the given arrays in their sorted order.
+	 * @param keys The <code>long</code> array to store
+	 * the removed keys.
+	 * @param scores The <code>double</code> array to
+	 * store the removed scores. <code>null</code> if
+	 * the scores are not needed.
+	 * @param count The <code>int</code> maximum number
+	 * of entries to remove.
+	 * @return The <code>int</code> number of entries
+	 * removed. <code>0</code> if the set is empty.
+	 */
+	public int pollFirst(final long[] keys, final double[] scores, final int count) {
+		final int limit = Math.min(count, keys.length);
+		int polled = 0;
+		this.writelock.lock();
+		try {
+			while (polled < limit && this.root != LongDoubleSortableSet.NIL) {
+				final int slot = this.unlinkExtreme(true);
+				keys[polled] = this.keys[slot];
+				if (scores != null) scores[polled] = this.scores[slot];
+				this.release(slot);
+				polled++;
+			}
+		} finally {
+			this.writelock.unlock();
+		}
+		return polled;
+	}
+
+	/**
+	 * Retrieve the key of the entry with the lowest score.
+	 * @return The <code>long</code> key.
+	 * @throws NoSuchElementException If the set is empty.
+	 */
+	public long firstKey() {
+		this.readlock.lock();
+		try {
+			return this.keys[this.checkedExtreme(true)];
+		} finally {
+			this.readlock.unlock();
+		}
+	}
+
+	/**
+	 * Retrieve the key of the entry with the highest
+	 * score.
+	 * @return The <code>long</code> key.
+	 * @throws NoSuchElementException If the set is empty.
+	 */
+	public long lastKey() {
+		this.readlock.lock();
+		try {
+			return this.keys[this.checkedExtreme(false)];
+		} finally {
+			this.readlock.unlock();
+		}
+	}
+
+	/**
+	 * Retrieve the lowest score in the set.
+	 * @return The <code>double</code> score.
+	 * <code>NaN</code> if the set is empty.
+	 */
+	public double firstScore() {
+		this.readlock.lock();
+		try {
+			if (this.root == LongDoubleSortableSet.NIL) return Double.NaN;
+			return this.scores[this.extreme(true)];
+		} finally {
+			this.readlock.unlock();
+		}
+	}
+
+	/**
+	 * Retrieve the highest score in the set.
+	 * @return The <code>double</code> score.
+	 * <code>NaN</code> if the set is empty.
+	 */
+	public double lastScore() {
+		this.readlock.lock();
+		try {
+			if (this.root == LongDoubleSortableSet.NIL) return Double.NaN;
+			return this.scores[this.extreme(false)];
+		} finally {
+			this.readlock.unlock();
+		}
+	}
+
+	/**
+	 * Retrieve the attachment of the entry with the
+	 * lowest score.
+	 * @return The <code>V</code> attachment.
+	 * <code>null</code> if the set is empty.
+	 */
+	@SuppressWarnings("unchecked")
+	public V firstAttachment() {
+		this.readlock.lock();
+		try {
+			if (this.root == LongDoubleSortableSet.NIL) return null;
+			return (V)this.attachments[this.extreme(true)];
+		} finally {
+			this.readlock.unlock();
+		}
+	}
+
+	/**
+	 * Retrieve the attachment of the entry with the
+	 * highest score.
+	 * @return The <code>V</code> attachment.
+	 * <code>null</code> if the set is empty.
+	 */
+	@SuppressWarnings("unchecked")
+	public V lastAttachment() {
+		this.readlock.lock();
+		try {
+			if (this.root == LongDoubleSortableSet.NIL) return null;
+			return (V)this.attachments[this.extreme(false)];
+		} finally {
+			this.readlock.unlock();
+		}
+	}
+
+	/**
+	 * Check if the set contains the given key.
+	 * @param key The <code>long</code> key to check.
+	 * @return <code>true</code> if the key exists.
+	 */
+	public boolean contains(final long key) {
+		this.readlock.lock();
+		try {
+			return this.find(key) != LongDoubleSortableSet.NIL;
+		} finally {
+			this.readlock.unlock();
+		}
+	}
+
+	/**
+	 * Retrieve the score of the given key.
+	 * @param key The <code>long</code> key to check.
+	 * @return The <code>double</code> score.
+	 * <code>NaN</code> if there is no such key.
+	 */
+	public double getScore(final long key) {
+		this.readlock.lock();
+		try {
+			final int slot = this.find(key);
+			if (slot == LongDoubleSortableSet.NIL) return Double.NaN;
+			return this.scores[slot];
+		} finally {
+			this.readlock.unlock();
+		}
+	}
+
+	/**
+	 * Retrieve the attachment of the given key.
+	 * @param key The <code>long</code> key to check.
+	 * @return The <code>V</code> attachment.
+	 * <code>null</code> if there is no such key.
+	 */
+	@SuppressWarnings("unchecked")
+	public V getAttachment(final long key) {
+		this.readlock.lock();
+		try {
+			final int slot = this.find(key);
+			if (slot == LongDoubleSortableSet.NIL) return null;
+			return (V)this.attachments[slot];
+		} finally {
+			this.readlock.unlock();
+		}
+	}
+
+	/**
+	 * Retrieve the number of entries in the set.
+	 * <p>
+	 * This is a constant time operation but may not
+	 * reflect the most up-to-date value.
+	 * @return The <code>int</code> number of entries.
+	 */
+	public int size() {
+		return this.count;
+	}
+
+	/**
+	 * Retrieve all the contained keys in the ascending
+	 * order of their scores.
+	 * @return The <code>long</code> array of all keys.
+	 */
+	public long[] getAllKeys() {
+		this.readlock.lock();
+		try {
+			final long[] result = new long[this.count];
+			// The expected depth of a treap is logarithmic,
+			// grow the stack in the rare case it is deeper.
+			int[] stack = new int[64];
+			int depth = 0;
+			int index = 0;
+			int current = this.root;
+			while (current != LongDoubleSortableSet.NIL || depth > 0) {
+				while (current != LongDoubleSortableSet.NIL) {
+					if (depth == stack.length) stack = Arrays.copyOf(stack, depth * 2);
+					stack[depth++] = current;
+					current = this.lefts[current];
+				}
+				current = stack[--depth];
+				result[index++] = this.keys[current];
+				current = this.rights[current];
+			}
+			return result;
+		} finally {
+			this.readlock.unlock();
+		}
+	}
+
+	/**
+	 * Attach the given slot into the given subtree.
+	 * @param node The root slot of the subtree.
+	 * @param slot The <code>int</code> slot to attach.
+	 * @return The new root slot of the subtree.
+	 */
+	private int attach(final int node, final int slot) {
+		if (node == LongDoubleSortableSet.NIL) return slot;
+		if (this.precedes(slot, node)) {
+			final int left = this.attach(this.lefts[node], slot);
+			this.lefts[node] = left;
+			if (this.priorities[left] > this.priorities[node]) {
+				// Rotate right.
+				this.lefts[node] = this.rights[left];
+				this.rights[left] = node;
+				return left;
+			}
+		} else {
+			final int right = this.attach(this.rights[node], slot);
+			this.rights[node] = right;
+			if (this.priorities[right] > this.priorities[node]) {
+				// Rotate left.
+				this.rights[node] = this.lefts[right];
+				this.lefts[right] = node;
+				return right;
+			}
+		}
+		return node;
+	}
+
+	/**
+	 * Detach the given slot from the given subtree.
+	 * The slot must be contained in the subtree, and
+	 * its child links are cleared once detached.
+	 * @param node The root slot of the subtree.
+	 * @param slot The <code>int</code> slot to detach.
+	 * @return The new root slot of the subtree.
+	 */
+	private int detach(final int node, final int slot) {
+		if (node == slot) {
+			final int joined = this.join(this.lefts[node], this.rights[node]);
+			this.lefts[node] = LongDoubleSortableSet.NIL;
+			this.rights[node] = LongDoubleSortableSet.NIL;
+			return joined;
+		}
+		if (this.precedes(slot, node)) this.lefts[node] = this.detach(this.lefts[node], slot);
+		else this.rights[node] = this.detach(this.rights[node], slot);
+		return node;
+	}
+
+	/**
+	 * Join the two given subtrees, where all entries of
+	 * the first subtree precede the ones of the second.
+	 * @param first The root slot of the first subtree.
+	 * @param second The root slot of the second subtree.
+	 * @return The root slot of the joined tree.
+	 */
+	private int join(final int first, final int second) {
+		if (first == LongDoubleSortableSet.NIL) return second;
+		if (second == LongDoubleSortableSet.NIL) return first;
+		if (this.priorities[first] > this.priorities[second]) {
+			this.rights[first] = this.join(this.rights[first], second);
+			return first;
+		} else {
+			this.lefts[second] = this.join(first, this.lefts[second]);
+			return second;
+		}
+	}
+
+	/**
+	 * Unlink the first or the last slot from the treap.
+	 * The treap must not be empty.
+	 * <p>
+	 * The extreme slot has at most one child, which
+	 * simply takes its place, thus no comparison or
+	 * rotation is needed.
+	 * @param first <code>true</code> to unlink the first
+	 * slot. <code>false</code> to unlink the last.
+	 * @return The <code>int</code> unlinked slot.
+	 */
+	private int unlinkExtreme(final boolean first) {
+		final int[] inner = first ? this.lefts : this.rights;
+		final int[] outer = first ? this.rights : this.lefts;
+		int parent = LongDoubleSortableSet.NIL;
+		int current = this.root;
+		while (inner[current] != LongDoubleSortableSet.NIL) {
+			parent = current;
+			current = inner[current];
+		}
+		if (parent == LongDoubleSortableSet.NIL) this.root = outer[current];
+		else inner[parent] = outer[current];
+		return current;
+	}
+
+	/**
+	 * Retrieve the first or the last slot, checking
+	 * that the set is not empty.
+	 * @param first <code>true</code> to retrieve the
+	 * first slot. <code>false</code> for the last.
+	 * @return The <code>int</code> slot.
+	 * @throws NoSuchElementException If the set is empty.
+	 */
+	private int checkedExtreme(final boolean first) {
+		if (this.root == LongDoubleSortableSet.NIL) throw new NoSuchElementException();
+		return this.extreme(first);
+	}
+
+	/**
+	 * Retrieve the first or the last slot. The treap
+	 * must not be empty.
+	 * @param first <code>true</code> to retrieve the
+	 * first slot. <code>false</code> for the last.
+	 * @return The <code>int</code> slot.
+	 */
+	private int extreme(final boolean first) {
+		final int[] inner = first ? this.lefts : this.rights;
+		int current = this.root;
+		while (inner[current] != LongDoubleSortableSet.NIL) {
+			current = inner[current];
+		}
+		return current;
+	}
+
+	/**
+	 * Check if the entry at the first slot precedes the
+	 * entry at the second slot, by comparing the scores
+	 * then the keys.
+	 * @param a The first <code>int</code> slot.
+	 * @param b The second <code>int</code> slot.
+	 * @return <code>true</code> if the first precedes.
+	 */
+	private boolean precedes(final int a, final int b) {
+		final double sa = this.scores[a];
+		final double sb = this.scores[b];
+		if (sa != sb) return sa < sb;
+		return this.keys[a] < this.keys[b];
+	}
+
+	/**
+	 * Allocate a slot for a new entry, growing the
+	 * capacity if all the slots are used.
+	 * @return The <code>int</code> allocated slot.
+	 */
+	private int allocate() {
+		final int slot;
+		if (this.free != LongDoubleSortableSet.NIL) {
+			slot = this.free;
+			this.free = this.lefts[slot];
+		} else {
+			if (this.next == this.keys.length) this.grow();
+			slot = this.next++;
+		}
+		this.lefts[slot] = LongDoubleSortableSet.NIL;
+		this.rights[slot] = LongDoubleSortableSet.NIL;
+		this.priorities[slot] = this.nextPriority();
+		return slot;
+	}
+
+	/**
+	 * Release the given slot that has been unlinked
+	 * from the treap, and remove its key from the
+	 * hash table.
+	 * @param slot The <code>int</code> slot to release.
+	 */
+	private void release(final int slot) {
+		this.unmap(this.keys[slot]);
+		this.attachments[slot] = null;
+		this.lefts[slot] = this.free;
+		this.free = slot;
+		this.count--;
+	}
+
+	/**
+	 * Double the slot capacity and rebuild the hash
+	 * table. Slot indices remain valid.
+	 */
+	private void grow() {
+		final int slots = this.keys.length * 2;
+		this.keys = Arrays.copyOf(this.keys, slots);
+		this.scores = Arrays.copyOf(this.scores, slots);
+		this.lefts = Arrays.copyOf(this.lefts, slots);
+		this.rights = Arrays.copyOf(this.rights, slots);
+		this.priorities = Arrays.copyOf(this.priorities, slots);
+		this.attachments = Arrays.copyOf(this.attachments, slots);
+		final int[] old = this.table;
+		this.table = new int[LongDoubleSortableSet.tableLength(slots)];
+		for (int i = 0; i < old.length; i++) {
+			if (old[i] != LongDoubleSortableSet.NIL) this.put(old[i]);
+		}
+	}
+
+	/**
+	 * Find the slot of the given key.
+	 * @param key The <code>long</code> key to find.
+	 * @return The <code>int</code> slot.
+	 * <code>NIL</code> if there is no such key.
+	 */
+	private int find(final long key) {
+		final int mask = this.table.length - 1;
+		int index = LongDoubleSortableSet.hash(key) & mask;
+		while (true) {
+			final int slot = this.table[index];
+			if (slot == LongDoubleSortableSet.NIL || this.keys[slot] == key) return slot;
+			index = (index + 1) & mask;
+		}
+	}
+
+	/**
+	 * Map the key of the given slot in the hash table.
+	 * The key must not already be mapped.
+	 * @param slot The <code>int</code> slot to map.
+	 */
+	private void put(final int slot) {
+		final int mask = this.table.length - 1;
+		int index = LongDoubleSortableSet.hash(this.keys[slot]) & mask;
+		while (this.table[index] != LongDoubleSortableSet.NIL) {
+			index = (index + 1) & mask;
+		}
+		this.table[index] = slot;
+	}
+
+	/**
+	 * Unmap the given key from the hash table. The key
+	 * must be mapped.
+	 * <p>
+	 * The following entries of the probe sequence are
+	 * shifted backwards to fill the gap, thus the table
+	 * never contains deletion markers.
+	 * @param key The <code>long</code> key to unmap.
+	 */
+	private void unmap(final long key) {
+		final int mask = this.table.length - 1;
+		int gap = LongDoubleSortableSet.hash(key) & mask;
+		while (this.keys[this.table[gap]] != key) {
+			gap = (gap + 1) & mask;
+		}
+		int index = gap;
+		while (true) {
+			index = (index + 1) & mask;
+			final int slot = this.table[index];
+			if (slot == LongDoubleSortableSet.NIL) break;
+			final int home = LongDoubleSortableSet.hash(this.keys[slot]) & mask;
+			// Move the entry if its home is not within the
+			// probe range between the gap and its index.
+			if (((index - home) & mask) >= ((index - gap) & mask)) {
+				this.table[gap] = slot;
+				gap = index;
+			}
+		}
+		this.table[gap] = LongDoubleSortableSet.NIL;
+	}
+
+	/**
+	 * Generate the next pseudo-random priority.
+	 * @return The <code>int</code> priority.
+	 */
+	private int nextPriority() {
+		// Xorshift generator.
+		int x = this.seed;
+		x ^= (x << 13);
+		x ^= (x >>> 17);
+		x ^= (x << 5);
+		this.seed = x;
+		return x;
+	}
+
+	/**
+	 * Check the given score is a valid score.
+	 * @param score The <code>double</code> score.
+	 */
+	private static void checkScore(final double score) {
+		if (Double.isNaN(score)) throw new IllegalArgumentException("Score cannot be NaN.");
+	}
+
+	/**
+	 * Retrieve the hash table length for the given
+	 * slot capacity.
+	 * @param slots The <code>int</code> slot capacity.
+	 * @return The <code>int</code> power of two length.
+	 */
+	private static int tableLength(final int slots) {
+		return Integer.highestOneBit(slots - 1) << 2;
+	}
+
+	/**
+	 * Compute the hash of the given key.
+	 * @param key The <code>long</code> key.
+	 * @return The <code>int</code> hash.
+	 */
+	private static int hash(final long key) {
+		// Finalizer of MurmurHash3, spreads sequential
+		// identifiers across the table.
+		long h = key;
+		h ^= (h >>> 33);
+		h *= 0xff51afd7ed558ccdL;
+		h ^= (h >>> 33);
+		h *= 0xc4ceb9fe1a85ec53L;
+		h ^= (h >>> 33);
+		return (int)h;
+	}
+}
@@ -0,0 +1,1112 @@
+package hemera.utility.structure;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock.ReadLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock.WriteLock;
+
+import hemera.utility.structure.interfaces.IBinaryCodec;
+import hemera.utility.structure.interfaces.IConcurrentSortableSet;
+import hemera.utility.structure.interfaces.INodeMutator;
+import hemera.utility.structure.interfaces.ISortableEntry;
+
+/**
+ * <code>MappedConcurrentSortableSet</code> defines the
+ * implementation of <code>IConcurrentSortableSet</code>
+ * that stores all of its contents in a memory-mapped
+ * file outside of the heap.
+ * <p>
+ * Every entry is stored as a fixed-size record that
+ * contains the encoded key, node and attachment, using
+ * the given <code>IBinaryCodec</code>. The ordering is
+ * maintained by a treap whose links are record indices,
+ * and the keys are located through a chained hash table
+ * of record indices. Both indices are stored in the same
+ * file, thus the heap usage of the set is constant
+ * regardless of its size, and an existing file is
+ * re-opened by mapping it instead of re-inserting all
+ * of its entries.
+ * <p>
+ * The nodes, keys and attachments retrieved from the
+ * set are decoded copies. Modifying a retrieved node
+ * does not affect the set, thus the ordering state of
+ * a node can only be changed via <code>update</code>,
+ * which always keeps the set in its sorted order. For
+ * the same reason, the nodes are not compared by their
+ * identity. Nodes that compare as equal, including the
+ * ones that return -1 for equal values as required by
+ * <code>IConcurrentSortableSet</code>, are ordered by
+ * their insertion, and only the keys must be unique.
+ * <p>
+ * The hash code of the keys must be stable across the
+ * restarts of the virtual machine. The file is written
+ * through the operating system page cache, and the
+ * records and both indices are modified in place. The
+ * file is only guaranteed to be consistent after the
+ * method <code>flush</code> or <code>close</code>
+ * returns. The header is marked as modified before
+ * the first modification following either, thus if
+ * the process terminates in between, re-opening the
+ * file fails instead of trusting partially written
+ * indices. The set must be closed when no longer used.
+ * <p>
+ * All read-only methods only hold the read-lock thus
+ * are fully concurrent, and all write methods hold the
+ * write-lock.
+ *
+ * @author Yi Wang (Neakor)
+ * @version 1.0.0
+ */
+public class MappedConcurrentSortableSet<K, T extends Comparable<T>, V> implements IConcurrentSortableSet<K, T, V>, Closeable {
+	/**
+	 * The <code>long</code> file format identifier.
+	 */
+	private static final long MAGIC = 0x48454d5353455431L;
+	/**
+	 * The <code>int</code> file format version.
+	 */
+	private static final int VERSION = 1;
+	/**
+	 * The <code>int</code> number of bytes of the file
+	 * header.
+	 */
+	private static final int HEADER_SIZE = 64;
+	/**
+	 * The <code>int</code> maximum number of bytes of a
+	 * single mapped record segment.
+	 */
+	private static final int SEGMENT_SIZE = 1 << 30;
+	/**
+	 * The <code>int</code> minimum number of records of
+	 * a single mapped record segment.
+	 */
+	private static final int MIN_SEGMENT_RECORDS = 1024;
+	/**
+	 * The <code>int</code> maximum number of buckets.
+	 */
+	private static final int MAX_BUCKETS = 1 << 28;
+	/**
+	 * The <code>int</code> record index that represents
+	 * the absence of a record. The record at this index
+	 * is never used.
+	 */
+	private static final int NIL = 0;
+	/**
+	 * The record flag of a used record.
+	 */
+	private static final byte FLAG_USED = 0x1;
+	/**
+	 * The record flag of a record with an attachment.
+	 */
+	private static final byte FLAG_ATTACHMENT = 0x2;
+	/**
+	 * The header offset of the format identifier.
+	 */
+	private static final int HEADER_MAGIC = 0;
+	/**
+	 * The header offset of the format version.
+	 */
+	private static final int HEADER_VERSION = 8;
+	/**
+	 * The header offset of the record size.
+	 */
+	private static final int HEADER_RECORD_SIZE = 12;
+	/**
+	 * The header offset of the number of buckets.
+	 */
+	private static final int HEADER_BUCKETS = 16;
+	/**
+	 * The header offset of the records per segment.
+	 */
+	private static final int HEADER_SEGMENT_RECORDS = 40;
+	/**
+	 * The header offset of the root record.
+	 */
+	private static final int HEADER_ROOT = 20;
+	/**
+	 * The header offset of the number of entries.
+	 */
+	private static final int HEADER_COUNT = 24;
+	/**
+	 * The header offset of the next never used record.
+	 */
+	private static final int HEADER_NEXT = 28;
+	/**
+	 * The header offset of the free record list.
+	 */
+	private static final int HEADER_FREE = 32;
+	/**
+	 * The header offset of the priority generator state.
+	 */
+	private static final int HEADER_SEED = 36;
+	/**
+	 * The header offset of the modification state.
+	 */
+	private static final int HEADER_STATE = 44;
+	/**
+	 * The header state of a consistent file.
+	 */
+	private static final int STATE_CLEAN = 0;
+	/**
+	 * The header state of a file modified since it was
+	 * last flushed.
+	 */
+	private static final int STATE_MODIFIED = 1;
+	/**
+	 * The record offset of the key hash.
+	 */
+	private static final int RECORD_HASH = 0;
+	/**
+	 * The record offset of the left child record.
+	 */
+	private static final int RECORD_LEFT = 4;
+	/**
+	 * The record offset of the right child record.
+	 */
+	private static final int RECORD_RIGHT = 8;
+	/**
+	 * The record offset of the treap priority.
+	 */
+	private static final int RECORD_PRIORITY = 12;
+	/**
+	 * The record offset of the next record in the same
+	 * bucket, or the next free record.
+	 */
+	private static final int RECORD_CHAIN = 16;
+	/**
+	 * The record offset of the flags.
+	 */
+	private static final int RECORD_FLAGS = 20;
+	/**
+	 * The record offset of the key, which is followed
+	 * by the node and the attachment.
+	 */
+	private static final int RECORD_KEY = 21;
+
+	/**
+	 * The <code>IBinaryCodec</code> of the keys.
+	 */
+	private final IBinaryCodec<K> keycodec;
+	/**
+	 * The <code>IBinaryCodec</code> of the nodes.
+	 */
+	private final IBinaryCodec<T> nodecodec;
+	/**
+	 * The <code>IBinaryCodec</code> of the attachments.
+	 */
+	private final IBinaryCodec<V> attachmentcodec;
+	/**
+	 * The <code>int</code> record offset of the node.
+	 */
+	private final int nodeoffset;
+	/**
+	 * The <code>int</code> record offset of attachment.
+	 */
+	private final int attachmentoffset;
+	/**
+	 * The <code>int</code> number of bytes of a record.
+	 */
+	private final int recordsize;
+	/**
+	 * The <code>int</code> number of records of a single
+	 * mapped segment.
+	 */
+	private final int segmentrecords;
+	/**
+	 * The <code>int</code> number of hash buckets. This
+	 * value is a power of two.
+	 */
+	private final int buckets;
+	/**
+	 * The <code>RandomAccessFile</code> of the set.
+	 */
+	private final RandomAccessFile file;
+	/**
+	 * The <code>FileChannel</code> of the file.
+	 */
+	private final FileChannel channel;
+	/**
+	 * The <code>MappedByteBuffer</code> of the header.
+	 */
+	private final MappedByteBuffer header;
+	/**
+	 * The <code>MappedByteBuffer</code> of the buckets.
+	 */
+	private final MappedByteBuffer table;
+	/**
+	 * The <code>MappedByteBuffer</code> record segments.
+	 */
+	private MappedByteBuffer[] segments;
+	/**
+	 * The <code>int</code> root record of the treap.
+	 */
+	private int root;
+	/**
+	 * The <code>int</code> next never used record.
+	 */
+	private int next;
+	/**
+	 * The <code>int</code> head of free record list.
+	 */
+	private int free;
+	/**
+	 * The <code>int</code> state of the pseudo-random
+	 * priority generator.
+	 */
+	private int seed;
+	/**
+	 * The <code>int</code> number of entries.
+	 */
+	private volatile int count;
+	/**
+	 * The <code>boolean</code> flag indicating if the
+	 * file has been modified since it was last flushed.
+	 */
+	private boolean modified;
+	/**
+	 * The <code>ReadLock</code> used by all the read
+	 * operations.
+	 */
+	private final ReadLock readlock;
+	/**
+	 * The <code>WriteLock</code> used by all the write
+	 * operations.
+	 */
+	private final WriteLock writelock;
+
+	/**
+	 * Constructor of <code>MappedConcurrentSortableSet</code>.
+	 * <p>
+	 * If the given file exists, its contents are mapped
+	 * and retained. Otherwise a new empty set is created
+	 * in the file.
+	 * @param path The <code>File</code> to store the set.
+	 * @param capacity The <code>int</code> expected number
+	 * of entries, used to size the hash buckets and the
+	 * record segments of a new file. It is ignored when re-opening a file.
+	 * @param keycodec The <code>IBinaryCodec</code> of
+	 * the keys.
+	 * @param nodecodec The <code>IBinaryCodec</code> of
+	 * the nodes.
+	 * @param attachmentcodec The <code>IBinaryCodec</code>
+	 * of the attachments.
+	 * @throws IOException If mapping the file failed, if
+	 * the existing file is not a compatible set, or if it
+	 * was not flushed after its last modification.
+	 */
+	public MappedConcurrentSortableSet(final File path, final int capacity, final IBinaryCodec<K> keycodec,
+			final IBinaryCodec<T> nodecodec, final IBinaryCodec<V> attachmentcodec) throws IOException {
+		this.keycodec = keycodec;
+		this.nodecodec = nodecodec;
+		this.attachmentcodec = attachmentcodec;
+		this.nodeoffset = MappedConcurrentSortableSet.RECORD_KEY + keycodec.getSize();
+		this.attachmentoffset = this.nodeoffset + nodecodec.getSize();
+		this.recordsize = this.attachmentoffset + attachmentcodec.getSize();
+		final boolean exists = path.exists() && path.length() > 0;
+		this.file = new RandomAccessFile(path, "rw");
+		this.channel = this.file.getChannel();
+		try {
+			this.header = this.channel.map(MapMode.READ_WRITE, 0, MappedConcurrentSortableSet.HEADER_SIZE);
+			if (exists) {
+				if (this.header.getLong(MappedConcurrentSortableSet.HEADER_MAGIC) != MappedConcurrentSortableSet.MAGIC ||
+						this.header.getInt(MappedConcurrentSortableSet.HEADER_VERSION) != MappedConcurrentSortableSet.VERSION) {
+					throw new IOException("File is not a sortable set: " + path);
+				}
+				if (this.header.getInt(MappedConcurrentSortableSet.HEADER_RECORD_SIZE) != this.recordsize) {
+					throw new IOException("File record size does not match the codecs: " + path);
+				}
+				if (this.header.getInt(MappedConcurrentSortableSet.HEADER_STATE) != MappedConcurrentSortableSet.STATE_CLEAN) {
+					throw new IOException("File was modified without being flushed or closed: " + path);
+				}
+				this.buckets = this.header.getInt(MappedConcurrentSortableSet.HEADER_BUCKETS);
+				this.segmentrecords = this.header.getInt(MappedConcurrentSortableSet.HEADER_SEGMENT_RECORDS);
+				this.root = this.header.getInt(MappedConcurrentSortableSet.HEADER_ROOT);
+				this.count = this.header.getInt(MappedConcurrentSortableSet.HEADER_COUNT);
+				this.next = this.header.getInt(MappedConcurrentSortableSet.HEADER_NEXT);
+				this.free = this.header.getInt(MappedConcurrentSortableSet.HEADER_FREE);
+				this.seed = this.header.getInt(MappedConcurrentSortableSet.HEADER_SEED);
+			} else {
+				int buckets = 16;
+				while (buckets < capacity && buckets < MappedConcurrentSortableSet.MAX_BUCKETS) buckets <<= 1;
+				this.buckets = buckets;
+				// Size the segments to the expected capacity,
+				// so a small set does not map a large file.
+				final int maxrecords = Math.max(1, MappedConcurrentSortableSet.SEGMENT_SIZE / this.recordsize);
+				this.segmentrecords = Math.min(maxrecords, Math.max(capacity, MappedConcurrentSortableSet.MIN_SEGMENT_RECORDS));
+				this.root = MappedConcurrentSortableSet.NIL;
+				this.count = 0;
+				this.next = 1;
+				this.free = MappedConcurrentSortableSet.NIL;
+				this.seed = (int)System.nanoTime() | 1;
+				this.header.putLong(MappedConcurrentSortableSet.HEADER_MAGIC, MappedConcurrentSortableSet.MAGIC);
+				this.header.putInt(MappedConcurrentSortableSet.HEADER_VERSION, MappedConcurrentSortableSet.VERSION);
+				this.header.putInt(MappedConcurrentSortableSet.HEADER_RECORD_SIZE, this.recordsize);
+				this.header.putInt(MappedConcurrentSortableSet.HEADER_BUCKETS, this.buckets);
+				this.header.putInt(MappedConcurrentSortableSet.HEADER_SEGMENT_RECORDS, this.segmentrecords);
+				this.writeHeader();
+			}
+			this.table = this.channel.map(MapMode.READ_WRITE, MappedConcurrentSortableSet.HEADER_SIZE, (long)this.buckets * 4);
+			// Map all the segments that contain used records.
+			this.segments = new MappedByteBuffer[0];
+			while ((long)this.segments.length * this.segmentrecords < this.next) this.mapSegment();
+		} catch (final IOException e) {
+			this.file.close();
+			throw e;
+		}
+		final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+		this.readlock = lock.readLock();
+		this.writelock = lock.writeLock();
+	}
+
+	@Override
+	public boolean add(final K key, final T node, final V attachment) {
+		this.writelock.lock();
+		try {
+			return this.insert(key, node, attachment);
+		} finally {
+			this.writelock.unlock();
+		}
+	}
+
+	@Override
+	public BitSet addAll(final List<? extends ISortableEntry<K, T, V>> entries) {
+		final BitSet result = new BitSet(entries.size());
+		this.writelock.lock();
+		try {
+			for (int i = 0; i < entries.size(); i++) {
+				final ISortableEntry<K, T, V> entry = entries.get(i);
+				if (this.insert(entry.getKey(), entry.getNode(), entry.getAttachment())) result.set(i);
+			}
+		} finally {
+			this.writelock.unlock();
+		}
+		return result;
+	}
+
+	/**
+	 * Insert the given entry as a new record.
+	 * <p>
+	 * This method must be invoked while holding the
+	 * write-lock.
+	 * @param key The <code>K</code> key.
+	 * @param node The <code>T</code> node.
+	 * @param attachment The <code>V</code> attachment.
+	 * @return <code>true</code> if the entry is added.
+	 * <code>false</code> if the key already exists.
+	 */
+	private boolean insert(final K key, final T node, final V attachment) {
+		final int hash = MappedConcurrentSortableSet.hash(key);
+		if (this.find(key, hash) != MappedConcurrentSortableSet.NIL) return false;
+		this.modify();
+		final int record = this.allocate();
+		final ByteBuffer buffer = this.segment(record);
+		final int offset = this.offset(record);
+		buffer.putInt(offset + MappedConcurrentSortableSet.RECORD_HASH, hash);
+		buffer.put(offset + MappedConcurrentSortableSet.RECORD_FLAGS,
+				(attachment == null) ? MappedConcurrentSortableSet.FLAG_USED : (byte)(MappedConcurrentSortableSet.FLAG_USED | MappedConcurrentSortableSet.FLAG_ATTACHMENT));
+		this.keycodec.encode(key, this.field(record, MappedConcurrentSortableSet.RECORD_KEY, this.keycodec.getSize()));
+		this.nodecodec.encode(node, this.field(record, this.nodeoffset, this.nodecodec.getSize()));
+		if (attachment != null) {
+			this.attachmentcodec.encode(attachment, this.field(record, this.attachmentoffset, this.attachmentcodec.getSize()));
+		}
+		// Link into the hash bucket.
+		final int bucket = hash & (this.buckets-1);
+		this.writeInt(record, MappedConcurrentSortableSet.RECORD_CHAIN, this.table.getInt(bucket * 4));
+		this.table.putInt(bucket * 4, record);
+		this.root = this.attach(this.root, record, node);
+		this.count++;
+		this.writeHeader();
+		return true;
+	}
+
+	@Override
+	public boolean remove(final K key) {
+		this.writelock.lock();
+		try {
+			return this.delete(key);
+		} finally {
+			this.writelock.unlock();
+		}
+	}
+
+	@Override
+	public BitSet removeAll(final Collection<K> keys) {
+		final BitSet result = new BitSet(keys.size());
+		int index = 0;
+		this.writelock.lock();
+		try {
+			for (final K key : keys) {
+				if (this.delete(key)) result.set(index);
+				index++;
+			}
+		} finally {
+			this.writelock.unlock();
+		}
+		return result;
+	}
+
+	/**
+	 * Delete the record of the given key.
+	 * <p>
+	 * This method must be invoked while holding the
+	 * write-lock.
+	 * @param key The <code>K</code> key.
+	 * @return <code>true</code> if the record is deleted.
+	 * <code>false</code> if there is no such key.
+	 */
+	private boolean delete(final K key) {
+		final int record = this.find(key, MappedConcurrentSortableSet.hash(key));
+		if (record == MappedConcurrentSortableSet.NIL) return false;
+		this.modify();
+		this.root = this.detach(this.root, record, this.decodeNode(record));
+		this.release(record);
+		return true;
+	}
+
+	@Override
+	public boolean update(final K key, final INodeMutator<T> mutator) {
+		this.writelock.lock();
+		try {
+			final int record = this.find(key, MappedConcurrentSortableSet.hash(key));
+			if (record == MappedConcurrentSortableSet.NIL) return false;
+			this.modify();
+			final T node = this.decodeNode(record);
+			this.root = this.detach(this.root, record, node);
+			boolean mutated = false;
+			try {
+				mutator.mutate(node);
+				this.nodecodec.encode(node, this.field(record, this.nodeoffset, this.nodecodec.getSize()));
+				mutated = true;
+			} finally {
+				// Re-link the record even if the mutator throws,
+				// in which case its stored node is unchanged.
+				this.root = this.attach(this.root, record, mutated ? node : this.decodeNode(record));
+				this.writeHeader();
+			}
+			return true;
+		} finally {
+			this.writelock.unlock();
+		}
+	}
+
+	@Override
+	public ISortableEntry<K, T, V> pollFirst() {
+		this.writelock.lock();
+		try {
+			return this.poll(true);
+		} finally {
+			this.writelock.unlock();
+		}
+	}
+
+	@Override
+	public ISortableEntry<K, T, V> pollLast() {
+		this.writelock.lock();
+		try {
+			return this.poll(false);
+		} finally {
+			this.writelock.unlock();
+		}
+	}
+
+	@Override
+	public List<ISortableEntry<K, T, V>> pollFirst(final int count) {
+		final List<ISortableEntry<K, T, V>> list = new ArrayList<ISortableEntry<K, T, V>>(Math.max(0, Math.min(count, this.size())));
+		this.writelock.lock();
+		try {
+			for (int i = 0; i < count; i++) {
+				final ISortableEntry<K, T, V> entry = this.poll(true);
+				if (entry == null) break;
+				list.add(entry);
+			}
+		} finally {
+			this.writelock.unlock();
+		}
+		return list;
+	}
+
+	/**
+	 * Remove the first or the last record.
+	 * <p>
+	 * This method must be invoked while holding the
+	 * write-lock.
+	 * @param first <code>true</code> to remove the first
+	 * record. <code>false</code> to remove the last.
+	 * @return The removed <code>SortableEntry</code>.
+	 * <code>null</code> if the set is empty.
+	 */
+	private SortableEntry<K, T, V> poll(final boolean first) {
+		if (this.root == MappedConcurrentSortableSet.NIL) return null;
+		this.modify();
+		// The extreme record has at most one child, which
+		// simply takes its place.
+		final int inner = first ? MappedConcurrentSortableSet.RECORD_LEFT : MappedConcurrentSortableSet.RECORD_RIGHT;
+		final int outer = first ? MappedConcurrentSortableSet.RECORD_RIGHT : MappedConcurrentSortableSet.RECORD_LEFT;
+		int parent = MappedConcurrentSortableSet.NIL;
+		int current = this.root;
+		while (this.readInt(current, inner) != MappedConcurrentSortableSet.NIL) {
+			parent = current;
+			current = this.readInt(current, inner);
+		}
+		if (parent == MappedConcurrentSortableSet.NIL) this.root = this.readInt(current, outer);
+		else this.writeInt(parent, inner, this.readInt(current, outer));
+		final SortableEntry<K, T, V> entry = this.decodeEntry(current);
+		this.release(current);
+		return entry;
+	}
+
+	/**
+	 * Since the stored nodes can only be modified via
+	 * <code>update</code>, the set is always sorted and
+	 * this method does not perform any operation.
+	 */
+	@Override
+	public void sort() {}
+
+	@Override
+	public T firstNode() {
+		this.readlock.lock();
+		try {
+			if (this.root == MappedConcurrentSortableSet.NIL) return null;
+			return this.decodeNode(this.extreme(true));
+		} finally {
+			this.readlock.unlock();
+		}
+	}
+
+	@Override
+	public T lastNode() {
+		this.readlock.lock();
+		try {
+			if (this.root == MappedConcurrentSortableSet.NIL) return null;
+			return this.decodeNode(this.extreme(false));
+		} finally {
+			this.readlock.unlock();
+		}
+	}
+
+	@Override
+	public V firstAttachment() {
+		this.readlock.lock();
+		try {
+			if (this.root == MappedConcurrentSortableSet.NIL) return null;
+			return this.decodeAttachment(this.extreme(true));
+		} finally {
+			this.readlock.unlock();
+		}
+	}
+
+	@Override
+	public V lastAttachment() {
+		this.readlock.lock();
+		try {
+			if (this.root == MappedConcurrentSortableSet.NIL) return null;
+			return this.decodeAttachment(this.extreme(false));
+		} finally {
+			this.readlock.unlock();
+		}
+	}
+
+	@Override
+	public int size() {
+		return this.count;
+	}
+
+	@Override
+	public T getNode(final K key) {
+		this.readlock.lock();
+		try {
+			final int record = this.find(key, MappedConcurrentSortableSet.hash(key));
+			if (record == MappedConcurrentSortableSet.NIL) return null;
+			return this.decodeNode(record);
+		} finally {
+			this.readlock.unlock();
+		}
+	}
+
+	@Override
+	public V getAttachment(final K key) {
+		this.readlock.lock();
+		try {
+			final int record = this.find(key, MappedConcurrentSortableSet.hash(key));
+			if (record == MappedConcurrentSortableSet.NIL) return null;
+			return this.decodeAttachment(record);
+		} finally {
+			this.readlock.unlock();
+		}
+	}
+
+	/**
+	 * Retrieve all the contained keys.
+	 * <p>
+	 * The returned iterators scan the records in their
+	 * storage order without holding the lock between
+	 * the iterations, thus they are weakly consistent.
+	 * @return The <code>Iterable</code> of all the
+	 * decoded <code>K</code> keys.
+	 */
+	@Override
+	public Iterable<K> getAllKeys() {
+		return new Iterable<K>() {
+			@Override
+			public Iterator<K> iterator() {
+				return new KeyIterator();
+			}
+		};
+	}
+
+	/**
+	 * Force all the modifications of the set to be
+	 * written to the storage device, and then mark the
+	 * file as consistent.
+	 */
+	public void flush() {
+		this.writelock.lock();
+		try {
+			this.table.force();
+			for (final MappedByteBuffer segment : this.segments) {
+				segment.force();
+			}
+			// Only mark the file as consistent once all of
+			// its records and indices are stored.
+			this.header.putInt(MappedConcurrentSortableSet.HEADER_STATE, MappedConcurrentSortableSet.STATE_CLEAN);
+			this.header.force();
+			this.modified = false;
+		} finally {
+			this.writelock.unlock();
+		}
+	}
+
+	/**
+	 * Flush and close the file of the set. The set
+	 * cannot be used after it is closed.
+	 * @throws IOException If closing the file failed.
+	 */
+	@Override
+	public void close() throws IOException {
+		this.writelock.lock();
+		try {
+			this.flush();
+			this.file.close();
+		} finally {
+			this.writelock.unlock();
+		}
+	}
+
+	/**
+	 * Attach the given record into the given subtree.
+	 * @param subtree The root record of the subtree.
+	 * @param record The <code>int</code> record to attach.
+	 * @param node The <code>T</code> node of the record.
+	 * @return The new root record of the subtree.
+	 */
+	private int attach(final int subtree, final int record, final T node) {
+		if (subtree == MappedConcurrentSortableSet.NIL) return record;
+		if (this.precedes(record, node, subtree, this.decodeNode(subtree))) {
+			final int left = this.attach(this.readInt(subtree, MappedConcurrentSortableSet.RECORD_LEFT), record, node);
+			this.writeInt(subtree, MappedConcurrentSortableSet.RECORD_LEFT, left);
+			if (this.readInt(left, MappedConcurrentSortableSet.RECORD_PRIORITY) > this.readInt(subtree, MappedConcurrentSortableSet.RECORD_PRIORITY)) {
+				// Rotate right.
+				this.writeInt(subtree, MappedConcurrentSortableSet.RECORD_LEFT, this.readInt(left, MappedConcurrentSortableSet.RECORD_RIGHT));
+				this.writeInt(left, MappedConcurrentSortableSet.RECORD_RIGHT, subtree);
+				return left;
+			}
+		} else {
+			final int right = this.attach(this.readInt(subtree, MappedConcurrentSortableSet.RECORD_RIGHT), record, node);
+			this.writeInt(subtree, MappedConcurrentSortableSet.RECORD_RIGHT, right);
+			if (this.readInt(right, MappedConcurrentSortableSet.RECORD_PRIORITY) > this.readInt(subtree, MappedConcurrentSortableSet.RECORD_PRIORITY)) {
+				// Rotate left.
+				this.writeInt(subtree, MappedConcurrentSortableSet.RECORD_RIGHT, this.readInt(right, MappedConcurrentSortableSet.RECORD_LEFT));
+				this.writeInt(right, MappedConcurrentSortableSet.RECORD_LEFT, subtree);
+				return right;
+			}
+		}
+		return subtree;
+	}
+
+	/**
+	 * Detach the given record from the given subtree.
+	 * The record must be contained in the subtree, and
+	 * its child links are cleared once detached.
+	 * @param subtree The root record of the subtree.
+	 * @param record The <code>int</code> record to detach.
+	 * @param node The <code>T</code> node of the record.
+	 * @return The new root record of the subtree.
+	 */
+	private int detach(final int subtree, final int record, final T node) {
+		if (subtree == record) {
+			final int joined = this.join(this.readInt(record, MappedConcurrentSortableSet.RECORD_LEFT), this.readInt(record, MappedConcurrentSortableSet.RECORD_RIGHT));
+			this.writeInt(record, MappedConcurrentSortableSet.RECORD_LEFT, MappedConcurrentSortableSet.NIL);
+			this.writeInt(record, MappedConcurrentSortableSet.RECORD_RIGHT, MappedConcurrentSortableSet.NIL);
+			return joined;
+		}
+		if (this.precedes(record, node, subtree, this.decodeNode(subtree))) {
+			this.writeInt(subtree, MappedConcurrentSortableSet.RECORD_LEFT, this.detach(this.readInt(subtree, MappedConcurrentSortableSet.RECORD_LEFT), record, node));
+		} else {
+			this.writeInt(subtree, MappedConcurrentSortableSet.RECORD_RIGHT, this.detach(this.readInt(subtree, MappedConcurrentSortableSet.RECORD_RIGHT), record, node));
+		}
+		return subtree;
+	}
+
+	/**
+	 * Join the two given subtrees, where all records of
+	 * the first subtree precede the ones of the second.
+	 * @param first The root record of the first subtree.
+	 * @param second The root record of second subtree.
+	 * @return The root record of the joined tree.
+	 */
+	private int join(final int first, final int second) {
+		if (first == MappedConcurrentSortableSet.NIL) return second;
+		if (second == MappedConcurrentSortableSet.NIL) return first;
+		if (this.readInt(first, MappedConcurrentSortableSet.RECORD_PRIORITY) > this.readInt(second, MappedConcurrentSortableSet.RECORD_PRIORITY)) {
+			this.writeInt(first, MappedConcurrentSortableSet.RECORD_RIGHT, this.join(this.readInt(first, MappedConcurrentSortableSet.RECORD_RIGHT), second));
+			return first;
+		} else {
+			this.writeInt(second, MappedConcurrentSortableSet.RECORD_LEFT, this.join(first, this.readInt(second, MappedConcurrentSortableSet.RECORD_LEFT)));
+			return second;
+		}
+	}
+
+	/**
+	 * Check if the first record precedes the second.
+	 * <p>
+	 * Nodes that compare as equal in either direction,
+	 * including the ones that return -1 both ways, are
+	 * ordered by their record indices, which keeps the
+	 * order consistent for the decoded node copies.
+	 * @param a The first <code>int</code> record.
+	 * @param na The <code>T</code> node of first record.
+	 * @param b The second <code>int</code> record.
+	 * @param nb The <code>T</code> node of second record.
+	 * @return <code>true</code> if the first precedes.
+	 */
+	private boolean precedes(final int a, final T na, final int b, final T nb) {
+		final int result = na.compareTo(nb);
+		if (result != 0) {
+			final int reverse = nb.compareTo(na);
+			if (result < 0 && reverse > 0) return true;
+			if (result > 0 && reverse < 0) return false;
+		}
+		return a < b;
+	}
+
+	/**
+	 * Retrieve the first or the last record. The treap
+	 * must not be empty.
+	 * @param first <code>true</code> to retrieve the
+	 * first record. <code>false</code> for the last.
+	 * @return The <code>int</code> record.
+	 */
+	private int extreme(final boolean first) {
+		final int inner = first ? MappedConcurrentSortableSet.RECORD_LEFT : MappedConcurrentSortableSet.RECORD_RIGHT;
+		int current = this.root;
+		while (this.readInt(current, inner) != MappedConcurrentSortableSet.NIL) {
+			current = this.readInt(current, inner);
+		}
+		return current;
+	}
+
+	/**
+	 * Find the record of the given key.
+	 * @param key The <code>K</code> key to find.
+	 * @param hash The <code>int</code> hash of the key.
+	 * @return The <code>int</code> record.
+	 * <code>NIL</code> if there is no such key.
+	 */
+	private int find(final K key, final int hash) {
+		int record = this.table.getInt((hash & (this.buckets-1)) * 4);
+		while (record != MappedConcurrentSortableSet.NIL) {
+			// Only decode keys with the same hash.
+			if (this.readInt(record, MappedConcurrentSortableSet.RECORD_HASH) == hash && key.equals(this.decodeKey(record))) return record;
+			record = this.readInt(record, MappedConcurrentSortableSet.RECORD_CHAIN);
+		}
+		return MappedConcurrentSortableSet.NIL;
+	}
+
+	/**
+	 * Allocate a record for a new entry, mapping a new
+	 * segment if all the mapped records are used.
+	 * @return The <code>int</code> allocated record.
+	 */
+	private int allocate() {
+		final int record;
+		if (this.free != MappedConcurrentSortableSet.NIL) {
+			record = this.free;
+			this.free = this.readInt(record, MappedConcurrentSortableSet.RECORD_CHAIN);
+		} else {
+			if (this.next == Integer.MAX_VALUE) throw new IllegalStateException("Set is full.");
+			if ((long)this.segments.length * this.segmentrecords <= this.next) {
+				try {
+					this.mapSegment();
+				} catch (final IOException e) {
+					throw new IllegalStateException("Mapping segment failed.", e);
+				}
+			}
+			record = this.next++;
+		}
+		this.writeInt(record, MappedConcurrentSortableSet.RECORD_LEFT, MappedConcurrentSortableSet.NIL);
+		this.writeInt(record, MappedConcurrentSortableSet.RECORD_RIGHT, MappedConcurrentSortableSet.NIL);
+		this.writeInt(record, MappedConcurrentSortableSet.RECORD_PRIORITY, this.nextPriority());
+		return record;
+	}
+
+	/**
+	 * Release the given record that has been unlinked
+	 * from the treap, and unlink it from its bucket.
+	 * @param record The <code>int</code> record.
+	 */
+	private void release(final int record) {
+		final int bucket = (this.readInt(record, MappedConcurrentSortableSet.RECORD_HASH) & (this.buckets-1)) * 4;
+		final int chain = this.readInt(record, MappedConcurrentSortableSet.RECORD_CHAIN);
+		int current = this.table.getInt(bucket);
+		if (current == record) {
+			this.table.putInt(bucket, chain);
+		} else {
+			while (this.readInt(current, MappedConcurrentSortableSet.RECORD_CHAIN) != record) {
+				current = this.readInt(current, MappedConcurrentSortableSet.RECORD_CHAIN);
+			}
+			this.writeInt(current, MappedConcurrentSortableSet.RECORD_CHAIN, chain);
+		}
+		this.segment(record).put(this.offset(record) + MappedConcurrentSortableSet.RECORD_FLAGS, (byte)0);
+		this.writeInt(record, MappedConcurrentSortableSet.RECORD_CHAIN, this.free);
+		this.free = record;
+		this.count--;
+		this.writeHeader();
+	}
+
+	/**
+	 * Map the next record segment, which extends the
+	 * file if necessary.
+	 * @throws IOException If mapping failed.
+	 */
+	private void mapSegment() throws IOException {
+		final long start = MappedConcurrentSortableSet.HEADER_SIZE + (long)this.buckets * 4 +
+				(long)this.segments.length * this.segmentrecords * this.recordsize;
+		final MappedByteBuffer segment = this.channel.map(MapMode.READ_WRITE, start, (long)this.segmentrecords * this.recordsize);
+		final MappedByteBuffer[] segments = Arrays.copyOf(this.segments, this.segments.length+1);
+		segments[this.segments.length] = segment;
+		this.segments = segments;
+	}
+
+	/**
+	 * Mark the file as modified before its first in
+	 * place modification since it was last flushed.
+	 * <p>
+	 * This method must be invoked while holding the
+	 * write-lock.
+	 */
+	private void modify() {
+		if (this.modified) return;
+		// Store the mark before any record is modified,
+		// so a partially written file is never trusted.
+		this.header.putInt(MappedConcurrentSortableSet.HEADER_STATE, MappedConcurrentSortableSet.STATE_MODIFIED);
+		this.header.force();
+		this.modified = true;
+	}
+
+	/**
+	 * Write the mutable state into the file header.
+	 */
+	private void writeHeader() {
+		this.header.putInt(MappedConcurrentSortableSet.HEADER_ROOT, this.root);
+		this.header.putInt(MappedConcurrentSortableSet.HEADER_COUNT, this.count);
+		this.header.putInt(MappedConcurrentSortableSet.HEADER_NEXT, this.next);
+		this.header.putInt(MappedConcurrentSortableSet.HEADER_FREE, this.free);
+		this.header.putInt(MappedConcurrentSortableSet.HEADER_SEED, this.seed);
+	}
+
+	/**
+	 * Retrieve the segment that contains given record.
+	 * @param record The <code>int</code> record.
+	 * @return The <code>ByteBuffer</code> segment.
+	 */
+	private ByteBuffer segment(final int record) {
+		return this.segments[record / this.segmentrecords];
+	}
+
+	/**
+	 * Retrieve the offset of given record within its
+	 * segment.
+	 * @param record The <code>int</code> record.
+	 * @return The <code>int</code> byte offset.
+	 */
+	private int offset(final int record) {
+		return (record % this.segmentrecords) * this.recordsize;
+	}
+
+	/**
+	 * Read the <code>int</code> field of a record.
+	 * @param record The <code>int</code> record.
+	 * @param field The <code>int</code> field offset.
+	 * @return The <code>int</code> field value.
+	 */
+	private int readInt(final int record, final int field) {
+		return this.segment(record).getInt(this.offset(record) + field);
+	}
+
+	/**
+	 * Write the <code>int</code> field of a record.
+	 * @param record The <code>int</code> record.
+	 * @param field The <code>int</code> field offset.
+	 * @param value The <code>int</code> field value.
+	 */
+	private void writeInt(final int record, final int field, final int value) {
+		this.segment(record).putInt(this.offset(record) + field, value);
+	}
+
+	/**
+	 * Retrieve a buffer positioned at the given encoded
+	 * field of a record, and limited to its size.
+	 * @param record The <code>int</code> record.
+	 * @param field The <code>int</code> field offset.
+	 * @param size The <code>int</code> field size.
+	 * @return The <code>ByteBuffer</code> of the field.
+	 */
+	private ByteBuffer field(final int record, final int field, final int size) {
+		final ByteBuffer buffer = this.segment(record).duplicate();
+		final int offset = this.offset(record) + field;
+		buffer.limit(offset + size);
+		buffer.position(offset);
+		return buffer;
+	}
+
+	/**
+	 * Decode the key of the given record.
+	 * @param record The <code>int</code> record.
+	 * @return The decoded <code>K</code> key.
+	 */
+	private K decodeKey(final int record) {
+		return this.keycodec.decode(this.field(record, MappedConcurrentSortableSet.RECORD_KEY, this.keycodec.getSize()));
+	}
+
+	/**
+	 * Decode the node of the given record.
+	 * @param record The <code>int</code> record.
+	 * @return The decoded <code>T</code> node.
+	 */
+	private T decodeNode(final int record) {
+		return this.nodecodec.decode(this.field(record, this.nodeoffset, this.nodecodec.getSize()));
+	}
+
+	/**
+	 * Decode the attachment of the given record.
+	 * @param record The <code>int</code> record.
+	 * @return The decoded <code>V</code> attachment.
+	 * <code>null</code> if there is no attachment.
+	 */
+	private V decodeAttachment(final int record) {
+		final byte flags = this.segment(record).get(this.offset(record) + MappedConcurrentSortableSet.RECORD_FLAGS);
+		if ((flags & MappedConcurrentSortableSet.FLAG_ATTACHMENT) == 0) return null;
+		return this.attachmentcodec.decode(this.field(record, this.attachmentoffset, this.attachmentcodec.getSize()));
+	}
+
+	/**
+	 * Decode the entire entry of the given record.
+	 * @param record The <code>int</code> record.
+	 * @return The decoded <code>SortableEntry</code>.
+	 */
+	private SortableEntry<K, T, V> decodeEntry(final int record) {
+		return new SortableEntry<K, T, V>(this.decodeKey(record), this.decodeNode(record), this.decodeAttachment(record));
+	}
+
+	/**
+	 * Generate the next pseudo-random priority.
+	 * @return The <code>int</code> priority.
+	 */
+	private int nextPriority() {
+		// Xorshift generator.
+		int x = this.seed;
+		x ^= (x << 13);
+		x ^= (x >>> 17);
+		x ^= (x << 5);
+		this.seed = x;
+		return x;
+	}
+
+	/**
+	 * Compute the spread hash of the given key.
+	 * @param key The <code>K</code> key.
+	 * @return The <code>int</code> hash.
+	 */
+	private static int hash(final Object key) {
+		int hash = key.hashCode() * 0x9E3779B9;
+		hash ^= (hash >>> 16);
+		return hash;
+	}
+
+	/**
+	 * <code>KeyIterator</code> defines the iterator that
+	 * scans all the used records in the storage order.
+	 */
+	private final class KeyIterator implements Iterator<K> {
+		/**
+		 * The <code>int</code> next record to check.
+		 */
+		private int record;
+		/**
+		 * The next <code>K</code> key to return.
+		 */
+		private K key;
+
+		/**
+		 * Constructor of <code>KeyIterator</code>.
+		 */
+		private KeyIterator() {
+			this.record = 1;
+			this.advance();
+		}
+
+		/**
+		 * Advance to the next used record.
+		 */
+		private void advance() {
+			final MappedConcurrentSortableSet<K, T, V> set = MappedConcurrentSortableSet.this;
+			this.key = null;
+			set.readlock.lock();
+			try {
+				while (this.record < set.next) {
+					final int current = this.record++;
+					final byte flags = set.segment(current).get(set.offset(current) + MappedConcurrentSortableSet.RECORD_FLAGS);
+					if ((flags & MappedConcurrentSortableSet.FLAG_USED) != 0) {
+						this.key = set.decodeKey(current);
+						return;
+					}
+				}
+			} finally {
+				set.readlock.unlock();
+			}
+		}
+
+		@Override
+		public boolean hasNext() {
+			return this.key != null;
+		}
+
+		@Override
+		public K next() {
+			if (this.key == null) throw new NoSuchElementException();
+			final K key = this.key;
+			this.advance();
+			return key;
+		}
+
+		@Override
+		public void remove() {
+			throw new UnsupportedOperationException();
+		}
+	}
+}
@@ -0,0 +1,111 @@
+package hemera.utility.structure;
+
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+
+/**
+ * <code>MergingIterator</code> defines the read-only
+ * iterator that performs a k-way merge of multiple
+ * individually sorted iterators into a single sorted
+ * sequence.
+ * <p>
+ * The merge holds the current head of every source
+ * iterator in a priority queue, thus every step is
+ * logarithmic in the number of source iterators.
+ *
+ * @author Yi Wang (Neakor)
+ * @version 1.0.0
+ */
+class MergingIterator<E> implements Iterator<E> {
+	/**
+	 * The <code>PriorityQueue</code> of the current
+	 * <code>Head</code> of every non-exhausted source.
+	 */
+	private final PriorityQueue<Head<E>> heads;
+
+	/**
+	 * Constructor of <code>MergingIterator</code>.
+	 * @param sources The <code>List</code> of sorted
+	 * source <code>Iterator</code>.
+	 * @param comparator The <code>Comparator</code>
+	 * that defines the order of all sources.
+	 */
+	MergingIterator(final List<? extends Iterator<? extends E>> sources, final Comparator<? super E> comparator) {
+		this.heads = new PriorityQueue<Head<E>>(Math.max(1, sources.size()), new Comparator<Head<E>>() {
+			@Override
+			public int compare(final Head<E> o1, final Head<E> o2) {
+				final int result = comparator.compare(o1.value, o2.value);
+				if (result != 0) return result;
+				return o1.index - o2.index;
+			}
+		});
+		for (int i = 0; i < sources.size(); i++) {
+			final Iterator<? extends E> source = sources.get(i);
+			if (source.hasNext()) this.heads.add(new Head<E>(source, i));
+		}
+	}
+
+	@Override
+	public boolean hasNext() {
+		return !this.heads.isEmpty();
+	}
+
+	@Override
+	public E next() {
+		final Head<E> head = this.heads.poll();
+		if (head == null) throw new NoSuchElementException();
+		final E value = head.value;
+		if (head.advance()) this.heads.add(head);
+		return value;
+	}
+
+	@Override
+	public void remove() {
+		throw new UnsupportedOperationException();
+	}
+
+	/**
+	 * <code>Head</code> defines the current head value
+	 * of a single source iterator.
+	 */
+	private static final class Head<E> {
+		/**
+		 * The source <code>Iterator</code>.
+		 */
+		private final Iterator<? extends E> source;
+		/**
+		 * The <code>int</code> index of the source, used
+		 * to keep the merge stable.
+		 */
+		private final int index;
+		/**
+		 * The current <code>E</code> head value.
+		 */
+		private E value;
+
+		/**
+		 * Constructor of <code>Head</code>.
+		 * @param source The non-empty source <code>Iterator</code>.
+		 * @param index The <code>int</code> source index.
+		 */
+		private Head(final Iterator<? extends E> source, final int index) {
+			this.source = source;
+			this.index = index;
+			this.value = source.next();
+		}
+
+		/**
+		 * Advance to the next value of the source.
+		 * @return <code>true</code> if the source has
+		 * a next value. <code>false</code> if exhausted.
+		 */
+		private boolean advance() {
+			if (!this.source.hasNext()) return false;
+			this.value = this.source.next();
+			return true;
+		}
+	}
+}
@@ -0,0 +1,206 @@
+package hemera.utility.structure;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * <code>ParallelSorter</code> defines the singleton
+ * utility unit that sorts arrays using a merge sort
+ * distributed across all the available processors.
+ * <p>
+ * The merge sort never validates the consistency of
+ * the comparison, thus it supports nodes that return
+ * -1 instead of 0 for equal values, as required by
+ * <code>IConcurrentSortableSet</code>. The sort is
+ * stable with respect to the input order.
+ *
+ * @author Yi Wang (Neakor)
+ * @version 1.0.0
+ */
+enum ParallelSorter {
+	/**
+	 * The singleton instance.
+	 */
+	instance;
+
+	/**
+	 * The <code>int</code> minimum length of a range
+	 * to be sorted by a separate thread.
+	 */
+	private final int parallelThreshold = 8192;
+	/**
+	 * The <code>int</code> maximum length of a range
+	 * to be sorted using insertion sort.
+	 */
+	private final int insertionThreshold = 16;
+	/**
+	 * The <code>int</code> number of available
+	 * processors.
+	 */
+	private final int parallelism = Runtime.getRuntime().availableProcessors();
+	/**
+	 * The <code>ExecutorService</code> of daemon
+	 * threads used to sort and merge ranges.
+	 */
+	private final ExecutorService executor = Executors.newFixedThreadPool(this.parallelism, new ThreadFactory() {
+		private final AtomicInteger index = new AtomicInteger();
+
+		@Override
+		public Thread newThread(final Runnable runnable) {
+			final Thread thread = new Thread(runnable, "Hemera-ParallelSorter-" + this.index.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		}
+	});
+
+	/**
+	 * Sort the given array using the given comparator.
+	 * <p>
+	 * The array is split into a range per processor,
+	 * each range is sorted by a separate thread, then
+	 * the sorted ranges are merged pairwise in parallel
+	 * until a single sorted run remains.
+	 * @param array The <code>E</code> array to sort.
+	 * @param comparator The <code>Comparator</code>
+	 * used to define the ordering.
+	 */
+	public <E> void sort(final E[] array, final Comparator<? super E> comparator) {
+		final int length = array.length;
+		final E[] buffer = array.clone();
+		if (length < this.parallelThreshold || this.parallelism < 2) {
+			this.mergeSort(buffer, array, 0, length, comparator);
+			return;
+		}
+		// Split into a power of two number of ranges, so
+		// the ranges can be merged pairwise.
+		int ranges = 1;
+		while (ranges < this.parallelism && length / (ranges * 2) >= this.parallelThreshold) ranges *= 2;
+		final int[] bounds = new int[ranges+1];
+		for (int i = 0; i <= ranges; i++) {
+			bounds[i] = (int)((long)length * i / ranges);
+		}
+		final List<Callable<Void>> tasks = new ArrayList<Callable<Void>>(ranges);
+		for (int i = 0; i < ranges; i++) {
+			final int low = bounds[i];
+			final int high = bounds[i+1];
+			tasks.add(new Callable<Void>() {
+				@Override
+				public Void call() {
+					ParallelSorter.this.mergeSort(buffer, array, low, high, comparator);
+					return null;
+				}
+			});
+		}
+		this.invoke(tasks);
+		// Merge ranges pairwise, alternating between the
+		// array and the buffer as the source.
+		E[] source = array;
+		E[] target = buffer;
+		for (int width = 1; width < ranges; width *= 2) {
+			tasks.clear();
+			for (int i = 0; i < ranges; i += width*2) {
+				final int low = bounds[i];
+				final int middle = bounds[i+width];
+				final int high = bounds[i+width*2];
+				final E[] src = source;
+				final E[] dest = target;
+				tasks.add(new Callable<Void>() {
+					@Override
+					public Void call() {
+						ParallelSorter.this.merge(src, dest, low, middle, high, comparator);
+						return null;
+					}
+				});
+			}
+			this.invoke(tasks);
+			final E[] swap = source;
+			source = target;
+			target = swap;
+		}
+		if (source != array) System.arraycopy(source, 0, array, 0, length);
+	}
+
+	/**
+	 * Invoke all the given tasks using the executor
+	 * and wait for all of them to complete.
+	 * @param tasks The <code>List</code> of tasks.
+	 */
+	private void invoke(final List<Callable<Void>> tasks) {
+		try {
+			final List<Future<Void>> futures = this.executor.invokeAll(tasks);
+			for (final Future<Void> future : futures) {
+				future.get();
+			}
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while sorting.", e);
+		} catch (final ExecutionException e) {
+			throw new IllegalStateException("Sorting failed.", e.getCause());
+		}
+	}
+
+	/**
+	 * Sort the given range of the destination array
+	 * using the source array as scratch space. Both
+	 * arrays must contain the same elements within
+	 * the range.
+	 * @param src The <code>E</code> source array.
+	 * @param dest The <code>E</code> destination array.
+	 * @param low The <code>int</code> inclusive start.
+	 * @param high The <code>int</code> exclusive end.
+	 * @param comparator The <code>Comparator</code>.
+	 */
+	private <E> void mergeSort(final E[] src, final E[] dest, final int low, final int high, final Comparator<? super E> comparator) {
+		final int length = high - low;
+		if (length <= this.insertionThreshold) {
+			for (int i = low+1; i < high; i++) {
+				final E value = dest[i];
+				int j = i - 1;
+				while (j >= low && comparator.compare(dest[j], value) > 0) {
+					dest[j+1] = dest[j];
+					j--;
+				}
+				dest[j+1] = value;
+			}
+			return;
+		}
+		final int middle = (low + high) >>> 1;
+		this.mergeSort(dest, src, low, middle, comparator);
+		this.mergeSort(dest, src, middle, high, comparator);
+		this.merge(src, dest, low, middle, high, comparator);
+	}
+
+	/**
+	 * Merge the two sorted ranges of the source array
+	 * into the destination array.
+	 * @param src The <code>E</code> source array.
+	 * @param dest The <code>E</code> destination array.
+	 * @param low The <code>int</code> inclusive start
+	 * of the first range.
+	 * @param middle The <code>int</code> exclusive end
+	 * of the first range and inclusive start of the
+	 * second range.
+	 * @param high The <code>int</code> exclusive end
+	 * of the second range.
+	 * @param comparator The <code>Comparator</code>.
+	 */
+	private <E> void merge(final E[] src, final E[] dest, final int low, final int middle, final int high, final Comparator<? super E> comparator) {
+		int i = low;
+		int j = middle;
+		for (int k = low; k < high; k++) {
+			if (j >= high || (i < middle && comparator.compare(src[i], src[j]) <= 0)) {
+				dest[k] = src[i++];
+			} else {
+				dest[k] = src[j++];
+			}
+		}
+	}
+}
@@ -0,0 +1,226 @@
+package hemera.utility.structure;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * <code>QuantileSketch</code> defines the thread-safe
+ * lock-free sketch of the distribution of scores, which
+ * answers quantile and range count queries within a
+ * fixed relative accuracy.
+ * <p>
+ * The magnitudes of the scores are mapped to buckets
+ * that grow geometrically, thus the value returned for
+ * a quantile is within the relative accuracy of the
+ * exact value. Magnitudes below <code>1e-9</code> are
+ * counted as zero, and magnitudes above <code>1e18</code>
+ * are counted in the largest bucket. The sketch has a
+ * fixed memory footprint determined by the accuracy.
+ * <p>
+ * Since every bucket is a plain counter, scores can be
+ * removed as well as added, and sketches of the same
+ * accuracy can be merged by adding their counters, for
+ * instance to combine the sketches of multiple shards.
+ * Queries read the counters without locking, thus they
+ * may observe concurrent modifications partially.
+ *
+ * @author Yi Wang (Neakor)
+ * @version 1.0.0
+ */
+public final class QuantileSketch {
+	/**
+	 * The <code>double</code> smallest magnitude that
+	 * is not counted as zero.
+	 */
+	private static final double MIN_MAGNITUDE = 1e-9;
+	/**
+	 * The <code>double</code> largest distinguished
+	 * magnitude.
+	 */
+	private static final double MAX_MAGNITUDE = 1e18;
+
+	/**
+	 * The <code>double</code> relative accuracy.
+	 */
+	private final double accuracy;
+	/**
+	 * The <code>double</code> ratio between the bounds
+	 * of consecutive buckets.
+	 */
+	private final double gamma;
+	/**
+	 * The <code>double</code> natural logarithm of the
+	 * gamma ratio.
+	 */
+	private final double loggamma;
+	/**
+	 * The <code>int</code> logarithmic index of the
+	 * smallest magnitude bucket.
+	 */
+	private final int offset;
+	/**
+	 * The <code>int</code> number of buckets for each
+	 * of the negative and positive scores.
+	 */
+	private final int buckets;
+	/**
+	 * The <code>AtomicLongArray</code> of the counters
+	 * in ascending order of scores, where the negative
+	 * scores are followed by zero and positive scores.
+	 */
+	private final AtomicLongArray counts;
+
+	/**
+	 * Constructor of <code>QuantileSketch</code>.
+	 * @param accuracy The <code>double</code> relative
+	 * accuracy between 0 and 1 exclusive, such as
+	 * <code>0.01</code> for 1%.
+	 */
+	public QuantileSketch(final double accuracy) {
+		if (!(accuracy > 0 && accuracy < 1)) throw new IllegalArgumentException("Accuracy must be between 0 and 1: " + accuracy);
+		this.accuracy = accuracy;
+		this.gamma = (1 + accuracy) / (1 - accuracy);
+		this.loggamma = Math.log(this.gamma);
+		this.offset = (int)Math.floor(Math.log(QuantileSketch.MIN_MAGNITUDE) / this.loggamma);
+		this.buckets = (int)Math.ceil(Math.log(QuantileSketch.MAX_MAGNITUDE) / this.loggamma) - this.offset + 1;
+		this.counts = new AtomicLongArray(2 * this.buckets + 1);
+	}
+
+	/**
+	 * Add the given score.
+	 * @param score The <code>double</code> score. A
+	 * <code>NaN</code> is counted as zero.
+	 * @return The <code>int</code> bucket of the score,
+	 * which must be used to remove the score.
+	 */
+	int add(final double score) {
+		final int bucket = this.bucket(score);
+		this.counts.incrementAndGet(bucket);
+		return bucket;
+	}
+
+	/**
+	 * Remove a score previously added to the given
+	 * bucket.
+	 * @param bucket The <code>int</code> bucket returned
+	 * by the <code>add</code> of the score.
+	 */
+	void remove(final int bucket) {
+		this.counts.decrementAndGet(bucket);
+	}
+
+	/**
+	 * Merge the counters of the given sketch into this
+	 * sketch.
+	 * @param sketch The <code>QuantileSketch</code> with
+	 * the same accuracy.
+	 */
+	public void merge(final QuantileSketch sketch) {
+		if (sketch.accuracy != this.accuracy) throw new IllegalArgumentException("Sketches must have the same accuracy.");
+		for (int i = 0; i < this.counts.length(); i++) {
+			final long count = sketch.counts.get(i);
+			if (count != 0) this.counts.addAndGet(i, count);
+		}
+	}
+
+	/**
+	 * Create a copy of the current counters.
+	 * @return The <code>QuantileSketch</code> copy.
+	 */
+	public QuantileSketch copy() {
+		final QuantileSketch copy = new QuantileSketch(this.accuracy);
+		copy.merge(this);
+		return copy;
+	}
+
+	/**
+	 * Retrieve the score at the given quantile, using
+	 * the nearest-rank definition.
+	 * @param q The <code>double</code> quantile within
+	 * the range of <code>[0, 1]</code>.
+	 * @return The <code>double</code> approximate score.
+	 * <code>NaN</code> if the sketch is empty.
+	 */
+	public double quantile(final double q) {
+		if (!(q >= 0 && q <= 1)) throw new IllegalArgumentException("Quantile must be between 0 and 1: " + q);
+		final long[] counts = new long[this.counts.length()];
+		long total = 0;
+		for (int i = 0; i < counts.length; i++) {
+			counts[i] = this.counts.get(i);
+			total += counts[i];
+		}
+		if (total <= 0) return Double.NaN;
+		final long target = Math.max(1, (long)Math.ceil(total * q));
+		long seen = 0;
+		for (int i = 0; i < counts.length; i++) {
+			seen += counts[i];
+			if (seen >= target) return this.value(i);
+		}
+		return this.value(counts.length-1);
+	}
+
+	/**
+	 * Count the scores between the given bounds, both
+	 * of which are inclusive. The counts of the buckets
+	 * of the bounds are included entirely.
+	 * @param low The <code>double</code> lower bound.
+	 * @param high The <code>double</code> upper bound.
+	 * @return The <code>long</code> approximate count.
+	 */
+	public long countBetween(final double low, final double high) {
+		if (!(low <= high)) return 0;
+		final int last = this.bucket(high);
+		long count = 0;
+		for (int i = this.bucket(low); i <= last; i++) {
+			count += this.counts.get(i);
+		}
+		return count;
+	}
+
+	/**
+	 * Retrieve the number of scores.
+	 * @return The <code>long</code> count.
+	 */
+	public long getCount() {
+		long count = 0;
+		for (int i = 0; i < this.counts.length(); i++) {
+			count += this.counts.get(i);
+		}
+		return count;
+	}
+
+	/**
+	 * Retrieve the relative accuracy.
+	 * @return The <code>double</code> accuracy.
+	 */
+	public double getAccuracy() {
+		return this.accuracy;
+	}
+
+	/**
+	 * Retrieve the bucket of the given score.
+	 * @param score The <code>double</code> score.
+	 * @return The <code>int</code> bucket index.
+	 */
+	private int bucket(final double score) {
+		final double magnitude = Math.abs(score);
+		// This also covers NaN.
+		if (!(magnitude >= QuantileSketch.MIN_MAGNITUDE)) return this.buckets;
+		final int index = (int)Math.ceil(Math.log(magnitude) / this.loggamma) - this.offset;
+		final int clamped = Math.max(0, Math.min(this.buckets-1, index));
+		return (score > 0) ? this.buckets + 1 + clamped : this.buckets - 1 - clamped;
+	}
+
+	/**
+	 * Retrieve the representative score of the given
+	 * bucket, which is within the relative accuracy of
+	 * all the scores in the bucket.
+	 * @param bucket The <code>int</code> bucket index.
+	 * @return The <code>double</code> score.
+	 */
+	private double value(final int bucket) {
+		if (bucket == this.buckets) return 0;
+		final int index = (bucket > this.buckets) ? bucket - this.buckets - 1 : this.buckets - 1 - bucket;
+		final double magnitude = 2 * Math.pow(this.gamma, index + this.offset) / (this.gamma + 1);
+		return (bucket > this.buckets) ? magnitude : -magnitude;
+	}
+}
@@ -0,0 +1,843 @@
+package hemera.utility.structure;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.TreeSet;
+
+import hemera.utility.structure.interfaces.ISortableEntry;
+
+/**
+ * <code>RankTree</code> defines the implementation of
+ * an order-statistic tree, which is a randomized binary
+ * search tree (treap) where every tree node maintains
+ * the size of its subtree.
+ * <p>
+ * Every tree node also maintains a link to its parent,
+ * which allows an inserted node to be used as a handle.
+ * The rank of a handle is computed by walking up to
+ * the root, and a handle is removed by rotating it
+ * down to a leaf. Neither operation compares values,
+ * thus they are not affected by nodes that changed
+ * their order-state since they were inserted.
+ * <p>
+ * The tree is partially persistent. Pinning the tree
+ * returns a version that can be traversed and queried
+ * by rank as of the time it was pinned. While there
+ * are pinned versions, a handle that is restructured
+ * for the first time in the current version keeps
+ * its previous links in a <code>Revision</code>, thus
+ * the memory overhead is proportional to the number
+ * of restructured handles rather than the size of
+ * the tree. Revisions that are only valid before
+ * the oldest pinned version are discarded once that
+ * version is unpinned, thus overlapping versions do
+ * not retain revisions indefinitely.
+ * <p>
+ * This implementation is not thread-safe, the owner
+ * must provide external synchronization.
+ * @param K The key object type.
+ * @param T The value <code>Comparable</code> type.
+ * @param V The attachment type.
+ *
+ * @author Yi Wang (Neakor)
+ * @version 1.0.0
+ */
+class RankTree<K, T extends Comparable<T>, V> {
+	/**
+	 * The root <code>Handle</code>. <code>null</code>
+	 * if the tree is empty.
+	 */
+	private Handle<K, T, V> root;
+	/**
+	 * The <code>int</code> version since which the
+	 * current root is valid.
+	 */
+	private int rootsince;
+	/**
+	 * The <code>Revision</code> list of the previous
+	 * roots, where the left link holds the root.
+	 */
+	private Revision<K, T, V> rootrevisions;
+	/**
+	 * The <code>int</code> current version.
+	 */
+	private int version;
+	/**
+	 * The <code>TreeSet</code> of the pinned versions.
+	 */
+	private final TreeSet<Integer> pinned;
+	/**
+	 * The <code>List</code> of <code>Handle</code>
+	 * that have revisions.
+	 */
+	private final List<Handle<K, T, V>> revised;
+	/**
+	 * The <code>Comparator</code> of the entries.
+	 */
+	private final Comparator<SortableEntry<K, T, V>> comparator;
+	/**
+	 * The <code>int</code> state of the pseudo-random
+	 * priority generator.
+	 */
+	private int seed;
+
+	/**
+	 * Constructor of <code>RankTree</code>.
+	 * @param comparator The <code>Comparator</code> that
+	 * defines the order of the entries.
+	 */
+	RankTree(final Comparator<SortableEntry<K, T, V>> comparator) {
+		this.comparator = comparator;
+		this.pinned = new TreeSet<Integer>();
+		this.revised = new ArrayList<Handle<K, T, V>>();
+		this.seed = (int)System.nanoTime() | 1;
+	}
+
+	/**
+	 * Insert the given entry into the tree.
+	 * @param entry The <code>SortableEntry</code> to
+	 * insert.
+	 * @return The <code>Handle</code> of the entry.
+	 */
+	Handle<K, T, V> insert(final SortableEntry<K, T, V> entry) {
+		final Handle<K, T, V> handle = new Handle<K, T, V>(entry, this.nextPriority(), this.version);
+		if (this.root == null) {
+			this.setRoot(handle);
+			return handle;
+		}
+		Handle<K, T, V> current = this.root;
+		while (true) {
+			this.revise(current);
+			current.size++;
+			if (this.comparator.compare(entry, current.entry) < 0) {
+				if (current.left == null) {
+					current.left = handle;
+					break;
+				}
+				current = current.left;
+			} else {
+				if (current.right == null) {
+					current.right = handle;
+					break;
+				}
+				current = current.right;
+			}
+		}
+		handle.parent = current;
+		while (handle.parent != null && handle.parent.priority < handle.priority) {
+			this.rotateUp(handle);
+		}
+		return handle;
+	}
+
+	/**
+	 * Remove the given handle from the tree.
+	 * @param handle The <code>Handle</code> to remove.
+	 * @return <code>true</code> if the handle is removed.
+	 * <code>false</code> if it was already removed.
+	 */
+	boolean remove(final Handle<K, T, V> handle) {
+		if (handle.size == 0) return false;
+		// Rotate down to a leaf.
+		while (handle.left != null || handle.right != null) {
+			if (handle.right == null || (handle.left != null && handle.left.priority > handle.right.priority)) {
+				this.rotateUp(handle.left);
+			} else {
+				this.rotateUp(handle.right);
+			}
+		}
+		final Handle<K, T, V> parent = handle.parent;
+		if (parent == null) {
+			this.setRoot(null);
+		} else {
+			this.revise(parent);
+			if (parent.left == handle) parent.left = null;
+			else parent.right = null;
+			for (Handle<K, T, V> ancestor = parent; ancestor != null; ancestor = ancestor.parent) {
+				this.revise(ancestor);
+				ancestor.size--;
+			}
+		}
+		this.revise(handle);
+		handle.parent = null;
+		handle.size = 0;
+		return true;
+	}
+
+	/**
+	 * Retrieve the rank of the given handle.
+	 * @param handle The <code>Handle</code> to check.
+	 * @return The <code>int</code> zero-based rank.
+	 * <code>-1</code> if the handle is removed.
+	 */
+	int rank(final Handle<K, T, V> handle) {
+		if (handle.size == 0) return -1;
+		int rank = RankTree.size(handle.left);
+		Handle<K, T, V> current = handle;
+		while (current.parent != null) {
+			if (current == current.parent.right) {
+				rank += RankTree.size(current.parent.left) + 1;
+			}
+			current = current.parent;
+		}
+		return rank;
+	}
+
+	/**
+	 * Retrieve the handle at the given rank.
+	 * @param rank The <code>int</code> zero-based rank.
+	 * @return The <code>Handle</code> at the rank.
+	 * <code>null</code> if the rank is out of bounds.
+	 */
+	Handle<K, T, V> select(final int rank) {
+		if (rank < 0 || rank >= this.size()) return null;
+		int remaining = rank;
+		Handle<K, T, V> current = this.root;
+		while (current != null) {
+			final int leftsize = RankTree.size(current.left);
+			if (remaining < leftsize) {
+				current = current.left;
+			} else if (remaining == leftsize) {
+				return current;
+			} else {
+				remaining -= leftsize + 1;
+				current = current.right;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Collect the values within the given range of
+	 * ranks into the given list.
+	 * @param offset The <code>int</code> zero-based
+	 * rank of the first value.
+	 * @param limit The <code>int</code> maximum number
+	 * of values to collect.
+	 * @param list The <code>List</code> to collect to.
+	 */
+	void collect(final int offset, final int limit, final List<T> list) {
+		Handle<K, T, V> current = this.select(offset);
+		for (int i = 0; i < limit && current != null; i++) {
+			list.add(current.entry.node);
+			current = RankTree.successor(current);
+		}
+	}
+
+	/**
+	 * Count the values that are lower than the given
+	 * bound, excluding the values that compare equal.
+	 * @param bound The <code>T</code> bound.
+	 * @return The <code>int</code> number of values.
+	 */
+	int countBelow(final T bound) {
+		int count = 0;
+		Handle<K, T, V> current = this.root;
+		while (current != null) {
+			// Compare from the bound, so that equal values
+			// following the tie contract are not counted.
+			if (bound.compareTo(current.entry.node) > 0) {
+				count += RankTree.size(current.left) + 1;
+				current = current.right;
+			} else {
+				current = current.left;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Count the values that are lower than or equal to
+	 * the given bound.
+	 * @param bound The <code>T</code> bound.
+	 * @return The <code>int</code> number of values.
+	 */
+	int countAtMost(final T bound) {
+		int count = 0;
+		Handle<K, T, V> current = this.root;
+		while (current != null) {
+			if (current.entry.node.compareTo(bound) <= 0) {
+				count += RankTree.size(current.left) + 1;
+				current = current.right;
+			} else {
+				current = current.left;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Retrieve the number of values in the tree.
+	 * @return The <code>int</code> size.
+	 */
+	int size() {
+		return RankTree.size(this.root);
+	}
+
+	/**
+	 * Sort all the contained handles based on the
+	 * current ordering state of their values, and
+	 * rebuild the tree as a balanced tree.
+	 * <p>
+	 * All existing handles remain valid. The tree is
+	 * rebuilt in linear time after the handles are
+	 * sorted in parallel. The tree is left untouched
+	 * if the handles are already in order, so that
+	 * pinned versions do not retain a revision of
+	 * every handle. Handles are ordered by the entry
+	 * comparator, so that equal values following the
+	 * tie contract are considered in order.
+	 */
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	void sort() {
+		final int size = this.size();
+		if (size == 0) return;
+		final Handle<K, T, V>[] handles = new Handle[size];
+		Handle<K, T, V> current = this.root;
+		while (current.left != null) current = current.left;
+		boolean ordered = true;
+		for (int i = 0; i < size; i++) {
+			handles[i] = current;
+			if (ordered && i > 0 && this.comparator.compare(handles[i-1].entry, current.entry) > 0) ordered = false;
+			current = RankTree.successor(current);
+		}
+		if (ordered) return;
+		ParallelSorter.instance.sort(handles, new Comparator<Handle<K, T, V>>() {
+			@Override
+			public int compare(final Handle<K, T, V> o1, final Handle<K, T, V> o2) {
+				return RankTree.this.comparator.compare(o1.entry, o2.entry);
+			}
+		});
+		this.setRoot(this.build(handles, 0, size, null));
+		this.heapify(this.root);
+	}
+
+	/**
+	 * Pin the current version of the tree, which then
+	 * remains available until it is unpinned.
+	 * @return The <code>int</code> pinned version.
+	 */
+	int pin() {
+		this.pinned.add(this.version);
+		return this.version++;
+	}
+
+	/**
+	 * Unpin a previously pinned version. If it is the
+	 * oldest pinned version, the revisions that are only
+	 * valid before the new oldest pinned version are
+	 * discarded, or all revisions if there are no more
+	 * pinned versions.
+	 * @param version The <code>int</code> version to
+	 * unpin.
+	 */
+	void unpin(final int version) {
+		if (!this.pinned.remove(version)) return;
+		if (this.pinned.isEmpty()) {
+			for (int i = 0; i < this.revised.size(); i++) {
+				this.revised.get(i).revisions = null;
+			}
+			this.revised.clear();
+			this.rootrevisions = null;
+			return;
+		}
+		final int oldest = this.pinned.first();
+		if (oldest < version) return;
+		int retained = 0;
+		for (int i = 0; i < this.revised.size(); i++) {
+			final Handle<K, T, V> handle = this.revised.get(i);
+			handle.revisions = RankTree.prune(handle.since, handle.revisions, oldest);
+			if (handle.revisions != null) this.revised.set(retained++, handle);
+		}
+		this.revised.subList(retained, this.revised.size()).clear();
+		this.rootrevisions = RankTree.prune(this.rootsince, this.rootrevisions, oldest);
+	}
+
+	/**
+	 * Retrieve the number of revisions retained for
+	 * the pinned versions.
+	 * @return The <code>int</code> number of revisions.
+	 */
+	int revisions() {
+		int count = 0;
+		for (Revision<K, T, V> revision = this.rootrevisions; revision != null; revision = revision.next) {
+			count++;
+		}
+		for (int i = 0; i < this.revised.size(); i++) {
+			for (Revision<K, T, V> revision = this.revised.get(i).revisions; revision != null; revision = revision.next) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Retrieve the number of values in the given
+	 * pinned version.
+	 * @param version The <code>int</code> version.
+	 * @return The <code>int</code> size.
+	 */
+	int size(final int version) {
+		return RankTree.size(this.root(version), version);
+	}
+
+	/**
+	 * Retrieve the handle at the given rank in the
+	 * given pinned version.
+	 * @param rank The <code>int</code> zero-based rank.
+	 * @param version The <code>int</code> version.
+	 * @return The <code>Handle</code> at the rank.
+	 * <code>null</code> if the rank is out of bounds.
+	 */
+	Handle<K, T, V> select(final int rank, final int version) {
+		if (rank < 0) return null;
+		int remaining = rank;
+		Handle<K, T, V> current = this.root(version);
+		while (current != null) {
+			final int leftsize = RankTree.size(RankTree.child(current, version, true), version);
+			if (remaining < leftsize) {
+				current = RankTree.child(current, version, true);
+			} else if (remaining == leftsize) {
+				return current;
+			} else {
+				remaining -= leftsize + 1;
+				current = RankTree.child(current, version, false);
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Create a cursor that traverses the given pinned
+	 * version starting at the given rank.
+	 * @param version The <code>int</code> version.
+	 * @param rank The <code>int</code> zero-based rank
+	 * of the first handle in the traversal order.
+	 * @param descending <code>true</code> to traverse
+	 * in descending order.
+	 * @return The <code>Cursor</code>.
+	 */
+	Cursor<K, T, V> cursor(final int version, final int rank, final boolean descending) {
+		final Cursor<K, T, V> cursor = new Cursor<K, T, V>(version, descending);
+		// Descend towards the starting handle, keeping the
+		// ancestors that follow it in the traversal order.
+		int remaining = rank;
+		Handle<K, T, V> current = this.root(version);
+		while (current != null) {
+			final Handle<K, T, V> first = RankTree.child(current, version, !descending);
+			final int firstsize = RankTree.size(first, version);
+			if (remaining < firstsize) {
+				cursor.stack.add(current);
+				current = first;
+			} else if (remaining == firstsize) {
+				cursor.stack.add(current);
+				break;
+			} else {
+				remaining -= firstsize + 1;
+				current = RankTree.child(current, version, descending);
+			}
+		}
+		return cursor;
+	}
+
+	/**
+	 * Retrieve the root of the given version.
+	 * @param version The <code>int</code> version.
+	 * @return The root <code>Handle</code>.
+	 */
+	private Handle<K, T, V> root(final int version) {
+		if (this.rootsince <= version) return this.root;
+		Revision<K, T, V> revision = this.rootrevisions;
+		while (revision.since > version) revision = revision.next;
+		return revision.left;
+	}
+
+	/**
+	 * Replace the root of the tree.
+	 * @param handle The new root <code>Handle</code>.
+	 */
+	private void setRoot(final Handle<K, T, V> handle) {
+		if (!this.pinned.isEmpty() && this.rootsince < this.version) {
+			this.rootrevisions = new Revision<K, T, V>(this.rootsince, this.root, null, 0, this.rootrevisions);
+			this.rootsince = this.version;
+		}
+		this.root = handle;
+	}
+
+	/**
+	 * Preserve the current links of the given handle
+	 * before it is restructured, if any pinned version
+	 * may still need them.
+	 * @param handle The <code>Handle</code> to revise.
+	 */
+	private void revise(final Handle<K, T, V> handle) {
+		if (this.pinned.isEmpty() || handle.since == this.version) return;
+		if (handle.revisions == null) this.revised.add(handle);
+		handle.revisions = new Revision<K, T, V>(handle.since, handle.left, handle.right, handle.size, handle.revisions);
+		handle.since = this.version;
+	}
+
+	/**
+	 * Build a balanced tree from the given range of
+	 * the sorted handles.
+	 * @param handles The sorted <code>Handle</code> array.
+	 * @param low The <code>int</code> inclusive start.
+	 * @param high The <code>int</code> exclusive end.
+	 * @param parent The parent <code>Handle</code> of
+	 * the built tree.
+	 * @return The root <code>Handle</code> of the built
+	 * tree. <code>null</code> if the range is empty.
+	 */
+	private Handle<K, T, V> build(final Handle<K, T, V>[] handles, final int low, final int high, final Handle<K, T, V> parent) {
+		if (low >= high) return null;
+		final int middle = (low + high) >>> 1;
+		final Handle<K, T, V> handle = handles[middle];
+		this.revise(handle);
+		handle.parent = parent;
+		handle.left = this.build(handles, low, middle, handle);
+		handle.right = this.build(handles, middle+1, high, handle);
+		handle.size = high - low;
+		return handle;
+	}
+
+	/**
+	 * Restore the heap ordering of the priorities in
+	 * the given subtree by exchanging priorities, which
+	 * does not change the shape of the tree.
+	 * @param handle The root <code>Handle</code> of the
+	 * subtree.
+	 */
+	private void heapify(final Handle<K, T, V> handle) {
+		if (handle == null) return;
+		this.heapify(handle.left);
+		this.heapify(handle.right);
+		Handle<K, T, V> current = handle;
+		while (true) {
+			Handle<K, T, V> largest = current;
+			if (current.left != null && current.left.priority > largest.priority) largest = current.left;
+			if (current.right != null && current.right.priority > largest.priority) largest = current.right;
+			if (largest == current) break;
+			final int priority = current.priority;
+			current.priority = largest.priority;
+			largest.priority = priority;
+			current = largest;
+		}
+	}
+
+	/**
+	 * Rotate the given handle above its parent.
+	 * @param handle The <code>Handle</code> to rotate.
+	 */
+	private void rotateUp(final Handle<K, T, V> handle) {
+		final Handle<K, T, V> parent = handle.parent;
+		final Handle<K, T, V> grandparent = parent.parent;
+		this.revise(handle);
+		this.revise(parent);
+		if (grandparent != null) this.revise(grandparent);
+		if (parent.left == handle) {
+			parent.left = handle.right;
+			if (handle.right != null) handle.right.parent = parent;
+			handle.right = parent;
+		} else {
+			parent.right = handle.left;
+			if (handle.left != null) handle.left.parent = parent;
+			handle.left = parent;
+		}
+		parent.parent = handle;
+		handle.parent = grandparent;
+		if (grandparent == null) this.setRoot(handle);
+		else if (grandparent.left == parent) grandparent.left = handle;
+		else grandparent.right = handle;
+		parent.size = RankTree.size(parent.left) + RankTree.size(parent.right) + 1;
+		handle.size = RankTree.size(handle.left) + RankTree.size(handle.right) + 1;
+	}
+
+	/**
+	 * Generate the next pseudo-random priority.
+	 * @return The <code>int</code> priority.
+	 */
+	private int nextPriority() {
+		// Xorshift generator.
+		int x = this.seed;
+		x ^= (x << 13);
+		x ^= (x >>> 17);
+		x ^= (x << 5);
+		this.seed = x;
+		return x;
+	}
+
+	/**
+	 * Discard the revisions that are only valid before
+	 * the given oldest pinned version.
+	 * @param since The <code>int</code> version since
+	 * which the current links are valid.
+	 * @param revisions The <code>Revision</code> list,
+	 * most recent first.
+	 * @param oldest The <code>int</code> oldest pinned
+	 * version.
+	 * @return The retained <code>Revision</code> list.
+	 * <code>null</code> if none are retained.
+	 */
+	private static <K, T extends Comparable<T>, V> Revision<K, T, V> prune(final int since, final Revision<K, T, V> revisions,
+			final int oldest) {
+		// The current links serve every pinned version.
+		if (since <= oldest) return null;
+		// The first revision valid at the oldest version
+		// serves it, and all the older ones are unused.
+		for (Revision<K, T, V> revision = revisions; revision != null; revision = revision.next) {
+			if (revision.since <= oldest) {
+				revision.next = null;
+				break;
+			}
+		}
+		return revisions;
+	}
+
+	/**
+	 * Retrieve the in-order successor of given handle.
+	 * @param handle The <code>Handle</code> to check.
+	 * @return The successor <code>Handle</code>.
+	 * <code>null</code> if the handle is the last.
+	 */
+	private static <K, T extends Comparable<T>, V> Handle<K, T, V> successor(final Handle<K, T, V> handle) {
+		if (handle.right != null) {
+			Handle<K, T, V> current = handle.right;
+			while (current.left != null) current = current.left;
+			return current;
+		}
+		Handle<K, T, V> current = handle;
+		while (current.parent != null && current.parent.right == current) {
+			current = current.parent;
+		}
+		return current.parent;
+	}
+
+	/**
+	 * Retrieve the size of the given subtree.
+	 * @param handle The root <code>Handle</code> of the
+	 * subtree.
+	 * @return The <code>int</code> size of the subtree.
+	 */
+	private static <K, T extends Comparable<T>, V> int size(final Handle<K, T, V> handle) {
+		return (handle == null) ? 0 : handle.size;
+	}
+
+	/**
+	 * Retrieve the size of the given subtree in the
+	 * given version.
+	 * @param handle The root <code>Handle</code> of the
+	 * subtree.
+	 * @param version The <code>int</code> version.
+	 * @return The <code>int</code> size of the subtree.
+	 */
+	private static <K, T extends Comparable<T>, V> int size(final Handle<K, T, V> handle, final int version) {
+		if (handle == null) return 0;
+		final Revision<K, T, V> revision = handle.revision(version);
+		return (revision == null) ? handle.size : revision.size;
+	}
+
+	/**
+	 * Retrieve the child of the given handle in the
+	 * given version.
+	 * @param handle The parent <code>Handle</code>.
+	 * @param version The <code>int</code> version.
+	 * @param left <code>true</code> to retrieve the
+	 * left child, <code>false</code> for the right.
+	 * @return The child <code>Handle</code>.
+	 */
+	private static <K, T extends Comparable<T>, V> Handle<K, T, V> child(final Handle<K, T, V> handle, final int version, final boolean left) {
+		final Revision<K, T, V> revision = handle.revision(version);
+		if (revision == null) return left ? handle.left : handle.right;
+		return left ? revision.left : revision.right;
+	}
+
+	/**
+	 * <code>Handle</code> defines the tree node that
+	 * holds a single entry of the tree.
+	 */
+	static final class Handle<K, T extends Comparable<T>, V> implements ISortableEntry<K, T, V> {
+		/**
+		 * The <code>SortableEntry</code> of the value.
+		 */
+		final SortableEntry<K, T, V> entry;
+		/**
+		 * The <code>int</code> sketch bucket of the value
+		 * maintained by the owner of the tree.
+		 */
+		int bucket;
+		/**
+		 * The <code>int</code> heap priority.
+		 */
+		private int priority;
+		/**
+		 * The <code>int</code> size of the subtree rooted
+		 * at this handle. <code>0</code> if the handle is
+		 * removed from the tree.
+		 */
+		private int size;
+		/**
+		 * The parent <code>Handle</code>.
+		 */
+		private Handle<K, T, V> parent;
+		/**
+		 * The left child <code>Handle</code>.
+		 */
+		private Handle<K, T, V> left;
+		/**
+		 * The right child <code>Handle</code>.
+		 */
+		private Handle<K, T, V> right;
+		/**
+		 * The <code>int</code> version since which the
+		 * current links are valid.
+		 */
+		private int since;
+		/**
+		 * The <code>Revision</code> list of the previous
+		 * links, most recent first.
+		 */
+		private Revision<K, T, V> revisions;
+
+		/**
+		 * Constructor of <code>Handle</code>.
+		 * @param entry The <code>SortableEntry</code>.
+		 * @param priority The <code>int</code> priority.
+		 * @param since The <code>int</code> version of
+		 * the insertion.
+		 */
+		private Handle(final SortableEntry<K, T, V> entry, final int priority, final int since) {
+			this.entry = entry;
+			this.priority = priority;
+			this.size = 1;
+			this.since = since;
+		}
+
+		/**
+		 * Retrieve the revision of the links that are
+		 * valid in the given version.
+		 * @param version The <code>int</code> version.
+		 * @return The <code>Revision</code>. <code>null</code>
+		 * if the current links are valid.
+		 */
+		private Revision<K, T, V> revision(final int version) {
+			if (this.since <= version) return null;
+			Revision<K, T, V> revision = this.revisions;
+			while (revision.since > version) revision = revision.next;
+			return revision;
+		}
+
+		@Override
+		public K getKey() {
+			return this.entry.key;
+		}
+
+		@Override
+		public T getNode() {
+			return this.entry.node;
+		}
+
+		@Override
+		public V getAttachment() {
+			return this.entry.attachment;
+		}
+	}
+
+	/**
+	 * <code>Revision</code> defines the immutable links
+	 * of a handle that were valid since a version until
+	 * the handle was restructured. Only the link to the
+	 * older revision is cut once it is no longer used.
+	 */
+	private static final class Revision<K, T extends Comparable<T>, V> {
+		/**
+		 * The <code>int</code> version since which the
+		 * links are valid.
+		 */
+		private final int since;
+		/**
+		 * The left child <code>Handle</code>.
+		 */
+		private final Handle<K, T, V> left;
+		/**
+		 * The right child <code>Handle</code>.
+		 */
+		private final Handle<K, T, V> right;
+		/**
+		 * The <code>int</code> size of the subtree.
+		 */
+		private final int size;
+		/**
+		 * The older <code>Revision</code>.
+		 */
+		private Revision<K, T, V> next;
+
+		/**
+		 * Constructor of <code>Revision</code>.
+		 * @param since The <code>int</code> version.
+		 * @param left The left child <code>Handle</code>.
+		 * @param right The right child <code>Handle</code>.
+		 * @param size The <code>int</code> subtree size.
+		 * @param next The older <code>Revision</code>.
+		 */
+		private Revision(final int since, final Handle<K, T, V> left, final Handle<K, T, V> right, final int size, final Revision<K, T, V> next) {
+			this.since = since;
+			this.left = left;
+			this.right = right;
+			this.size = size;
+			this.next = next;
+		}
+	}
+
+	/**
+	 * <code>Cursor</code> defines the traversal of the
+	 * handles of a pinned version in either order. The
+	 * cursor only holds the ancestors of its position,
+	 * and it remains valid across modifications of the
+	 * tree as long as the version is pinned.
+	 */
+	static final class Cursor<K, T extends Comparable<T>, V> {
+		/**
+		 * The <code>int</code> traversed version.
+		 */
+		private final int version;
+		/**
+		 * The <code>boolean</code> flag indicating if the
+		 * traversal is in descending order.
+		 */
+		private final boolean descending;
+		/**
+		 * The <code>List</code> stack of the pending
+		 * ancestor <code>Handle</code>.
+		 */
+		private final List<Handle<K, T, V>> stack;
+
+		/**
+		 * Constructor of <code>Cursor</code>.
+		 * @param version The <code>int</code> version.
+		 * @param descending <code>true</code> if the
+		 * traversal is in descending order.
+		 */
+		private Cursor(final int version, final boolean descending) {
+			this.version = version;
+			this.descending = descending;
+			this.stack = new ArrayList<Handle<K, T, V>>();
+		}
+
+		/**
+		 * Retrieve the next handle of the traversal.
+		 * @return The next <code>Handle</code>. <code>null</code>
+		 * if the traversal is complete.
+		 */
+		Handle<K, T, V> next() {
+			if (this.stack.isEmpty()) return null;
+			final Handle<K, T, V> handle = this.stack.remove(this.stack.size()-1);
+			Handle<K, T, V> current = RankTree.child(handle, this.version, this.descending);
+			while (current != null) {
+				this.stack.add(current);
+				current = RankTree.child(current, this.version, !this.descending);
+			}
+			return handle;
+		}
+	}
+}
@@ -0,0 +1,248 @@
+package hemera.utility.structure;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.locks.ReentrantReadWriteLock.ReadLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock.WriteLock;
+
+import hemera.utility.structure.interfaces.IEntryVisitor;
+import hemera.utility.structure.interfaces.ISortableEntry;
+import hemera.utility.structure.interfaces.ISortableSetSnapshot;
+
+/**
+ * <code>RankedSetSnapshot</code> defines the snapshot of
+ * a <code>ConcurrentRankedSortableSet</code>, which is a
+ * pinned version of the order-statistic tree of the set.
+ * <p>
+ * All traversals and queries hold the tree read-lock
+ * only while reading the tree, and iterators read the
+ * tree in batches, thus the modifications of the set
+ * are never blocked for the duration of a traversal.
+ *
+ * @author Yi Wang (Neakor)
+ * @version 1.0.0
+ */
+class RankedSetSnapshot<K, T extends Comparable<T>, V> implements ISortableSetSnapshot<K, T, V> {
+	/**
+	 * The <code>int</code> number of entries read from
+	 * the tree while holding the read-lock once.
+	 */
+	private static final int BATCH_SIZE = 256;
+
+	/**
+	 * The <code>RankTree</code> of the set.
+	 */
+	private final RankTree<K, T, V> tree;
+	/**
+	 * The <code>ReadLock</code> of the tree.
+	 */
+	private final ReadLock readlock;
+	/**
+	 * The <code>WriteLock</code> of the tree.
+	 */
+	private final WriteLock writelock;
+	/**
+	 * The <code>int</code> pinned version of the tree.
+	 */
+	private final int version;
+	/**
+	 * The <code>int</code> number of entries.
+	 */
+	private final int size;
+	/**
+	 * The <code>boolean</code> flag indicating if the
+	 * snapshot is released, guarded by the tree lock.
+	 */
+	private boolean released;
+
+	/**
+	 * Constructor of <code>RankedSetSnapshot</code>.
+	 * <p>
+	 * The tree write-lock must be held by the caller.
+	 * @param tree The <code>RankTree</code> to pin.
+	 * @param readlock The <code>ReadLock</code> of the
+	 * tree.
+	 * @param writelock The <code>WriteLock</code> of the
+	 * tree.
+	 */
+	RankedSetSnapshot(final RankTree<K, T, V> tree, final ReadLock readlock, final WriteLock writelock) {
+		this.tree = tree;
+		this.readlock = readlock;
+		this.writelock = writelock;
+		this.version = tree.pin();
+		this.size = tree.size(this.version);
+	}
+
+	@Override
+	public Iterator<ISortableEntry<K, T, V>> iterator() {
+		return new SnapshotIterator(0, false);
+	}
+
+	@Override
+	public Iterator<ISortableEntry<K, T, V>> descendingIterator() {
+		return new SnapshotIterator(0, true);
+	}
+
+	@Override
+	public void visit(final IEntryVisitor<K, T, V> visitor, final int parallelism) {
+		SortableSetView.visit(this.iterator(), visitor, parallelism);
+	}
+
+	@Override
+	public T nodeAtRank(final int rank) {
+		if (rank < 0 || rank >= this.size) return null;
+		this.readlock.lock();
+		try {
+			this.checkReleased();
+			return this.tree.select(rank, this.version).entry.node;
+		} finally {
+			this.readlock.unlock();
+		}
+	}
+
+	@Override
+	public List<T> range(final int offset, final int limit) {
+		final List<T> list = new ArrayList<T>(Math.max(0, Math.min(limit, this.size - offset)));
+		if (offset < 0 || offset >= this.size) return list;
+		final Iterator<ISortableEntry<K, T, V>> iterator = new SnapshotIterator(offset, false);
+		while (list.size() < limit && iterator.hasNext()) {
+			list.add(iterator.next().getNode());
+		}
+		return list;
+	}
+
+	@Override
+	public T nodeAtQuantile(final double q) {
+		if (!(q >= 0 && q <= 1)) throw new IllegalArgumentException("Quantile must be between 0 and 1: " + q);
+		if (this.size == 0) return null;
+		// Nearest-rank, where the first node is at 0.
+		final int rank = Math.max(0, (int)Math.ceil(this.size * q) - 1);
+		return this.nodeAtRank(Math.min(rank, this.size-1));
+	}
+
+	@Override
+	public void release() {
+		this.writelock.lock();
+		try {
+			if (this.released) return;
+			this.released = true;
+			this.tree.unpin(this.version);
+		} finally {
+			this.writelock.unlock();
+		}
+	}
+
+	@Override
+	public boolean isEmpty() {
+		return this.size == 0;
+	}
+
+	@Override
+	public int size() {
+		return this.size;
+	}
+
+	@Override
+	public int getVersion() {
+		return this.version;
+	}
+
+	/**
+	 * Ensure the snapshot is not released.
+	 */
+	private void checkReleased() {
+		if (this.released) throw new IllegalStateException("Snapshot is released.");
+	}
+
+	/**
+	 * <code>SnapshotIterator</code> defines the iterator
+	 * that reads the entries of the pinned version from
+	 * the tree in batches.
+	 */
+	private final class SnapshotIterator implements Iterator<ISortableEntry<K, T, V>> {
+		/**
+		 * The <code>Cursor</code> of the pinned version.
+		 * <code>null</code> if not yet created.
+		 */
+		private RankTree.Cursor<K, T, V> cursor;
+		/**
+		 * The <code>int</code> rank to start at.
+		 */
+		private final int start;
+		/**
+		 * The <code>boolean</code> flag indicating if the
+		 * iteration is in descending order.
+		 */
+		private final boolean descending;
+		/**
+		 * The <code>List</code> of the read entries.
+		 */
+		private final List<ISortableEntry<K, T, V>> batch;
+		/**
+		 * The <code>int</code> index of the next entry in
+		 * the batch.
+		 */
+		private int index;
+		/**
+		 * The <code>int</code> number of entries that have
+		 * not been read from the tree.
+		 */
+		private int remaining;
+
+		/**
+		 * Constructor of <code>SnapshotIterator</code>.
+		 * @param start The <code>int</code> zero-based rank
+		 * to start at, in the order of the iteration.
+		 * @param descending <code>true</code> if the
+		 * iteration is in descending order.
+		 */
+		private SnapshotIterator(final int start, final boolean descending) {
+			this.start = start;
+			this.descending = descending;
+			this.batch = new ArrayList<ISortableEntry<K, T, V>>(Math.min(RankedSetSnapshot.BATCH_SIZE, RankedSetSnapshot.this.size));
+			this.remaining = Math.max(0, RankedSetSnapshot.this.size - start);
+		}
+
+		/**
+		 * Read the next batch of entries from the tree.
+		 */
+		private void fill() {
+			this.batch.clear();
+			this.index = 0;
+			RankedSetSnapshot.this.readlock.lock();
+			try {
+				RankedSetSnapshot.this.checkReleased();
+				if (this.cursor == null) {
+					this.cursor = RankedSetSnapshot.this.tree.cursor(RankedSetSnapshot.this.version, this.start, this.descending);
+				}
+				while (this.batch.size() < RankedSetSnapshot.BATCH_SIZE && this.remaining > 0) {
+					this.batch.add(this.cursor.next());
+					this.remaining--;
+				}
+			} finally {
+				RankedSetSnapshot.this.readlock.unlock();
+			}
+		}
+
+		@Override
+		public boolean hasNext() {
+			return this.index < this.batch.size() || this.remaining > 0;
+		}
+
+		@Override
+		public ISortableEntry<K, T, V> next() {
+			if (this.index >= this.batch.size()) {
+				if (this.remaining <= 0) throw new NoSuchElementException();
+				this.fill();
+			}
+			return this.batch.get(this.index++);
+		}
+
+		@Override
+		public void remove() {
+			throw new UnsupportedOperationException("Snapshot is immutable.");
+		}
+	}
+}
@@ -0,0 +1,456 @@
+package hemera.utility.structure;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import hemera.utility.structure.interfaces.IConcurrentSortableSet;
+import hemera.utility.structure.interfaces.INodeMutator;
+import hemera.utility.structure.interfaces.ISortableEntry;
+
+/**
+ * <code>ShardedConcurrentSortableSet</code> defines the
+ * implementation of <code>IConcurrentSortableSet</code>
+ * that partitions its keys across a fixed number of
+ * independent <code>ConcurrentSortableSet</code> shards.
+ * <p>
+ * Every key is assigned to a single shard based on its
+ * hash code, thus all the key based operations only
+ * contend on the lock, counter and ordering structure
+ * of a single shard. This allows a large number of
+ * concurrent writers to scale with the number of shards.
+ * <p>
+ * The first and last nodes are retrieved by merging the
+ * heads and tails of all the shards, which are constant
+ * time reads of the individual shards. Thus these reads
+ * are linear in the number of shards instead of constant
+ * time, and they are not atomic across the shards. The
+ * <code>sort</code> operation sorts all the shards in
+ * parallel.
+ *
+ * @author Yi Wang (Neakor)
+ * @version 1.0.0
+ */
+public class ShardedConcurrentSortableSet<K, T extends Comparable<T>, V> implements IConcurrentSortableSet<K, T, V> {
+	/**
+	 * The <code>ConcurrentSortableSet</code> shards.
+	 */
+	private final ConcurrentSortableSet<K, T, V>[] shards;
+	/**
+	 * The <code>Comparator</code> that defines the order
+	 * of the entries across all shards.
+	 */
+	private final Comparator<SortableEntry<K, T, V>> comparator;
+
+	/**
+	 * Constructor of <code>ShardedConcurrentSortableSet</code>.
+	 * <p>
+	 * This creates a set using the <code>BLOCKING</code>
+	 * sort mode.
+	 * @param shards The <code>int</code> number of shards.
+	 */
+	public ShardedConcurrentSortableSet(final int shards) {
+		this(shards, SortMode.BLOCKING);
+	}
+
+	/**
+	 * Constructor of <code>ShardedConcurrentSortableSet</code>.
+	 * @param shards The <code>int</code> number of shards.
+	 * @param sortmode The <code>SortMode</code> used by
+	 * every shard to perform the <code>sort</code> operation.
+	 */
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	public ShardedConcurrentSortableSet(final int shards, final SortMode sortmode) {
+		if (shards < 1) throw new IllegalArgumentException("Number of shards must be positive.");
+		this.shards = new ConcurrentSortableSet[shards];
+		for (int i = 0; i < shards; i++) {
+			this.shards[i] = new ConcurrentSortableSet<K, T, V>(sortmode);
+		}
+		this.comparator = this.shards[0].comparator();
+	}
+
+	@Override
+	public boolean add(final K key, final T node, final V attachment) {
+		return this.shard(key).add(key, node, attachment);
+	}
+
+	@Override
+	public BitSet addAll(final List<? extends ISortableEntry<K, T, V>> entries) {
+		// Partition the entries by shard while recording
+		// their original indices.
+		final List<List<ISortableEntry<K, T, V>>> batches = new ArrayList<List<ISortableEntry<K, T, V>>>(this.shards.length);
+		final List<List<Integer>> indices = new ArrayList<List<Integer>>(this.shards.length);
+		for (int i = 0; i < this.shards.length; i++) {
+			batches.add(new ArrayList<ISortableEntry<K, T, V>>());
+			indices.add(new ArrayList<Integer>());
+		}
+		for (int i = 0; i < entries.size(); i++) {
+			final ISortableEntry<K, T, V> entry = entries.get(i);
+			final int index = this.index(entry.getKey());
+			batches.get(index).add(entry);
+			indices.get(index).add(i);
+		}
+		final BitSet result = new BitSet(entries.size());
+		for (int i = 0; i < this.shards.length; i++) {
+			if (batches.get(i).isEmpty()) continue;
+			final BitSet added = this.shards[i].addAll(batches.get(i));
+			final List<Integer> shardindices = indices.get(i);
+			for (int j = added.nextSetBit(0); j >= 0; j = added.nextSetBit(j+1)) {
+				result.set(shardindices.get(j));
+			}
+		}
+		return result;
+	}
+
+	@Override
+	public boolean remove(final K key) {
+		return this.shard(key).remove(key);
+	}
+
+	@Override
+	public BitSet removeAll(final Collection<K> keys) {
+		final List<List<K>> batches = new ArrayList<List<K>>(this.shards.length);
+		final List<List<Integer>> indices = new ArrayList<List<Integer>>(this.shards.length);
+		for (int i = 0; i < this.shards.length; i++) {
+			batches.add(new ArrayList<K>());
+			indices.add(new ArrayList<Integer>());
+		}
+		int position = 0;
+		for (final K key : keys) {
+			final int index = this.index(key);
+			batches.get(index).add(key);
+			indices.get(index).add(position);
+			position++;
+		}
+		final BitSet result = new BitSet(position);
+		for (int i = 0; i < this.shards.length; i++) {
+			if (batches.get(i).isEmpty()) continue;
+			final BitSet removed = this.shards[i].removeAll(batches.get(i));
+			final List<Integer> shardindices = indices.get(i);
+			for (int j = removed.nextSetBit(0); j >= 0; j = removed.nextSetBit(j+1)) {
+				result.set(shardindices.get(j));
+			}
+		}
+		return result;
+	}
+
+	@Override
+	public boolean update(final K key, final INodeMutator<T> mutator) {
+		return this.shard(key).update(key, mutator);
+	}
+
+	@Override
+	public ISortableEntry<K, T, V> pollFirst() {
+		return this.poll(true);
+	}
+
+	@Override
+	public ISortableEntry<K, T, V> pollLast() {
+		return this.poll(false);
+	}
+
+	@Override
+	public List<ISortableEntry<K, T, V>> pollFirst(final int count) {
+		final List<ISortableEntry<K, T, V>> list = new ArrayList<ISortableEntry<K, T, V>>(Math.max(0, Math.min(count, this.size())));
+		for (int i = 0; i < count; i++) {
+			final ISortableEntry<K, T, V> entry = this.poll(true);
+			if (entry == null) break;
+			list.add(entry);
+		}
+		return list;
+	}
+
+	/**
+	 * Poll the first or the last entry across all the
+	 * shards.
+	 * <p>
+	 * The shard with the lowest or highest head is
+	 * polled. If a concurrent poll empties that shard
+	 * first, the merge is retried, thus a poll only
+	 * fails if all the shards are observed empty.
+	 * @param first <code>true</code> to poll the first
+	 * entry. <code>false</code> to poll the last.
+	 * @return The polled <code>ISortableEntry</code>.
+	 * <code>null</code> if no entries in the set.
+	 */
+	private ISortableEntry<K, T, V> poll(final boolean first) {
+		while (true) {
+			final int index = this.extreme(first);
+			if (index < 0) return null;
+			final ConcurrentSortableSet<K, T, V> shard = this.shards[index];
+			final ISortableEntry<K, T, V> entry = first ? shard.pollFirst() : shard.pollLast();
+			if (entry != null) return entry;
+		}
+	}
+
+	@Override
+	public void sort() {
+		if (this.shards.length == 1) {
+			this.shards[0].sort();
+			return;
+		}
+		final List<Callable<Void>> tasks = new ArrayList<Callable<Void>>(this.shards.length);
+		for (final ConcurrentSortableSet<K, T, V> shard : this.shards) {
+			tasks.add(new Callable<Void>() {
+				@Override
+				public Void call() {
+					shard.sort();
+					return null;
+				}
+			});
+		}
+		try {
+			final List<Future<Void>> futures = ShardSorter.executor.invokeAll(tasks);
+			for (final Future<Void> future : futures) {
+				future.get();
+			}
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while sorting shards.", e);
+		} catch (final ExecutionException e) {
+			throw new IllegalStateException("Sorting shards failed.", e.getCause());
+		}
+	}
+
+	@Override
+	public T firstNode() {
+		final SortableEntry<K, T, V> entry = this.entry(true);
+		if (entry == null) return null;
+		return entry.node;
+	}
+
+	@Override
+	public T lastNode() {
+		final SortableEntry<K, T, V> entry = this.entry(false);
+		if (entry == null) return null;
+		return entry.node;
+	}
+
+	@Override
+	public V firstAttachment() {
+		final SortableEntry<K, T, V> entry = this.entry(true);
+		if (entry == null) return null;
+		return entry.attachment;
+	}
+
+	@Override
+	public V lastAttachment() {
+		final SortableEntry<K, T, V> entry = this.entry(false);
+		if (entry == null) return null;
+		return entry.attachment;
+	}
+
+	/**
+	 * Retrieve the first or the last entry across all
+	 * the shards.
+	 * @param first <code>true</code> to retrieve the
+	 * first entry. <code>false</code> for the last.
+	 * @return The <code>SortableEntry</code>.
+	 * <code>null</code> if no entries in the set.
+	 */
+	private SortableEntry<K, T, V> entry(final boolean first) {
+		SortableEntry<K, T, V> result = null;
+		for (final ConcurrentSortableSet<K, T, V> shard : this.shards) {
+			final SortableEntry<K, T, V> entry = first ? shard.firstEntry() : shard.lastEntry();
+			if (entry == null) continue;
+			if (result == null || this.precedes(entry, result, first)) result = entry;
+		}
+		return result;
+	}
+
+	/**
+	 * Retrieve the index of the shard that contains
+	 * the first or the last entry across all shards.
+	 * @param first <code>true</code> to check for the
+	 * first entry. <code>false</code> for the last.
+	 * @return The <code>int</code> shard index.
+	 * <code>-1</code> if all the shards are empty.
+	 */
+	private int extreme(final boolean first) {
+		int index = -1;
+		SortableEntry<K, T, V> result = null;
+		for (int i = 0; i < this.shards.length; i++) {
+			final SortableEntry<K, T, V> entry = first ? this.shards[i].firstEntry() : this.shards[i].lastEntry();
+			if (entry == null) continue;
+			if (result == null || this.precedes(entry, result, first)) {
+				result = entry;
+				index = i;
+			}
+		}
+		return index;
+	}
+
+	/**
+	 * Check if the given entry should replace the
+	 * current candidate of the merge.
+	 * @param entry The <code>SortableEntry</code> to check.
+	 * @param candidate The current candidate.
+	 * @param first <code>true</code> if merging for the
+	 * first entry. <code>false</code> for the last.
+	 * @return <code>true</code> if the entry replaces
+	 * the candidate.
+	 */
+	private boolean precedes(final SortableEntry<K, T, V> entry, final SortableEntry<K, T, V> candidate, final boolean first) {
+		final int result = this.comparator.compare(entry, candidate);
+		return first ? (result < 0) : (result > 0);
+	}
+
+	@Override
+	public int size() {
+		int size = 0;
+		for (final ConcurrentSortableSet<K, T, V> shard : this.shards) {
+			size += shard.size();
+		}
+		return size;
+	}
+
+	@Override
+	public T getNode(final K key) {
+		return this.shard(key).getNode(key);
+	}
+
+	@Override
+	public V getAttachment(final K key) {
+		return this.shard(key).getAttachment(key);
+	}
+
+	@Override
+	public Iterable<K> getAllKeys() {
+		return new Iterable<K>() {
+			@Override
+			public Iterator<K> iterator() {
+				return new KeyIterator();
+			}
+		};
+	}
+
+	/**
+	 * Retrieve all the entries in their sorted order.
+	 * <p>
+	 * The returned iterators perform a k-way merge of
+	 * the shards. They are weakly consistent, reflecting
+	 * the concurrent modifications of the set may or may
+	 * not be observed, and they do not support removal.
+	 * @return The <code>Iterable</code> of all the
+	 * <code>ISortableEntry</code> in ascending order.
+	 */
+	public Iterable<ISortableEntry<K, T, V>> entries() {
+		return new Iterable<ISortableEntry<K, T, V>>() {
+			@Override
+			public Iterator<ISortableEntry<K, T, V>> iterator() {
+				final List<Iterator<SortableEntry<K, T, V>>> sources = new ArrayList<Iterator<SortableEntry<K, T, V>>>(ShardedConcurrentSortableSet.this.shards.length);
+				for (final ConcurrentSortableSet<K, T, V> shard : ShardedConcurrentSortableSet.this.shards) {
+					sources.add(shard.ascendingEntries());
+				}
+				return new MergingIterator<ISortableEntry<K, T, V>>(sources, new Comparator<ISortableEntry<K, T, V>>() {
+					@SuppressWarnings("unchecked")
+					@Override
+					public int compare(final ISortableEntry<K, T, V> o1, final ISortableEntry<K, T, V> o2) {
+						return ShardedConcurrentSortableSet.this.comparator.compare((SortableEntry<K, T, V>)o1, (SortableEntry<K, T, V>)o2);
+					}
+				});
+			}
+		};
+	}
+
+	/**
+	 * Retrieve the shard of the given key.
+	 * @param key The <code>K</code> key to check.
+	 * @return The <code>ConcurrentSortableSet</code> shard.
+	 */
+	private ConcurrentSortableSet<K, T, V> shard(final K key) {
+		return this.shards[this.index(key)];
+	}
+
+	/**
+	 * Retrieve the shard index of the given key.
+	 * @param key The <code>K</code> key to check.
+	 * @return The <code>int</code> shard index.
+	 */
+	private int index(final K key) {
+		// Use a multiplicative hash so the shards select
+		// on different bits than the lock stripes within
+		// a shard.
+		final int hash = key.hashCode() * 0x9E3779B9;
+		return (hash >>> 1) % this.shards.length;
+	}
+
+	/**
+	 * <code>KeyIterator</code> defines the iterator that
+	 * chains the key iterators of all the shards.
+	 */
+	private final class KeyIterator implements Iterator<K> {
+		/**
+		 * The <code>int</code> index of the current shard.
+		 */
+		private int index;
+		/**
+		 * The key <code>Iterator</code> of current shard.
+		 */
+		private Iterator<K> current;
+
+		/**
+		 * Constructor of <code>KeyIterator</code>.
+		 */
+		private KeyIterator() {
+			this.current = ShardedConcurrentSortableSet.this.shards[0].getAllKeys().iterator();
+		}
+
+		@Override
+		public boolean hasNext() {
+			final ConcurrentSortableSet<K, T, V>[] shards = ShardedConcurrentSortableSet.this.shards;
+			while (!this.current.hasNext()) {
+				if (this.index >= shards.length-1) return false;
+				this.index++;
+				this.current = shards[this.index].getAllKeys().iterator();
+			}
+			return true;
+		}
+
+		@Override
+		public K next() {
+			if (!this.hasNext()) throw new NoSuchElementException();
+			return this.current.next();
+		}
+
+		@Override
+		public void remove() {
+			throw new UnsupportedOperationException();
+		}
+	}
+
+	/**
+	 * <code>ShardSorter</code> defines the lazily created
+	 * holder of the daemon threads used to sort shards.
+	 * <p>
+	 * The threads are separate from the ones used by
+	 * <code>ParallelSorter</code>, since every shard sort
+	 * waits for its own parallel sort to complete.
+	 */
+	private static final class ShardSorter {
+		/**
+		 * The <code>ExecutorService</code> of daemon threads.
+		 */
+		private static final ExecutorService executor = Executors.newCachedThreadPool(new ThreadFactory() {
+			private final AtomicInteger index = new AtomicInteger();
+
+			@Override
+			public Thread newThread(final Runnable runnable) {
+				final Thread thread = new Thread(runnable, "Hemera-ShardSorter-" + this.index.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+	}
+}
@@ -0,0 +1,49 @@
+package hemera.utility.structure;
+
+/**
+ * <code>SortMode</code> defines the enumeration of
+ * all the strategies a <code>ConcurrentSortableSet</code>
+ * can use to perform its <code>sort</code> operation.
+ *
+ * @author Yi Wang (Neakor)
+ * @version 1.0.0
+ */
+public enum SortMode {
+	/**
+	 * The set is sorted while holding the write-lock
+	 * for the entire duration of the operation. All
+	 * read operations hold the read-lock, thus they
+	 * are suspended until sorting completes, and
+	 * always observe the most up-to-date ordering.
+	 */
+	BLOCKING,
+	/**
+	 * The set is sorted by building a new ordering
+	 * structure off to the side, which is published
+	 * atomically once completed. Modifications made
+	 * during the rebuild are recorded, and the entries
+	 * they touched are dropped from the rebuilt order,
+	 * which is verified, before they are inserted into
+	 * the new structure. The write-lock is only held
+	 * for the final verification and publication, which
+	 * may take linear time if nodes were updated since
+	 * the last verification. Read operations do not
+	 * hold any locks, thus they are never suspended,
+	 * though they may observe the previous ordering
+	 * while sorting is in progress.
+	 */
+	SWAP,
+	/**
+	 * The set is sorted while holding the write-lock
+	 * for the entire duration of the operation, same
+	 * as <code>BLOCKING</code>. Read operations do not
+	 * acquire the read-lock, but optimistically read
+	 * the set and validate afterwards that no sorting
+	 * has started or completed in the meantime. Only
+	 * the reads that overlap with sorting fall back to
+	 * the read-lock, thus reads always observe the most
+	 * up-to-date ordering without contending on the
+	 * lock in the common case.
+	 */
+	OPTIMISTIC;
+}
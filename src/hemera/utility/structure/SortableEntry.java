@@ -0,0 +1,81 @@
+package hemera.utility.structure;
+
+import hemera.utility.structure.interfaces.ISortableEntry;
+
+/**
+ * <code>SortableEntry</code> defines the immutable
+ * implementation of an entry of a sortable set. It
+ * can be used to construct the batches of entries
+ * to be added to a set in bulk.
+ * <p>
+ * Entries use reference equality, while the order
+ * of the entries in a set is defined by the order
+ * of their nodes.
+ *
+ * @author Yi Wang (Neakor)
+ * @version 1.0.0
+ */
+public final class SortableEntry<K, T extends Comparable<T>, V> implements ISortableEntry<K, T, V> {
+	/**
+	 * The <code>K</code> key.
+	 */
+	final K key;
+	/**
+	 * The <code>T</code> node.
+	 */
+	final T node;
+	/**
+	 * The <code>V</code> attachment.
+	 */
+	final V attachment;
+	/**
+	 * The <code>long</code> sequence number assigned
+	 * by the set, used to order the entries whose nodes
+	 * compare as equal.
+	 */
+	final long sequence;
+
+	/**
+	 * Constructor of <code>SortableEntry</code>.
+	 * @param key The <code>K</code> key.
+	 * @param node The <code>T</code> node.
+	 * @param attachment The <code>V</code> attachment.
+	 */
+	public SortableEntry(final K key, final T node, final V attachment) {
+		this(key, node, attachment, 0);
+	}
+
+	/**
+	 * Constructor of <code>SortableEntry</code>.
+	 * @param key The <code>K</code> key.
+	 * @param node The <code>T</code> node.
+	 * @param attachment The <code>V</code> attachment.
+	 * @param sequence The <code>long</code> sequence.
+	 */
+	SortableEntry(final K key, final T node, final V attachment, final long sequence) {
+		this.key = key;
+		this.node = node;
+		this.attachment = attachment;
+		this.sequence = sequence;
+	}
+
+	@Override
+	public K getKey() {
+		return this.key;
+	}
+
+	@Override
+	public T getNode() {
+		return this.node;
+	}
+
+	@Override
+	public V getAttachment() {
+		return this.attachment;
+	}
+
+	@Override
+	public String toString() {
+		return this.key + "=" + this.node;
+	}
+}
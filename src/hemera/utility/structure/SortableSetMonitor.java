@@ -0,0 +1,219 @@
+package hemera.utility.structure;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+
+import hemera.utility.structure.interfaces.ISortableSetMonitor;
+
+/**
+ * <code>SortableSetMonitor</code> defines the unit that
+ * collects the contention and latency statistics of a
+ * single <code>ConcurrentSortableSet</code>.
+ * <p>
+ * A monitor is created by enabling the monitoring of
+ * a set. The statistics can be retrieved as immutable
+ * snapshots, or through the JMX MBean interface once
+ * the monitor is registered with the platform MBean
+ * server.
+ *
+ * @author Yi Wang (Neakor)
+ * @version 1.0.0
+ */
+public class SortableSetMonitor implements ISortableSetMonitor {
+	/**
+	 * The monitored <code>ConcurrentSortableSet</code>.
+	 */
+	private final ConcurrentSortableSet<?, ?, ?> set;
+	/**
+	 * The <code>LatencyHistogram</code> of read-lock
+	 * wait durations.
+	 */
+	private final LatencyHistogram readlockwait;
+	/**
+	 * The <code>LatencyHistogram</code> of write-lock
+	 * wait durations.
+	 */
+	private final LatencyHistogram writelockwait;
+	/**
+	 * The <code>LatencyHistogram</code> of sort durations.
+	 */
+	private final LatencyHistogram sort;
+	/**
+	 * The <code>int</code> size of the last sort.
+	 */
+	private volatile int lastsortsize;
+	/**
+	 * The <code>AtomicLong</code> number of add failures.
+	 */
+	private final AtomicLong addfailures;
+	/**
+	 * The <code>AtomicLong</code> number of remove failures.
+	 */
+	private final AtomicLong removefailures;
+
+	/**
+	 * Constructor of <code>SortableSetMonitor</code>.
+	 * @param set The <code>ConcurrentSortableSet</code>
+	 * to monitor.
+	 */
+	SortableSetMonitor(final ConcurrentSortableSet<?, ?, ?> set) {
+		this.set = set;
+		this.readlockwait = new LatencyHistogram();
+		this.writelockwait = new LatencyHistogram();
+		this.sort = new LatencyHistogram();
+		this.addfailures = new AtomicLong();
+		this.removefailures = new AtomicLong();
+	}
+
+	/**
+	 * Register this monitor with the platform MBean
+	 * server using the given name.
+	 * @param name The <code>String</code> object name,
+	 * for example <code>hemera:type=SortableSet,name=scores</code>.
+	 * @throws JMException If registration failed.
+	 */
+	public void register(final String name) throws JMException {
+		final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		server.registerMBean(new StandardMBean(this, ISortableSetMonitor.class), new ObjectName(name));
+	}
+
+	/**
+	 * Unregister the monitor registered with the given
+	 * name from the platform MBean server.
+	 * @param name The <code>String</code> object name.
+	 * @throws JMException If unregistration failed.
+	 */
+	public void unregister(final String name) throws JMException {
+		ManagementFactory.getPlatformMBeanServer().unregisterMBean(new ObjectName(name));
+	}
+
+	/**
+	 * Create an immutable snapshot of the currently
+	 * collected statistics.
+	 * @return The <code>SortableSetStatistics</code>.
+	 */
+	public SortableSetStatistics getStatistics() {
+		return new SortableSetStatistics(this.set.size(), this.readlockwait.summarize(), this.writelockwait.summarize(),
+				this.sort.summarize(), this.lastsortsize, this.addfailures.get(), this.removefailures.get());
+	}
+
+	/**
+	 * Record a read-lock acquisition.
+	 * @param nanos The <code>long</code> wait duration.
+	 */
+	void onReadLock(final long nanos) {
+		this.readlockwait.record(nanos);
+	}
+
+	/**
+	 * Record a write-lock acquisition.
+	 * @param nanos The <code>long</code> wait duration.
+	 */
+	void onWriteLock(final long nanos) {
+		this.writelockwait.record(nanos);
+	}
+
+	/**
+	 * Record a completed sort.
+	 * @param nanos The <code>long</code> sort duration.
+	 * @param size The <code>int</code> size of the set.
+	 */
+	void onSort(final long nanos, final int size) {
+		this.sort.record(nanos);
+		this.lastsortsize = size;
+	}
+
+	/**
+	 * Record an add that failed on comparison.
+	 */
+	void onAddFailure() {
+		this.addfailures.incrementAndGet();
+	}
+
+	/**
+	 * Record a remove that failed on comparison.
+	 */
+	void onRemoveFailure() {
+		this.removefailures.incrementAndGet();
+	}
+
+	@Override
+	public void reset() {
+		this.readlockwait.reset();
+		this.writelockwait.reset();
+		this.sort.reset();
+		this.lastsortsize = 0;
+		this.addfailures.set(0);
+		this.removefailures.set(0);
+	}
+
+	@Override
+	public int getSize() {
+		return this.set.size();
+	}
+
+	@Override
+	public long getReadLockCount() {
+		return this.readlockwait.summarize().getCount();
+	}
+
+	@Override
+	public long getReadLockWaitP99() {
+		return this.readlockwait.summarize().getP99Nanos();
+	}
+
+	@Override
+	public long getReadLockWaitMax() {
+		return this.readlockwait.summarize().getMaxNanos();
+	}
+
+	@Override
+	public long getWriteLockCount() {
+		return this.writelockwait.summarize().getCount();
+	}
+
+	@Override
+	public long getWriteLockWaitP99() {
+		return this.writelockwait.summarize().getP99Nanos();
+	}
+
+	@Override
+	public long getWriteLockWaitMax() {
+		return this.writelockwait.summarize().getMaxNanos();
+	}
+
+	@Override
+	public long getSortCount() {
+		return this.sort.summarize().getCount();
+	}
+
+	@Override
+	public long getSortDurationP99() {
+		return this.sort.summarize().getP99Nanos();
+	}
+
+	@Override
+	public long getSortDurationMax() {
+		return this.sort.summarize().getMaxNanos();
+	}
+
+	@Override
+	public int getLastSortSize() {
+		return this.lastsortsize;
+	}
+
+	@Override
+	public long getAddFailures() {
+		return this.addfailures.get();
+	}
+
+	@Override
+	public long getRemoveFailures() {
+		return this.removefailures.get();
+	}
+}
@@ -0,0 +1,134 @@
+package hemera.utility.structure;
+
+/**
+ * <code>SortableSetStatistics</code> defines the
+ * immutable snapshot of the statistics collected by a
+ * <code>SortableSetMonitor</code> at a point in time.
+ *
+ * @author Yi Wang (Neakor)
+ * @version 1.0.0
+ */
+public final class SortableSetStatistics {
+	/**
+	 * The <code>int</code> size of the set.
+	 */
+	private final int size;
+	/**
+	 * The <code>LatencySummary</code> of the read-lock
+	 * wait durations.
+	 */
+	private final LatencySummary readlockwait;
+	/**
+	 * The <code>LatencySummary</code> of the write-lock
+	 * wait durations.
+	 */
+	private final LatencySummary writelockwait;
+	/**
+	 * The <code>LatencySummary</code> of sort durations.
+	 */
+	private final LatencySummary sort;
+	/**
+	 * The <code>int</code> size of the last sort.
+	 */
+	private final int lastsortsize;
+	/**
+	 * The <code>long</code> number of add failures.
+	 */
+	private final long addfailures;
+	/**
+	 * The <code>long</code> number of remove failures.
+	 */
+	private final long removefailures;
+
+	/**
+	 * Constructor of <code>SortableSetStatistics</code>.
+	 * @param size The <code>int</code> size of the set.
+	 * @param readlockwait The read-lock wait summary.
+	 * @param writelockwait The write-lock wait summary.
+	 * @param sort The sort duration summary.
+	 * @param lastsortsize The <code>int</code> size of
+	 * the last sort.
+	 * @param addfailures The <code>long</code> number
+	 * of add failures.
+	 * @param removefailures The <code>long</code> number
+	 * of remove failures.
+	 */
+	SortableSetStatistics(final int size, final LatencySummary readlockwait, final LatencySummary writelockwait,
+			final LatencySummary sort, final int lastsortsize, final long addfailures, final long removefailures) {
+		this.size = size;
+		this.readlockwait = readlockwait;
+		this.writelockwait = writelockwait;
+		this.sort = sort;
+		this.lastsortsize = lastsortsize;
+		this.addfailures = addfailures;
+		this.removefailures = removefailures;
+	}
+
+	/**
+	 * Retrieve the size of the set.
+	 * @return The <code>int</code> size.
+	 */
+	public int getSize() {
+		return this.size;
+	}
+
+	/**
+	 * Retrieve the summary of the durations spent
+	 * waiting to acquire the read-lock.
+	 * @return The <code>LatencySummary</code>.
+	 */
+	public LatencySummary getReadLockWait() {
+		return this.readlockwait;
+	}
+
+	/**
+	 * Retrieve the summary of the durations spent
+	 * waiting to acquire the write-lock.
+	 * @return The <code>LatencySummary</code>.
+	 */
+	public LatencySummary getWriteLockWait() {
+		return this.writelockwait;
+	}
+
+	/**
+	 * Retrieve the summary of the sort durations.
+	 * @return The <code>LatencySummary</code>.
+	 */
+	public LatencySummary getSort() {
+		return this.sort;
+	}
+
+	/**
+	 * Retrieve the size of the set when it was last
+	 * sorted.
+	 * @return The <code>int</code> size.
+	 */
+	public int getLastSortSize() {
+		return this.lastsortsize;
+	}
+
+	/**
+	 * Retrieve the number of nodes that could not be
+	 * added due to the comparison of the node.
+	 * @return The <code>long</code> number of failures.
+	 */
+	public long getAddFailures() {
+		return this.addfailures;
+	}
+
+	/**
+	 * Retrieve the number of nodes that could not be
+	 * removed due to the comparison of the node.
+	 * @return The <code>long</code> number of failures.
+	 */
+	public long getRemoveFailures() {
+		return this.removefailures;
+	}
+
+	@Override
+	public String toString() {
+		return "size=" + this.size + " readLockWait=[" + this.readlockwait + "] writeLockWait=[" + this.writelockwait +
+				"] sort=[" + this.sort + "] lastSortSize=" + this.lastsortsize + " addFailures=" + this.addfailures +
+				" removeFailures=" + this.removefailures;
+	}
+}
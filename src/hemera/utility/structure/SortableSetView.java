@@ -0,0 +1,329 @@
+package hemera.utility.structure;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+import hemera.utility.structure.interfaces.IEntryVisitor;
+import hemera.utility.structure.interfaces.ISortableEntry;
+import hemera.utility.structure.interfaces.ISortableSetView;
+
+/**
+ * <code>SortableSetView</code> defines the live view of
+ * a range of the entries of a <code>ConcurrentSortableSet</code>.
+ * <p>
+ * The view holds the bounds of the range as probe
+ * entries that precede all the entries with an equal
+ * node, and resolves the current ordering map of the
+ * set every time it is traversed, so it remains valid
+ * after the set is sorted.
+ * <p>
+ * Since nodes that compare equal never return 0, the
+ * bounded views of the ordering map cannot be used as
+ * they would exclude the equal nodes at either bound.
+ * Instead, traversal starts from the first entry found
+ * by searching for the probe, and only the comparison
+ * of the probe against an entry decides where the
+ * traversal stops.
+ *
+ * @author Yi Wang (Neakor)
+ * @version 1.0.0
+ */
+class SortableSetView<K, T extends Comparable<T>, V> implements ISortableSetView<K, T, V> {
+	/**
+	 * The <code>int</code> number of entries handed out
+	 * to a visiting thread at a time.
+	 */
+	private static final int BATCH_SIZE = 256;
+
+	/**
+	 * The viewed <code>ConcurrentSortableSet</code>.
+	 */
+	private final ConcurrentSortableSet<K, T, V> set;
+	/**
+	 * The inclusive lower bound <code>SortableEntry</code>.
+	 * <code>null</code> if unbounded.
+	 */
+	private final SortableEntry<K, T, V> from;
+	/**
+	 * The exclusive upper bound <code>SortableEntry</code>.
+	 * <code>null</code> if unbounded.
+	 */
+	private final SortableEntry<K, T, V> to;
+
+	/**
+	 * Constructor of <code>SortableSetView</code>.
+	 * @param set The <code>ConcurrentSortableSet</code>.
+	 * @param from The inclusive lower bound <code>T</code>
+	 * node. <code>null</code> if unbounded.
+	 * @param to The exclusive upper bound <code>T</code>
+	 * node. <code>null</code> if unbounded.
+	 */
+	SortableSetView(final ConcurrentSortableSet<K, T, V> set, final T from, final T to) {
+		this.set = set;
+		this.from = (from == null) ? null : new SortableEntry<K, T, V>(null, from, null, Long.MIN_VALUE);
+		this.to = (to == null) ? null : new SortableEntry<K, T, V>(null, to, null, Long.MIN_VALUE);
+		if (this.from != null && this.to != null && set.comparator().compare(this.from, this.to) > 0) {
+			throw new IllegalArgumentException("Lower bound cannot be after upper bound.");
+		}
+	}
+
+	@Override
+	public Iterator<ISortableEntry<K, T, V>> iterator() {
+		final ConcurrentNavigableMap<SortableEntry<K, T, V>, Boolean> map = this.set.ordering();
+		if (this.from == null) return new EntryIterator<K, T, V>(this.set, map.keySet().iterator(), this.to, false);
+		final SortableEntry<K, T, V> start = map.ceilingKey(this.from);
+		if (start == null) return new EntryIterator<K, T, V>(this.set, null, this.to, false);
+		return new EntryIterator<K, T, V>(this.set, map.tailMap(start, true).keySet().iterator(), this.to, false);
+	}
+
+	@Override
+	public Iterator<ISortableEntry<K, T, V>> descendingIterator() {
+		final ConcurrentNavigableMap<SortableEntry<K, T, V>, Boolean> map = this.set.ordering();
+		if (this.to == null) return new EntryIterator<K, T, V>(this.set, map.descendingKeySet().iterator(), this.from, true);
+		final SortableEntry<K, T, V> start = map.lowerKey(this.to);
+		if (start == null) return new EntryIterator<K, T, V>(this.set, null, this.from, true);
+		return new EntryIterator<K, T, V>(this.set, map.headMap(start, true).descendingKeySet().iterator(), this.from, true);
+	}
+
+	@Override
+	public void visit(final IEntryVisitor<K, T, V> visitor, final int parallelism) {
+		SortableSetView.visit(this.iterator(), visitor, parallelism);
+	}
+
+	@Override
+	public boolean isEmpty() {
+		return !this.iterator().hasNext();
+	}
+
+	/**
+	 * Visit all the entries of the given iterator using
+	 * the given number of threads, including the invoking
+	 * thread, in consecutive batches.
+	 * @param source The source <code>Iterator</code>.
+	 * @param visitor The <code>IEntryVisitor</code>.
+	 * @param parallelism The <code>int</code> number of
+	 * threads to visit entries with.
+	 */
+	static <K, T extends Comparable<T>, V> void visit(final Iterator<ISortableEntry<K, T, V>> source, final IEntryVisitor<K, T, V> visitor,
+			final int parallelism) {
+		if (parallelism <= 0) throw new IllegalArgumentException("Parallelism must be positive.");
+		if (parallelism == 1) {
+			while (source.hasNext()) {
+				visitor.visit(source.next());
+			}
+			return;
+		}
+		final BatchVisitor<K, T, V> worker = new BatchVisitor<K, T, V>(source, visitor);
+		final List<Future<Void>> futures = new ArrayList<Future<Void>>(parallelism-1);
+		for (int i = 1; i < parallelism; i++) {
+			futures.add(Visitor.executor.submit(worker));
+		}
+		RuntimeException failure = null;
+		try {
+			worker.call();
+		} catch (final RuntimeException e) {
+			failure = e;
+		}
+		try {
+			for (final Future<Void> future : futures) {
+				future.get();
+			}
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while visiting entries.", e);
+		} catch (final ExecutionException e) {
+			if (failure == null) throw new IllegalStateException("Visiting entries failed.", e.getCause());
+		}
+		if (failure != null) throw failure;
+	}
+
+	/**
+	 * <code>EntryIterator</code> defines the iterator of
+	 * the entries of a view, which stops at the bound of
+	 * the view and supports removal.
+	 */
+	private static final class EntryIterator<K, T extends Comparable<T>, V> implements Iterator<ISortableEntry<K, T, V>> {
+		/**
+		 * The <code>ConcurrentSortableSet</code> to remove
+		 * the entries from.
+		 */
+		private final ConcurrentSortableSet<K, T, V> set;
+		/**
+		 * The <code>Iterator</code> of the ordering map.
+		 * <code>null</code> if there are no entries.
+		 */
+		private final Iterator<SortableEntry<K, T, V>> iterator;
+		/**
+		 * The probe <code>SortableEntry</code> at which
+		 * the iteration stops. <code>null</code> if the
+		 * iteration is unbounded.
+		 */
+		private final SortableEntry<K, T, V> bound;
+		/**
+		 * The <code>boolean</code> flag indicating if the
+		 * iteration is in descending order, in which case
+		 * the bound is inclusive.
+		 */
+		private final boolean descending;
+		/**
+		 * The next <code>SortableEntry</code> to return.
+		 */
+		private SortableEntry<K, T, V> next;
+		/**
+		 * The last returned <code>SortableEntry</code>.
+		 */
+		private SortableEntry<K, T, V> last;
+
+		/**
+		 * Constructor of <code>EntryIterator</code>.
+		 * @param set The <code>ConcurrentSortableSet</code>.
+		 * @param iterator The <code>Iterator</code> of the
+		 * ordering map. <code>null</code> if empty.
+		 * @param bound The probe <code>SortableEntry</code>
+		 * to stop at. <code>null</code> if unbounded.
+		 * @param descending <code>true</code> if the
+		 * iteration is in descending order.
+		 */
+		private EntryIterator(final ConcurrentSortableSet<K, T, V> set, final Iterator<SortableEntry<K, T, V>> iterator,
+				final SortableEntry<K, T, V> bound, final boolean descending) {
+			this.set = set;
+			this.iterator = iterator;
+			this.bound = bound;
+			this.descending = descending;
+			this.advance();
+		}
+
+		/**
+		 * Retrieve the next entry within the bound.
+		 */
+		private void advance() {
+			this.next = null;
+			if (this.iterator == null || !this.iterator.hasNext()) return;
+			final SortableEntry<K, T, V> entry = this.iterator.next();
+			if (this.bound != null) {
+				// The probe precedes all entries with equal nodes.
+				final int result = this.set.comparator().compare(this.bound, entry);
+				if (this.descending ? result > 0 : result <= 0) return;
+			}
+			this.next = entry;
+		}
+
+		@Override
+		public boolean hasNext() {
+			return this.next != null;
+		}
+
+		@Override
+		public ISortableEntry<K, T, V> next() {
+			if (this.next == null) throw new NoSuchElementException();
+			this.last = this.next;
+			this.advance();
+			return this.last;
+		}
+
+		@Override
+		public void remove() {
+			if (this.last == null) throw new IllegalStateException();
+			this.set.remove(this.last);
+			this.last = null;
+		}
+	}
+
+	/**
+	 * <code>BatchVisitor</code> defines the task that
+	 * repeatedly takes the next batch of entries from a
+	 * shared iterator and visits them, until either the
+	 * iterator is exhausted or any task has failed.
+	 */
+	private static final class BatchVisitor<K, T extends Comparable<T>, V> implements Callable<Void> {
+		/**
+		 * The shared source <code>Iterator</code>.
+		 */
+		private final Iterator<ISortableEntry<K, T, V>> source;
+		/**
+		 * The <code>IEntryVisitor</code>.
+		 */
+		private final IEntryVisitor<K, T, V> visitor;
+		/**
+		 * The <code>ReentrantLock</code> guarding the
+		 * source iterator.
+		 */
+		private final ReentrantLock lock;
+		/**
+		 * The <code>AtomicBoolean</code> flag indicating
+		 * if any task has failed.
+		 */
+		private final AtomicBoolean failed;
+
+		/**
+		 * Constructor of <code>BatchVisitor</code>.
+		 * @param source The shared source <code>Iterator</code>.
+		 * @param visitor The <code>IEntryVisitor</code>.
+		 */
+		private BatchVisitor(final Iterator<ISortableEntry<K, T, V>> source, final IEntryVisitor<K, T, V> visitor) {
+			this.source = source;
+			this.visitor = visitor;
+			this.lock = new ReentrantLock();
+			this.failed = new AtomicBoolean();
+		}
+
+		@Override
+		public Void call() {
+			final List<ISortableEntry<K, T, V>> batch = new ArrayList<ISortableEntry<K, T, V>>(SortableSetView.BATCH_SIZE);
+			while (!this.failed.get()) {
+				batch.clear();
+				this.lock.lock();
+				try {
+					while (batch.size() < SortableSetView.BATCH_SIZE && this.source.hasNext()) {
+						batch.add(this.source.next());
+					}
+				} finally {
+					this.lock.unlock();
+				}
+				if (batch.isEmpty()) return null;
+				try {
+					for (int i = 0; i < batch.size(); i++) {
+						this.visitor.visit(batch.get(i));
+					}
+				} catch (final RuntimeException e) {
+					this.failed.set(true);
+					throw e;
+				}
+			}
+			return null;
+		}
+	}
+
+	/**
+	 * <code>Visitor</code> defines the lazily created
+	 * holder of the daemon threads used to visit the
+	 * entries in parallel.
+	 */
+	private static final class Visitor {
+		/**
+		 * The <code>ExecutorService</code> of daemon threads.
+		 */
+		private static final ExecutorService executor = Executors.newCachedThreadPool(new ThreadFactory() {
+			private final AtomicInteger index = new AtomicInteger();
+
+			@Override
+			public Thread newThread(final Runnable runnable) {
+				final Thread thread = new Thread(runnable, "Hemera-SortableSetVisitor-" + this.index.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+	}
+}
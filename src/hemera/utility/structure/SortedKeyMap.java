@@ -0,0 +1,142 @@
+package hemera.utility.structure;
+
+import java.util.AbstractMap;
+import java.util.AbstractMap.SimpleImmutableEntry;
+import java.util.AbstractSet;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.Map.Entry;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.SortedMap;
+
+/**
+ * <code>SortedKeyMap</code> defines the read-only
+ * <code>SortedMap</code> view of an array of keys
+ * that are already sorted by the comparator of the
+ * map, where all keys are mapped to the same value.
+ * <p>
+ * This view is used to bulk-load a sorted run of
+ * keys into a <code>ConcurrentSkipListMap</code>,
+ * whose <code>SortedMap</code> based constructor
+ * builds the skip list bottom-up in linear time,
+ * instead of inserting the keys one at a time.
+ * <p>
+ * Only the <code>comparator</code> and the entry set
+ * iteration are supported. The keys are never compared
+ * by this view, thus the validity of the ordering is
+ * the responsibility of the creator.
+ *
+ * @author Yi Wang (Neakor)
+ * @version 1.0.0
+ */
+class SortedKeyMap<K, V> extends AbstractMap<K, V> implements SortedMap<K, V> {
+	/**
+	 * The sorted <code>K</code> key array.
+	 */
+	private final K[] keys;
+	/**
+	 * The <code>int</code> number of valid keys at the
+	 * beginning of the array.
+	 */
+	private final int length;
+	/**
+	 * The <code>V</code> value of all the keys.
+	 */
+	private final V value;
+	/**
+	 * The <code>Comparator</code> that defines the
+	 * ordering of the keys.
+	 */
+	private final Comparator<? super K> comparator;
+
+	/**
+	 * Constructor of <code>SortedKeyMap</code>.
+	 * @param keys The sorted <code>K</code> array,
+	 * which is not copied.
+	 * @param length The <code>int</code> number of valid
+	 * keys at the beginning of the array.
+	 * @param value The <code>V</code> value of all the
+	 * keys.
+	 * @param comparator The <code>Comparator</code> that
+	 * defines the ordering of the keys.
+	 */
+	SortedKeyMap(final K[] keys, final int length, final V value, final Comparator<? super K> comparator) {
+		this.keys = keys;
+		this.length = length;
+		this.value = value;
+		this.comparator = comparator;
+	}
+
+	@Override
+	public Comparator<? super K> comparator() {
+		return this.comparator;
+	}
+
+	@Override
+	public Set<Entry<K, V>> entrySet() {
+		return new AbstractSet<Entry<K, V>>() {
+			@Override
+			public Iterator<Entry<K, V>> iterator() {
+				return new Iterator<Entry<K, V>>() {
+					private int index;
+
+					@Override
+					public boolean hasNext() {
+						return this.index < SortedKeyMap.this.length;
+					}
+
+					@Override
+					public Entry<K, V> next() {
+						if (this.index >= SortedKeyMap.this.length) throw new NoSuchElementException();
+						final K key = SortedKeyMap.this.keys[this.index];
+						this.index++;
+						return new SimpleImmutableEntry<K, V>(key, SortedKeyMap.this.value);
+					}
+
+					@Override
+					public void remove() {
+						throw new UnsupportedOperationException();
+					}
+				};
+			}
+
+			@Override
+			public int size() {
+				return SortedKeyMap.this.length;
+			}
+		};
+	}
+
+	@Override
+	public int size() {
+		return this.length;
+	}
+
+	@Override
+	public K firstKey() {
+		if (this.length == 0) throw new NoSuchElementException();
+		return this.keys[0];
+	}
+
+	@Override
+	public K lastKey() {
+		if (this.length == 0) throw new NoSuchElementException();
+		return this.keys[this.length-1];
+	}
+
+	@Override
+	public SortedMap<K, V> subMap(final K fromKey, final K toKey) {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public SortedMap<K, V> headMap(final K toKey) {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public SortedMap<K, V> tailMap(final K fromKey) {
+		throw new UnsupportedOperationException();
+	}
+}
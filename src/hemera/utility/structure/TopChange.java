@@ -0,0 +1,105 @@
+package hemera.utility.structure;
+
+/**
+ * <code>TopChange</code> defines the immutable change
+ * of a single node in the top nodes watched on a
+ * <code>ConcurrentSortableSet</code>.
+ * <p>
+ * Ranks are zero-based positions within the top nodes.
+ * The previous rank is relative to the top nodes before
+ * the batch of changes is applied, and the rank is
+ * relative to the top nodes after the entire batch is
+ * applied.
+ * @param K The key type.
+ * @param T The node type.
+ *
+ * @author Yi Wang (Neakor)
+ * @version 1.0.0
+ */
+public final class TopChange<K, T> {
+	/**
+	 * The <code>TopChangeType</code>.
+	 */
+	private final TopChangeType type;
+	/**
+	 * The <code>K</code> key of the node.
+	 */
+	private final K key;
+	/**
+	 * The <code>T</code> node.
+	 */
+	private final T node;
+	/**
+	 * The <code>int</code> previous rank. -1 if the
+	 * node entered.
+	 */
+	private final int previous;
+	/**
+	 * The <code>int</code> current rank. -1 if the
+	 * node left.
+	 */
+	private final int rank;
+
+	/**
+	 * Constructor of <code>TopChange</code>.
+	 * @param type The <code>TopChangeType</code>.
+	 * @param key The <code>K</code> key.
+	 * @param node The <code>T</code> node.
+	 * @param previous The <code>int</code> previous rank.
+	 * @param rank The <code>int</code> current rank.
+	 */
+	TopChange(final TopChangeType type, final K key, final T node, final int previous, final int rank) {
+		this.type = type;
+		this.key = key;
+		this.node = node;
+		this.previous = previous;
+		this.rank = rank;
+	}
+
+	/**
+	 * Retrieve the type of the change.
+	 * @return The <code>TopChangeType</code>.
+	 */
+	public TopChangeType getType() {
+		return this.type;
+	}
+
+	/**
+	 * Retrieve the key of the changed node.
+	 * @return The <code>K</code> key.
+	 */
+	public K getKey() {
+		return this.key;
+	}
+
+	/**
+	 * Retrieve the changed node.
+	 * @return The <code>T</code> node.
+	 */
+	public T getNode() {
+		return this.node;
+	}
+
+	/**
+	 * Retrieve the rank of the node before the change.
+	 * @return The <code>int</code> rank. -1 if the node
+	 * entered the top nodes.
+	 */
+	public int getPreviousRank() {
+		return this.previous;
+	}
+
+	/**
+	 * Retrieve the rank of the node after the change.
+	 * @return The <code>int</code> rank. -1 if the node
+	 * left the top nodes.
+	 */
+	public int getRank() {
+		return this.rank;
+	}
+
+	@Override
+	public String toString() {
+		return this.type + " " + this.key + " " + this.previous + "->" + this.rank;
+	}
+}
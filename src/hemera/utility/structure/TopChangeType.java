@@ -0,0 +1,26 @@
+package hemera.utility.structure;
+
+/**
+ * <code>TopChangeType</code> defines the enumeration of
+ * all the changes of the membership or the order of the
+ * top nodes watched on a <code>ConcurrentSortableSet</code>.
+ *
+ * @author Yi Wang (Neakor)
+ * @version 1.0.0
+ */
+public enum TopChangeType {
+	/**
+	 * The node entered the top nodes.
+	 */
+	ENTER,
+	/**
+	 * The node left the top nodes.
+	 */
+	LEAVE,
+	/**
+	 * The node remained in the top nodes, but its
+	 * order relative to the other remaining nodes
+	 * changed.
+	 */
+	MOVE
+}
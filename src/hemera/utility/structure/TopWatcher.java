@@ -0,0 +1,222 @@
+package hemera.utility.structure;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+
+import hemera.utility.structure.interfaces.ITopListener;
+
+/**
+ * <code>TopWatcher</code> defines the unit that keeps
+ * the last published top nodes of a single listener,
+ * and publishes the difference against the current
+ * top nodes of the set.
+ * <p>
+ * All publications of a watcher are serialized by its
+ * lock, thus every batch is computed against the view
+ * published by the previous batch. An operation that
+ * cannot affect the top nodes is determined while
+ * holding the same lock, so a concurrent publication
+ * that missed the operation is always followed by one
+ * that includes it.
+ * <p>
+ * The batches are queued in the order they are computed
+ * and delivered after the lock is released, by a single
+ * publishing thread at a time, so a slow listener never
+ * holds up the publications of other threads.
+ * <p>
+ * A batch only reports the nodes that left or entered,
+ * and the minimal set of nodes that moved. The nodes
+ * that keep their relative order are not reported, as
+ * their rank changes are implied by the other changes.
+ *
+ * @author Yi Wang (Neakor)
+ * @version 1.0.0
+ */
+class TopWatcher<K, T extends Comparable<T>, V> {
+	/**
+	 * The <code>int</code> number of top nodes.
+	 */
+	final int n;
+	/**
+	 * The <code>ITopListener</code> to notify.
+	 */
+	final ITopListener<K, T> listener;
+	/**
+	 * The <code>ReentrantLock</code> that serializes
+	 * the publications.
+	 */
+	private final ReentrantLock lock;
+	/**
+	 * The <code>List</code> of the last published top
+	 * <code>SortableEntry</code> in ascending order.
+	 */
+	private List<SortableEntry<K, T, V>> top;
+	/**
+	 * The <code>Map</code> of the keys of the last
+	 * published top entries to their ranks.
+	 */
+	private Map<K, Integer> ranks;
+	/**
+	 * The <code>Queue</code> of the computed batches
+	 * that are not yet delivered.
+	 */
+	private final Queue<List<TopChange<K, T>>> pending;
+	/**
+	 * The <code>AtomicBoolean</code> flag indicating
+	 * if a thread is delivering the batches.
+	 */
+	private final AtomicBoolean delivering;
+
+	/**
+	 * Constructor of <code>TopWatcher</code>.
+	 * @param n The <code>int</code> number of top nodes.
+	 * @param listener The <code>ITopListener</code>.
+	 */
+	TopWatcher(final int n, final ITopListener<K, T> listener) {
+		this.n = n;
+		this.listener = listener;
+		this.lock = new ReentrantLock();
+		this.top = new ArrayList<SortableEntry<K, T, V>>(0);
+		this.ranks = new HashMap<K, Integer>(0);
+		this.pending = new ConcurrentLinkedQueue<List<TopChange<K, T>>>();
+		this.delivering = new AtomicBoolean();
+	}
+
+	/**
+	 * Publish the changes of the top nodes caused by
+	 * an operation on the given key.
+	 * @param set The watched <code>ConcurrentSortableSet</code>.
+	 * @param key The <code>K</code> key of the modified
+	 * entry. <code>null</code> if the operation may have
+	 * modified any entry.
+	 * @param entry The current <code>SortableEntry</code>
+	 * of the key. <code>null</code> if the key has been
+	 * removed or is unknown.
+	 */
+	void publish(final ConcurrentSortableSet<K, T, V> set, final K key, final SortableEntry<K, T, V> entry) {
+		this.lock.lock();
+		try {
+			if (key != null && !this.affects(set, key, entry)) return;
+			final List<SortableEntry<K, T, V>> current = set.top(this.n);
+			final Map<K, Integer> currentranks = new HashMap<K, Integer>(current.size() * 2);
+			for (int i = 0; i < current.size(); i++) {
+				currentranks.put(current.get(i).key, i);
+			}
+			final List<TopChange<K, T>> changes = new ArrayList<TopChange<K, T>>();
+			for (int i = 0; i < this.top.size(); i++) {
+				final SortableEntry<K, T, V> previous = this.top.get(i);
+				final Integer rank = currentranks.get(previous.key);
+				if (rank == null || current.get(rank) != previous) {
+					changes.add(new TopChange<K, T>(TopChangeType.LEAVE, previous.key, previous.node, i, -1));
+				}
+			}
+			// The previous ranks of the retained entries in
+			// their current order.
+			final int[] previousranks = new int[current.size()];
+			int retained = 0;
+			for (int i = 0; i < current.size(); i++) {
+				final SortableEntry<K, T, V> next = current.get(i);
+				final Integer rank = this.ranks.get(next.key);
+				if (rank != null && this.top.get(rank) == next) previousranks[retained++] = rank;
+			}
+			final boolean[] stable = TopWatcher.stable(previousranks, retained);
+			retained = 0;
+			for (int i = 0; i < current.size(); i++) {
+				final SortableEntry<K, T, V> next = current.get(i);
+				final Integer rank = this.ranks.get(next.key);
+				if (rank == null || this.top.get(rank) != next) {
+					changes.add(new TopChange<K, T>(TopChangeType.ENTER, next.key, next.node, -1, i));
+				} else if (!stable[retained++]) {
+					changes.add(new TopChange<K, T>(TopChangeType.MOVE, next.key, next.node, rank, i));
+				}
+			}
+			this.top = current;
+			this.ranks = currentranks;
+			if (!changes.isEmpty()) this.pending.add(changes);
+		} finally {
+			this.lock.unlock();
+		}
+		this.deliver();
+	}
+
+	/**
+	 * Deliver the pending batches to the listener, unless
+	 * another thread is already delivering them.
+	 */
+	private void deliver() {
+		// Re-check after releasing the flag, so that a batch
+		// queued by a thread that failed to acquire the flag
+		// is never left behind.
+		while (!this.pending.isEmpty() && this.delivering.compareAndSet(false, true)) {
+			try {
+				List<TopChange<K, T>> changes = this.pending.poll();
+				while (changes != null) {
+					this.listener.onChanged(changes);
+					changes = this.pending.poll();
+				}
+			} finally {
+				this.delivering.set(false);
+			}
+		}
+	}
+
+	/**
+	 * Check if an operation on the given key may have
+	 * changed the top nodes.
+	 * @param set The watched <code>ConcurrentSortableSet</code>.
+	 * @param key The <code>K</code> key.
+	 * @param entry The current <code>SortableEntry</code>
+	 * of the key. <code>null</code> if there is none.
+	 * @return <code>true</code> if the key was in the
+	 * top nodes, or if its entry now precedes the last
+	 * of the top nodes, or if there are fewer than the
+	 * watched number of top nodes.
+	 */
+	private boolean affects(final ConcurrentSortableSet<K, T, V> set, final K key, final SortableEntry<K, T, V> entry) {
+		if (this.top.size() < this.n || this.ranks.containsKey(key)) return true;
+		if (entry == null) return false;
+		return set.comparator().compare(entry, this.top.get(this.top.size()-1)) < 0;
+	}
+
+	/**
+	 * Find the retained entries that keep their relative
+	 * order, which is the longest increasing subsequence
+	 * of their previous ranks.
+	 * @param ranks The <code>int</code> array of the
+	 * previous ranks in the current order.
+	 * @param length The <code>int</code> number of valid
+	 * ranks at the beginning of the array.
+	 * @return The <code>boolean</code> array indicating
+	 * if the entry at each index keeps its order.
+	 */
+	private static boolean[] stable(final int[] ranks, final int length) {
+		// The index of the last rank of the increasing run
+		// of each length, and the predecessor of each rank.
+		final int[] tails = new int[length];
+		final int[] predecessors = new int[length];
+		int size = 0;
+		for (int i = 0; i < length; i++) {
+			int low = 0;
+			int high = size;
+			while (low < high) {
+				final int middle = (low + high) >>> 1;
+				if (ranks[tails[middle]] < ranks[i]) low = middle + 1;
+				else high = middle;
+			}
+			predecessors[i] = (low > 0) ? tails[low-1] : -1;
+			tails[low] = i;
+			if (low == size) size++;
+		}
+		final boolean[] stable = new boolean[length];
+		for (int i = (size > 0) ? tails[size-1] : -1; i >= 0; i = predecessors[i]) {
+			stable[i] = true;
+		}
+		return stable;
+	}
+}
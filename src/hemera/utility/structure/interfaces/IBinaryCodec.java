@@ -0,0 +1,44 @@
+package hemera.utility.structure.interfaces;
+
+import java.nio.ByteBuffer;
+
+/**
+ * <code>IBinaryCodec</code> defines the interface of a
+ * unit that converts values of a specific type to and
+ * from a fixed maximum number of bytes, which allows
+ * the values to be stored outside of the heap.
+ * @param E The encoded value type.
+ *
+ * @author Yi Wang (Neakor)
+ * @version 1.0.0
+ */
+public interface IBinaryCodec<E> {
+
+	/**
+	 * Encode the given value into the given buffer,
+	 * starting at the current position of the buffer.
+	 * <p>
+	 * The buffer always has at least the maximum size
+	 * of remaining bytes.
+	 * @param value The <code>E</code> value to encode.
+	 * @param buffer The <code>ByteBuffer</code> to
+	 * encode into.
+	 */
+	public void encode(final E value, final ByteBuffer buffer);
+
+	/**
+	 * Decode a value from the given buffer, starting
+	 * at the current position of the buffer.
+	 * @param buffer The <code>ByteBuffer</code> to
+	 * decode from.
+	 * @return The decoded <code>E</code> value.
+	 */
+	public E decode(final ByteBuffer buffer);
+
+	/**
+	 * Retrieve the maximum number of bytes a single
+	 * encoded value may occupy.
+	 * @return The <code>int</code> maximum size.
+	 */
+	public int getSize();
+}
@@ -0,0 +1,53 @@
+package hemera.utility.structure.interfaces;
+
+/**
+ * <code>IConcurrentNavigableSortableSet</code> defines
+ * the interface of a <code>IConcurrentSortableSet</code>
+ * that additionally supports ordered traversal of all
+ * its entries, and views of ranges of its entries.
+ * <p>
+ * The set itself is a view of all its entries. The
+ * range views follow the conventions of the standard
+ * <code>SortedSet</code>, where the lower bound is
+ * inclusive and the upper bound is exclusive. A bound
+ * node includes or excludes all the contained nodes
+ * that compare equal to it.
+ * @param K The key object type.
+ * @param T The node <code>Comparable</code> type.
+ * @param V The attachment for the node.
+ *
+ * @author Yi Wang (Neakor)
+ * @version 1.0.0
+ */
+public interface IConcurrentNavigableSortableSet<K, T extends Comparable<T>, V> extends IConcurrentSortableSet<K, T, V>, ISortableSetView<K, T, V> {
+
+	/**
+	 * Retrieve the view of the entries whose nodes are
+	 * strictly before the given node.
+	 * @param to The exclusive upper bound <code>T</code>
+	 * node.
+	 * @return The <code>ISortableSetView</code>.
+	 */
+	public ISortableSetView<K, T, V> headSet(final T to);
+
+	/**
+	 * Retrieve the view of the entries whose nodes are
+	 * equal to or after the given node.
+	 * @param from The inclusive lower bound <code>T</code>
+	 * node.
+	 * @return The <code>ISortableSetView</code>.
+	 */
+	public ISortableSetView<K, T, V> tailSet(final T from);
+
+	/**
+	 * Retrieve the view of the entries whose nodes are
+	 * equal to or after the first given node, and are
+	 * strictly before the second given node.
+	 * @param from The inclusive lower bound <code>T</code>
+	 * node.
+	 * @param to The exclusive upper bound <code>T</code>
+	 * node.
+	 * @return The <code>ISortableSetView</code>.
+	 */
+	public ISortableSetView<K, T, V> subSet(final T from, final T to);
+}
@@ -0,0 +1,105 @@
+package hemera.utility.structure.interfaces;
+
+import java.util.List;
+
+/**
+ * <code>IConcurrentRankedSortableSet</code> defines
+ * the interface of a <code>IConcurrentSortableSet</code>
+ * that supports order-statistic queries, which allow
+ * nodes to be retrieved by their rank in the ordering,
+ * and the rank of a node to be retrieved by its key.
+ * <p>
+ * Ranks are zero-based, where the first (lowest) node
+ * has the rank of <code>0</code>, and the last node
+ * has the rank of <code>size() - 1</code>.
+ * <p>
+ * All rank queries are logarithmic in the size of the
+ * set, and are thread-safe with respect to concurrent
+ * additions and removals. Similar to other read-only
+ * operations, ranks only reflect the ordering of the
+ * nodes as of the last <code>sort</code> invocation
+ * if nodes have changed their order-state since.
+ * @param K The key object type.
+ * @param T The node <code>Comparable</code> type.
+ * @param V The attachment for the node.
+ *
+ * @author Yi Wang (Neakor)
+ * @version 1.0.0
+ */
+public interface IConcurrentRankedSortableSet<K, T extends Comparable<T>, V> extends IConcurrentSortableSet<K, T, V> {
+
+	/**
+	 * Retrieve the rank of the node associated with
+	 * the given key.
+	 * @param key The <code>K</code> key of the node
+	 * to check.
+	 * @return The <code>int</code> zero-based rank of
+	 * the node. <code>-1</code> if there is no node
+	 * associated with given key.
+	 */
+	public int rankOf(final K key);
+
+	/**
+	 * Retrieve the node at the given rank.
+	 * @param rank The <code>int</code> zero-based rank
+	 * of the node to retrieve.
+	 * @return The <code>T</code> node at the rank.
+	 * <code>null</code> if the rank is out of bounds.
+	 */
+	public T nodeAtRank(final int rank);
+
+	/**
+	 * Retrieve the nodes within the given range of
+	 * ranks, in their sorted order.
+	 * <p>
+	 * This method is logarithmic in the size of the
+	 * set and linear in the number of retrieved nodes,
+	 * thus suitable for paginated retrieval.
+	 * @param offset The <code>int</code> zero-based
+	 * rank of the first node to retrieve.
+	 * @param limit The <code>int</code> maximum number
+	 * of nodes to retrieve.
+	 * @return The <code>List</code> of <code>T</code>
+	 * nodes in the range. An empty list if the offset
+	 * is out of bounds.
+	 */
+	public List<T> range(final int offset, final int limit);
+
+	/**
+	 * Retrieve the node at the given quantile of the
+	 * ordering, using the nearest-rank definition. The
+	 * quantile <code>0</code> is the first node, and the
+	 * quantile <code>1</code> is the last node.
+	 * @param q The <code>double</code> quantile within
+	 * the range of <code>[0, 1]</code>.
+	 * @return The <code>T</code> node at the quantile.
+	 * <code>null</code> if the set is empty.
+	 * @throws IllegalArgumentException If the quantile
+	 * is not within the valid range.
+	 */
+	public T nodeAtQuantile(final double q);
+
+	/**
+	 * Count the nodes between the given bounds, both of
+	 * which are inclusive. Nodes that compare equal to a
+	 * bound are counted. The bounds do not need to be
+	 * contained in the set.
+	 * @param low The <code>T</code> inclusive lower bound.
+	 * @param high The <code>T</code> inclusive upper bound.
+	 * @return The <code>int</code> number of nodes. <code>0</code>
+	 * if the upper bound is lower than the lower bound.
+	 */
+	public int countBetween(final T low, final T high);
+
+	/**
+	 * Take an immutable snapshot of the entries of the
+	 * set, which can be traversed and queried by rank
+	 * as of this point in time without blocking the
+	 * concurrent modifications of the set.
+	 * <p>
+	 * The returned snapshot must be released once it
+	 * is no longer needed.
+	 * @return The <code>ISortableSetSnapshot</code>.
+	 */
+	public ISortableSetSnapshot<K, T, V> snapshot();
+}
@@ -1,5 +1,9 @@
 package hemera.utility.structure.interfaces;
 
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.List;
+
 /**
  * <code>IConcurrentSortableSet</code> defines a data
  * structure implementation that maintains its contents
@@ -63,6 +67,22 @@ public interface IConcurrentSortableSet<K, T extends Comparable<T>, V> {
 	 */
 	public boolean add(final K key, final T node, final V attachment);
 	
+	/**
+	 * Add all the given entries to the set in bulk.
+	 * <p>
+	 * Every entry is added following the same rules
+	 * as <code>add</code>. The batch is not atomic as a
+	 * whole, but the entries are pre-sorted and added
+	 * with a single lock acquisition, which amortizes
+	 * the locking and counting overhead of the batch.
+	 * @param entries The <code>List</code> of the
+	 * <code>ISortableEntry</code> to add.
+	 * @return The <code>BitSet</code> where the bit at
+	 * the index of an entry in the given list is set
+	 * if the entry is successfully added.
+	 */
+	public BitSet addAll(final List<? extends ISortableEntry<K, T, V>> entries);
+
 	/**
 	 * Remove the node associated with given key.
 	 * <p>
@@ -80,7 +100,55 @@ public interface IConcurrentSortableSet<K, T extends Comparable<T>, V> {
 	 * is removed. <code>false</code> otherwise.
 	 */
 	public boolean remove(final K key);
-	
+
+	/**
+	 * Remove all the nodes associated with the given
+	 * keys in bulk.
+	 * <p>
+	 * Every key is removed following the same rules
+	 * as <code>remove</code>. The batch is not atomic
+	 * as a whole, but the keys are removed with a single
+	 * lock acquisition.
+	 * @param keys The <code>Collection</code> of the
+	 * <code>K</code> keys to remove.
+	 * @return The <code>BitSet</code> where the bit at
+	 * the iteration index of a key in the given keys is
+	 * set if the node of the key is removed.
+	 */
+	public BitSet removeAll(final Collection<K> keys);
+
+	/**
+	 * Update the ordering state of the node associated
+	 * with given key using the given mutator, and move
+	 * the node into its new position.
+	 * <p>
+	 * The node is detached from the ordering structure
+	 * before the mutator is invoked, and re-inserted
+	 * afterwards. This allows a single node to change
+	 * its order-state in logarithmic time without the
+	 * need of a <code>sort</code> invocation. Nodes that
+	 * are updated through this method should never be
+	 * modified directly.
+	 * <p>
+	 * This method only locks the key of the node being
+	 * updated and holds a read-lock, thus allowing the
+	 * concurrent invocations of all other operations.
+	 * While the node is detached, concurrent reads may
+	 * not observe it as the first or last node.
+	 * @param key The <code>K</code> key of the node
+	 * to update.
+	 * @param mutator The <code>INodeMutator</code> to
+	 * modify the node with.
+	 * @return <code>true</code> if the node is updated
+	 * and re-inserted. <code>false</code> if there is
+	 * no node associated with given key, or if the node
+	 * cannot be located due to its order-state being
+	 * modified outside of this method, or if the updated
+	 * node equals another node in the set, in which case
+	 * the updated node is removed.
+	 */
+	public boolean update(final K key, final INodeMutator<T> mutator);
+
 	/**
 	 * Sort the entire set based on the current ordering
 	 * state of the contained nodes.
@@ -95,6 +163,11 @@ public interface IConcurrentSortableSet<K, T extends Comparable<T>, V> {
 	 * This operation is relatively expensive thus should
 	 * only be done when a portion of contained nodes
 	 * have changed their sorting state.
+	 * <p>
+	 * Implementations may provide alternative sorting
+	 * strategies that do not suspend read-operations,
+	 * in which case the reads performed while sorting
+	 * may observe the previous ordering.
 	 */
 	public void sort();
 	
@@ -142,6 +215,51 @@ public interface IConcurrentSortableSet<K, T extends Comparable<T>, V> {
 	 */
 	public V lastAttachment();
 	
+	/**
+	 * Atomically remove the first (lowest) node from
+	 * the set, and retrieve it together with its key
+	 * and attachment.
+	 * <p>
+	 * Concurrent invocations never retrieve the same
+	 * node, thus the set can be used as a priority
+	 * queue shared by multiple consumers.
+	 * <p>
+	 * This method only holds a read-lock thus allowing
+	 * concurrent invocations of removal.
+	 * @return The removed <code>ISortableEntry</code>.
+	 * <code>null</code> if no entries in the set.
+	 */
+	public ISortableEntry<K, T, V> pollFirst();
+
+	/**
+	 * Atomically remove the last (highest) node from
+	 * the set, and retrieve it together with its key
+	 * and attachment.
+	 * <p>
+	 * This method only holds a read-lock thus allowing
+	 * concurrent invocations of removal.
+	 * @return The removed <code>ISortableEntry</code>.
+	 * <code>null</code> if no entries in the set.
+	 */
+	public ISortableEntry<K, T, V> pollLast();
+
+	/**
+	 * Atomically remove up to the given number of the
+	 * first (lowest) nodes from the set, and retrieve
+	 * them in their sorted order.
+	 * <p>
+	 * Each node is removed atomically, while the entire
+	 * batch is removed with a single lock acquisition.
+	 * The batch is not atomic as a whole, thus nodes
+	 * added concurrently may be retrieved in between.
+	 * @param count The <code>int</code> maximum number
+	 * of nodes to remove.
+	 * @return The <code>List</code> of the removed
+	 * <code>ISortableEntry</code>. An empty list if no
+	 * entries in the set.
+	 */
+	public List<ISortableEntry<K, T, V>> pollFirst(final int count);
+
 	/**
 	 * Retrieve the number of nodes contained in set.
 	 * <p>
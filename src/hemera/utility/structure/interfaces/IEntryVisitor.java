@@ -0,0 +1,27 @@
+package hemera.utility.structure.interfaces;
+
+/**
+ * <code>IEntryVisitor</code> defines the interface of a
+ * unit that processes the entries of a sortable set
+ * during a traversal.
+ * @param K The key object type.
+ * @param T The node <code>Comparable</code> type.
+ * @param V The attachment for the node.
+ *
+ * @author Yi Wang (Neakor)
+ * @version 1.0.0
+ */
+public interface IEntryVisitor<K, T extends Comparable<T>, V> {
+
+	/**
+	 * Process the given entry.
+	 * <p>
+	 * When the traversal is performed in parallel, this
+	 * method is invoked concurrently by multiple threads,
+	 * and the entries are not visited in any particular
+	 * order.
+	 * @param entry The <code>ISortableEntry</code> to
+	 * process.
+	 */
+	public void visit(final ISortableEntry<K, T, V> entry);
+}
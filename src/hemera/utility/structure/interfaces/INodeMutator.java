@@ -0,0 +1,29 @@
+package hemera.utility.structure.interfaces;
+
+/**
+ * <code>INodeMutator</code> defines the interface of
+ * a unit that modifies the ordering state of a single
+ * node contained in a <code>IConcurrentSortableSet</code>.
+ * <p>
+ * The mutator is invoked by the set while the node is
+ * temporarily detached from the ordering structure,
+ * which allows the node to be re-inserted into its new
+ * position without sorting the entire set.
+ * @param T The node <code>Comparable</code> type.
+ *
+ * @author Yi Wang (Neakor)
+ * @version 1.0.0
+ */
+public interface INodeMutator<T> {
+
+	/**
+	 * Modify the ordering state of the given node.
+	 * <p>
+	 * This method is invoked while the per-key lock
+	 * of the node is held, thus implementations should
+	 * not perform any blocking operations, and should
+	 * not access the owning set.
+	 * @param node The <code>T</code> node to modify.
+	 */
+	public void mutate(final T node);
+}
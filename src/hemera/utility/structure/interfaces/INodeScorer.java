@@ -0,0 +1,26 @@
+package hemera.utility.structure.interfaces;
+
+/**
+ * <code>INodeScorer</code> defines the interface of a
+ * unit that projects a node onto a numeric score, which
+ * allows the approximate statistics of a set to be
+ * maintained independently of the node type.
+ * @param T The node <code>Comparable</code> type.
+ *
+ * @author Yi Wang (Neakor)
+ * @version 1.0.0
+ */
+public interface INodeScorer<T> {
+
+	/**
+	 * Retrieve the score of the given node.
+	 * <p>
+	 * This method is invoked while the per-key lock
+	 * of the node is held, thus implementations should
+	 * not perform any blocking operations, and should
+	 * not access the owning set.
+	 * @param node The <code>T</code> node to score.
+	 * @return The <code>double</code> score.
+	 */
+	public double score(final T node);
+}
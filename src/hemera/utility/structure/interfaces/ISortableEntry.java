@@ -0,0 +1,34 @@
+package hemera.utility.structure.interfaces;
+
+/**
+ * <code>ISortableEntry</code> defines the interface of
+ * an immutable entry of a <code>IConcurrentSortableSet</code>,
+ * which groups a node together with its key and its
+ * attachment.
+ * @param K The key object type.
+ * @param T The node <code>Comparable</code> type.
+ * @param V The attachment for the node.
+ *
+ * @author Yi Wang (Neakor)
+ * @version 1.0.0
+ */
+public interface ISortableEntry<K, T extends Comparable<T>, V> {
+
+	/**
+	 * Retrieve the key of the entry.
+	 * @return The <code>K</code> key.
+	 */
+	public K getKey();
+
+	/**
+	 * Retrieve the node of the entry.
+	 * @return The <code>T</code> node.
+	 */
+	public T getNode();
+
+	/**
+	 * Retrieve the attachment of the entry.
+	 * @return The <code>V</code> attachment.
+	 */
+	public V getAttachment();
+}
@@ -0,0 +1,99 @@
+package hemera.utility.structure.interfaces;
+
+/**
+ * <code>ISortableSetMonitor</code> defines the
+ * management interface of the monitor of a sortable
+ * set, which is exposed as a JMX MBean. All durations
+ * are in nanoseconds.
+ *
+ * @author Yi Wang (Neakor)
+ * @version 1.0.0
+ */
+public interface ISortableSetMonitor {
+
+	/**
+	 * Clear all the collected statistics.
+	 */
+	public void reset();
+
+	/**
+	 * Retrieve the current size of the set.
+	 * @return The <code>int</code> size.
+	 */
+	public int getSize();
+
+	/**
+	 * Retrieve the number of read-lock acquisitions.
+	 * @return The <code>long</code> count.
+	 */
+	public long getReadLockCount();
+
+	/**
+	 * Retrieve the 99th percentile read-lock wait.
+	 * @return The <code>long</code> nanoseconds.
+	 */
+	public long getReadLockWaitP99();
+
+	/**
+	 * Retrieve the maximum read-lock wait.
+	 * @return The <code>long</code> nanoseconds.
+	 */
+	public long getReadLockWaitMax();
+
+	/**
+	 * Retrieve the number of write-lock acquisitions.
+	 * @return The <code>long</code> count.
+	 */
+	public long getWriteLockCount();
+
+	/**
+	 * Retrieve the 99th percentile write-lock wait.
+	 * @return The <code>long</code> nanoseconds.
+	 */
+	public long getWriteLockWaitP99();
+
+	/**
+	 * Retrieve the maximum write-lock wait.
+	 * @return The <code>long</code> nanoseconds.
+	 */
+	public long getWriteLockWaitMax();
+
+	/**
+	 * Retrieve the number of sorts.
+	 * @return The <code>long</code> count.
+	 */
+	public long getSortCount();
+
+	/**
+	 * Retrieve the 99th percentile sort duration.
+	 * @return The <code>long</code> nanoseconds.
+	 */
+	public long getSortDurationP99();
+
+	/**
+	 * Retrieve the maximum sort duration.
+	 * @return The <code>long</code> nanoseconds.
+	 */
+	public long getSortDurationMax();
+
+	/**
+	 * Retrieve the size of the set when it was last
+	 * sorted.
+	 * @return The <code>int</code> size.
+	 */
+	public int getLastSortSize();
+
+	/**
+	 * Retrieve the number of nodes that could not be
+	 * added due to the comparison of the node.
+	 * @return The <code>long</code> number of failures.
+	 */
+	public long getAddFailures();
+
+	/**
+	 * Retrieve the number of nodes that could not be
+	 * removed due to the comparison of the node.
+	 * @return The <code>long</code> number of failures.
+	 */
+	public long getRemoveFailures();
+}
@@ -0,0 +1,82 @@
+package hemera.utility.structure.interfaces;
+
+import java.util.List;
+
+/**
+ * <code>ISortableSetSnapshot</code> defines the interface
+ * of an immutable point-in-time view of all the entries
+ * of a sortable set in their ascending order.
+ * <p>
+ * Unlike the live views, a snapshot always traverses
+ * the exact set of entries and their order as of the
+ * time the snapshot was taken, regardless of any
+ * modification or <code>sort</code> performed since.
+ * Every entry is returned exactly once. The nodes are
+ * shared with the set rather than copied, thus a node
+ * that is modified after the snapshot is taken shows
+ * its current state, while keeping its position.
+ * <p>
+ * A snapshot retains resources of the set until it is
+ * released, after which it can no longer be used.
+ * @param K The key object type.
+ * @param T The node <code>Comparable</code> type.
+ * @param V The attachment for the node.
+ *
+ * @author Yi Wang (Neakor)
+ * @version 1.0.0
+ */
+public interface ISortableSetSnapshot<K, T extends Comparable<T>, V> extends ISortableSetView<K, T, V> {
+
+	/**
+	 * Retrieve the node at the given rank.
+	 * @param rank The <code>int</code> zero-based rank
+	 * of the node to retrieve.
+	 * @return The <code>T</code> node at the rank.
+	 * <code>null</code> if the rank is out of bounds.
+	 */
+	public T nodeAtRank(final int rank);
+
+	/**
+	 * Retrieve the nodes within the given range of
+	 * ranks, in their sorted order.
+	 * @param offset The <code>int</code> zero-based
+	 * rank of the first node to retrieve.
+	 * @param limit The <code>int</code> maximum number
+	 * of nodes to retrieve.
+	 * @return The <code>List</code> of <code>T</code>
+	 * nodes in ascending order.
+	 */
+	public List<T> range(final int offset, final int limit);
+
+	/**
+	 * Retrieve the node at the given quantile of the
+	 * ordering, using the nearest-rank method.
+	 * @param q The <code>double</code> quantile within
+	 * the range of <code>[0, 1]</code>.
+	 * @return The <code>T</code> node at the quantile.
+	 * <code>null</code> if the snapshot is empty.
+	 */
+	public T nodeAtQuantile(final double q);
+
+	/**
+	 * Release the snapshot, which allows the set to
+	 * discard the resources retained for it. This
+	 * method has no effect if the snapshot is already
+	 * released.
+	 */
+	public void release();
+
+	/**
+	 * Retrieve the number of entries in the snapshot.
+	 * @return The <code>int</code> number of entries.
+	 */
+	public int size();
+
+	/**
+	 * Retrieve the version of the snapshot, which is
+	 * increasing in the order the snapshots of a set
+	 * are taken.
+	 * @return The <code>int</code> version.
+	 */
+	public int getVersion();
+}
@@ -0,0 +1,65 @@
+package hemera.utility.structure.interfaces;
+
+import java.util.Iterator;
+
+/**
+ * <code>ISortableSetView</code> defines the interface of
+ * a live view of a contiguous range of the entries of
+ * a sortable set in their ascending order.
+ * <p>
+ * All iterators are weakly consistent. They never throw
+ * <code>ConcurrentModificationException</code>, never
+ * return an entry more than once, and may or may not
+ * reflect the modifications made after their creation.
+ * An iterator created before a <code>sort</code>
+ * completes continues to traverse the previous order.
+ * Removing an entry through an iterator removes its key
+ * from the set, unless the key has since been associated
+ * with a different entry.
+ * @param K The key object type.
+ * @param T The node <code>Comparable</code> type.
+ * @param V The attachment for the node.
+ *
+ * @author Yi Wang (Neakor)
+ * @version 1.0.0
+ */
+public interface ISortableSetView<K, T extends Comparable<T>, V> extends Iterable<ISortableEntry<K, T, V>> {
+
+	/**
+	 * Retrieve the iterator of the entries in their
+	 * ascending order.
+	 * @return The <code>Iterator</code> of the
+	 * <code>ISortableEntry</code>.
+	 */
+	@Override
+	public Iterator<ISortableEntry<K, T, V>> iterator();
+
+	/**
+	 * Retrieve the iterator of the entries in their
+	 * descending order.
+	 * @return The <code>Iterator</code> of the
+	 * <code>ISortableEntry</code>.
+	 */
+	public Iterator<ISortableEntry<K, T, V>> descendingIterator();
+
+	/**
+	 * Visit all the entries using the given number of
+	 * threads, including the invoking thread.
+	 * <p>
+	 * The entries are handed out to the threads in
+	 * consecutive batches of the ascending order, thus
+	 * the traversal itself is sequential while visiting
+	 * the entries is spread across the threads. This
+	 * method returns once all the entries are visited.
+	 * @param visitor The <code>IEntryVisitor</code>.
+	 * @param parallelism The <code>int</code> number of
+	 * threads to visit entries with.
+	 */
+	public void visit(final IEntryVisitor<K, T, V> visitor, final int parallelism);
+
+	/**
+	 * Check if the view contains no entries.
+	 * @return <code>true</code> if the view is empty.
+	 */
+	public boolean isEmpty();
+}
@@ -0,0 +1,45 @@
+package hemera.utility.structure.interfaces;
+
+import java.util.List;
+
+import hemera.utility.structure.TopChange;
+
+/**
+ * <code>ITopListener</code> defines the interface of a
+ * unit that is notified of the changes of the top nodes
+ * of a <code>ConcurrentSortableSet</code>.
+ * @param K The key type.
+ * @param T The node type.
+ *
+ * @author Yi Wang (Neakor)
+ * @version 1.0.0
+ */
+public interface ITopListener<K, T> {
+
+	/**
+	 * Notify the listener of a batch of changes caused
+	 * by a single operation on the set.
+	 * <p>
+	 * The batches are delivered one at a time in the
+	 * order they are produced, and every batch turns
+	 * the top nodes seen by the previous batch into the
+	 * current top nodes. All <code>LEAVE</code> changes
+	 * come first, followed by the <code>ENTER</code> and
+	 * <code>MOVE</code> changes in ascending rank.
+	 * <p>
+	 * The batch is a compact delta. Nodes that remain in
+	 * the top nodes and keep their order relative to each
+	 * other are not reported, even if their ranks shift.
+	 * The current top nodes are obtained by removing the
+	 * nodes that left or moved, then inserting the nodes
+	 * that entered or moved at their ranks in order.
+	 * <p>
+	 * This method is invoked after all the locks of the
+	 * set are released, on the thread performing either
+	 * the operation or a concurrent operation on the set,
+	 * thus implementations should return quickly.
+	 * @param changes The <code>List</code> of all the
+	 * <code>TopChange</code> in the batch. Never empty.
+	 */
+	public void onChanged(final List<TopChange<K, T>> changes);
+}
@@ -0,0 +1,27 @@
+package hemera.utility.structure.interfaces;
+
+/**
+ * <code>ITransaction</code> defines the interface of a
+ * unit that applies a batch of modifications to a set
+ * atomically with respect to the readers of the set.
+ * @param K The key object type.
+ * @param T The node <code>Comparable</code> type.
+ * @param V The attachment for the node.
+ *
+ * @author Yi Wang (Neakor)
+ * @version 1.0.0
+ */
+public interface ITransaction<K, T extends Comparable<T>, V> {
+
+	/**
+	 * Apply the modifications using the given context.
+	 * <p>
+	 * This method is invoked while holding the exclusive
+	 * lock of the set, thus implementations should not
+	 * perform any blocking operations, and should only
+	 * access the set via the given context.
+	 * @param context The <code>ITransactionContext</code>
+	 * to apply the modifications with.
+	 */
+	public void execute(final ITransactionContext<K, T, V> context);
+}
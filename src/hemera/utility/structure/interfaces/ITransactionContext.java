@@ -0,0 +1,83 @@
+package hemera.utility.structure.interfaces;
+
+/**
+ * <code>ITransactionContext</code> defines the interface
+ * of the modifications available to an <code>ITransaction</code>.
+ * <p>
+ * Every operation is validated immediately against the
+ * set including the previous operations of the transaction,
+ * thus the results can be used to decide the following
+ * operations of the transaction. The operations are then
+ * buffered, and are only applied to the set once the
+ * entire transaction completes normally. If the transaction
+ * throws, none of the operations are applied.
+ * @param K The key object type.
+ * @param T The node <code>Comparable</code> type.
+ * @param V The attachment for the node.
+ *
+ * @author Yi Wang (Neakor)
+ * @version 1.0.0
+ */
+public interface ITransactionContext<K, T extends Comparable<T>, V> {
+
+	/**
+	 * Add the given node with the given key.
+	 * @param key The <code>K</code> key of the node.
+	 * @param node The <code>T</code> to be added.
+	 * @param attachment The <code>V</code> attachment.
+	 * @return <code>true</code> if node is added.
+	 * <code>false</code> if the key already exists. If
+	 * the node equals another node once the transaction
+	 * is applied, the node is not added.
+	 */
+	public boolean add(final K key, final T node, final V attachment);
+
+	/**
+	 * Remove the node associated with the given key.
+	 * @param key The <code>K</code> key of the node
+	 * to remove.
+	 * @return <code>true</code> if the node is removed.
+	 * <code>false</code> if there is no such key. If the
+	 * node cannot be located once the transaction is
+	 * applied, the node is not removed.
+	 */
+	public boolean remove(final K key);
+
+	/**
+	 * Update the ordering state of the node associated
+	 * with the given key, and move it to its new position.
+	 * <p>
+	 * The mutator is invoked when the transaction is
+	 * applied, thus the node retrieved beforehand does
+	 * not reflect the update.
+	 * @param key The <code>K</code> key of the node
+	 * to update.
+	 * @param mutator The <code>INodeMutator</code> to
+	 * modify the node with.
+	 * @return <code>true</code> if the node is updated.
+	 * <code>false</code> if there is no such key. If the
+	 * updated node equals another node once the transaction
+	 * is applied, the updated node is removed.
+	 */
+	public boolean update(final K key, final INodeMutator<T> mutator);
+
+	/**
+	 * Retrieve the node associated with the given key,
+	 * including the additions and removals of the
+	 * transaction.
+	 * @param key The <code>K</code> key of the node.
+	 * @return The <code>T</code> node. <code>null</code>
+	 * if there is no such key.
+	 */
+	public T getNode(final K key);
+
+	/**
+	 * Retrieve the attachment of the node associated
+	 * with the given key, including the additions and
+	 * removals of the transaction.
+	 * @param key The <code>K</code> key of the node.
+	 * @return The <code>V</code> attachment. <code>null</code>
+	 * if there is no such key.
+	 */
+	public V getAttachment(final K key);
+}
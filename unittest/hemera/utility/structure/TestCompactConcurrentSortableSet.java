@@ -0,0 +1,112 @@
+package hemera.utility.structure;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+import hemera.utility.structure.interfaces.INodeMutator;
+import hemera.utility.structure.interfaces.ISortableEntry;
+
+import junit.framework.TestCase;
+
+public class TestCompactConcurrentSortableSet extends TestCase {
+
+	public void testOrder() {
+		final int count = 10000;
+		final CompactConcurrentSortableSet<Integer, Node, String> set = new CompactConcurrentSortableSet<Integer, Node, String>();
+		for (int i = 0; i < count; i++) {
+			// Insert in a scrambled order with duplicate values.
+			final int key = (i * 7919) % count;
+			assertTrue(set.add(key, new Node(key / 2), "Attachment " + key));
+		}
+		assertFalse(set.add(0, new Node(0), null));
+		assertEquals(count, set.size());
+		assertEquals(0, set.firstNode().value);
+		assertEquals(count / 2 - 1, set.lastNode().value);
+		final BitSet removed = set.removeAll(Arrays.asList(0, 2, count, 4));
+		assertTrue(removed.get(0));
+		assertTrue(removed.get(1));
+		assertFalse(removed.get(2));
+		assertTrue(removed.get(3));
+		assertFalse(set.remove(0));
+		assertNull(set.getNode(2));
+		assertEquals(3, set.getNode(7).value);
+		assertEquals("Attachment 7", set.getAttachment(7));
+		int keys = 0;
+		for (@SuppressWarnings("unused") final Integer key : set.getAllKeys()) {
+			keys++;
+		}
+		assertEquals(count - 3, keys);
+		final List<ISortableEntry<Integer, Node, String>> polled = set.pollFirst(count);
+		assertEquals(count - 3, polled.size());
+		for (int i = 1; i < polled.size(); i++) {
+			assertTrue(polled.get(i-1).getNode().value <= polled.get(i).getNode().value);
+		}
+		assertEquals(0, set.size());
+		assertNull(set.pollLast());
+		assertNull(set.firstAttachment());
+	}
+
+	public void testUpdate() {
+		final int count = 1000;
+		final CompactConcurrentSortableSet<Integer, Node, Integer> set = new CompactConcurrentSortableSet<Integer, Node, Integer>(count);
+		final List<ISortableEntry<Integer, Node, Integer>> entries = new ArrayList<ISortableEntry<Integer, Node, Integer>>();
+		for (int i = 0; i < count; i++) {
+			entries.add(new SortableEntry<Integer, Node, Integer>(i, new Node(i), i));
+		}
+		assertEquals(count, set.addAll(entries).cardinality());
+		// Repositioned by reference regardless of the
+		// stale ordering.
+		assertTrue(set.update(0, new INodeMutator<Node>() {
+			@Override
+			public void mutate(final Node node) {
+				node.value = count;
+			}
+		}));
+		assertFalse(set.update(count, null));
+		assertEquals(Integer.valueOf(0), set.lastAttachment());
+		assertEquals(Integer.valueOf(1), set.firstAttachment());
+		// Re-linked even if the mutator throws.
+		try {
+			set.update(2, new INodeMutator<Node>() {
+				@Override
+				public void mutate(final Node node) {
+					node.value = -1;
+					throw new IllegalStateException();
+				}
+			});
+			fail();
+		} catch (final IllegalStateException e) {}
+		assertEquals(count, set.size());
+		assertEquals(Integer.valueOf(2), set.firstAttachment());
+		// Change the values without notifying the set.
+		for (int i = 1; i < count; i++) {
+			set.getNode(i).value = -i;
+		}
+		set.sort();
+		final ISortableEntry<Integer, Node, Integer> first = set.pollFirst();
+		assertEquals(Integer.valueOf(count-1), first.getKey());
+		assertEquals(Integer.valueOf(0), set.pollLast().getKey());
+		for (int i = count-2; i > 0; i--) {
+			assertEquals(Integer.valueOf(i), set.pollFirst().getKey());
+		}
+		assertEquals(0, set.size());
+	}
+
+	private static class Node implements Comparable<Node> {
+		private int value;
+
+		private Node(final int value) {
+			this.value = value;
+		}
+
+		@Override
+		public int compareTo(final Node o) {
+			if (this.equals(o)) return 0;
+			final int result = this.value - o.value;
+			if (result == 0) return -1;
+			else return result;
+		}
+	}
+}
@@ -0,0 +1,87 @@
+package hemera.utility.structure;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import hemera.utility.structure.interfaces.INodeMutator;
+import hemera.utility.structure.interfaces.ISortableEntry;
+
+import junit.framework.TestCase;
+
+public class TestConcurrentHeapSortableSet extends TestCase {
+
+	public void testHeap() {
+		final int count = 10000;
+		final ConcurrentHeapSortableSet<Integer, Node, String> set = new ConcurrentHeapSortableSet<Integer, Node, String>();
+		assertNull(set.firstNode());
+		assertNull(set.lastNode());
+		final Node[] nodes = new Node[count];
+		for (int i = 0; i < count; i++) {
+			// Insert in a scrambled order.
+			final int key = (i * 7919) % count;
+			nodes[key] = new Node(key);
+			assertTrue(set.add(key, nodes[key], "Attachment " + key));
+		}
+		assertFalse(set.add(0, new Node(-1), null));
+		assertSame(nodes[0], set.firstNode());
+		assertEquals("Attachment 0", set.firstAttachment());
+		assertSame(nodes[count-1], set.lastNode());
+		assertEquals(3, set.removeAll(Arrays.asList(0, 1, count, 2)).cardinality());
+		assertFalse(set.remove(0));
+		assertSame(nodes[3], set.firstNode());
+		assertEquals(Integer.valueOf(count-1), set.pollLast().getKey());
+		assertTrue(set.update(count / 2, new INodeMutator<Node>() {
+			@Override
+			public void mutate(final Node node) {
+				node.value = -1;
+			}
+		}));
+		assertFalse(set.update(0, null));
+		assertEquals("Attachment " + (count / 2), set.firstAttachment());
+		final List<ISortableEntry<Integer, Node, String>> polled = set.pollFirst(count);
+		assertEquals(count - 4, polled.size());
+		for (int i = 1; i < polled.size(); i++) {
+			assertTrue(polled.get(i-1).getNode().value <= polled.get(i).getNode().value);
+		}
+		assertEquals(0, set.size());
+		assertNull(set.pollFirst());
+	}
+
+	public void testSort() {
+		final int count = 1000;
+		final ConcurrentHeapSortableSet<Integer, Node, Integer> set = new ConcurrentHeapSortableSet<Integer, Node, Integer>();
+		final List<ISortableEntry<Integer, Node, Integer>> entries = new ArrayList<ISortableEntry<Integer, Node, Integer>>();
+		for (int i = 0; i < count; i++) {
+			entries.add(new SortableEntry<Integer, Node, Integer>(i, new Node(i), i));
+		}
+		assertEquals(count, set.addAll(entries).cardinality());
+		assertEquals(0, set.addAll(entries.subList(0, 10)).cardinality());
+		// Reverse the values without notifying the set.
+		for (int i = 0; i < count; i++) {
+			set.getNode(i).value = -i;
+		}
+		set.sort();
+		assertEquals(Integer.valueOf(count-1), set.firstAttachment());
+		assertEquals(Integer.valueOf(0), set.lastAttachment());
+		for (int i = count-1; i >= 0; i--) {
+			assertEquals(Integer.valueOf(i), set.pollFirst().getKey());
+		}
+	}
+
+	private static class Node implements Comparable<Node> {
+		private int value;
+
+		private Node(final int value) {
+			this.value = value;
+		}
+
+		@Override
+		public int compareTo(final Node o) {
+			if (this.equals(o)) return 0;
+			final int result = this.value - o.value;
+			if (result == 0) return -1;
+			else return result;
+		}
+	}
+}
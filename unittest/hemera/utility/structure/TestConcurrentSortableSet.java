@@ -0,0 +1,1340 @@
+package hemera.utility.structure;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Iterator;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.ObjectName;
+
+import hemera.utility.structure.interfaces.IBinaryCodec;
+import hemera.utility.structure.interfaces.IEntryVisitor;
+import hemera.utility.structure.interfaces.INodeMutator;
+import hemera.utility.structure.interfaces.INodeScorer;
+import hemera.utility.structure.interfaces.ISortableEntry;
+import hemera.utility.structure.interfaces.ISortableSetSnapshot;
+import hemera.utility.structure.interfaces.ISortableSetView;
+import hemera.utility.structure.interfaces.ITopListener;
+import hemera.utility.structure.interfaces.ITransaction;
+import hemera.utility.structure.interfaces.ITransactionContext;
+
+import junit.framework.TestCase;
+
+public class TestConcurrentSortableSet extends TestCase {
+
+	public void testUpdate() throws Exception {
+		final int count = 1000;
+		final ConcurrentSortableSet<Integer, Node, String> set = new ConcurrentSortableSet<Integer, Node, String>();
+		for (int i = 0; i < count; i++) {
+			set.add(i, new Node(i), "Attachment " + i);
+		}
+		// Move the lowest node to the end.
+		final boolean updated = set.update(0, new INodeMutator<Node>() {
+			@Override
+			public void mutate(final Node node) {
+				node.value = count;
+			}
+		});
+		assertTrue(updated);
+		assertEquals(count, set.size());
+		assertEquals(1, set.firstNode().value);
+		assertEquals(count, set.lastNode().value);
+		assertEquals("Attachment 0", set.lastAttachment());
+		// Updating a missing key should fail.
+		assertFalse(set.update(count, new INodeMutator<Node>() {
+			@Override
+			public void mutate(final Node node) {}
+		}));
+		assertTrue(set.remove(0));
+		assertEquals(count-1, set.lastNode().value);
+	}
+
+	public void testThrowingMutator() throws Exception {
+		final int count = 1000;
+		final ConcurrentRankedSortableSet<Integer, Node, String> set = new ConcurrentRankedSortableSet<Integer, Node, String>();
+		for (int i = 0; i < count; i++) {
+			set.add(i, new Node(i), "Attachment " + i);
+		}
+		// The node is modified before the mutator throws.
+		try {
+			set.update(0, new INodeMutator<Node>() {
+				@Override
+				public void mutate(final Node node) {
+					node.value = count;
+					throw new IllegalStateException();
+				}
+			});
+			fail();
+		} catch (final IllegalStateException e) {}
+		assertEquals(count, set.size());
+		assertEquals(count, set.lastNode().value);
+		assertEquals("Attachment 0", set.lastAttachment());
+		assertEquals(count-1, set.rankOf(0));
+		int size = 0;
+		for (final ISortableEntry<Integer, Node, String> entry : set) {
+			assertSame(entry.getNode(), set.nodeAtRank(size));
+			size++;
+		}
+		assertEquals(count, size);
+		assertTrue(set.remove(0));
+		assertEquals(count-1, set.size());
+		assertEquals(-1, set.rankOf(0));
+	}
+
+	public void testSwapSort() throws Exception {
+		final int count = 10000;
+		final ConcurrentSortableSet<Integer, Node, String> set = new ConcurrentSortableSet<Integer, Node, String>(SortMode.SWAP);
+		final Node[] nodes = new Node[count];
+		for (int i = 0; i < count; i++) {
+			nodes[i] = new Node(i);
+			set.add(i, nodes[i], "Attachment " + i);
+		}
+		// Reverse the order, then modify the set while sorting.
+		for (int i = 0; i < count; i++) {
+			nodes[i].value = count - i;
+		}
+		final Thread writer = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				for (int i = count; i < count * 2; i++) {
+					set.add(i, new Node(-i), "Attachment " + i);
+					if (i - count / 2 >= count) set.remove(i - count / 2);
+				}
+			}
+		});
+		writer.start();
+		set.sort();
+		writer.join();
+		set.sort();
+		assertEquals(count + count / 2, set.size());
+		assertEquals(1 - count * 2, set.firstNode().value);
+		assertEquals("Attachment " + (count * 2 - 1), set.firstAttachment());
+		int previous = Integer.MIN_VALUE;
+		int iterated = 0;
+		while (set.size() > 0) {
+			final Node first = set.firstNode();
+			assertTrue(first.value > previous);
+			previous = first.value;
+			for (final Integer key : set.getAllKeys()) {
+				if (set.getNode(key) == first) {
+					assertTrue(set.remove(key));
+					break;
+				}
+			}
+			iterated++;
+			if (iterated > 100) break;
+		}
+		// Update nodes in place while sorting.
+		final ConcurrentSortableSet<Integer, Node, String> updated = new ConcurrentSortableSet<Integer, Node, String>(SortMode.SWAP);
+		final int size = 50000;
+		final Node[] shuffled = new Node[size];
+		for (int i = 0; i < size; i++) {
+			shuffled[i] = new Node(i);
+			updated.add(i, shuffled[i], null);
+		}
+		for (int i = 0; i < size; i++) {
+			shuffled[i].value = (int)((i * 7919L) % size);
+		}
+		final AtomicBoolean running = new AtomicBoolean(true);
+		final AtomicLong unique = new AtomicLong(size);
+		final Thread[] updaters = new Thread[4];
+		for (int t = 0; t < updaters.length; t++) {
+			final Random random = new Random(t);
+			updaters[t] = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					while (running.get()) {
+						final int value = (int)unique.incrementAndGet();
+						updated.update(random.nextInt(size), new INodeMutator<Node>() {
+							@Override
+							public void mutate(final Node node) {
+								node.value = value;
+							}
+						});
+					}
+				}
+			});
+			updaters[t].start();
+		}
+		try {
+			for (int round = 0; round < 3; round++) {
+				updated.sort();
+			}
+		} finally {
+			running.set(false);
+			for (int t = 0; t < updaters.length; t++) {
+				updaters[t].join();
+			}
+		}
+		assertEquals(size, updated.size());
+		int last = Integer.MIN_VALUE;
+		int visited = 0;
+		for (final ISortableEntry<Integer, Node, String> entry : updated) {
+			assertTrue(entry.getNode().value > last);
+			last = entry.getNode().value;
+			visited++;
+		}
+		assertEquals(size, visited);
+		for (int i = 0; i < size; i++) {
+			assertTrue(updated.remove(i));
+		}
+		assertTrue(updated.isEmpty());
+	}
+
+	public void testPoll() throws Exception {
+		final int count = 10000;
+		final int threads = 4;
+		final ConcurrentSortableSet<Integer, Node, String> set = new ConcurrentSortableSet<Integer, Node, String>();
+		for (int i = 0; i < count; i++) {
+			set.add(i, new Node(i), "Attachment " + i);
+		}
+		final ISortableEntry<Integer, Node, String> last = set.pollLast();
+		assertEquals(Integer.valueOf(count-1), last.getKey());
+		assertEquals("Attachment " + (count-1), last.getAttachment());
+		assertNull(set.getNode(count-1));
+		// Drain concurrently, every key must be polled once.
+		final AtomicIntegerArray polled = new AtomicIntegerArray(count);
+		final Thread[] workers = new Thread[threads];
+		for (int i = 0; i < threads; i++) {
+			workers[i] = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					while (true) {
+						final List<ISortableEntry<Integer, Node, String>> batch = set.pollFirst(16);
+						if (batch.isEmpty()) break;
+						int previous = -1;
+						for (final ISortableEntry<Integer, Node, String> entry : batch) {
+							assertTrue(entry.getNode().value > previous);
+							previous = entry.getNode().value;
+							polled.incrementAndGet(entry.getKey());
+						}
+					}
+				}
+			});
+			workers[i].start();
+		}
+		for (final Thread worker : workers) {
+			worker.join();
+		}
+		for (int i = 0; i < count-1; i++) {
+			assertEquals(1, polled.get(i));
+		}
+		assertEquals(0, set.size());
+		assertNull(set.pollFirst());
+		assertNull(set.firstNode());
+		assertFalse(set.getAllKeys().iterator().hasNext());
+	}
+
+	public void testBatch() throws Exception {
+		final int count = 1000;
+		final ConcurrentSortableSet<Integer, Node, String> set = new ConcurrentSortableSet<Integer, Node, String>();
+		set.add(count, new Node(count), "Existing");
+		final List<SortableEntry<Integer, Node, String>> batch = new ArrayList<SortableEntry<Integer, Node, String>>();
+		for (int i = count; i >= 0; i--) {
+			batch.add(new SortableEntry<Integer, Node, String>(i, new Node(i), "Attachment " + i));
+		}
+		final BitSet added = set.addAll(batch);
+		// The first entry has a duplicate key.
+		assertFalse(added.get(0));
+		assertEquals(count, added.cardinality());
+		assertEquals(count + 1, set.size());
+		assertEquals(0, set.firstNode().value);
+		assertEquals("Existing", set.lastAttachment());
+		final List<Integer> keys = new ArrayList<Integer>();
+		for (int i = 0; i < count; i += 2) {
+			keys.add(i);
+		}
+		keys.add(-1);
+		final BitSet removed = set.removeAll(keys);
+		assertEquals(count / 2, removed.cardinality());
+		assertFalse(removed.get(keys.size() - 1));
+		assertEquals(count / 2 + 1, set.size());
+		assertEquals(1, set.firstNode().value);
+	}
+
+	public void testRank() throws Exception {
+		final int count = 10000;
+		final ConcurrentRankedSortableSet<Integer, Node, String> set = new ConcurrentRankedSortableSet<Integer, Node, String>();
+		final Node[] nodes = new Node[count];
+		for (int i = 0; i < count; i++) {
+			// Insert in a scrambled order.
+			final int key = (i * 7919) % count;
+			nodes[key] = new Node(key);
+			set.add(key, nodes[key], "Attachment " + key);
+		}
+		for (int i = 0; i < count; i++) {
+			assertEquals(i, set.rankOf(i));
+			assertSame(nodes[i], set.nodeAtRank(i));
+		}
+		assertNull(set.nodeAtRank(count));
+		assertEquals(-1, set.rankOf(count));
+		final List<Node> page = set.range(4800, 25);
+		assertEquals(25, page.size());
+		for (int i = 0; i < page.size(); i++) {
+			assertSame(nodes[4800 + i], page.get(i));
+		}
+		assertEquals(10, set.range(count - 10, 25).size());
+		// Remove even keys.
+		for (int i = 0; i < count; i += 2) {
+			assertTrue(set.remove(i));
+		}
+		for (int i = 1; i < count; i += 2) {
+			assertEquals(i / 2, set.rankOf(i));
+		}
+		// Reverse the order and sort.
+		for (int i = 1; i < count; i += 2) {
+			nodes[i].value = count - i;
+		}
+		set.sort();
+		for (int i = 1; i < count; i += 2) {
+			assertEquals(count / 2 - 1 - i / 2, set.rankOf(i));
+		}
+		assertSame(nodes[count - 1], set.nodeAtRank(0));
+		assertSame(set.firstNode(), set.nodeAtRank(0));
+	}
+
+	public void testQuantile() throws Exception {
+		final int count = 10000;
+		final ConcurrentRankedSortableSet<Integer, Node, String> set = new ConcurrentRankedSortableSet<Integer, Node, String>(SortMode.BLOCKING, new INodeScorer<Node>() {
+			@Override
+			public double score(final Node node) {
+				return node.value;
+			}
+		});
+		assertNull(set.nodeAtQuantile(0.5));
+		assertTrue(Double.isNaN(set.approximateQuantile(0.5)));
+		final Node[] nodes = new Node[count];
+		for (int i = 0; i < count; i++) {
+			// Insert in a scrambled order with duplicate values.
+			final int key = (i * 7919) % count;
+			nodes[key] = new Node(key / 2);
+			set.add(key, nodes[key], null);
+		}
+		assertEquals(0, set.nodeAtQuantile(0).value);
+		assertEquals(2499, set.nodeAtQuantile(0.5).value);
+		assertEquals(4949, set.nodeAtQuantile(0.99).value);
+		assertEquals(count / 2 - 1, set.nodeAtQuantile(1).value);
+		assertEquals(200, set.countBetween(new Node(100), new Node(199)));
+		assertEquals(2, set.countBetween(nodes[10], nodes[10]));
+		assertEquals(0, set.countBetween(new Node(199), new Node(100)));
+		assertEquals(count, set.countBetween(new Node(-1), new Node(count)));
+		try {
+			set.nodeAtQuantile(1.5);
+			fail();
+		} catch (final IllegalArgumentException e) {}
+		assertEquals(2499, set.approximateQuantile(0.5), 2499 * 0.01);
+		assertEquals(4949, set.approximateQuantile(0.99), 4949 * 0.01);
+		assertEquals(200, set.approximateCountBetween(100, 199), 10);
+		// Make the values unique so that removals by
+		// comparison cannot fail.
+		for (int i = 0; i < count; i++) {
+			nodes[i].value = i;
+		}
+		set.sort();
+		// Removal and update are reflected in the sketch.
+		for (int i = 0; i < count; i += 2) {
+			assertTrue(set.remove(i));
+		}
+		assertTrue(set.update(1, new INodeMutator<Node>() {
+			@Override
+			public void mutate(final Node node) {
+				node.value = count * 10;
+			}
+		}));
+		assertEquals(count / 2, set.countBetween(new Node(-1), new Node(count * 10)));
+		assertEquals(count * 10, set.nodeAtQuantile(1).value);
+		assertEquals(count * 10, set.approximateQuantile(1), count * 10 * 0.01);
+		assertEquals(1, set.approximateCountBetween(count, count * 20));
+		final QuantileSketch merged = set.snapshotSketch();
+		merged.merge(set.snapshotSketch());
+		assertEquals(count, merged.getCount());
+		try {
+			new ConcurrentRankedSortableSet<Integer, Node, String>().approximateQuantile(0.5);
+			fail();
+		} catch (final IllegalStateException e) {}
+	}
+
+	public void testSharded() throws Exception {
+		final int count = 10000;
+		final int threads = 4;
+		final ShardedConcurrentSortableSet<Integer, Node, String> set = new ShardedConcurrentSortableSet<Integer, Node, String>(8);
+		final Node[] nodes = new Node[count];
+		for (int i = 0; i < count; i++) {
+			nodes[i] = new Node(i);
+		}
+		final Thread[] workers = new Thread[threads];
+		for (int i = 0; i < threads; i++) {
+			final int offset = i;
+			workers[i] = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					for (int j = offset; j < count; j += threads) {
+						assertTrue(set.add(j, nodes[j], "Attachment " + j));
+					}
+				}
+			});
+			workers[i].start();
+		}
+		for (final Thread worker : workers) {
+			worker.join();
+		}
+		assertEquals(count, set.size());
+		assertSame(nodes[0], set.firstNode());
+		assertSame(nodes[count-1], set.lastNode());
+		assertEquals("Attachment 0", set.firstAttachment());
+		int iterated = 0;
+		for (final ISortableEntry<Integer, Node, String> entry : set.entries()) {
+			assertEquals(iterated, entry.getNode().value);
+			iterated++;
+		}
+		assertEquals(count, iterated);
+		// Reverse the order and sort all shards.
+		for (int i = 0; i < count; i++) {
+			nodes[i].value = count - i;
+		}
+		set.sort();
+		assertSame(nodes[count-1], set.firstNode());
+		assertSame(nodes[0], set.lastNode());
+		final List<ISortableEntry<Integer, Node, String>> polled = set.pollFirst(10);
+		for (int i = 0; i < polled.size(); i++) {
+			assertEquals(Integer.valueOf(count - 1 - i), polled.get(i).getKey());
+		}
+		assertEquals(Integer.valueOf(0), set.pollLast().getKey());
+		final List<Integer> keys = new ArrayList<Integer>();
+		for (int i = 1; i < count - 10; i++) {
+			keys.add(i);
+		}
+		assertEquals(keys.size(), set.removeAll(keys).cardinality());
+		assertEquals(0, set.size());
+		assertNull(set.firstNode());
+		assertFalse(set.getAllKeys().iterator().hasNext());
+	}
+
+	public void testSnapshot() throws Exception {
+		final int count = 10000;
+		final File file = File.createTempFile("sortable", ".snapshot");
+		try {
+			final ConcurrentRankedSortableSet<Integer, Node, String> set = new ConcurrentRankedSortableSet<Integer, Node, String>();
+			for (int i = 0; i < count; i++) {
+				final int key = (i * 7919) % count;
+				set.add(key, new Node(key), (key % 2 == 0) ? null : "Attachment " + key);
+			}
+			assertEquals(count, set.snapshotTo(file, new IntegerCodec(), new NodeCodec(), new StringCodec()));
+			final ConcurrentRankedSortableSet<Integer, Node, String> restored = new ConcurrentRankedSortableSet<Integer, Node, String>(SortMode.SWAP);
+			assertEquals(count, restored.restoreFrom(file, new IntegerCodec(), new NodeCodec(), new StringCodec()));
+			assertEquals(count, restored.size());
+			for (int i = 0; i < count; i++) {
+				assertEquals(i, restored.nodeAtRank(i).value);
+				assertEquals(i, restored.rankOf(i));
+				assertEquals(set.getAttachment(i), restored.getAttachment(i));
+			}
+			assertEquals(count - 1, restored.pollLast().getNode().value);
+			assertTrue(restored.remove(0));
+			assertEquals(1, restored.firstNode().value);
+			try {
+				restored.restoreFrom(file, new IntegerCodec(), new NodeCodec(), new StringCodec());
+				fail();
+			} catch (final IllegalStateException e) {}
+		} finally {
+			file.delete();
+		}
+	}
+
+	public void testComparator() throws Exception {
+		final int count = 10000;
+		final ConcurrentSortableSet<Integer, Node, String> set = new ConcurrentSortableSet<Integer, Node, String>(new Comparator<Node>() {
+			@Override
+			public int compare(final Node o1, final Node o2) {
+				return o1.value - o2.value;
+			}
+		}, SortMode.SWAP);
+		// Only a few distinct scores.
+		for (int i = 0; i < count; i++) {
+			assertTrue(set.add(i, new Node(i % 10), "Attachment " + i));
+		}
+		assertFalse(set.add(0, new Node(0), null));
+		// Ties are ordered by their addition.
+		assertEquals("Attachment 0", set.firstAttachment());
+		assertEquals("Attachment " + (count - 1), set.lastAttachment());
+		assertTrue(set.update(0, new INodeMutator<Node>() {
+			@Override
+			public void mutate(final Node node) {
+				node.value = 9;
+			}
+		}));
+		assertEquals("Attachment 10", set.firstAttachment());
+		set.sort();
+		for (int i = 0; i < count; i++) {
+			assertTrue(set.remove(i));
+		}
+		assertEquals(0, set.size());
+		assertNull(set.firstNode());
+	}
+
+	public void testOptimistic() throws Exception {
+		final int count = 100000;
+		final ConcurrentSortableSet<Integer, Node, String> set = new ConcurrentSortableSet<Integer, Node, String>(SortMode.OPTIMISTIC);
+		final Node[] nodes = new Node[count];
+		for (int i = 0; i < count; i++) {
+			nodes[i] = new Node(i);
+			set.add(i, nodes[i], "Attachment " + i);
+		}
+		for (int i = 0; i < count; i++) {
+			nodes[i].value = count - i;
+		}
+		final AtomicBoolean running = new AtomicBoolean(true);
+		final AtomicIntegerArray failures = new AtomicIntegerArray(1);
+		final Thread reader = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				while (running.get()) {
+					if (set.firstNode() == null || set.getAttachment(count / 2) == null) failures.incrementAndGet(0);
+				}
+			}
+		});
+		reader.start();
+		for (int i = 0; i < 5; i++) {
+			set.sort();
+			assertSame(nodes[count-1], set.firstNode());
+			assertEquals("Attachment 0", set.lastAttachment());
+		}
+		running.set(false);
+		reader.join();
+		assertEquals(0, failures.get(0));
+		assertSame(nodes[0], set.getNode(0));
+	}
+
+	public void testMonitor() throws Exception {
+		final ConcurrentSortableSet<Integer, Node, String> set = new ConcurrentSortableSet<Integer, Node, String>();
+		final Node[] nodes = new Node[10];
+		for (int i = 0; i < nodes.length; i++) {
+			nodes[i] = new Node(i);
+			set.add(i, nodes[i], "Attachment " + i);
+		}
+		final SortableSetMonitor monitor = set.enableMonitoring();
+		assertSame(monitor, set.enableMonitoring());
+		assertTrue(set.remove(0));
+		// Mutate without sorting so the node can no longer be located.
+		nodes[9].value = -1;
+		assertFalse(set.remove(9));
+		set.sort();
+		assertTrue(set.remove(9));
+		SortableSetStatistics statistics = monitor.getStatistics();
+		assertEquals(8, statistics.getSize());
+		assertEquals(3, statistics.getReadLockWait().getCount());
+		assertEquals(1, statistics.getWriteLockWait().getCount());
+		assertEquals(1, statistics.getSort().getCount());
+		assertEquals(9, statistics.getLastSortSize());
+		assertEquals(0, statistics.getAddFailures());
+		assertEquals(1, statistics.getRemoveFailures());
+		final String name = "hemera:type=SortableSet,name=test";
+		monitor.register(name);
+		try {
+			assertEquals(Long.valueOf(1), ManagementFactory.getPlatformMBeanServer().getAttribute(new ObjectName(name), "RemoveFailures"));
+		} finally {
+			monitor.unregister(name);
+		}
+		set.disableMonitoring();
+		set.sort();
+		statistics = monitor.getStatistics();
+		assertEquals(1, statistics.getSort().getCount());
+		monitor.reset();
+		assertEquals(0, monitor.getRemoveFailures());
+	}
+
+	public void testWatchTop() throws Exception {
+		final ConcurrentSortableSet<Integer, Node, String> set = new ConcurrentSortableSet<Integer, Node, String>();
+		final Node[] nodes = new Node[10];
+		for (int i = 0; i < nodes.length; i++) {
+			nodes[i] = new Node(i * 10);
+			set.add(i, nodes[i], "Attachment " + i);
+		}
+		final List<List<TopChange<Integer, Node>>> batches = new ArrayList<List<TopChange<Integer, Node>>>();
+		final ITopListener<Integer, Node> listener = new ITopListener<Integer, Node>() {
+			@Override
+			public void onChanged(final List<TopChange<Integer, Node>> changes) {
+				batches.add(changes);
+			}
+		};
+		set.watchTop(3, listener);
+		assertEquals(1, batches.size());
+		assertEquals(3, batches.get(0).size());
+		for (int i = 0; i < 3; i++) {
+			assertEquals(TopChangeType.ENTER, batches.get(0).get(i).getType());
+			assertEquals(Integer.valueOf(i), batches.get(0).get(i).getKey());
+			assertEquals(i, batches.get(0).get(i).getRank());
+		}
+		// Outside of the top nodes.
+		set.add(10, new Node(100), "Attachment 10");
+		set.remove(9);
+		set.update(8, new INodeMutator<Node>() {
+			@Override
+			public void mutate(final Node node) {
+				node.value = 85;
+			}
+		});
+		assertEquals(1, batches.size());
+		// Enter at the first rank.
+		set.add(11, new Node(-1), "Attachment 11");
+		assertEquals(2, batches.size());
+		List<TopChange<Integer, Node>> changes = batches.get(1);
+		// The shifted ranks of the other nodes are implied.
+		assertEquals(2, changes.size());
+		assertEquals(TopChangeType.LEAVE, changes.get(0).getType());
+		assertEquals(Integer.valueOf(2), changes.get(0).getKey());
+		assertEquals(TopChangeType.ENTER, changes.get(1).getType());
+		assertEquals(Integer.valueOf(11), changes.get(1).getKey());
+		assertEquals(0, changes.get(1).getRank());
+		// Order change by update.
+		set.update(1, new INodeMutator<Node>() {
+			@Override
+			public void mutate(final Node node) {
+				node.value = -2;
+			}
+		});
+		assertEquals(3, batches.size());
+		changes = batches.get(2);
+		assertEquals(1, changes.size());
+		assertEquals(TopChangeType.MOVE, changes.get(0).getType());
+		assertEquals(Integer.valueOf(1), changes.get(0).getKey());
+		assertEquals(2, changes.get(0).getPreviousRank());
+		assertEquals(0, changes.get(0).getRank());
+		// Order change by sort.
+		nodes[0].value = -3;
+		set.sort();
+		assertEquals(4, batches.size());
+		assertEquals(1, batches.get(3).size());
+		assertEquals(Integer.valueOf(0), batches.get(3).get(0).getKey());
+		assertEquals(0, batches.get(3).get(0).getRank());
+		set.pollFirst();
+		assertEquals(5, batches.size());
+		assertEquals(2, batches.get(4).size());
+		assertEquals(TopChangeType.LEAVE, batches.get(4).get(0).getType());
+		assertEquals(Integer.valueOf(0), batches.get(4).get(0).getKey());
+		assertEquals(TopChangeType.ENTER, batches.get(4).get(1).getType());
+		assertEquals(Integer.valueOf(2), batches.get(4).get(1).getKey());
+		assertTrue(set.unwatchTop(listener));
+		set.pollFirst();
+		assertEquals(5, batches.size());
+		// A slow listener does not block the publications
+		// of other threads, which are delivered in order.
+		final List<Integer> entered = new ArrayList<Integer>();
+		final ITopListener<Integer, Node> slow = new ITopListener<Integer, Node>() {
+			@Override
+			public void onChanged(final List<TopChange<Integer, Node>> changes) {
+				for (final TopChange<Integer, Node> change : changes) {
+					if (change.getType() == TopChangeType.ENTER) entered.add(change.getKey());
+				}
+				if (entered.size() != 2) return;
+				final Thread writer = new Thread(new Runnable() {
+					@Override
+					public void run() {
+						set.add(13, new Node(-20), null);
+					}
+				});
+				writer.start();
+				try {
+					writer.join(5000);
+				} catch (final InterruptedException e) {
+					throw new IllegalStateException(e);
+				}
+				assertFalse(writer.isAlive());
+			}
+		};
+		set.watchTop(1, slow);
+		set.add(12, new Node(-10), null);
+		assertEquals(3, entered.size());
+		assertEquals(Integer.valueOf(13), entered.get(2));
+		assertTrue(set.unwatchTop(slow));
+	}
+
+	public void testBounded() throws Exception {
+		final List<Integer> evicted = new ArrayList<Integer>();
+		final BoundedConcurrentSortableSet<Integer, Node, String> set = new BoundedConcurrentSortableSet<Integer, Node, String>(5) {
+			@Override
+			protected void onEvicted(final Integer key, final Node node, final String attachment) {
+				evicted.add(key);
+			}
+		};
+		for (int i = 0; i < 5; i++) {
+			assertTrue(set.add(i, new Node(i * 10), "Attachment " + i));
+		}
+		assertFalse(set.add(5, new Node(100), "Attachment 5"));
+		assertNull(set.getNode(5));
+		assertTrue(set.add(6, new Node(5), "Attachment 6"));
+		assertEquals(5, set.size());
+		assertEquals(1, evicted.size());
+		assertEquals(Integer.valueOf(4), evicted.get(0));
+		assertNull(set.getNode(4));
+		final List<ISortableEntry<Integer, Node, String>> batch = new ArrayList<ISortableEntry<Integer, Node, String>>();
+		for (int i = 0; i < 3; i++) {
+			batch.add(new SortableEntry<Integer, Node, String>(10 + i, new Node(-i - 1), "Attachment " + (10 + i)));
+		}
+		assertEquals(3, set.addAll(batch).cardinality());
+		assertEquals(5, set.size());
+		assertEquals(4, evicted.size());
+		assertEquals(-3, set.firstNode().value);
+		assertEquals(5, set.lastNode().value);
+		final List<Integer> keys = new ArrayList<Integer>();
+		for (final Integer key : set.getAllKeys()) {
+			keys.add(key);
+		}
+		assertEquals(5, keys.size());
+		// Rejected and evicted batch entries are not reported as added.
+		final int[] values = {-4, 100, -10, -5, -6, -7, -8};
+		batch.clear();
+		for (int i = 0; i < values.length; i++) {
+			batch.add(new SortableEntry<Integer, Node, String>(20 + i, new Node(values[i]), null));
+		}
+		final BitSet added = set.addAll(batch);
+		assertEquals(5, added.cardinality());
+		assertFalse(added.get(0));
+		assertFalse(added.get(1));
+		assertNull(set.getNode(20));
+		assertEquals(5, set.size());
+		assertEquals(10, evicted.size());
+		assertEquals(-10, set.firstNode().value);
+		assertEquals(-5, set.lastNode().value);
+	}
+
+	public void testBoundedConcurrent() throws Exception {
+		final int capacity = 100;
+		final int threads = 8;
+		final int count = 2000;
+		final AtomicLong evicted = new AtomicLong();
+		final BoundedConcurrentSortableSet<Integer, Node, String> set = new BoundedConcurrentSortableSet<Integer, Node, String>(capacity) {
+			@Override
+			protected void onEvicted(final Integer key, final Node node, final String attachment) {
+				evicted.incrementAndGet();
+			}
+		};
+		final AtomicLong added = new AtomicLong();
+		final AtomicBoolean running = new AtomicBoolean(true);
+		final AtomicBoolean exceeded = new AtomicBoolean();
+		final Thread observer = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				while (running.get()) {
+					if (set.size() > capacity + 1) exceeded.set(true);
+				}
+			}
+		});
+		observer.start();
+		final List<Thread> adders = new ArrayList<Thread>();
+		for (int t = 0; t < threads; t++) {
+			final int offset = t * count;
+			final Thread adder = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					for (int i = 0; i < count; i++) {
+						final int key = offset + i;
+						// Unique values in a scrambled order.
+						if (set.add(key, new Node((key * 7919) % (threads * count)), null)) added.incrementAndGet();
+					}
+				}
+			});
+			adders.add(adder);
+			adder.start();
+		}
+		for (final Thread adder : adders) {
+			adder.join();
+		}
+		running.set(false);
+		observer.join();
+		assertFalse(exceeded.get());
+		assertEquals(capacity, set.size());
+		assertEquals(added.get(), set.size() + evicted.get());
+		// Only the lowest nodes of all the attempts remain.
+		int expected = 0;
+		for (final ISortableEntry<Integer, Node, String> entry : set) {
+			assertEquals(expected, entry.getNode().value);
+			expected++;
+		}
+	}
+
+	public void testExpiring() throws Exception {
+		final AtomicLong clock = new AtomicLong(1000000);
+		final ExpiringConcurrentSortableSet<Integer, Node, String> set = new ExpiringConcurrentSortableSet<Integer, Node, String>(10,
+				TimeUnit.MILLISECONDS, 16, null, SortMode.BLOCKING) {
+			@Override
+			protected long currentTimeMillis() {
+				return clock.get();
+			}
+		};
+		for (int i = 0; i < 10; i++) {
+			assertTrue(set.add(i, new Node(i), "Attachment " + i, 100 * (i + 1)));
+		}
+		set.add(10, new Node(10), "Attachment 10");
+		assertEquals(0, set.expire());
+		clock.addAndGet(150);
+		assertEquals(1, set.expire());
+		assertNull(set.getNode(0));
+		assertTrue(set.touch(1));
+		assertFalse(set.touch(10));
+		clock.addAndGet(160);
+		assertEquals(1, set.expire());
+		assertNotNull(set.getNode(1));
+		assertNull(set.getNode(2));
+		// Updates keep the time-to-live.
+		set.update(3, new INodeMutator<Node>() {
+			@Override
+			public void mutate(final Node node) {
+				node.value = 30;
+			}
+		});
+		// Removed and added again without a time-to-live.
+		set.remove(4);
+		set.add(4, new Node(4), "Attachment 4");
+		// Beyond a full revolution of the wheel.
+		clock.addAndGet(10000);
+		assertEquals(7, set.expire());
+		assertEquals(2, set.size());
+		assertNotNull(set.getNode(4));
+		assertNotNull(set.getNode(10));
+		// Removed entries no longer hold their timers.
+		assertTrue(set.add(20, new Node(20), "Attachment 20", 100));
+		assertTrue(set.remove(20));
+		assertFalse(set.touch(20));
+		assertTrue(set.add(21, new Node(21), "Attachment 21", 100));
+		assertEquals(21, set.pollLast().getNode().value);
+		assertFalse(set.touch(21));
+		assertTrue(set.add(20, new Node(22), "Attachment 22", 500));
+		clock.addAndGet(200);
+		assertEquals(0, set.expire());
+		assertTrue(set.touch(20));
+	}
+
+	public void testNavigable() throws Exception {
+		final int count = 100000;
+		final ConcurrentSortableSet<Integer, Node, String> set = new ConcurrentSortableSet<Integer, Node, String>(SortMode.SWAP);
+		for (int i = count-1; i >= 0; i--) {
+			set.add(i, new Node(i), "Attachment " + i);
+		}
+		int expected = 0;
+		for (final ISortableEntry<Integer, Node, String> entry : set) {
+			assertEquals(Integer.valueOf(expected), entry.getKey());
+			expected++;
+		}
+		assertEquals(count, expected);
+		final Iterator<ISortableEntry<Integer, Node, String>> descending = set.descendingIterator();
+		assertEquals(Integer.valueOf(count-1), descending.next().getKey());
+		assertEquals(Integer.valueOf(count-2), descending.next().getKey());
+		// Bounds are inclusive and exclusive by value.
+		final ISortableSetView<Integer, Node, String> sub = set.subSet(new Node(10), new Node(20));
+		expected = 10;
+		for (final ISortableEntry<Integer, Node, String> entry : sub) {
+			assertEquals(Integer.valueOf(expected), entry.getKey());
+			expected++;
+		}
+		assertEquals(20, expected);
+		assertEquals(Integer.valueOf(4), set.headSet(new Node(5)).descendingIterator().next().getKey());
+		assertEquals(Integer.valueOf(count-5), set.tailSet(new Node(count-5)).iterator().next().getKey());
+		assertTrue(set.tailSet(new Node(count)).isEmpty());
+		// Views remain valid after sorting.
+		final Iterator<ISortableEntry<Integer, Node, String>> iterator = sub.iterator();
+		iterator.next();
+		iterator.remove();
+		assertNull(set.getNode(10));
+		set.sort();
+		assertEquals(Integer.valueOf(11), sub.iterator().next().getKey());
+		final AtomicLong sum = new AtomicLong();
+		set.visit(new IEntryVisitor<Integer, Node, String>() {
+			@Override
+			public void visit(final ISortableEntry<Integer, Node, String> entry) {
+				sum.addAndGet(entry.getKey());
+			}
+		}, 4);
+		assertEquals((long)count * (count-1) / 2 - 10, sum.get());
+	}
+
+	public void testDecaying() throws Exception {
+		final AtomicLong clock = new AtomicLong(1000000);
+		final DecayingConcurrentSortableSet<String, Integer> set = new DecayingConcurrentSortableSet<String, Integer>(1, TimeUnit.SECONDS) {
+			@Override
+			protected long currentTimeMillis() {
+				return clock.get();
+			}
+		};
+		assertTrue(set.add("a", 10, 1));
+		assertTrue(set.add("b", 8, 2));
+		assertFalse(set.add("a", 1, 3));
+		assertEquals(Integer.valueOf(1), set.firstAttachment());
+		clock.addAndGet(1000);
+		assertEquals(5, set.getScore("a"), 1e-9);
+		assertEquals(4, set.getScore("b"), 1e-9);
+		// An increment moves the node without sorting.
+		assertTrue(set.increment("b", 4));
+		assertEquals(8, set.getScore("b"), 1e-9);
+		assertEquals(Integer.valueOf(2), set.firstAttachment());
+		// A new score is ordered against the decayed ones.
+		assertTrue(set.add("c", 6, 3));
+		assertEquals(Integer.valueOf(1), set.lastAttachment());
+		set.renormalize();
+		assertEquals(8, set.getScore("b"), 1e-9);
+		assertEquals(6, set.getScore("c"), 1e-9);
+		assertEquals(5, set.getScore("a"), 1e-9);
+		// Far beyond the renormalization threshold.
+		clock.addAndGet(1000000);
+		assertTrue(set.add("d", 1, 4));
+		assertEquals(Integer.valueOf(4), set.firstAttachment());
+		assertEquals(1, set.getScore("d"), 1e-9);
+		assertEquals(Integer.valueOf(2), set.getAttachment("b"));
+		final Iterator<ISortableEntry<String, DecayedScore, Integer>> iterator = set.iterator();
+		assertEquals("d", iterator.next().getKey());
+		assertEquals("b", iterator.next().getKey());
+		assertEquals("c", iterator.next().getKey());
+		assertEquals("a", iterator.next().getKey());
+	}
+
+	public void testDirty() throws Exception {
+		final int count = 10000;
+		for (final SortMode mode : SortMode.values()) {
+			final ConcurrentSortableSet<Integer, Node, String> set = new ConcurrentSortableSet<Integer, Node, String>(mode);
+			final SortableSetMonitor monitor = set.enableMonitoring();
+			final Node[] nodes = new Node[count];
+			for (int i = 0; i < count; i++) {
+				nodes[i] = new Node(i * 2);
+				set.add(i, nodes[i], "Attachment " + i);
+			}
+			set.enableDirtyTracking();
+			set.sort();
+			assertEquals(0, monitor.getSortCount());
+			nodes[0].value = count * 2;
+			nodes[count-1].value = -1;
+			nodes[500].value = 3;
+			set.markDirty(0);
+			set.markDirty(count-1);
+			set.markDirty(500);
+			set.markDirty(500);
+			assertEquals(3, set.getDirtyCount());
+			set.sort();
+			set.sort();
+			assertEquals(1, monitor.getSortCount());
+			assertEquals(0, set.getDirtyCount());
+			assertEquals(0, set.getStaleness());
+			assertSame(nodes[count-1], set.firstNode());
+			assertSame(nodes[0], set.lastNode());
+			Node previous = null;
+			for (final ISortableEntry<Integer, Node, String> entry : set) {
+				if (previous != null) assertTrue(previous.value <= entry.getNode().value);
+				previous = entry.getNode();
+			}
+			assertTrue(set.remove(500));
+			// A dirty node that can still be located is
+			// repositioned without rebuilding the ordering.
+			final Object ordering = set.ordering();
+			nodes[3].value = 7;
+			set.markDirty(3);
+			set.sort();
+			assertEquals(mode != SortMode.SWAP, ordering == set.ordering());
+			assertEquals(7, set.getNode(3).value);
+			assertTrue(set.remove(3));
+			// Background sort triggered by the threshold.
+			set.startBackgroundSort(1, TimeUnit.HOURS, 2);
+			nodes[1].value = count * 4;
+			nodes[2].value = count * 3;
+			set.markDirty(1);
+			set.markDirty(2);
+			for (int i = 0; i < 1000 && set.lastNode() != nodes[1]; i++) {
+				Thread.sleep(5);
+			}
+			set.stopBackgroundSort();
+			assertSame(nodes[1], set.lastNode());
+		}
+	}
+
+	public void testTransaction() throws Exception {
+		final int count = 1000;
+		for (final SortMode mode : SortMode.values()) {
+			final ConcurrentSortableSet<Integer, Node, String> set = new ConcurrentSortableSet<Integer, Node, String>(mode);
+			for (int i = 0; i < count; i++) {
+				set.add(i, new Node(i * 2), "Attachment " + i);
+			}
+			// Readers must never observe the temporary node.
+			final AtomicBoolean running = new AtomicBoolean(true);
+			final AtomicBoolean observed = new AtomicBoolean(false);
+			final Thread reader = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					while (running.get()) {
+						final Node first = set.firstNode();
+						if (first != null && first.value < 0) observed.set(true);
+					}
+				}
+			});
+			reader.start();
+			for (int i = 0; i < 2000; i++) {
+				set.transaction(new ITransaction<Integer, Node, String>() {
+					@Override
+					public void execute(final ITransactionContext<Integer, Node, String> context) {
+						assertTrue(context.add(-1, new Node(-1), null));
+						assertNotNull(context.getNode(-1));
+						assertTrue(context.remove(-1));
+					}
+				});
+			}
+			running.set(false);
+			reader.join();
+			assertFalse(observed.get());
+			// Move a node between tiers.
+			set.transaction(new ITransaction<Integer, Node, String>() {
+				@Override
+				public void execute(final ITransactionContext<Integer, Node, String> context) {
+					assertFalse(context.add(0, new Node(-5), null));
+					assertTrue(context.remove(0));
+					assertNull(context.getNode(0));
+					assertTrue(context.add(count, new Node(-4), "Attachment " + count));
+					assertTrue(context.add(count+1, new Node(count * 4), null));
+					assertTrue(context.update(1, new INodeMutator<Node>() {
+						@Override
+						public void mutate(final Node node) {
+							node.value = -2;
+						}
+					}));
+					assertEquals("Attachment 1", context.getAttachment(1));
+				}
+			});
+			assertEquals(count + 1, set.size());
+			assertEquals(-4, set.firstNode().value);
+			assertEquals("Attachment " + count, set.firstAttachment());
+			assertEquals(-2, set.getNode(1).value);
+			assertEquals(count * 4, set.lastNode().value);
+			Node previous = null;
+			int size = 0;
+			for (final ISortableEntry<Integer, Node, String> entry : set) {
+				if (previous != null) assertTrue(previous.value <= entry.getNode().value);
+				previous = entry.getNode();
+				size++;
+			}
+			assertEquals(count + 1, size);
+			// A throwing transaction leaves the set unchanged.
+			try {
+				set.transaction(new ITransaction<Integer, Node, String>() {
+					@Override
+					public void execute(final ITransactionContext<Integer, Node, String> context) {
+						assertTrue(context.remove(2));
+						assertTrue(context.add(-10, new Node(-10), null));
+						assertTrue(context.update(3, new INodeMutator<Node>() {
+							@Override
+							public void mutate(final Node node) {
+								node.value = -20;
+							}
+						}));
+						throw new IllegalStateException();
+					}
+				});
+				fail();
+			} catch (final IllegalStateException e) {
+			}
+			assertEquals(count + 1, set.size());
+			assertEquals(4, set.getNode(2).value);
+			assertNull(set.getNode(-10));
+			assertEquals(6, set.getNode(3).value);
+			assertEquals(-4, set.firstNode().value);
+			// A throwing mutator keeps its node in place,
+			// and the other operations are still applied.
+			try {
+				set.transaction(new ITransaction<Integer, Node, String>() {
+					@Override
+					public void execute(final ITransactionContext<Integer, Node, String> context) {
+						assertTrue(context.update(3, new INodeMutator<Node>() {
+							@Override
+							public void mutate(final Node node) {
+								throw new IllegalStateException();
+							}
+						}));
+						assertTrue(context.remove(2));
+					}
+				});
+				fail();
+			} catch (final IllegalStateException e) {
+			}
+			assertEquals(count, set.size());
+			assertNull(set.getNode(2));
+			assertEquals(6, set.getNode(3).value);
+			assertEquals(count, set.ordering().size());
+			// Readers never observe a removal without the
+			// additions of the same transaction.
+			final ConcurrentSortableSet<Integer, Node, String> lowered = new ConcurrentSortableSet<Integer, Node, String>(mode);
+			lowered.add(1, new Node(-1), null);
+			final AtomicBoolean raised = new AtomicBoolean(false);
+			running.set(true);
+			final Thread watcher = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					int lowest = Integer.MAX_VALUE;
+					while (running.get()) {
+						final Node first = lowered.firstNode();
+						if (first == null || first.value > lowest) raised.set(true);
+						else lowest = first.value;
+					}
+				}
+			});
+			watcher.start();
+			for (int i = 1; i < 2000; i++) {
+				final int lowest = i * 2 - 1;
+				final int key = i * 2;
+				lowered.transaction(new ITransaction<Integer, Node, String>() {
+					@Override
+					public void execute(final ITransactionContext<Integer, Node, String> context) {
+						assertTrue(context.remove(lowest));
+						assertTrue(context.add(key, new Node(-key), null));
+						assertTrue(context.add(key + 1, new Node(-key - 1), null));
+					}
+				});
+			}
+			running.set(false);
+			watcher.join();
+			assertFalse(raised.get());
+			assertEquals(2000, lowered.size());
+		}
+		// The bounded set evicts after the transaction.
+		final BoundedConcurrentSortableSet<Integer, Node, String> bounded = new BoundedConcurrentSortableSet<Integer, Node, String>(2);
+		bounded.transaction(new ITransaction<Integer, Node, String>() {
+			@Override
+			public void execute(final ITransactionContext<Integer, Node, String> context) {
+				for (int i = 0; i < 4; i++) {
+					assertTrue(context.add(i, new Node(i), null));
+				}
+			}
+		});
+		assertEquals(2, bounded.size());
+		assertEquals(1, bounded.lastNode().value);
+	}
+
+	public void testVersionedSnapshot() throws Exception {
+		final int count = 10000;
+		final ConcurrentRankedSortableSet<Integer, Node, String> set = new ConcurrentRankedSortableSet<Integer, Node, String>(SortMode.SWAP);
+		final Node[] nodes = new Node[count];
+		for (int i = 0; i < count; i++) {
+			final int key = (i * 7919) % count;
+			nodes[key] = new Node(key * 2);
+			set.add(key, nodes[key], "Attachment " + key);
+		}
+		final ISortableSetSnapshot<Integer, Node, String> snapshot = set.snapshot();
+		assertEquals(count, snapshot.size());
+		// Modify and sort the set while traversing.
+		final AtomicBoolean running = new AtomicBoolean(true);
+		final Thread writer = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				final Random random = new Random(7);
+				int next = count;
+				while (running.get()) {
+					final int key = random.nextInt(count);
+					switch (random.nextInt(4)) {
+					case 0:
+						set.remove(key);
+						break;
+					case 1:
+						set.add(next, new Node(random.nextInt(count * 2)), null);
+						next++;
+						break;
+					case 2:
+						set.update(key, new INodeMutator<Node>() {
+							@Override
+							public void mutate(final Node node) {
+								node.value = -node.value;
+							}
+						});
+						break;
+					default:
+						final Node node = set.getNode(key);
+						if (node != null) node.value = count * 2 - node.value;
+						set.sort();
+						break;
+					}
+				}
+			}
+		});
+		writer.start();
+		try {
+			for (int round = 0; round < 5; round++) {
+				int expected = 0;
+				for (final ISortableEntry<Integer, Node, String> entry : snapshot) {
+					assertEquals(expected, entry.getKey().intValue());
+					assertSame(nodes[expected], entry.getNode());
+					assertEquals("Attachment " + expected, entry.getAttachment());
+					expected++;
+				}
+				assertEquals(count, expected);
+				final Iterator<ISortableEntry<Integer, Node, String>> descending = snapshot.descendingIterator();
+				for (int i = count - 1; i >= 0; i--) {
+					assertEquals(i, descending.next().getKey().intValue());
+				}
+				assertFalse(descending.hasNext());
+				assertSame(nodes[count / 2], snapshot.nodeAtQuantile(0.5001));
+				final List<Node> page = snapshot.range(4800, 25);
+				for (int i = 0; i < page.size(); i++) {
+					assertSame(nodes[4800 + i], page.get(i));
+				}
+			}
+		} finally {
+			running.set(false);
+			writer.join();
+		}
+		snapshot.release();
+		snapshot.release();
+		try {
+			snapshot.nodeAtRank(0);
+			fail();
+		} catch (final IllegalStateException e) {}
+		// A new snapshot reflects the current state.
+		set.sort();
+		final ISortableSetSnapshot<Integer, Node, String> current = set.snapshot();
+		assertTrue(current.getVersion() > snapshot.getVersion());
+		assertEquals(set.size(), current.size());
+		Node previous = null;
+		int size = 0;
+		for (final ISortableEntry<Integer, Node, String> entry : current) {
+			assertSame(set.getNode(entry.getKey()), entry.getNode());
+			if (previous != null) assertTrue(previous.value <= entry.getNode().value);
+			previous = entry.getNode();
+			size++;
+		}
+		assertEquals(set.size(), size);
+		current.release();
+		// Snapshots do not wait for the exclusive lock.
+		final CountDownLatch entered = new CountDownLatch(1);
+		final CountDownLatch proceed = new CountDownLatch(1);
+		final Thread blocker = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				set.transaction(new ITransaction<Integer, Node, String>() {
+					@Override
+					public void execute(final ITransactionContext<Integer, Node, String> context) {
+						entered.countDown();
+						try {
+							proceed.await();
+						} catch (final InterruptedException e) {}
+					}
+				});
+			}
+		});
+		blocker.start();
+		entered.await();
+		final AtomicBoolean pinned = new AtomicBoolean(false);
+		final Thread pinner = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				set.snapshot().release();
+				pinned.set(true);
+			}
+		});
+		pinner.start();
+		pinner.join(5000);
+		final boolean unblocked = pinned.get();
+		proceed.countDown();
+		blocker.join();
+		pinner.join();
+		assertTrue(unblocked);
+		// Overlapping versions only retain the revisions
+		// of the oldest pinned version.
+		final RankTree<Integer, Node, String> tree = new RankTree<Integer, Node, String>(set.comparator());
+		final List<RankTree.Handle<Integer, Node, String>> handles = new ArrayList<RankTree.Handle<Integer, Node, String>>();
+		for (int i = 0; i < 1000; i++) {
+			handles.add(tree.insert(new SortableEntry<Integer, Node, String>(i, new Node(i), null)));
+		}
+		final Random random = new Random(11);
+		int oldest = tree.pin();
+		for (int round = 0; round < 50; round++) {
+			for (int i = 0; i < 20; i++) {
+				final int key = random.nextInt(handles.size());
+				tree.remove(handles.get(key));
+				handles.set(key, tree.insert(new SortableEntry<Integer, Node, String>(key, new Node(key), null)));
+			}
+			final int next = tree.pin();
+			assertTrue(tree.revisions() > 0);
+			for (int rank = 0; rank < handles.size(); rank++) {
+				assertEquals(rank, tree.select(rank, oldest).getKey().intValue());
+			}
+			tree.unpin(oldest);
+			assertEquals(0, tree.revisions());
+			oldest = next;
+		}
+		tree.unpin(oldest);
+	}
+
+	private static class IntegerCodec implements IBinaryCodec<Integer> {
+		@Override
+		public void encode(final Integer value, final ByteBuffer buffer) {
+			buffer.putInt(value);
+		}
+
+		@Override
+		public Integer decode(final ByteBuffer buffer) {
+			return buffer.getInt();
+		}
+
+		@Override
+		public int getSize() {
+			return 4;
+		}
+	}
+
+	private static class NodeCodec implements IBinaryCodec<Node> {
+		@Override
+		public void encode(final Node value, final ByteBuffer buffer) {
+			buffer.putInt(value.value);
+		}
+
+		@Override
+		public Node decode(final ByteBuffer buffer) {
+			return new Node(buffer.getInt());
+		}
+
+		@Override
+		public int getSize() {
+			return 4;
+		}
+	}
+
+	private static class StringCodec implements IBinaryCodec<String> {
+		@Override
+		public void encode(final String value, final ByteBuffer buffer) {
+			for (int i = 0; i < value.length(); i++) {
+				buffer.putChar(value.charAt(i));
+			}
+		}
+
+		@Override
+		public String decode(final ByteBuffer buffer) {
+			final StringBuilder builder = new StringBuilder();
+			while (buffer.hasRemaining()) {
+				builder.append(buffer.getChar());
+			}
+			return builder.toString();
+		}
+
+		@Override
+		public int getSize() {
+			return 64;
+		}
+	}
+
+	private static class Node implements Comparable<Node> {
+		private int value;
+
+		private Node(final int value) {
+			this.value = value;
+		}
+
+		@Override
+		public int compareTo(final Node o) {
+			if (this.equals(o)) return 0;
+			final int result = this.value - o.value;
+			if (result == 0) return -1;
+			else return result;
+		}
+	}
+}
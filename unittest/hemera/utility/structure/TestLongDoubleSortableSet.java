@@ -0,0 +1,89 @@
+package hemera.utility.structure;
+
+import java.util.BitSet;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Random;
+import java.util.TreeMap;
+
+import junit.framework.TestCase;
+
+public class TestLongDoubleSortableSet extends TestCase {
+
+	public void testOrder() throws Exception {
+		final int count = 20000;
+		final LongDoubleSortableSet<String> set = new LongDoubleSortableSet<String>(4);
+		final Map<Long, Double> scores = new TreeMap<Long, Double>();
+		final Random random = new Random(7);
+		for (int i = 0; i < count; i++) {
+			final long key = random.nextInt(count);
+			final double score = random.nextInt(100);
+			final int operation = random.nextInt(3);
+			if (operation == 0) {
+				assertEquals(!scores.containsKey(key), set.add(key, score, "Attachment " + key));
+				if (!scores.containsKey(key)) scores.put(key, score);
+			} else if (operation == 1) {
+				assertEquals(scores.remove(key) != null, set.remove(key));
+			} else {
+				assertEquals(scores.containsKey(key), set.update(key, score));
+				if (scores.containsKey(key)) scores.put(key, score);
+			}
+		}
+		assertEquals(scores.size(), set.size());
+		// Verify the order is by score then key.
+		final long[] keys = set.getAllKeys();
+		assertEquals(scores.size(), keys.length);
+		for (int i = 1; i < keys.length; i++) {
+			final double previous = scores.get(keys[i-1]);
+			final double current = scores.get(keys[i]);
+			assertTrue(previous < current || (previous == current && keys[i-1] < keys[i]));
+		}
+		for (final Map.Entry<Long, Double> entry : scores.entrySet()) {
+			assertEquals(entry.getValue(), set.getScore(entry.getKey()));
+			assertEquals("Attachment " + entry.getKey(), set.getAttachment(entry.getKey()));
+		}
+		assertEquals(keys[0], set.firstKey());
+		assertEquals(keys[keys.length-1], set.lastKey());
+		assertEquals("Attachment " + keys[0], set.firstAttachment());
+		assertTrue(Double.isNaN(set.getScore(-1)));
+		// Drain from both ends.
+		assertEquals(keys[keys.length-1], set.pollLast());
+		final long[] polled = new long[keys.length];
+		final double[] polledscores = new double[keys.length];
+		assertEquals(keys.length - 1, set.pollFirst(polled, polledscores, keys.length));
+		for (int i = 0; i < keys.length - 1; i++) {
+			assertEquals(keys[i], polled[i]);
+			assertEquals(scores.get(keys[i]), polledscores[i]);
+		}
+		assertEquals(0, set.size());
+		assertTrue(Double.isNaN(set.firstScore()));
+		assertNull(set.lastAttachment());
+		try {
+			set.pollFirst();
+			fail();
+		} catch (final NoSuchElementException e) {}
+	}
+
+	public void testBatch() throws Exception {
+		final int count = 1000;
+		final LongDoubleSortableSet<String> set = new LongDoubleSortableSet<String>();
+		final long[] keys = new long[count];
+		final double[] scores = new double[count];
+		for (int i = 0; i < count; i++) {
+			keys[i] = i % (count / 2);
+			scores[i] = -i;
+		}
+		final BitSet added = set.addAll(keys, scores, null);
+		assertEquals(count / 2, added.cardinality());
+		assertTrue(added.get(0));
+		assertFalse(added.get(count / 2));
+		assertEquals(count / 2 - 1, set.firstKey());
+		assertEquals(0L, set.lastKey());
+		assertEquals(count / 2, set.removeAll(keys).cardinality());
+		assertEquals(0, set.size());
+		try {
+			set.add(0, Double.NaN, null);
+			fail();
+		} catch (final IllegalArgumentException e) {}
+	}
+}
@@ -0,0 +1,191 @@
+package hemera.utility.structure;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.List;
+
+import hemera.utility.structure.interfaces.IBinaryCodec;
+import hemera.utility.structure.interfaces.INodeMutator;
+import hemera.utility.structure.interfaces.ISortableEntry;
+
+import junit.framework.TestCase;
+
+public class TestMappedConcurrentSortableSet extends TestCase {
+
+	public void testReopen() throws Exception {
+		final int count = 10000;
+		final File file = File.createTempFile("mapped", ".set");
+		file.delete();
+		try {
+			MappedConcurrentSortableSet<Integer, Node, String> set = this.open(file);
+			for (int i = 0; i < count; i++) {
+				// Insert in a scrambled order.
+				final int key = (i * 7919) % count;
+				assertTrue(set.add(key, new Node(key / 2), (key % 2 == 0) ? null : "Attachment " + key));
+			}
+			assertFalse(set.add(0, new Node(0), null));
+			for (int i = 0; i < count; i += 4) {
+				assertTrue(set.remove(i));
+			}
+			assertTrue(set.update(1, new INodeMutator<Node>() {
+				@Override
+				public void mutate(final Node node) {
+					node.value = count;
+				}
+			}));
+			// A throwing mutator leaves the record unchanged.
+			try {
+				set.update(3, new INodeMutator<Node>() {
+					@Override
+					public void mutate(final Node node) {
+						node.value = -1;
+						throw new IllegalStateException();
+					}
+				});
+				fail();
+			} catch (final IllegalStateException e) {}
+			assertEquals(1, set.getNode(3).value);
+			assertTrue(set.firstNode().value >= 0);
+			set.close();
+			// Re-open and verify the contents are retained.
+			set = this.open(file);
+			assertEquals(count - count / 4, set.size());
+			assertEquals(count, set.lastNode().value);
+			assertEquals("Attachment 1", set.lastAttachment());
+			assertNull(set.getNode(0));
+			assertEquals(3, set.getNode(7).value);
+			int keys = 0;
+			for (@SuppressWarnings("unused") final Integer key : set.getAllKeys()) {
+				keys++;
+			}
+			assertEquals(set.size(), keys);
+			final List<ISortableEntry<Integer, Node, String>> polled = set.pollFirst(count);
+			assertEquals(count - count / 4, polled.size());
+			for (int i = 1; i < polled.size(); i++) {
+				assertTrue(polled.get(i-1).getNode().value <= polled.get(i).getNode().value);
+			}
+			assertEquals(Integer.valueOf(1), polled.get(polled.size()-1).getKey());
+			assertNull(set.pollLast());
+			assertNull(set.firstNode());
+			set.close();
+		} finally {
+			file.delete();
+		}
+	}
+
+	public void testUnflushed() throws Exception {
+		final File file = File.createTempFile("mapped", ".set");
+		file.delete();
+		try {
+			final MappedConcurrentSortableSet<Integer, Node, String> set = this.open(file);
+			for (int i = 0; i < 100; i++) {
+				assertTrue(set.add(i, new Node(i), null));
+			}
+			// A modified file cannot be re-opened until flushed.
+			try {
+				this.open(file);
+				fail();
+			} catch (final IOException e) {}
+			set.flush();
+			MappedConcurrentSortableSet<Integer, Node, String> reopened = this.open(file);
+			assertEquals(100, reopened.size());
+			reopened.close();
+			assertTrue(set.remove(0));
+			try {
+				this.open(file);
+				fail();
+			} catch (final IOException e) {}
+			set.close();
+			reopened = this.open(file);
+			assertEquals(99, reopened.size());
+			assertEquals(1, reopened.firstNode().value);
+			reopened.close();
+		} finally {
+			file.delete();
+		}
+	}
+
+	private MappedConcurrentSortableSet<Integer, Node, String> open(final File file) throws Exception {
+		return new MappedConcurrentSortableSet<Integer, Node, String>(file, 1024, new IntegerCodec(), new NodeCodec(), new StringCodec(32));
+	}
+
+	private static class Node implements Comparable<Node> {
+		private int value;
+
+		private Node(final int value) {
+			this.value = value;
+		}
+
+		@Override
+		public int compareTo(final Node o) {
+			if (this.equals(o)) return 0;
+			final int result = this.value - o.value;
+			if (result == 0) return -1;
+			else return result;
+		}
+	}
+
+	private static class IntegerCodec implements IBinaryCodec<Integer> {
+		@Override
+		public void encode(final Integer value, final ByteBuffer buffer) {
+			buffer.putInt(value);
+		}
+
+		@Override
+		public Integer decode(final ByteBuffer buffer) {
+			return buffer.getInt();
+		}
+
+		@Override
+		public int getSize() {
+			return 4;
+		}
+	}
+
+	private static class NodeCodec implements IBinaryCodec<Node> {
+		@Override
+		public void encode(final Node value, final ByteBuffer buffer) {
+			buffer.putInt(value.value);
+		}
+
+		@Override
+		public Node decode(final ByteBuffer buffer) {
+			return new Node(buffer.getInt());
+		}
+
+		@Override
+		public int getSize() {
+			return 4;
+		}
+	}
+
+	private static class StringCodec implements IBinaryCodec<String> {
+		private final Charset charset = Charset.forName("UTF-8");
+		private final int size;
+
+		private StringCodec(final int size) {
+			this.size = size;
+		}
+
+		@Override
+		public void encode(final String value, final ByteBuffer buffer) {
+			final byte[] bytes = value.getBytes(this.charset);
+			buffer.putShort((short)bytes.length);
+			buffer.put(bytes);
+		}
+
+		@Override
+		public String decode(final ByteBuffer buffer) {
+			final byte[] bytes = new byte[buffer.getShort()];
+			buffer.get(bytes);
+			return new String(bytes, this.charset);
+		}
+
+		@Override
+		public int getSize() {
+			return this.size;
+		}
+	}
+}
@@ -0,0 +1,74 @@
+package hemera.utility.structure.benchmark;
+
+import hemera.utility.structure.CompactConcurrentSortableSet;
+import hemera.utility.structure.ConcurrentSortableSet;
+import hemera.utility.structure.interfaces.IConcurrentSortableSet;
+
+/**
+ * Compares the retained heap per entry of the hash
+ * map and skip list based <code>ConcurrentSortableSet</code>
+ * against the single-index <code>CompactConcurrentSortableSet</code>.
+ * The keys and nodes are allocated up front, so only
+ * the structural overhead of the set is measured.
+ * <p>
+ * Usage: <code>MemoryBenchmark [size]</code>, which
+ * defaults to 1M nodes.
+ */
+public class MemoryBenchmark {
+
+	public static void main(final String[] args) {
+		final int size = (args.length > 0) ? Integer.parseInt(args[0]) : 1000000;
+		final Integer[] keys = new Integer[size];
+		final Node[] nodes = new Node[size];
+		for (int i = 0; i < size; i++) {
+			keys[i] = Integer.valueOf(i);
+			nodes[i] = new Node(i);
+		}
+		final long skiplist = MemoryBenchmark.measure(new ConcurrentSortableSet<Integer, Node, Integer>(), keys, nodes);
+		final long compact = MemoryBenchmark.measure(new CompactConcurrentSortableSet<Integer, Node, Integer>(), keys, nodes);
+		System.out.println(String.format("%,12d nodes: ConcurrentSortableSet %,12d bytes (%d/entry)", size, skiplist, skiplist / size));
+		System.out.println(String.format("%,12d nodes: CompactConcurrentSortableSet %,6d bytes (%d/entry), saving %.1f%%",
+				size, compact, compact / size, 100.0 * (skiplist - compact) / skiplist));
+	}
+
+	private static long measure(final IConcurrentSortableSet<Integer, Node, Integer> set, final Integer[] keys, final Node[] nodes) {
+		final long before = MemoryBenchmark.used();
+		for (int i = 0; i < keys.length; i++) {
+			// Share the key as the attachment.
+			set.add(keys[i], nodes[i], keys[i]);
+		}
+		set.sort();
+		final long after = MemoryBenchmark.used();
+		if (set.size() != keys.length) throw new IllegalStateException();
+		return after - before;
+	}
+
+	private static long used() {
+		final Runtime runtime = Runtime.getRuntime();
+		for (int i = 0; i < 5; i++) {
+			System.gc();
+			try {
+				Thread.sleep(100);
+			} catch (final InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+
+	private static class Node implements Comparable<Node> {
+		private final int value;
+
+		private Node(final int value) {
+			this.value = value;
+		}
+
+		@Override
+		public int compareTo(final Node o) {
+			if (this == o) return 0;
+			if (this.value < o.value) return -1;
+			else if (this.value > o.value) return 1;
+			else return -1;
+		}
+	}
+}
@@ -0,0 +1,116 @@
+package hemera.utility.structure.benchmark;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import hemera.utility.structure.ConcurrentSortableSet;
+import hemera.utility.structure.SortMode;
+
+/**
+ * Compares the read throughput of the sort modes of
+ * <code>ConcurrentSortableSet</code> with 1 to 64
+ * reader threads, while a single writer performs
+ * one update per 1000 reads and sorts periodically.
+ * <p>
+ * Usage: <code>ReadBenchmark [size] [millis]</code>,
+ * which defaults to 100k nodes and 2000 ms per run.
+ */
+public class ReadBenchmark {
+
+	public static void main(final String[] args) throws Exception {
+		final int size = (args.length > 0) ? Integer.parseInt(args[0]) : 100000;
+		final long millis = (args.length > 1) ? Long.parseLong(args[1]) : 2000;
+		final SortMode[] modes = new SortMode[] {SortMode.BLOCKING, SortMode.OPTIMISTIC, SortMode.SWAP};
+		// Warm up all the modes.
+		for (final SortMode mode : modes) {
+			ReadBenchmark.run(mode, size, 4, millis / 2);
+		}
+		System.out.println(String.format("%8s %15s %15s %15s", "threads", "BLOCKING", "OPTIMISTIC", "SWAP"));
+		for (int threads = 1; threads <= 64; threads *= 2) {
+			final StringBuilder builder = new StringBuilder(String.format("%8d", threads));
+			for (final SortMode mode : modes) {
+				final long reads = ReadBenchmark.run(mode, size, threads, millis);
+				builder.append(String.format(" %,11d op/s", reads * 1000 / millis));
+			}
+			System.out.println(builder.toString());
+		}
+	}
+
+	private static long run(final SortMode mode, final int size, final int threads, final long millis) throws Exception {
+		final ConcurrentSortableSet<Integer, Node, Integer> set = new ConcurrentSortableSet<Integer, Node, Integer>(mode);
+		for (int i = 0; i < size; i++) {
+			set.add(i, new Node(i), i);
+		}
+		final AtomicBoolean running = new AtomicBoolean(true);
+		final AtomicLong reads = new AtomicLong();
+		final CountDownLatch done = new CountDownLatch(threads);
+		for (int i = 0; i < threads; i++) {
+			final int seed = i;
+			new Thread(new Runnable() {
+				@Override
+				public void run() {
+					long count = 0;
+					int key = seed;
+					while (running.get()) {
+						set.firstNode();
+						set.lastAttachment();
+						set.getNode(key);
+						set.getAttachment(key);
+						key = (key + 7919) % size;
+						count += 4;
+						// Publish progress in chunks to avoid sharing
+						// a counter between the readers.
+						if (count == 1000) {
+							reads.addAndGet(count);
+							count = 0;
+						}
+					}
+					reads.addAndGet(count);
+					done.countDown();
+				}
+			}).start();
+		}
+		final Thread writer = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				long updates = 0;
+				int key = 0;
+				while (running.get()) {
+					// One write per 1000 reads, sort every 1000 writes.
+					if (updates * 1000 > reads.get()) {
+						Thread.yield();
+						continue;
+					}
+					set.remove(key);
+					set.add(key, new Node(key), key);
+					key = (key + 1) % size;
+					updates++;
+					if (updates % 1000 == 0) set.sort();
+				}
+			}
+		});
+		writer.start();
+		Thread.sleep(millis);
+		running.set(false);
+		done.await();
+		writer.join();
+		return reads.get();
+	}
+
+	private static class Node implements Comparable<Node> {
+		private final int value;
+
+		private Node(final int value) {
+			this.value = value;
+		}
+
+		@Override
+		public int compareTo(final Node o) {
+			if (this == o) return 0;
+			if (this.value < o.value) return -1;
+			else if (this.value > o.value) return 1;
+			else return -1;
+		}
+	}
+}
@@ -0,0 +1,100 @@
+package hemera.utility.structure.benchmark;
+
+import java.util.Map.Entry;
+import java.util.Random;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+import hemera.utility.structure.ConcurrentSortableSet;
+
+/**
+ * Compares the previous drain and re-insert sorting
+ * of a skip list against the parallel bulk rebuild
+ * used by <code>ConcurrentSortableSet.sort()</code>.
+ * <p>
+ * Usage: <code>SortBenchmark [size...]</code>, which
+ * defaults to 100k, 1M and 10M nodes.
+ */
+public class SortBenchmark {
+
+	public static void main(final String[] args) {
+		final int[] sizes = (args.length > 0) ? new int[args.length] : new int[] {100000, 1000000, 10000000};
+		for (int i = 0; i < args.length; i++) {
+			sizes[i] = Integer.parseInt(args[i]);
+		}
+		// Warm up with a smaller set.
+		for (int i = 0; i < 5; i++) {
+			SortBenchmark.drainReinsert(100000);
+			SortBenchmark.rebuild(100000);
+		}
+		for (final int size : sizes) {
+			final long legacy = SortBenchmark.drainReinsert(size);
+			final long rebuild = SortBenchmark.rebuild(size);
+			System.out.println(String.format("%,12d nodes: drain-reinsert %,8d ms, parallel rebuild %,8d ms, speedup %.2fx",
+					size, legacy, rebuild, (double)legacy / (double)rebuild));
+		}
+	}
+
+	private static long drainReinsert(final int size) {
+		final ConcurrentSkipListMap<Node, Integer> map = new ConcurrentSkipListMap<Node, Integer>();
+		final Node[] nodes = SortBenchmark.populate(size);
+		for (int i = 0; i < size; i++) {
+			map.put(nodes[i], i);
+		}
+		SortBenchmark.shuffle(nodes);
+		final long start = System.nanoTime();
+		final Object[] array = new Object[size];
+		for (int i = 0; i < size; i++) {
+			array[i] = map.pollFirstEntry();
+		}
+		for (int i = 0; i < size; i++) {
+			@SuppressWarnings("unchecked")
+			final Entry<Node, Integer> entry = (Entry<Node, Integer>)array[i];
+			map.put(entry.getKey(), entry.getValue());
+		}
+		return (System.nanoTime() - start) / 1000000;
+	}
+
+	private static long rebuild(final int size) {
+		final ConcurrentSortableSet<Integer, Node, Integer> set = new ConcurrentSortableSet<Integer, Node, Integer>();
+		final Node[] nodes = SortBenchmark.populate(size);
+		for (int i = 0; i < size; i++) {
+			set.add(i, nodes[i], i);
+		}
+		SortBenchmark.shuffle(nodes);
+		final long start = System.nanoTime();
+		set.sort();
+		return (System.nanoTime() - start) / 1000000;
+	}
+
+	private static Node[] populate(final int size) {
+		final Node[] nodes = new Node[size];
+		for (int i = 0; i < size; i++) {
+			nodes[i] = new Node(i);
+		}
+		return nodes;
+	}
+
+	private static void shuffle(final Node[] nodes) {
+		// Change the order-state of all nodes.
+		final Random random = new Random(nodes.length);
+		for (final Node node : nodes) {
+			node.value = random.nextInt();
+		}
+	}
+
+	private static class Node implements Comparable<Node> {
+		private int value;
+
+		private Node(final int value) {
+			this.value = value;
+		}
+
+		@Override
+		public int compareTo(final Node o) {
+			if (this == o) return 0;
+			if (this.value < o.value) return -1;
+			else if (this.value > o.value) return 1;
+			else return -1;
+		}
+	}
+}
@@ -0,0 +1,296 @@
+package hemera.utility.structure.benchmark;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import hemera.utility.structure.ConcurrentSortableSet;
+import hemera.utility.structure.SortMode;
+import hemera.utility.structure.interfaces.INodeMutator;
+
+/**
+ * Benchmark suite of <code>ConcurrentSortableSet</code>
+ * that runs every combination of the workloads, thread
+ * counts, set sizes and sort modes, and reports for each:
+ * <ul>
+ * <li>the throughput of all operations,</li>
+ * <li>the p50 and p99 latency of reads, and of the reads
+ * that started while a <code>sort</code> was running,</li>
+ * <li>the number of bytes allocated per operation, if
+ * the virtual machine supports thread allocation
+ * measurement.</li>
+ * </ul>
+ * Every run is preceded by a warm-up run of the same
+ * configuration, and the set is populated before either.
+ * <p>
+ * Usage, all arguments are optional:
+ * <pre>
+ * SortableSetBenchmark [workloads=READ_HEAVY,WRITE_HEAVY,SORT_UNDER_LOAD,MIXED]
+ *     [threads=1,4,16,64] [sizes=1000,100000,1000000,10000000]
+ *     [modes=BLOCKING,OPTIMISTIC,SWAP] [millis=2000]
+ * </pre>
+ */
+public class SortableSetBenchmark {
+
+	/**
+	 * The workloads, defined by the percentage of reads,
+	 * the remaining operations being updates, and whether
+	 * a dedicated thread sorts continuously.
+	 */
+	private enum Workload {
+		READ_HEAVY(99, false),
+		WRITE_HEAVY(10, false),
+		SORT_UNDER_LOAD(95, true),
+		MIXED(50, true);
+
+		private final int readPercent;
+		private final boolean sorting;
+
+		private Workload(final int readPercent, final boolean sorting) {
+			this.readPercent = readPercent;
+			this.sorting = sorting;
+		}
+	}
+
+	public static void main(final String[] args) throws Exception {
+		List<String> workloads = SortableSetBenchmark.list("READ_HEAVY,WRITE_HEAVY,SORT_UNDER_LOAD,MIXED");
+		List<String> threads = SortableSetBenchmark.list("1,4,16,64");
+		List<String> sizes = SortableSetBenchmark.list("1000,100000,1000000,10000000");
+		List<String> modes = SortableSetBenchmark.list("BLOCKING,OPTIMISTIC,SWAP");
+		long millis = 2000;
+		for (final String arg : args) {
+			final int index = arg.indexOf('=');
+			if (index < 0) throw new IllegalArgumentException("Invalid argument: " + arg);
+			final String name = arg.substring(0, index);
+			final String value = arg.substring(index+1);
+			if (name.equals("workloads")) workloads = SortableSetBenchmark.list(value);
+			else if (name.equals("threads")) threads = SortableSetBenchmark.list(value);
+			else if (name.equals("sizes")) sizes = SortableSetBenchmark.list(value);
+			else if (name.equals("modes")) modes = SortableSetBenchmark.list(value);
+			else if (name.equals("millis")) millis = Long.parseLong(value);
+			else throw new IllegalArgumentException("Unknown argument: " + name);
+		}
+		System.out.println(String.format("%-16s %-11s %8s %7s %14s %10s %10s %12s %12s %10s",
+				"workload", "mode", "size", "threads", "ops/s", "read p50", "read p99", "sorting p50", "sorting p99", "bytes/op"));
+		for (final String size : sizes) {
+			for (final String mode : modes) {
+				final ConcurrentSortableSet<Integer, Node, Integer> set = new ConcurrentSortableSet<Integer, Node, Integer>(SortMode.valueOf(mode));
+				final int count = Integer.parseInt(size);
+				for (int i = 0; i < count; i++) {
+					set.add(i, new Node(i), i);
+				}
+				for (final String workload : workloads) {
+					for (final String thread : threads) {
+						final Workload load = Workload.valueOf(workload);
+						final int threadcount = Integer.parseInt(thread);
+						SortableSetBenchmark.run(set, count, load, threadcount, Math.max(100, millis / 4));
+						final Result result = SortableSetBenchmark.run(set, count, load, threadcount, millis);
+						System.out.println(String.format("%-16s %-11s %8d %7d %,14d %10s %10s %12s %12s %10s",
+								workload, mode, count, threadcount, result.operations * 1000 / millis,
+								SortableSetBenchmark.format(result.reads.percentile(0.5)), SortableSetBenchmark.format(result.reads.percentile(0.99)),
+								SortableSetBenchmark.format(result.sortingreads.percentile(0.5)), SortableSetBenchmark.format(result.sortingreads.percentile(0.99)),
+								(result.allocated < 0) ? "n/a" : String.valueOf(result.allocated / Math.max(1, result.operations))));
+					}
+				}
+			}
+		}
+	}
+
+	private static Result run(final ConcurrentSortableSet<Integer, Node, Integer> set, final int size, final Workload workload,
+			final int threads, final long millis) throws Exception {
+		final AtomicBoolean running = new AtomicBoolean(true);
+		final AtomicBoolean sorting = new AtomicBoolean(false);
+		final CountDownLatch done = new CountDownLatch(threads);
+		final Worker[] workers = new Worker[threads];
+		for (int i = 0; i < threads; i++) {
+			workers[i] = new Worker(set, size, workload, running, sorting, done, i);
+			workers[i].start();
+		}
+		final Thread sorter = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				while (running.get()) {
+					sorting.set(true);
+					set.sort();
+					sorting.set(false);
+					// Leave a gap between sorts so reads are
+					// measured both during and outside sorting.
+					try {
+						Thread.sleep(10);
+					} catch (final InterruptedException e) {
+						return;
+					}
+				}
+			}
+		});
+		if (workload.sorting) sorter.start();
+		Thread.sleep(millis);
+		running.set(false);
+		done.await();
+		if (workload.sorting) sorter.join();
+		final Result result = new Result();
+		for (final Worker worker : workers) {
+			result.operations += worker.operations;
+			result.reads.merge(worker.reads);
+			result.sortingreads.merge(worker.sortingreads);
+			if (worker.allocated < 0 || result.allocated < 0) result.allocated = -1;
+			else result.allocated += worker.allocated;
+		}
+		return result;
+	}
+
+	private static List<String> list(final String value) {
+		final List<String> list = new ArrayList<String>();
+		for (final String item : value.split(",")) {
+			if (item.trim().length() > 0) list.add(item.trim());
+		}
+		return list;
+	}
+
+	private static String format(final long nanos) {
+		if (nanos < 0) return "-";
+		if (nanos < 10000) return nanos + "ns";
+		if (nanos < 10000000) return (nanos / 1000) + "us";
+		return (nanos / 1000000) + "ms";
+	}
+
+	private static long allocatedBytes() {
+		final ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		if (!(bean instanceof com.sun.management.ThreadMXBean)) return -1;
+		final com.sun.management.ThreadMXBean sunbean = (com.sun.management.ThreadMXBean)bean;
+		if (!sunbean.isThreadAllocatedMemorySupported() || !sunbean.isThreadAllocatedMemoryEnabled()) return -1;
+		return sunbean.getThreadAllocatedBytes(Thread.currentThread().getId());
+	}
+
+	private static class Worker extends Thread {
+		private final ConcurrentSortableSet<Integer, Node, Integer> set;
+		private final int size;
+		private final Workload workload;
+		private final AtomicBoolean running;
+		private final AtomicBoolean sorting;
+		private final CountDownLatch done;
+		private final Random random;
+		private final Histogram reads;
+		private final Histogram sortingreads;
+		private long operations;
+		private long allocated;
+
+		private Worker(final ConcurrentSortableSet<Integer, Node, Integer> set, final int size, final Workload workload,
+				final AtomicBoolean running, final AtomicBoolean sorting, final CountDownLatch done, final int seed) {
+			this.set = set;
+			this.size = size;
+			this.workload = workload;
+			this.running = running;
+			this.sorting = sorting;
+			this.done = done;
+			this.random = new Random(seed);
+			this.reads = new Histogram();
+			this.sortingreads = new Histogram();
+			this.setDaemon(true);
+		}
+
+		@Override
+		public void run() {
+			final INodeMutator<Node> mutator = new INodeMutator<Node>() {
+				@Override
+				public void mutate(final Node node) {
+					node.value = Worker.this.random.nextInt();
+				}
+			};
+			final long startallocated = SortableSetBenchmark.allocatedBytes();
+			while (this.running.get()) {
+				final Integer key = this.random.nextInt(this.size);
+				if (this.random.nextInt(100) < this.workload.readPercent) {
+					final boolean duringsort = this.sorting.get();
+					final long start = System.nanoTime();
+					if ((this.operations & 1) == 0) this.set.firstNode();
+					else this.set.getNode(key);
+					final long latency = System.nanoTime() - start;
+					if (duringsort) this.sortingreads.record(latency);
+					else this.reads.record(latency);
+				} else {
+					this.set.update(key, mutator);
+				}
+				this.operations++;
+			}
+			final long endallocated = SortableSetBenchmark.allocatedBytes();
+			this.allocated = (startallocated < 0 || endallocated < 0) ? -1 : endallocated - startallocated;
+			this.done.countDown();
+		}
+	}
+
+	private static class Result {
+		private final Histogram reads = new Histogram();
+		private final Histogram sortingreads = new Histogram();
+		private long operations;
+		private long allocated;
+	}
+
+	/**
+	 * Log-linear latency histogram, every power of two
+	 * is split into 16 linear buckets, thus percentiles
+	 * are accurate within about 6%.
+	 */
+	private static class Histogram {
+		private static final int SUB_BITS = 4;
+		private final long[] counts = new long[64 << Histogram.SUB_BITS];
+		private long total;
+
+		private void record(final long value) {
+			this.counts[Histogram.bucket(Math.max(0, value))]++;
+			this.total++;
+		}
+
+		private void merge(final Histogram other) {
+			for (int i = 0; i < this.counts.length; i++) {
+				this.counts[i] += other.counts[i];
+			}
+			this.total += other.total;
+		}
+
+		private long percentile(final double percentile) {
+			if (this.total == 0) return -1;
+			final long target = (long)Math.ceil(this.total * percentile);
+			long seen = 0;
+			for (int i = 0; i < this.counts.length; i++) {
+				seen += this.counts[i];
+				if (seen >= target) return Histogram.upper(i);
+			}
+			return Histogram.upper(this.counts.length-1);
+		}
+
+		private static int bucket(final long value) {
+			if (value < (1 << Histogram.SUB_BITS)) return (int)value;
+			final int exponent = 63 - Long.numberOfLeadingZeros(value) - Histogram.SUB_BITS;
+			final int sub = (int)(value >>> exponent) & ((1 << Histogram.SUB_BITS) - 1);
+			return ((exponent + 1) << Histogram.SUB_BITS) + sub;
+		}
+
+		private static long upper(final int bucket) {
+			if (bucket < (1 << Histogram.SUB_BITS)) return bucket;
+			final int exponent = (bucket >>> Histogram.SUB_BITS) - 1;
+			final long sub = bucket & ((1 << Histogram.SUB_BITS) - 1);
+			return (((1L << Histogram.SUB_BITS) + sub + 1) << exponent) - 1;
+		}
+	}
+
+	private static class Node implements Comparable<Node> {
+		private int value;
+
+		private Node(final int value) {
+			this.value = value;
+		}
+
+		@Override
+		public int compareTo(final Node o) {
+			if (this == o) return 0;
+			if (this.value < o.value) return -1;
+			else if (this.value > o.value) return 1;
+			else return -1;
+		}
+	}
+}